@@ -0,0 +1,141 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.rest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.pdp.PDPEngine;
+
+/**
+ * Holds the {@link com.att.research.xacml.api.pdp.PDPEngine} the servlet is currently serving requests with.
+ *
+ * Readers {@link #acquire()} a {@link Lease} on the current engine, use it and then close the lease.  A new engine is
+ * published with {@link #swap(PDPEngine)} as a single atomic reference update, so readers never block on a
+ * configuration change.  Requests already in flight finish on the engine they leased; the retired engine is only
+ * shut down once its last lease has been closed.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class PDPEngineHolder {
+	private static final Logger logger	= LoggerFactory.getLogger(PDPEngineHolder.class);
+
+	/**
+	 * A reference-counted snapshot of a single <code>PDPEngine</code>.  The holder owns one reference for as long as the
+	 * snapshot is current, and each open <code>Lease</code> owns one more.  The engine is shut down when the count
+	 * reaches zero.
+	 */
+	private static class Snapshot {
+		private final PDPEngine pdpEngine;
+		private final AtomicInteger references	= new AtomicInteger(1);
+
+		Snapshot(PDPEngine pdpEngineIn) {
+			this.pdpEngine	= pdpEngineIn;
+		}
+
+		/*
+		 * Only succeeds while the snapshot has not yet drained, so a reader that raced with a swap never resurrects an
+		 * engine that has already been shut down.
+		 */
+		boolean retain() {
+			int count;
+			do {
+				count	= this.references.get();
+				if (count <= 0) {
+					return false;
+				}
+			} while (!this.references.compareAndSet(count, count + 1));
+			return true;
+		}
+
+		void release() {
+			if (this.references.decrementAndGet() == 0) {
+				logger.info("Shutting down retired PDP engine");
+				try {
+					this.pdpEngine.shutdown();
+				} catch (Exception ex) {
+					logger.error("Exception shutting down retired PDP engine: {}", ex.getMessage(), ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A reader's claim on the engine that was current when it was acquired.  Closing the lease more than once has no
+	 * further effect.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final Snapshot snapshot;
+		private final AtomicInteger closed	= new AtomicInteger();
+
+		private Lease(Snapshot snapshotIn) {
+			this.snapshot	= snapshotIn;
+		}
+
+		public PDPEngine getEngine() {
+			return this.snapshot.pdpEngine;
+		}
+
+		@Override
+		public void close() {
+			if (this.closed.compareAndSet(0, 1)) {
+				this.snapshot.release();
+			}
+		}
+	}
+
+	private final AtomicReference<Snapshot> current	= new AtomicReference<>();
+
+	public PDPEngineHolder() {
+		// Empty constructor
+	}
+
+	/**
+	 * Leases the current <code>PDPEngine</code>.  The caller must close the returned <code>Lease</code> when it is
+	 * done with the engine, typically with a try-with-resources block.
+	 *
+	 * @return a <code>Lease</code> on the current engine, or null if no engine has been published
+	 */
+	public Lease acquire() {
+		while (true) {
+			Snapshot snapshot	= this.current.get();
+			if (snapshot == null) {
+				return null;
+			}
+			if (snapshot.retain()) {
+				return new Lease(snapshot);
+			}
+			//
+			// The snapshot was retired and drained between the get() and retain(); the
+			// replacement is already published, so just try again.
+			//
+		}
+	}
+
+	/**
+	 * Publishes the given <code>PDPEngine</code> as the current engine.  The previously current engine is shut down
+	 * as soon as the last in-flight request using it has completed.
+	 *
+	 * @param pdpEngine the fully built <code>PDPEngine</code> to publish; null retires the current engine
+	 */
+	public void swap(PDPEngine pdpEngine) {
+		Snapshot retired	= this.current.getAndSet(pdpEngine == null ? null : new Snapshot(pdpEngine));
+		if (retired != null) {
+			retired.release();
+		}
+	}
+
+	/**
+	 * Retires the current engine.  It is shut down once any in-flight requests using it have completed.
+	 */
+	public void shutdown() {
+		this.swap(null);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes a serialized PDP response to an <code>HttpServletResponse</code>, holding up to <code>bufferSize</code> bytes of it in
+ * memory first.  A response that fits is only sent by {@link #finish()}, with its Content-Length, so if it fails part way nothing
+ * has been committed and the servlet can still send an error.  A larger response is written through once the buffer fills; if it
+ * then fails, {@link #isCommitted()} is true and the servlet must abort the connection rather than complete a truncated response.
+ *
+ * @author car
+ * @version $Revision$
+ */
+class PDPResponseOutputStream extends OutputStream {
+	public static final int DEFAULT_BUFFER_SIZE	= 1024 * 1024;
+
+	private final HttpServletResponse response;
+	private final int bufferSize;
+	private ByteArrayOutputStream buffer	= new ByteArrayOutputStream();
+	private OutputStream responseStream;
+
+	PDPResponseOutputStream(HttpServletResponse responseIn, int bufferSizeIn) {
+		this.response	= responseIn;
+		this.bufferSize	= bufferSizeIn;
+	}
+
+	/*
+	 * Sends what has been buffered and writes everything after it straight through
+	 */
+	private void writeThrough() throws IOException {
+		this.responseStream	= this.response.getOutputStream();
+		this.buffer.writeTo(this.responseStream);
+		this.buffer	= null;
+	}
+
+	/**
+	 * Determines if any of the response has been written to the <code>HttpServletResponse</code>.
+	 *
+	 * @return true if the response no longer fits in the buffer and part of it has been written, else false
+	 */
+	public boolean isCommitted() {
+		return this.responseStream != null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.responseStream == null && this.buffer.size() >= this.bufferSize) {
+			this.writeThrough();
+		}
+		if (this.responseStream == null) {
+			this.buffer.write(b);
+		} else {
+			this.responseStream.write(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (this.responseStream == null && this.buffer.size() + len > this.bufferSize) {
+			this.writeThrough();
+		}
+		if (this.responseStream == null) {
+			this.buffer.write(b, off, len);
+		} else {
+			this.responseStream.write(b, off, len);
+		}
+	}
+
+	/**
+	 * Sends the rest of the response once it has been completely serialized.
+	 *
+	 * @throws IOException if the response cannot be written
+	 */
+	public void finish() throws IOException {
+		if (this.responseStream == null) {
+			this.response.setContentLength(this.buffer.size());
+			this.writeThrough();
+		}
+		this.responseStream.flush();
+	}
+}
@@ -35,6 +35,7 @@ import com.att.research.xacml.std.pap.StdPDPPolicy;
 import com.att.research.xacml.std.pap.StdPDPStatus;
 import com.att.research.xacml.util.FactoryException;
 import com.att.research.xacml.util.XACMLProperties;
+import com.att.research.xacmlatt.pdp.ATTPDPEngine;
 import com.att.research.xacmlatt.pdp.policy.PolicyDef;
 import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
 import com.att.research.xacmlatt.pdp.std.StdPolicyFinderFactory;
@@ -149,12 +150,29 @@ public class XACMLPdpLoader {
 			factory	= PDPEngineFactory.newInstance();
 			engine	= factory.newEngine();
 			logger.info("Loaded new PDP engine.");
-			status.setStatus(Status.UP_TO_DATE);
 		} catch (FactoryException e) {
 			String error = "Failed to create new PDP Engine";
 			logger.error(error, e);
 			status.addLoadError(error);
+			return null;
+		}
+		//
+		// Build its policy and PIP finders now, while the current engine is still
+		// serving requests, so a bad configuration never replaces it.
+		//
+		try {
+			if (engine instanceof ATTPDPEngine) {
+				((ATTPDPEngine) engine).prepare();
+			}
+		} catch (Exception e) {
+			String error = "Failed to prepare new PDP Engine: " + e.getMessage();
+			logger.error(error, e);
+			status.addLoadError(error);
+			status.setStatus(PDPStatus.Status.LOAD_ERRORS);
+			engine.shutdown();
+			return null;
 		}
+		status.setStatus(Status.UP_TO_DATE);
 		return engine;
 	}
 	
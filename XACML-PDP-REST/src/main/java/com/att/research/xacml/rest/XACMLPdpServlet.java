@@ -5,12 +5,14 @@
  */
 package com.att.research.xacml.rest;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
@@ -26,6 +28,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.entity.ContentType;
@@ -36,9 +40,9 @@ import com.att.research.xacml.api.Response;
 import com.att.research.xacml.api.pap.PDPStatus.Status;
 import com.att.research.xacml.api.pdp.PDPEngine;
 import com.att.research.xacml.api.pdp.PDPException;
-import com.att.research.xacml.std.dom.DOMRequest;
 import com.att.research.xacml.std.dom.DOMResponse;
-import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.dom.StAXRequestReader;
+import com.att.research.xacml.std.json.JsonRequestReader;
 import com.att.research.xacml.std.json.JsonResponseTranslator;
 import com.att.research.xacml.std.pap.StdPDPStatus;
 import com.att.research.xacml.util.XACMLProperties;
@@ -100,12 +104,11 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 	private Thread registerThread = null;
 	private XACMLPdpRegisterThread registerRunnable = null;
 	//
-	// This is our PDP engine pointer. There is a synchronized lock used
-	// for access to the pointer. In case we are servicing PEP requests while
-	// an update is occurring from the PAP.
+	// This is our PDP engine pointer. PEP requests lease the current engine
+	// from the holder, so an update from the PAP can publish a new engine
+	// without waiting on (or breaking) requests that are already running.
 	//
-	private PDPEngine pdpEngine	= null;
-	private static final Object pdpEngineLock = new Object();
+	private final transient PDPEngineHolder pdpEngineHolder = new PDPEngineHolder();
 	//
 	// This is our PDP's status. What policies are loaded (or not) and
 	// what PIP configurations are loaded (or not).
@@ -155,9 +158,7 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 		//
 		PDPEngine engine = XACMLPdpLoader.loadEngine(XACMLPdpServlet.status, null, null);
 		if (engine != null) {
-			synchronized(pdpEngineLock) {
-				pdpEngine = engine;
-			}
+			this.pdpEngineHolder.swap(engine);
 		}
 		//
 		// Kick off our thread to register with the PAP servlet.
@@ -206,6 +207,10 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 		} catch (InterruptedException e) {
 			logger.error("interrupted", e);
 		}
+		//
+		// Shutdown the engine once any remaining requests have finished with it
+		//
+		this.pdpEngineHolder.shutdown();
 		logger.info("Destroyed.");
 	}
 
@@ -485,25 +490,22 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 				contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_XML.getMimeType()) ||
 				contentType.getMimeType().equalsIgnoreCase("application/xacml+xml") ) {
 			//
-			// Read in the string
+			// Parse straight from the stream. The bytes are only kept when
+			// they are needed for the request and audit logs.
 			//
-			StringBuilder buffer = new StringBuilder();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream()));
-			String line;
-			while((line = reader.readLine()) != null){
-				buffer.append(line);
+			Charset charset = (contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset());
+			ByteArrayOutputStream requestBytes = null;
+			InputStream requestStream = request.getInputStream();
+			if (logger.isInfoEnabled() || requestLogger.isInfoEnabled()) {
+				requestBytes = new ByteArrayOutputStream(Math.max(request.getContentLength(), 32));
+				requestStream = new TeeInputStream(requestStream, requestBytes);
 			}
-			incomingRequestString = buffer.toString();
-			logger.info(incomingRequestString);
-		    //
-			// Parse into a request
-			//
 			try {
 				if (contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_JSON.getMimeType())) {
-					pdpRequest = JsonRequestTranslator.load(incomingRequestString);
+					pdpRequest = JsonRequestReader.load(new InputStreamReader(requestStream, charset));
 				} else if (	contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_XML.getMimeType()) ||
 							contentType.getMimeType().equalsIgnoreCase("application/xacml+xml")) {
-					pdpRequest = DOMRequest.load(incomingRequestString);
+					pdpRequest = StAXRequestReader.load(requestStream);
 				}
 			}
 			catch(Exception e) {
@@ -511,6 +513,15 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 				response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
 				return;
 			}
+			finally {
+				if (requestBytes != null) {
+					//
+					// Log it on one line, as it was read
+					//
+					incomingRequestString = requestBytes.toString(charset.name()).replaceAll("\\r\\n|\\r|\\n", "");
+					logger.info(incomingRequestString);
+				}
+			}
 		} else {
 			String message = "unsupported content type" + request.getContentType();
 			logger.error(message);
@@ -529,45 +540,26 @@ public class XACMLPdpServlet extends HttpServlet implements Runnable {
 		//
 		// Run it
 		//
+		PDPResponseOutputStream pdpResponseStream = null;
 		try {
 			//
-	        // Get the pointer to the PDP Engine
-	        //
-			PDPEngine myEngine = null;
-			synchronized(pdpEngineLock) {
-				myEngine = this.pdpEngine;
-			}
-			if (myEngine == null) {
-				String message = "No engine loaded.";
-				logger.error(message);
-				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, message);
-				return;
-			}
-			//
 			// Send the request and save the response
 			//
 			long lTimeStart, lTimeEnd;
 			Response pdpResponse	= null;
-
-//TODO - Make this unnecessary
-//TODO	It seems that the PDP Engine is not thread-safe, so when a configuration change occurs in the middle of processing
-//TODO	a PEP Request, that Request fails (it throws a NullPointerException in the decide() method).
-//TODO	Using synchronize will slow down processing of PEP requests, possibly by a significant amount.
-//TODO	Since configuration changes are rare, it would be A Very Good Thing if we could eliminate this sychronized block.
-//TODO
-//TODO	This problem was found by starting one PDP then
-//TODO		RestLoadTest switching between 2 configurations, 1 second apart
-//TODO			both configurations contain the datarouter policy
-//TODO			both configurations already have all policies cached in the PDPs config directory
-//TODO		RestLoadTest started with the Datarouter test requests, 5 threads, no interval
-//TODO	With that configuration this code (without the synchronized) throws a NullPointerException
-//TODO	within a few seconds.
-//
-synchronized(pdpEngineLock) {
-	myEngine = this.pdpEngine;
-			try {
+			//
+			// Lease the current PDP Engine. A configuration change may publish a new
+			// engine while we are deciding; the one we leased stays up until we are done.
+			//
+			try (PDPEngineHolder.Lease lease = this.pdpEngineHolder.acquire()) {
+				if (lease == null) {
+					String message = "No engine loaded.";
+					logger.error(message);
+					response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, message);
+					return;
+				}
 				lTimeStart = System.currentTimeMillis();
-				pdpResponse	= myEngine.decide(pdpRequest);
+				pdpResponse	= lease.getEngine().decide(pdpRequest);
 				lTimeEnd = System.currentTimeMillis();
 			} catch (PDPException e) {
 				String message = "Exception during decide: " + e.getMessage();
@@ -575,7 +567,6 @@ synchronized(pdpEngineLock) {
 				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, message);
 				return;
 			}
-}
 			requestLogger.info(lTimeStart + "=" + incomingRequestString);
 			logger.debug("Request time: {}ms", (lTimeEnd - lTimeStart));
 			//
@@ -589,55 +580,60 @@ synchronized(pdpEngineLock) {
 			// Set our content-type
 			//
 			response.setContentType(contentType.getMimeType());
+			response.setCharacterEncoding(StandardCharsets.UTF_8.name());
 			//
-			// Convert the PDP response object to a String to
-			// return to our caller as well as dump to our loggers.
+			// Write the PDP response object to our caller. Nothing is sent until
+			// the response is complete, unless it is too large to hold. When it
+			// has to be logged, the same bytes are kept for our loggers.
 			//
-			String outgoingResponseString = "";
+			ByteArrayOutputStream responseBytes = null;
+			pdpResponseStream = new PDPResponseOutputStream(response, getResponseBufferSize());
+			OutputStream responseStream = pdpResponseStream;
+			if (logger.isDebugEnabled() || requestLogger.isInfoEnabled()) {
+				responseBytes = new ByteArrayOutputStream();
+				responseStream = new TeeOutputStream(responseStream, responseBytes);
+			}
 			if (contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_JSON.getMimeType())) {
-				//
-				// Get it as a String. This is not very efficient but we need to log our
-				// results for auditing.
-				//
-				outgoingResponseString = JsonResponseTranslator.toString(pdpResponse, logger.isDebugEnabled());
-				if (logger.isDebugEnabled()) {
-					logger.debug(outgoingResponseString);
-					//
-					// Get rid of whitespace
-					//
-					outgoingResponseString = JsonResponseTranslator.toString(pdpResponse, false);
-				}
+				JsonResponseTranslator.convert(pdpResponse, responseStream, false);
 			} else if (	contentType.getMimeType().equalsIgnoreCase(ContentType.APPLICATION_XML.getMimeType()) ||
 						contentType.getMimeType().equalsIgnoreCase("application/xacml+xml")) {
+				DOMResponse.convert(pdpResponse, responseStream, false);
+			}
+			pdpResponseStream.finish();
+			if (responseBytes != null) {
+				String outgoingResponseString = responseBytes.toString(StandardCharsets.UTF_8.name());
+				logger.debug(outgoingResponseString);
 				//
-				// Get it as a String. This is not very efficient but we need to log our
-				// results for auditing.
+				// lTimeStart is used as an ID within the requestLogger to match up
+				// request's with responses.
 				//
-				outgoingResponseString = DOMResponse.toString(pdpResponse, logger.isDebugEnabled());
-				if (logger.isDebugEnabled()) {
-					logger.debug(outgoingResponseString);
-					//
-					// Get rid of whitespace
-					//
-					outgoingResponseString = DOMResponse.toString(pdpResponse, false);
-				}
+				requestLogger.info(lTimeStart + "=" + outgoingResponseString);
 			}
-			//
-			// lTimeStart is used as an ID within the requestLogger to match up
-			// request's with responses.
-			//
-			requestLogger.info(lTimeStart + "=" + outgoingResponseString);
-			response.getWriter().print(outgoingResponseString);
 		}
 		catch (Exception e) {
 			String message = "Exception executing request: " + e;
 			logger.error(message, e);
+			if (response.isCommitted() || (pdpResponseStream != null && pdpResponseStream.isCommitted())) {
+				//
+				// Part of the response has already gone out. Let the container
+				// abort the connection so the caller does not take it as complete.
+				//
+				throw new ServletException(message, e);
+			}
 			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, message);
 			return;
 		}
 		response.setStatus(HttpServletResponse.SC_OK);
 	}
 
+	private static int getResponseBufferSize() {
+		try {
+			return Integer.parseInt(XACMLProperties.getProperty(XACMLRestProperties.PROP_PDP_RESPONSE_BUFFER, Integer.toString(PDPResponseOutputStream.DEFAULT_BUFFER_SIZE)));
+		} catch (NumberFormatException e) {
+			return PDPResponseOutputStream.DEFAULT_BUFFER_SIZE;
+		}
+	}
+
 	@Override
 	public void run() {
 		//
@@ -647,43 +643,39 @@ synchronized(pdpEngineLock) {
 			while (! this.configThreadTerminate) {
 				PutRequest request = XACMLPdpServlet.queue.take();
 				StdPDPStatus newStatus = new StdPDPStatus();
-
-//TODO - This is related to the problem discussed in the doPost() method about the PDPEngine not being thread-safe.
-//TODO	See that discussion, and when the PDPEngine is made thread-safe it should be ok to move the loadEngine out of
-//TODO	the synchronized block.
-//TODO	However, since configuration changes should be rare we may not care about changing this.
-PDPEngine newEngine = null;
 				synchronized(pdpStatusLock) {
 					XACMLPdpServlet.status.setStatus(Status.UPDATING_CONFIGURATION);
-newEngine = XACMLPdpLoader.loadEngine(newStatus, request.policyProperties, request.pipConfigProperties);
 				}
-//				PDPEngine newEngine = XACMLPdpLoader.loadEngine(newStatus, request.policyProperties, request.pipConfigProperties);
+				//
+				// Build the new engine off to the side. PEP requests keep being
+				// served by the current engine while this runs.
+				//
+				PDPEngine newEngine = XACMLPdpLoader.loadEngine(newStatus, request.policyProperties, request.pipConfigProperties);
 				if (newEngine != null) {
-					synchronized(XACMLPdpServlet.pdpEngineLock) {
-                        if (this.pdpEngine != null) {
-                            this.pdpEngine.shutdown();
-                        }
-						this.pdpEngine = newEngine;
-						try {
-							logger.info("Saving configuration.");
-							if (request.policyProperties != null) {
-								try (OutputStream os = Files.newOutputStream(XACMLPdpLoader.getPDPPolicyCache())) {
-									request.policyProperties.store(os, "");
-								}
+					//
+					// Publish it. The old engine is shut down once the requests
+					// still using it have finished.
+					//
+					this.pdpEngineHolder.swap(newEngine);
+					try {
+						logger.info("Saving configuration.");
+						if (request.policyProperties != null) {
+							try (OutputStream os = Files.newOutputStream(XACMLPdpLoader.getPDPPolicyCache())) {
+								request.policyProperties.store(os, "");
 							}
-							if (request.pipConfigProperties != null) {
-								try (OutputStream os = Files.newOutputStream(XACMLPdpLoader.getPIPConfig())) {
-									request.pipConfigProperties.store(os, "");
-								}
+						}
+						if (request.pipConfigProperties != null) {
+							try (OutputStream os = Files.newOutputStream(XACMLPdpLoader.getPIPConfig())) {
+								request.pipConfigProperties.store(os, "");
 							}
-							newStatus.setStatus(Status.UP_TO_DATE);
-							
-						} catch (Exception e) {
-							logger.error("Failed to store new properties.");
-							newStatus.setStatus(Status.LOAD_ERRORS);
-							newStatus.addLoadWarning("Unable to save configuration: " + e.getMessage());
 						}
-					}					
+						newStatus.setStatus(Status.UP_TO_DATE);
+						
+					} catch (Exception e) {
+						logger.error("Failed to store new properties.");
+						newStatus.setStatus(Status.LOAD_ERRORS);
+						newStatus.addLoadWarning("Unable to save configuration: " + e.getMessage());
+					}
 				} else {
 					newStatus.setStatus(Status.LAST_UPDATE_FAILED);
 				}
@@ -11,11 +11,12 @@ import org.slf4j.LoggerFactory;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPFinderFactory;
+import com.att.research.xacml.std.pip.finders.CachingFinder;
 import com.att.research.xacml.std.pip.finders.ConfigurableEngineFinder;
 import com.att.research.xacml.util.XACMLProperties;
 
 public class XACMLPdpPIPFinderFactory extends PIPFinderFactory {
-	private ConfigurableEngineFinder pipFinder;
+	private PIPFinder pipFinder;
 	
 	private static Logger logger    = LoggerFactory.getLogger(XACMLPdpPIPFinderFactory.class);
 	
@@ -29,7 +30,7 @@ public class XACMLPdpPIPFinderFactory extends PIPFinderFactory {
 	public synchronized PIPFinder getFinder() throws PIPException {
 		if (pipFinder == null) {
 			logger.debug("Creating default configurable engine finder");
-			pipFinder					= new ConfigurableEngineFinder();
+			ConfigurableEngineFinder engineFinder	= new ConfigurableEngineFinder();
 			Properties xacmlProperties	= null;
 			try {
 				xacmlProperties	= XACMLProperties.getProperties();
@@ -38,7 +39,10 @@ public class XACMLPdpPIPFinderFactory extends PIPFinderFactory {
 				return null;
 			}
 			if (xacmlProperties != null) {
-				pipFinder.configure(xacmlProperties);
+				engineFinder.configure(xacmlProperties);
+				pipFinder	= CachingFinder.newInstance(engineFinder, xacmlProperties);
+			} else {
+				pipFinder	= engineFinder;
 			}
 		}
 		return pipFinder;
@@ -48,8 +52,9 @@ public class XACMLPdpPIPFinderFactory extends PIPFinderFactory {
 	public synchronized PIPFinder getFinder(Properties properties) throws PIPException {
 		if (pipFinder == null) {
 			logger.debug("Creating configurable engine finder using: {}", properties);
-			pipFinder					= new ConfigurableEngineFinder();
-			pipFinder.configure(properties);
+			ConfigurableEngineFinder engineFinder	= new ConfigurableEngineFinder();
+			engineFinder.configure(properties);
+			pipFinder	= CachingFinder.newInstance(engineFinder, properties);
 		}
 		return this.pipFinder;
 	}
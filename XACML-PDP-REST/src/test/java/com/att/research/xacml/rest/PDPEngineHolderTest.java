@@ -0,0 +1,154 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.pdp.PDPEngine;
+import com.att.research.xacml.api.pdp.PDPException;
+
+public class PDPEngineHolderTest {
+
+	private static class CountingEngine implements PDPEngine {
+		private final AtomicInteger shutdowns	= new AtomicInteger();
+		private final AtomicBoolean usedAfterShutdown	= new AtomicBoolean();
+
+		@Override
+		public Response decide(Request pepRequest) throws PDPException {
+			if (this.shutdowns.get() > 0) {
+				this.usedAfterShutdown.set(true);
+			}
+			return null;
+		}
+
+		@Override
+		public void shutdown() {
+			this.shutdowns.incrementAndGet();
+		}
+
+		@Override
+		public Collection<URI> getProfiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean hasProfile(URI uriProfile) {
+			return false;
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		PDPEngineHolder holder	= new PDPEngineHolder();
+		assertNull(holder.acquire());
+	}
+
+	@Test
+	public void testSwapWithoutReaders() {
+		PDPEngineHolder holder	= new PDPEngineHolder();
+		CountingEngine engine1	= new CountingEngine();
+		CountingEngine engine2	= new CountingEngine();
+		holder.swap(engine1);
+		try (PDPEngineHolder.Lease lease = holder.acquire()) {
+			assertSame(engine1, lease.getEngine());
+		}
+		assertEquals(0, engine1.shutdowns.get());
+		holder.swap(engine2);
+		assertEquals(1, engine1.shutdowns.get());
+		try (PDPEngineHolder.Lease lease = holder.acquire()) {
+			assertSame(engine2, lease.getEngine());
+		}
+		holder.shutdown();
+		assertEquals(1, engine2.shutdowns.get());
+		assertNull(holder.acquire());
+	}
+
+	@Test
+	public void testRetiredEngineDrains() {
+		PDPEngineHolder holder	= new PDPEngineHolder();
+		CountingEngine engine1	= new CountingEngine();
+		holder.swap(engine1);
+		PDPEngineHolder.Lease lease1	= holder.acquire();
+		PDPEngineHolder.Lease lease2	= holder.acquire();
+		holder.swap(new CountingEngine());
+		assertEquals(0, engine1.shutdowns.get());
+		lease1.close();
+		lease1.close();
+		assertEquals(0, engine1.shutdowns.get());
+		lease2.close();
+		assertEquals(1, engine1.shutdowns.get());
+	}
+
+	@Test
+	public void testConcurrentSwaps() throws Exception {
+		final int readers	= 8;
+		PDPEngineHolder holder	= new PDPEngineHolder();
+		List<CountingEngine> engines	= Collections.synchronizedList(new ArrayList<>());
+		CountingEngine first	= new CountingEngine();
+		engines.add(first);
+		holder.swap(first);
+		AtomicBoolean done		= new AtomicBoolean();
+		CountDownLatch started	= new CountDownLatch(readers);
+		ExecutorService executor	= Executors.newFixedThreadPool(readers);
+		List<Future<Integer>> futures	= new ArrayList<>();
+		try {
+			for (int i = 0 ; i < readers ; i++) {
+				futures.add(executor.submit(() -> {
+					int decisions	= 0;
+					started.countDown();
+					while (!done.get()) {
+						try (PDPEngineHolder.Lease lease = holder.acquire()) {
+							assertNotNull(lease);
+							lease.getEngine().decide(null);
+							decisions++;
+						}
+					}
+					return decisions;
+				}));
+			}
+			assertTrue(started.await(1, TimeUnit.MINUTES));
+			for (int i = 0 ; i < 200 ; i++) {
+				CountingEngine engine	= new CountingEngine();
+				engines.add(engine);
+				holder.swap(engine);
+			}
+			done.set(true);
+			for (Future<Integer> future : futures) {
+				future.get(1, TimeUnit.MINUTES);
+			}
+		} finally {
+			done.set(true);
+			executor.shutdownNow();
+		}
+		holder.shutdown();
+		for (CountingEngine engine : engines) {
+			assertEquals(1, engine.shutdowns.get());
+			assertFalse(engine.usedAfterShutdown.get());
+		}
+	}
+}
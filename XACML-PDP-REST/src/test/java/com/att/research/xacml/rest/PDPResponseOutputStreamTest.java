@@ -0,0 +1,132 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.std.StdMutableResponse;
+import com.att.research.xacml.std.StdMutableResult;
+import com.att.research.xacml.std.dom.DOMResponse;
+import com.att.research.xacml.std.dom.DOMStructureException;
+
+public class PDPResponseOutputStreamTest {
+	private static final int RESULTS	= 2000;
+
+	/*
+	 * Records what the servlet would have sent
+	 */
+	private static class FakeResponse {
+		private final ByteArrayOutputStream bytes	= new ByteArrayOutputStream();
+		private Integer contentLength;
+
+		HttpServletResponse newProxy() {
+			ServletOutputStream servletOutputStream	= new ServletOutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					bytes.write(b);
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setWriteListener(WriteListener writeListener) {
+				}
+			};
+			return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "getOutputStream":
+					return servletOutputStream;
+				case "setContentLength":
+					this.contentLength	= (Integer) args[0];
+					return null;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		}
+	}
+
+	/*
+	 * A multi-result response whose last Result cannot be serialized
+	 */
+	private static StdMutableResponse newResponse(boolean failing) {
+		StdMutableResponse response	= new StdMutableResponse();
+		for (int i = 0 ; i < RESULTS ; i++) {
+			response.add(new StdMutableResult(i % 2 == 0 ? Decision.PERMIT : Decision.DENY));
+		}
+		if (failing) {
+			response.add(new StdMutableResult());
+		}
+		return response;
+	}
+
+	private static void convertFailing(PDPResponseOutputStream pdpResponseStream) throws Exception {
+		try {
+			DOMResponse.convert(newResponse(true), pdpResponseStream, false);
+			pdpResponseStream.finish();
+			fail("Response without a Decision was serialized");
+		} catch (DOMStructureException ex) {
+		}
+	}
+
+	@Test
+	public void testComplete() throws Exception {
+		FakeResponse fakeResponse	= new FakeResponse();
+		PDPResponseOutputStream pdpResponseStream	= new PDPResponseOutputStream(fakeResponse.newProxy(), PDPResponseOutputStream.DEFAULT_BUFFER_SIZE);
+		DOMResponse.convert(newResponse(false), pdpResponseStream, false);
+		assertFalse(pdpResponseStream.isCommitted());
+		assertEquals(0, fakeResponse.bytes.size());
+		pdpResponseStream.finish();
+		assertTrue(pdpResponseStream.isCommitted());
+		assertEquals(fakeResponse.bytes.size(), fakeResponse.contentLength.intValue());
+		assertEquals(RESULTS, DOMResponse.load(fakeResponse.bytes.toString("UTF-8")).getResults().size());
+	}
+
+	@Test
+	public void testFailsBuffered() throws Exception {
+		//
+		// Nothing has gone out, so the servlet can still send an error
+		//
+		FakeResponse fakeResponse	= new FakeResponse();
+		PDPResponseOutputStream pdpResponseStream	= new PDPResponseOutputStream(fakeResponse.newProxy(), PDPResponseOutputStream.DEFAULT_BUFFER_SIZE);
+		convertFailing(pdpResponseStream);
+		assertFalse(pdpResponseStream.isCommitted());
+		assertEquals(0, fakeResponse.bytes.size());
+		assertNull(fakeResponse.contentLength);
+	}
+
+	@Test
+	public void testFailsCommitted() throws Exception {
+		//
+		// The response outgrew the buffer, so part of it has gone out and the servlet must abort
+		//
+		FakeResponse fakeResponse	= new FakeResponse();
+		PDPResponseOutputStream pdpResponseStream	= new PDPResponseOutputStream(fakeResponse.newProxy(), 4096);
+		convertFailing(pdpResponseStream);
+		assertTrue(pdpResponseStream.isCommitted());
+		assertTrue(fakeResponse.bytes.size() > 4096);
+		assertFalse(fakeResponse.bytes.toString("UTF-8").endsWith("</Response>"));
+		assertNull(fakeResponse.contentLength);
+	}
+}
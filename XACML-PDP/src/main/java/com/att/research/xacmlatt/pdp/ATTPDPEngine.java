@@ -31,25 +31,68 @@ import com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory;
 import com.att.research.xacmlatt.pdp.eval.EvaluationException;
 import com.att.research.xacmlatt.pdp.policy.PolicyDef;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinderResult;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+import com.google.common.collect.Iterators;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * ATTPDPEngine implements the {@link com.att.research.xacml.api.pdp.PDPEngine} interface using the XACML 3.0 specification.
  * 
+ * An <code>ATTPDPEngine</code> is safe for use by multiple concurrent threads.  The <code>decide</code> method holds no
+ * engine-wide lock: each individual decision gets its own {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext},
+ * while the policy tree, the {@link com.att.research.xacmlatt.pdp.policy.PolicyFinder} and the PIP finder are shared
+ * read-mostly structures that publish any lazily computed state safely.
+ * 
+ * By default the individual decisions of a Multiple Decision Profile request are evaluated one after the other on the
+ * calling thread.  Setting <code>xacml.att.multiple.threads</code> gives the engine a pool of that many threads, and the
+ * individual decisions of a request are then evaluated by the calling thread together with up to
+ * <code>xacml.att.multiple.parallelism</code> - 1 pool threads, which defaults to one less than the pool size so that one
+ * large request cannot take the whole pool.  The results are returned, or combined, in the order of the individual decision
+ * requests either way.
+ * 
+ * The individual decision requests are generated as they are evaluated, and a request that would generate more than
+ * <code>xacml.pdp.maxIndividualRequests</code> of them (100000 by default, 0 for no limit) gets an error result in place of
+ * the rest.
+ * 
+ * The individual decisions of one request get their <code>EvaluationContext</code>s from
+ * {@link com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory#newMultipleDecisionFactory()}, so that an attribute they
+ * have in common is only fetched from the PIP engines once per request.
+ * 
+ * If <code>xacml.att.decisionCache</code> is true, the results of individual decisions are remembered in a
+ * {@link com.att.research.xacmlatt.pdp.DecisionCache} and individual decision requests that have been decided before are
+ * not evaluated again.
+ * 
+ * If <code>xacml.att.pip.prefetch</code> is true, the attributes the selected root policy depends on are fetched together by an
+ * {@link com.att.research.xacmlatt.pdp.AttributePrefetcher} before the policy is evaluated.
+ * 
  * @author car
  * @version $Revision: 1.3 $
  */
 public class ATTPDPEngine implements PDPEngine, Traceable {
+	private static final Logger logger	= LoggerFactory.getLogger(ATTPDPEngine.class);
+	
 	private static final Status		STATUS_ADVICE_NA		= new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Advice not allowed in combined decision");
 	private static final Status		STATUS_OBLIGATIONS_NA	= new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Obligations not allowed in combined decision");
 	private static final Status		STATUS_COMBINE_FAILED	= new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Individual decisions do not match");
 	private static final Result		RESULT_ECTX_NULL		= new StdMutableResult(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Null EvaluationContext"));
+	private static final int		DEFAULT_MAX_INDIVIDUAL_REQUESTS	= 100000;
 
 	/*
 	 * These are the profiles that this reference implementation of the PDP engine supports
@@ -63,35 +106,99 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 		PROFILES.add(XACML3.ID_PROFILE_MULTIPLE_XPATH_EXPRESSION.getUri());
 	}
 	
-    private boolean isShutdown = false;
-	private EvaluationContextFactory evaluationContextFactory;
+    private volatile boolean isShutdown = false;
+	private final EvaluationContextFactory evaluationContextFactory;
 	private Decision defaultDecision				= Decision.INDETERMINATE;
-	private ScopeResolver scopeResolver;
-	private TraceEngine traceEngine;
-	
-	protected synchronized TraceEngine getTraceEngine() {
-		if (this.traceEngine == null) {
-			try {
-				this.traceEngine	= TraceEngineFactory.newInstance().getTraceEngine();
-			} catch (FactoryException ex) {
-				throw new IllegalStateException("FactoryException creating TraceEngine instance", ex);
+	private final ScopeResolver scopeResolver;
+	private volatile TraceEngine traceEngine;
+	private final ExecutorService executorService;
+	private final int parallelism;
+	private final int maxIndividualDecisionRequests;
+	private final DecisionCache decisionCache;
+	private final AttributePrefetcher attributePrefetcher;
+	
+	private static int getIntProperty(Properties properties, String propertyName, int defaultValue) {
+		String value	= (properties == null ? ATTPDPProperties.getProperty(propertyName, null) : properties.getProperty(propertyName));
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid value for {}: {}", propertyName, value);
+			return defaultValue;
+		}
+	}
+	
+	private static ExecutorService newExecutorService(int threads) {
+		AtomicInteger threadNumber	= new AtomicInteger();
+		ThreadFactory threadFactory	= runnable -> {
+			Thread thread	= new Thread(runnable, "ATTPDPEngine-decide-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+	
+	protected TraceEngine getTraceEngine() {
+		TraceEngine thisTraceEngine	= this.traceEngine;
+		if (thisTraceEngine == null) {
+			synchronized(this) {
+				thisTraceEngine	= this.traceEngine;
+				if (thisTraceEngine == null) {
+					try {
+						this.traceEngine	= thisTraceEngine	= TraceEngineFactory.newInstance().getTraceEngine();
+					} catch (FactoryException ex) {
+						throw new IllegalStateException("FactoryException creating TraceEngine instance", ex);
+					}
+				}
 			}
 		}
-		return this.traceEngine;
+		return thisTraceEngine;
 	}
 	
 	public ATTPDPEngine(EvaluationContextFactory evaluationContextFactoryIn, ScopeResolver scopeResolverIn) {
-		this.evaluationContextFactory	= evaluationContextFactoryIn;
-		this.scopeResolver				= scopeResolverIn;
+		this(evaluationContextFactoryIn, Decision.INDETERMINATE, scopeResolverIn, null);
 	}
 	
 	public ATTPDPEngine(EvaluationContextFactory evaluationContextFactoryIn, Decision defaultDecisionIn, ScopeResolver scopeResolverIn) {
-		this(evaluationContextFactoryIn, scopeResolverIn);
-		this.defaultDecision	= defaultDecisionIn;
+		this(evaluationContextFactoryIn, defaultDecisionIn, scopeResolverIn, null);
 	}
 	
 	public ATTPDPEngine(EvaluationContextFactory evaluationContextFactoryIn, Decision defaultDecisionIn, ScopeResolver scopeResolverIn, Properties properties) {
-		this(evaluationContextFactoryIn, defaultDecisionIn, scopeResolverIn);
+		this.evaluationContextFactory	= evaluationContextFactoryIn;
+		this.defaultDecision			= defaultDecisionIn;
+		this.scopeResolver				= scopeResolverIn;
+		this.maxIndividualDecisionRequests	= getIntProperty(properties, ATTPDPProperties.PROP_PDP_MAXINDIVIDUALREQUESTS, DEFAULT_MAX_INDIVIDUAL_REQUESTS);
+		int threads						= getIntProperty(properties, ATTPDPProperties.PROP_MULTIPLE_THREADS, 0);
+		if (threads > 0) {
+			this.executorService	= newExecutorService(threads);
+			this.parallelism		= Math.max(1, getIntProperty(properties, ATTPDPProperties.PROP_MULTIPLE_PARALLELISM, threads));
+		} else {
+			this.executorService	= null;
+			this.parallelism		= 1;
+		}
+		this.decisionCache				= DecisionCache.newInstance(evaluationContextFactoryIn, properties);
+		this.attributePrefetcher		= AttributePrefetcher.newInstance(properties);
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacmlatt.pdp.DecisionCache} of this <code>ATTPDPEngine</code>, for its statistics or to
+	 * discard the cached results.
+	 * 
+	 * @return the <code>DecisionCache</code> or null if decisions are not cached
+	 */
+	public DecisionCache getDecisionCache() {
+		return this.decisionCache;
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacmlatt.pdp.AttributePrefetcher} of this <code>ATTPDPEngine</code>, for its statistics.
+	 * 
+	 * @return the <code>AttributePrefetcher</code> or null if attributes are not prefetched
+	 */
+	public AttributePrefetcher getAttributePrefetcher() {
+		return this.attributePrefetcher;
 	}
 	
 	protected Result processRequest(EvaluationContext evaluationContext) {
@@ -114,6 +221,9 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 					return new StdMutableResult(this.defaultDecision, new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "No applicable policy"));
 				}
 			}
+			if (this.attributePrefetcher != null) {
+				this.attributePrefetcher.prefetch(evaluationContext, policyDefRoot);
+			}
 			Result result	= policyDefRoot.evaluate(evaluationContext);
 			if (result.getStatus().isOk()) {
 				Collection<AttributeCategory> listRequestAttributesIncludeInResult	= evaluationContext.getRequest().getRequestAttributesIncludedInResult();
@@ -129,8 +239,170 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 		}
 	}
 	
+	/*
+	 * Evaluates a single individual decision request
+	 */
+	private Result decideIndividual(Request requestIndividualDecision, EvaluationContextFactory evaluationContextFactoryThis, TraceEngine traceEngineThis) {
+		if (traceEngineThis.isTracing()) {
+			traceEngineThis.trace(new StdTraceEvent<Request>("Individual Request", this, requestIndividualDecision));
+		}
+		Result resultIndividualDecision		= null;
+		if (requestIndividualDecision.getStatus() != null && !requestIndividualDecision.getStatus().isOk()) {
+			resultIndividualDecision	= new StdMutableResult(requestIndividualDecision.getStatus());
+		} else {
+			DecisionCache.Lookup lookup	= (this.decisionCache == null ? null : this.decisionCache.lookup(requestIndividualDecision));
+			if (lookup != null && lookup.getResult() != null) {
+				resultIndividualDecision	= lookup.getResult();
+			} else {
+				EvaluationContext evaluationContext	= evaluationContextFactoryThis.getEvaluationContext(requestIndividualDecision);
+				if (evaluationContext == null) {
+					resultIndividualDecision	= RESULT_ECTX_NULL;
+				} else {
+					resultIndividualDecision	= this.processRequest(evaluationContext);
+					if (lookup != null) {
+						resultIndividualDecision	= lookup.store(evaluationContext, resultIndividualDecision);
+					}
+				}
+			}
+		}
+		
+		assert(resultIndividualDecision != null);
+		if (traceEngineThis.isTracing()) {
+			traceEngineThis.trace(new StdTraceEvent<Result>("Individual Result", this, resultIndividualDecision));
+		}
+		return resultIndividualDecision;
+	}
+	
+	/*
+	 * The individual decision requests of one request being evaluated in parallel.  Each worker takes the next request from the
+	 * shared iterator and stores its result in the slot for that request until there are none left.
+	 */
+	private final class IndividualDecisions implements Runnable {
+		private final Iterator<Request> iterRequestsIndividualDecision;
+		private final EvaluationContextFactory evaluationContextFactoryThis;
+		private final TraceEngine traceEngineThis;
+		private final List<Result> results	= new ArrayList<>();
+		private int completed;
+		private Throwable error;
+		
+		IndividualDecisions(Iterator<Request> iterRequestsIndividualDecisionIn, EvaluationContextFactory evaluationContextFactoryIn, TraceEngine traceEngineIn) {
+			this.iterRequestsIndividualDecision	= iterRequestsIndividualDecisionIn;
+			this.evaluationContextFactoryThis	= evaluationContextFactoryIn;
+			this.traceEngineThis				= traceEngineIn;
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				Request requestIndividualDecision;
+				int index;
+				synchronized(this) {
+					if (this.error != null || !this.iterRequestsIndividualDecision.hasNext()) {
+						return;
+					}
+					requestIndividualDecision	= this.iterRequestsIndividualDecision.next();
+					index						= this.results.size();
+					this.results.add(null);
+				}
+				Result resultIndividualDecision	= null;
+				Throwable errorIndividualDecision	= null;
+				try {
+					resultIndividualDecision	= decideIndividual(requestIndividualDecision, this.evaluationContextFactoryThis, this.traceEngineThis);
+				} catch (RuntimeException | Error ex) {
+					errorIndividualDecision	= ex;
+				}
+				synchronized(this) {
+					this.results.set(index, resultIndividualDecision);
+					if (errorIndividualDecision != null && this.error == null) {
+						this.error	= errorIndividualDecision;
+					}
+					this.completed++;
+					this.notifyAll();
+				}
+			}
+		}
+		
+		/*
+		 * Waits for the requests other workers have taken to be done
+		 */
+		synchronized List<Result> getResults() throws PDPException {
+			while (this.completed < this.results.size()) {
+				try {
+					this.wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new PDPException("Interrupted waiting for individual decisions", ex);
+				}
+			}
+			if (this.error instanceof RuntimeException) {
+				throw (RuntimeException)this.error;
+			} else if (this.error instanceof Error) {
+				throw (Error)this.error;
+			}
+			return this.results;
+		}
+	}
+	
+	/*
+	 * Evaluates the individual decision requests on the calling thread and up to parallelism - 1 threads from the pool.
+	 * The results are in the order of the requests.
+	 */
+	private List<Result> decideParallel(Iterator<Request> iterRequestsIndividualDecision, EvaluationContextFactory evaluationContextFactoryThis, TraceEngine traceEngineThis) throws PDPException {
+		IndividualDecisions individualDecisions	= new IndividualDecisions(iterRequestsIndividualDecision, evaluationContextFactoryThis, traceEngineThis);
+		List<Future<?>> futures	= new ArrayList<>();
+		try {
+			for (int i = 1 ; i < this.parallelism ; i++) {
+				futures.add(this.executorService.submit(individualDecisions));
+			}
+		} catch (RejectedExecutionException ex) {
+			throw new PDPException("Engine is shutdown.", ex);
+		}
+		try {
+			individualDecisions.run();
+		} finally {
+			//
+			// Workers still waiting for a pool thread have nothing left to do
+			//
+			for (Future<?> future : futures) {
+				future.cancel(false);
+			}
+		}
+		return individualDecisions.getResults();
+	}
+	
+	/*
+	 * Adds the result of an individual decision to the combined result
+	 */
+	private StdMutableResult combine(StdMutableResult stdResultCombined, Result resultIndividualDecision, TraceEngine traceEngineThis) {
+		Decision decision	= resultIndividualDecision.getDecision();
+		Status status		= resultIndividualDecision.getStatus();
+		if (! resultIndividualDecision.getAssociatedAdvice().isEmpty()) {
+			decision	= Decision.INDETERMINATE;
+			status		= STATUS_ADVICE_NA;
+		} else if (! resultIndividualDecision.getObligations().isEmpty()) {
+			decision	= Decision.INDETERMINATE;
+			status		= STATUS_OBLIGATIONS_NA;
+		}
+		
+		if (stdResultCombined == null) {
+			stdResultCombined	= new StdMutableResult(decision, status);
+		} else {
+			if (stdResultCombined.getDecision() != resultIndividualDecision.getDecision()) {
+				stdResultCombined.setDecision(Decision.INDETERMINATE);
+				stdResultCombined.setStatus(STATUS_COMBINE_FAILED);
+			}
+		}
+		stdResultCombined.addPolicyIdentifiers(resultIndividualDecision.getPolicyIdentifiers());
+		stdResultCombined.addPolicySetIdentifiers(resultIndividualDecision.getPolicySetIdentifiers());
+		stdResultCombined.addAttributeCategories(resultIndividualDecision.getAttributes());
+		if (traceEngineThis.isTracing()) {
+			traceEngineThis.trace(new StdTraceEvent<Result>("Combined result", this, stdResultCombined));
+		}
+		return stdResultCombined;
+	}
+	
 	@Override
-    public synchronized Response decide(Request pepRequest) throws PDPException {
+    public Response decide(Request pepRequest) throws PDPException {
         /*
          * If we are shutdown, they should not call this method anymore
          */
@@ -152,7 +424,7 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 		/*
 		 * Split the original request up into individual decision requests
 		 */
-		StdIndividualDecisionRequestGenerator stdIndividualDecisionRequestGenerator	= new StdIndividualDecisionRequestGenerator(this.scopeResolver, pepRequest);
+		StdIndividualDecisionRequestGenerator stdIndividualDecisionRequestGenerator	= new StdIndividualDecisionRequestGenerator(this.scopeResolver, pepRequest, this.maxIndividualDecisionRequests);
 		/*
 		 * Determine if we are combining multiple results into a single result
 		 */
@@ -168,54 +440,38 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 			return new StdMutableResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "No individual decision requests"));
 		}
 		
-		while (iterRequestsIndividualDecision.hasNext()) {
-			Request requestIndividualDecision	= iterRequestsIndividualDecision.next();
-			if (traceEngineThis.isTracing()) {
-				traceEngineThis.trace(new StdTraceEvent<Request>("Individual Request", this, requestIndividualDecision));
-			}
-			Result resultIndividualDecision		= null;
-			if (requestIndividualDecision.getStatus() != null && !requestIndividualDecision.getStatus().isOk()) {
-				resultIndividualDecision	= new StdMutableResult(requestIndividualDecision.getStatus());
-			} else {
-				EvaluationContext evaluationContext	= this.evaluationContextFactory.getEvaluationContext(requestIndividualDecision);
-				if (evaluationContext == null) {
-					resultIndividualDecision	= RESULT_ECTX_NULL;
-				} else {
-					resultIndividualDecision	= this.processRequest(evaluationContext);
-				}
-			}
-			
-			assert(resultIndividualDecision != null);
-			if (traceEngineThis.isTracing()) {
-				traceEngineThis.trace(new StdTraceEvent<Result>("Individual Result", this, resultIndividualDecision));
-			}
-			if (bCombineResults) {
-				Decision decision	= resultIndividualDecision.getDecision();
-				Status status		= resultIndividualDecision.getStatus();
-				if (! resultIndividualDecision.getAssociatedAdvice().isEmpty()) {
-					decision	= Decision.INDETERMINATE;
-					status		= STATUS_ADVICE_NA;
-				} else if (! resultIndividualDecision.getObligations().isEmpty()) {
-					decision	= Decision.INDETERMINATE;
-					status		= STATUS_OBLIGATIONS_NA;
-				}
-				
-				if (stdResultCombined == null) {
-					stdResultCombined	= new StdMutableResult(decision, status);
-				} else {
-					if (stdResultCombined.getDecision() != resultIndividualDecision.getDecision()) {
-						stdResultCombined.setDecision(Decision.INDETERMINATE);
-						stdResultCombined.setStatus(STATUS_COMBINE_FAILED);
+		/*
+		 * The individual decisions of a multiple decision request share the attributes they get from the PIP engines
+		 */
+		Request requestFirst	= iterRequestsIndividualDecision.next();
+		EvaluationContextFactory evaluationContextFactoryThis	= this.evaluationContextFactory;
+		if (iterRequestsIndividualDecision.hasNext()) {
+			evaluationContextFactoryThis	= this.evaluationContextFactory.newMultipleDecisionFactory();
+		}
+		iterRequestsIndividualDecision	= Iterators.concat(Iterators.singletonIterator(requestFirst), iterRequestsIndividualDecision);
+		
+		try {
+			if (this.executorService == null || this.parallelism < 2) {
+				while (iterRequestsIndividualDecision.hasNext()) {
+					Result resultIndividualDecision	= this.decideIndividual(iterRequestsIndividualDecision.next(), evaluationContextFactoryThis, traceEngineThis);
+					if (bCombineResults) {
+						stdResultCombined	= this.combine(stdResultCombined, resultIndividualDecision, traceEngineThis);
+					} else {
+						stdResponse.add(resultIndividualDecision);
 					}
 				}
-				stdResultCombined.addPolicyIdentifiers(resultIndividualDecision.getPolicyIdentifiers());
-				stdResultCombined.addPolicySetIdentifiers(resultIndividualDecision.getPolicySetIdentifiers());
-				stdResultCombined.addAttributeCategories(resultIndividualDecision.getAttributes());
-				if (traceEngineThis.isTracing()) {
-					traceEngineThis.trace(new StdTraceEvent<Result>("Combined result", this, stdResultCombined));
-				}
 			} else {
-				stdResponse.add(resultIndividualDecision);
+				for (Result resultIndividualDecision : this.decideParallel(iterRequestsIndividualDecision, evaluationContextFactoryThis, traceEngineThis)) {
+					if (bCombineResults) {
+						stdResultCombined	= this.combine(stdResultCombined, resultIndividualDecision, traceEngineThis);
+					} else {
+						stdResponse.add(resultIndividualDecision);
+					}
+				}
+			}
+		} finally {
+			if (evaluationContextFactoryThis != this.evaluationContextFactory) {
+				evaluationContextFactoryThis.shutdown();
 			}
 		}
 		
@@ -225,8 +481,35 @@ public class ATTPDPEngine implements PDPEngine, Traceable {
 		return stdResponse;
 	}
 
+	/**
+	 * Creates the policy and PIP finders this <code>ATTPDPEngine</code> would otherwise create for its first decision, so that a
+	 * caller about to put it into service finds out now if they cannot be created from the configuration.
+	 * 
+	 * @throws PDPException if the finders cannot be created
+	 */
+	public void prepare() throws PDPException {
+		try {
+			this.evaluationContextFactory.prepare();
+		} catch (FactoryException ex) {
+			throw new PDPException("Failed to prepare PDP engine: " + ex.getMessage(), ex);
+		}
+	}
+
     @Override
     public synchronized void shutdown() {
+        if (this.isShutdown) {
+            return;
+        }
+        this.isShutdown = true;
+        if (this.executorService != null) {
+            this.executorService.shutdown();
+        }
+        if (this.decisionCache != null) {
+            this.decisionCache.invalidateAll();
+        }
+        if (this.attributePrefetcher != null) {
+            this.attributePrefetcher.shutdown();
+        }
         this.evaluationContextFactory.shutdown();
     }
 
@@ -0,0 +1,258 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.policy.PolicyDef;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+/**
+ * AttributePrefetcher fetches the attributes a root {@link com.att.research.xacmlatt.pdp.policy.PolicyDef} depends on for an
+ * {@link com.att.research.xacmlatt.pdp.ATTPDPEngine} before the <code>PolicyDef</code> is evaluated, so that the PIP engines
+ * answering them are asked at the same time instead of one after the other as the evaluation comes across them.  It is off
+ * unless the "xacml.att.pip.prefetch" property is true:
+ * <pre>
+ * xacml.att.pip.prefetch=true
+ * xacml.att.pip.prefetch.threads=8
+ * </pre>
+ * The attributes are those of {@link com.att.research.xacmlatt.pdp.policy.PolicyDef#getAttributeDependencies()} that are
+ * not in the request.  They are fetched through {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext#prefetchAttributes(Collection)}
+ * by the calling thread together with up to "threads" pool threads, and the evaluation starts once they have all been answered
+ * and cached.  With "threads" set to 0 they are instead asked for in one call, which suits PIP engines that look up several
+ * attributes with one query.  Errors are left for the evaluation to run into.  Only the attributes the evaluation goes on to use
+ * count towards {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext#getAttributesFetched()}, so prefetching does not stop
+ * the {@link com.att.research.xacmlatt.pdp.DecisionCache} from caching a decision that did not use them.
+ *
+ * Every attribute the policies may need is fetched, including those the evaluation would not have got to, so this is
+ * worth it when PIP latency matters more than PIP load.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class AttributePrefetcher {
+	private static final Logger logger	= LoggerFactory.getLogger(AttributePrefetcher.class);
+
+	public static final int DEFAULT_THREADS	= 8;
+
+	/*
+	 * The attributes of one evaluation being fetched.  Each worker takes the next one until there are none left.
+	 */
+	private static final class Prefetch implements Runnable {
+		private final EvaluationContext evaluationContext;
+		private final List<PIPRequest> pipRequests;
+		private int next;
+		private int completed;
+
+		Prefetch(EvaluationContext evaluationContextIn, List<PIPRequest> pipRequestsIn) {
+			this.evaluationContext	= evaluationContextIn;
+			this.pipRequests		= pipRequestsIn;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				PIPRequest pipRequest;
+				synchronized(this) {
+					if (this.next >= this.pipRequests.size()) {
+						return;
+					}
+					pipRequest	= this.pipRequests.get(this.next++);
+				}
+				try {
+					this.evaluationContext.prefetchAttributes(Collections.singletonList(pipRequest));
+				} catch (PIPException | RuntimeException ex) {
+					logger.debug("Prefetching {} failed: {}", pipRequest, ex.getMessage());
+				}
+				synchronized(this) {
+					this.completed++;
+					this.notifyAll();
+				}
+			}
+		}
+
+		/*
+		 * Waits for the attributes other workers have taken to be fetched
+		 */
+		synchronized void await() throws InterruptedException {
+			while (this.completed < this.next) {
+				this.wait();
+			}
+		}
+	}
+
+	private final ExecutorService executorService;
+	private final int threads;
+	private final LongAdder prefetches	= new LongAdder();
+	private final LongAdder attributes	= new LongAdder();
+
+	private static ExecutorService newExecutorService(int threads) {
+		AtomicInteger threadNumber	= new AtomicInteger();
+		ThreadFactory threadFactory	= runnable -> {
+			Thread thread	= new Thread(runnable, "ATTPDPEngine-prefetch-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	/**
+	 * Creates an <code>AttributePrefetcher</code> if the "xacml.att.pip.prefetch" property is true.
+	 *
+	 * @param properties the <code>Properties</code> with the prefetch configuration, or null for the <code>ATTPDPProperties</code>
+	 * @return a new <code>AttributePrefetcher</code> or null if prefetching is off
+	 */
+	public static AttributePrefetcher newInstance(Properties properties) {
+		String value	= (properties == null ? ATTPDPProperties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH, null) : properties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH));
+		if (value == null || !Boolean.parseBoolean(value.trim())) {
+			return null;
+		}
+		int threads		= DEFAULT_THREADS;
+		value			= (properties == null ? ATTPDPProperties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH_THREADS, null) : properties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH_THREADS));
+		if (value != null) {
+			try {
+				threads	= Integer.parseInt(value.trim());
+			} catch (NumberFormatException ex) {
+				logger.error("Invalid value for {}: {}", ATTPDPProperties.PROP_PIP_PREFETCH_THREADS, value);
+			}
+		}
+		return new AttributePrefetcher(threads);
+	}
+
+	/**
+	 * Creates an <code>AttributePrefetcher</code> with the given number of pool threads.
+	 *
+	 * @param threadsIn the number of pool threads, or 0 to fetch in one batch on the calling thread
+	 */
+	public AttributePrefetcher(int threadsIn) {
+		this.threads			= Math.max(0, threadsIn);
+		this.executorService	= (this.threads > 0 ? newExecutorService(this.threads) : null);
+	}
+
+	/*
+	 * Determines if the request has the attribute, in which case the RequestEngine answers it
+	 */
+	private static boolean isInRequest(Request request, PIPRequest pipRequest) {
+		Iterator<RequestAttributes> iterRequestAttributes	= request.getRequestAttributes(pipRequest.getCategory());
+		if (iterRequestAttributes != null) {
+			while (iterRequestAttributes.hasNext()) {
+				if (iterRequestAttributes.next().hasAttributes(pipRequest.getAttributeId())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fetches the attributes the given <code>PolicyDef</code> depends on that are not in the request of the given
+	 * <code>EvaluationContext</code>, and returns once they have all been answered.
+	 *
+	 * @param evaluationContext the <code>EvaluationContext</code> the <code>PolicyDef</code> is about to be evaluated in
+	 * @param policyDef the root <code>PolicyDef</code>
+	 */
+	public void prefetch(EvaluationContext evaluationContext, PolicyDef policyDef) {
+		Collection<PIPRequest> attributeDependencies	= policyDef.getAttributeDependencies();
+		if (attributeDependencies.size() < 2) {
+			return;
+		}
+		Request request	= evaluationContext.getRequest();
+		List<PIPRequest> pipRequests	= new ArrayList<>(attributeDependencies.size());
+		for (PIPRequest pipRequest : attributeDependencies) {
+			if (!isInRequest(request, pipRequest)) {
+				pipRequests.add(pipRequest);
+			}
+		}
+		/*
+		 * A single attribute is no faster fetched ahead of the evaluation
+		 */
+		if (pipRequests.size() < 2) {
+			return;
+		}
+		this.prefetches.increment();
+		this.attributes.add(pipRequests.size());
+
+		if (this.executorService == null) {
+			try {
+				evaluationContext.prefetchAttributes(pipRequests);
+			} catch (PIPException | RuntimeException ex) {
+				logger.debug("Prefetching {} failed: {}", pipRequests, ex.getMessage());
+			}
+			return;
+		}
+		Prefetch prefetch		= new Prefetch(evaluationContext, pipRequests);
+		List<Future<?>> futures	= new ArrayList<>();
+		try {
+			for (int i = Math.min(this.threads, pipRequests.size() - 1) ; i > 0 ; i--) {
+				futures.add(this.executorService.submit(prefetch));
+			}
+		} catch (RejectedExecutionException ex) {
+			logger.debug("Prefetching on the calling thread only: {}", ex.getMessage());
+		}
+		try {
+			prefetch.run();
+		} finally {
+			//
+			// Workers still waiting for a pool thread have nothing left to do
+			//
+			for (Future<?> future : futures) {
+				future.cancel(false);
+			}
+		}
+		try {
+			prefetch.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the number of evaluations attributes have been prefetched for.
+	 *
+	 * @return the number of prefetches
+	 */
+	public long getPrefetchCount() {
+		return this.prefetches.sum();
+	}
+
+	/**
+	 * Gets the number of attributes that have been prefetched.
+	 *
+	 * @return the number of attributes
+	 */
+	public long getAttributeCount() {
+		return this.attributes.sum();
+	}
+
+	/**
+	 * Stops the pool threads of this <code>AttributePrefetcher</code>.  Attributes are fetched on the calling thread from then on.
+	 */
+	public void shutdown() {
+		if (this.executorService != null) {
+			this.executorService.shutdown();
+		}
+	}
+}
@@ -0,0 +1,439 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.Result;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.std.StdMutableResult;
+import com.att.research.xacml.std.StdResult;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * DecisionCache remembers the {@link com.att.research.xacml.api.Result} of individual decision requests for an
+ * {@link com.att.research.xacmlatt.pdp.ATTPDPEngine}, so that a PEP asking the same question again is answered without
+ * evaluating the policies.  It is off unless the "xacml.att.decisionCache" property is true:
+ * <pre>
+ * xacml.att.decisionCache=true
+ * xacml.att.decisionCache.maximumSize=10000
+ * xacml.att.decisionCache.ttl=60000
+ * xacml.att.decisionCache.pipTtl=5000
+ * xacml.att.decisionCache.nonCacheable=ldap,audit
+ * </pre>
+ * The key is the individual request in a canonical form: its attributes, with their category, issuer, values and whether they are
+ * included in the result, in a fixed order that does not depend on how the request was written.  Requests with
+ * <code>Content</code> are never cached.
+ *
+ * Only results with an OK status are cached.  A result lives for "ttl" milliseconds if it used only the attributes of the
+ * request, and for "pipTtl" milliseconds (which defaults to "ttl") if it looked for any other attribute.  Results
+ * that used the current date or time from the environment, or an attribute that one of the PIP engines named in
+ * "nonCacheable" may provide, are not cached at all.
+ *
+ * All cached results are discarded together when the policies or the PIP configuration of the
+ * {@link com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory} change, and a decision made while they change is never
+ * kept for the new configuration.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class DecisionCache {
+	private static final Logger logger	= LoggerFactory.getLogger(DecisionCache.class);
+
+	public static final long DEFAULT_MAXIMUMSIZE	= 10000;
+	public static final long DEFAULT_TTL			= 60000;
+
+	private static final Set<Identifier> TIME_ATTRIBUTES	= new HashSet<>(Arrays.asList(XACML3.ID_ENVIRONMENT_CURRENT_TIME,
+																						 XACML3.ID_ENVIRONMENT_CURRENT_DATE,
+																						 XACML3.ID_ENVIRONMENT_CURRENT_DATETIME));
+
+	private static final Comparator<AttributeValue<?>> VALUE_ORDER	= Comparator.comparing((AttributeValue<?> attributeValue) -> toString(attributeValue.getDataTypeId()))
+			.thenComparing(attributeValue -> toString(attributeValue.getValue()));
+
+	/*
+	 * Orders on everything in an attribute, so that requests that differ only in the order of their attributes or values give the same key
+	 */
+	private static final Comparator<List<Object>> ATTRIBUTE_ORDER	= Comparator.comparing((List<Object> attribute) -> toString(attribute.get(0)))
+			.thenComparing(attribute -> toString(attribute.get(1)))
+			.thenComparing(attribute -> toString(attribute.get(2)))
+			.thenComparing(attribute -> toString(attribute.get(3)))
+			.thenComparing(attribute -> (Boolean) attribute.get(4))
+			.thenComparing(attribute -> toString(attribute.get(5)));
+
+	/*
+	 * The canonical form of an individual request, hashed once
+	 */
+	private static final class Key {
+		private final boolean returnPolicyIdList;
+		private final List<List<Object>> attributes;
+		private final int hashCode;
+
+		Key(boolean returnPolicyIdListIn, List<List<Object>> attributesIn) {
+			this.returnPolicyIdList	= returnPolicyIdListIn;
+			this.attributes			= attributesIn;
+			this.hashCode			= 31 * this.attributes.hashCode() + Boolean.hashCode(this.returnPolicyIdList);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key	= (Key)obj;
+			return this.hashCode == key.hashCode && this.returnPolicyIdList == key.returnPolicyIdList && this.attributes.equals(key.attributes);
+		}
+	}
+
+	private static final class Entry {
+		private final Result result;
+		private final long expires;
+
+		Entry(Result resultIn, long expiresIn) {
+			this.result		= resultIn;
+			this.expires	= expiresIn;
+		}
+	}
+
+	/*
+	 * The cached results for one version of the configuration.  Invalidating the cache replaces the whole Generation, so a
+	 * decision still being made with the old one can only store its result where nobody looks any more.
+	 */
+	private static final class Generation {
+		private final long configurationVersion;
+		private final Cache<Key, Entry> cache;
+		private final Map<List<Identifier>, Boolean> cacheableAttributes	= new ConcurrentHashMap<>();
+
+		Generation(long configurationVersionIn, Cache<Key, Entry> cacheIn) {
+			this.configurationVersion	= configurationVersionIn;
+			this.cache					= cacheIn;
+		}
+	}
+
+	/**
+	 * The outcome of looking up an individual decision request in the <code>DecisionCache</code>.  If there is no cached
+	 * <code>Result</code>, the caller evaluates the request and hands the <code>Result</code> to <code>store</code>.
+	 */
+	public final class Lookup {
+		private final Key key;
+		private final Generation generation;
+		private final Result result;
+
+		private Lookup(Key keyIn, Generation generationIn, Result resultIn) {
+			this.key		= keyIn;
+			this.generation	= generationIn;
+			this.result		= resultIn;
+		}
+
+		/**
+		 * Gets the cached <code>Result</code>.
+		 *
+		 * @return the cached <code>Result</code> or null if the request has to be evaluated
+		 */
+		public Result getResult() {
+			return this.result;
+		}
+
+		/**
+		 * Caches the <code>Result</code> of evaluating the request in the given <code>EvaluationContext</code> if it did not
+		 * depend on anything that may change without the request changing.
+		 *
+		 * @param evaluationContext the <code>EvaluationContext</code> the request was evaluated in
+		 * @param resultIn the <code>Result</code> of the evaluation
+		 * @return the <code>Result</code> to return to the caller
+		 */
+		public Result store(EvaluationContext evaluationContext, Result resultIn) {
+			if (resultIn.getStatus() != null && !resultIn.getStatus().isOk()) {
+				return resultIn;
+			}
+			long timeToLive	= getTimeToLive(evaluationContext, this.generation);
+			if (timeToLive <= 0) {
+				DecisionCache.this.uncacheable.increment();
+				return resultIn;
+			}
+			/*
+			 * Cached results are shared, so they must not be changed by whoever gets them
+			 */
+			Result resultCached	= (resultIn instanceof StdMutableResult ? new StdResult((StdMutableResult)resultIn) : resultIn);
+			this.generation.cache.put(this.key, new Entry(resultCached, System.currentTimeMillis() + timeToLive));
+			return resultCached;
+		}
+	}
+
+	private final EvaluationContextFactory evaluationContextFactory;
+	private final long maximumSize;
+	private final long timeToLive;
+	private final long pipTimeToLive;
+	private final Set<String> nonCacheableEngines	= new HashSet<>();
+	private final AtomicReference<Generation> generation;
+	private final LongAdder hits		= new LongAdder();
+	private final LongAdder misses		= new LongAdder();
+	private final LongAdder uncacheable	= new LongAdder();
+
+	private static String getProperty(Properties properties, String propertyName, String defaultValue) {
+		return (properties == null ? ATTPDPProperties.getProperty(propertyName, defaultValue) : properties.getProperty(propertyName, defaultValue));
+	}
+
+	private static long getLongProperty(Properties properties, String propertyName, long defaultValue) {
+		String value	= getProperty(properties, propertyName, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException ex) {
+			logger.error("Invalid value for {}: {}", propertyName, value);
+			return defaultValue;
+		}
+	}
+
+	private static String toString(Object object) {
+		return (object == null ? "" : object.toString());
+	}
+
+	/**
+	 * Creates a <code>DecisionCache</code> for the given <code>EvaluationContextFactory</code> if the "xacml.att.decisionCache"
+	 * property is true.
+	 *
+	 * @param evaluationContextFactory the <code>EvaluationContextFactory</code> whose configuration the cached results depend on
+	 * @param properties the <code>Properties</code> with the cache configuration, or null for the <code>ATTPDPProperties</code>
+	 * @return a new <code>DecisionCache</code> or null if caching is off
+	 */
+	public static DecisionCache newInstance(EvaluationContextFactory evaluationContextFactory, Properties properties) {
+		if (evaluationContextFactory == null || !Boolean.parseBoolean(getProperty(properties, ATTPDPProperties.PROP_DECISIONCACHE, "false").trim())) {
+			return null;
+		}
+		return new DecisionCache(evaluationContextFactory, properties);
+	}
+
+	/**
+	 * Creates a <code>DecisionCache</code> from the "xacml.att.decisionCache.*" properties.
+	 *
+	 * @param evaluationContextFactoryIn the <code>EvaluationContextFactory</code> whose configuration the cached results depend on
+	 * @param properties the <code>Properties</code> with the cache configuration, or null for the <code>ATTPDPProperties</code>
+	 */
+	public DecisionCache(EvaluationContextFactory evaluationContextFactoryIn, Properties properties) {
+		this.evaluationContextFactory	= evaluationContextFactoryIn;
+		this.maximumSize				= getLongProperty(properties, ATTPDPProperties.PROP_DECISIONCACHE_MAXIMUMSIZE, DEFAULT_MAXIMUMSIZE);
+		this.timeToLive					= getLongProperty(properties, ATTPDPProperties.PROP_DECISIONCACHE_TTL, DEFAULT_TTL);
+		this.pipTimeToLive				= getLongProperty(properties, ATTPDPProperties.PROP_DECISIONCACHE_PIPTTL, this.timeToLive);
+		String nonCacheable	= getProperty(properties, ATTPDPProperties.PROP_DECISIONCACHE_NONCACHEABLE, null);
+		if (nonCacheable != null) {
+			Splitter.on(',').trimResults().omitEmptyStrings().split(nonCacheable).forEach(this.nonCacheableEngines::add);
+		}
+		this.generation	= new AtomicReference<>(this.newGeneration(this.evaluationContextFactory.getConfigurationVersion()));
+		logger.info("Caching up to {} decisions for {} ms, {} ms if they use PIP engines, never using {}", this.maximumSize, this.timeToLive, this.pipTimeToLive, this.nonCacheableEngines);
+	}
+
+	private Generation newGeneration(long configurationVersion) {
+		CacheBuilder<Object, Object> cacheBuilder	= CacheBuilder.newBuilder().maximumSize(this.maximumSize);
+		long maximumTimeToLive	= Math.max(this.timeToLive, this.pipTimeToLive);
+		if (maximumTimeToLive > 0) {
+			cacheBuilder.expireAfterWrite(maximumTimeToLive, TimeUnit.MILLISECONDS);
+		}
+		return new Generation(configurationVersion, cacheBuilder.build());
+	}
+
+	/*
+	 * Replaces the current Generation if the configuration has changed since it was created
+	 */
+	private Generation getGeneration() {
+		long configurationVersion	= this.evaluationContextFactory.getConfigurationVersion();
+		Generation generationCurrent	= this.generation.get();
+		while (generationCurrent.configurationVersion < configurationVersion) {
+			Generation generationNew	= this.newGeneration(configurationVersion);
+			if (this.generation.compareAndSet(generationCurrent, generationNew)) {
+				return generationNew;
+			}
+			generationCurrent	= this.generation.get();
+		}
+		return generationCurrent;
+	}
+
+	/*
+	 * The attributes of the request, and the values of each, in a fixed order, or null if the request has Content
+	 */
+	private static Key newKey(Request request) {
+		List<List<Object>> attributes	= new ArrayList<>();
+		for (RequestAttributes requestAttributes : request.getRequestAttributes()) {
+			if (requestAttributes.getContentRoot() != null) {
+				return null;
+			}
+			for (Attribute attribute : requestAttributes.getAttributes()) {
+				List<AttributeValue<?>> values	= new ArrayList<>(attribute.getValues());
+				values.sort(VALUE_ORDER);
+				attributes.add(Arrays.asList(requestAttributes.getCategory(), attribute.getAttributeId(), attribute.getIssuer(), requestAttributes.getXmlId(),
+											 attribute.getIncludeInResults(), values));
+			}
+		}
+		attributes.sort(ATTRIBUTE_ORDER);
+		return new Key(request.getReturnPolicyIdList(), attributes);
+	}
+
+	/*
+	 * Gets how long a result may be cached given the attributes its evaluation looked for outside of the request, or 0 if it
+	 * may not be cached
+	 */
+	private long getTimeToLive(EvaluationContext evaluationContext, Generation generationThis) {
+		Collection<PIPRequest> attributesFetched	= evaluationContext.getAttributesFetched();
+		if (attributesFetched == null) {
+			return 0;
+		}
+		if (attributesFetched.isEmpty()) {
+			return this.timeToLive;
+		}
+		for (PIPRequest pipRequest : attributesFetched) {
+			if (TIME_ATTRIBUTES.contains(pipRequest.getAttributeId()) || !this.isCacheable(pipRequest, evaluationContext, generationThis)) {
+				return 0;
+			}
+		}
+		return this.pipTimeToLive;
+	}
+
+	/*
+	 * An attribute is not cacheable if a non-cacheable engine says it provides it, or does not say what it provides
+	 */
+	private boolean isCacheable(PIPRequest pipRequest, EvaluationContext evaluationContext, Generation generationThis) {
+		if (this.nonCacheableEngines.isEmpty()) {
+			return true;
+		}
+		return generationThis.cacheableAttributes.computeIfAbsent(Arrays.asList(pipRequest.getCategory(), pipRequest.getAttributeId()), key -> {
+			for (PIPEngine pipEngine : evaluationContext.getPIPEngines()) {
+				if (!this.nonCacheableEngines.contains(pipEngine.getName())) {
+					continue;
+				}
+				Collection<PIPRequest> provided	= pipEngine.attributesProvided();
+				if (provided == null || provided.isEmpty()) {
+					return false;
+				}
+				for (PIPRequest pipRequestProvided : provided) {
+					if (Objects.equals(pipRequest.getCategory(), pipRequestProvided.getCategory()) &&
+						Objects.equals(pipRequest.getAttributeId(), pipRequestProvided.getAttributeId())) {
+						return false;
+					}
+				}
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Looks up the given individual decision request.
+	 *
+	 * @param request the individual decision <code>Request</code>
+	 * @return the <code>Lookup</code> with the cached <code>Result</code>, if any, or null if the request cannot be cached
+	 */
+	public Lookup lookup(Request request) {
+		Key key	= newKey(request);
+		if (key == null) {
+			this.uncacheable.increment();
+			return null;
+		}
+		Generation generationThis	= this.getGeneration();
+		Entry entry	= generationThis.cache.getIfPresent(key);
+		if (entry != null && entry.expires <= System.currentTimeMillis()) {
+			generationThis.cache.asMap().remove(key, entry);
+			entry	= null;
+		}
+		if (entry == null) {
+			this.misses.increment();
+			return new Lookup(key, generationThis, null);
+		}
+		this.hits.increment();
+		return new Lookup(key, generationThis, entry.result);
+	}
+
+	/**
+	 * Discards every cached <code>Result</code>.
+	 */
+	public void invalidateAll() {
+		Generation generationCurrent	= this.generation.get();
+		this.generation.compareAndSet(generationCurrent, this.newGeneration(generationCurrent.configurationVersion));
+	}
+
+	/**
+	 * Gets the number of requests answered from the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Gets the number of requests without <code>Content</code> that had to be evaluated.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Gets the number of requests whose results could not be cached, because they had <code>Content</code> or depended on the
+	 * time or on a non-cacheable PIP engine.
+	 *
+	 * @return the number of uncacheable requests
+	 */
+	public long getUncacheableCount() {
+		return this.uncacheable.sum();
+	}
+
+	/**
+	 * Gets the share of the requests without <code>Content</code> that were answered from the cache.  Requests whose results
+	 * cannot be cached count as misses.
+	 *
+	 * @return the hit rate between 0.0 and 1.0, or 1.0 if nothing has been looked up
+	 */
+	public double getHitRate() {
+		long hitCount	= this.getHitCount();
+		long total		= hitCount + this.getMissCount();
+		return (total == 0 ? 1.0 : (double)hitCount / total);
+	}
+
+	/**
+	 * Gets the number of cached results.
+	 *
+	 * @return the approximate number of entries in the cache
+	 */
+	public long size() {
+		return this.generation.get().cache.size();
+	}
+}
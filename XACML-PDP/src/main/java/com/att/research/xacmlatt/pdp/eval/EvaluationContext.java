@@ -5,6 +5,10 @@
  */
 package com.att.research.xacmlatt.pdp.eval;
 
+import java.util.Collection;
+
+import org.w3c.dom.Node;
+
 import com.att.research.xacml.api.IdReferenceMatch;
 import com.att.research.xacml.api.Request;
 import com.att.research.xacml.api.pip.PIPException;
@@ -12,10 +16,14 @@ import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPRequest;
 import com.att.research.xacml.api.pip.PIPResponse;
 import com.att.research.xacml.api.trace.TraceEngine;
+import com.att.research.xacml.std.dom.DOMStructureException;
+import com.att.research.xacml.std.dom.DOMUtil;
+import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
 import com.att.research.xacmlatt.pdp.policy.Policy;
 import com.att.research.xacmlatt.pdp.policy.PolicyDef;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinderResult;
 import com.att.research.xacmlatt.pdp.policy.PolicySet;
+import com.att.research.xacmlatt.pdp.policy.VariableDefinition;
 
 /**
  * EvaluationContext provides the interface that the PDP uses to evaluate its set of Policies and PolicySets against
@@ -66,4 +74,61 @@ public interface EvaluationContext extends PIPFinder, TraceEngine {
 	 * @throws EvaluationException if there is an error retrieving the <code>Attribute</code>s
 	 */
 	public PIPResponse getAttributes(PIPRequest pipRequest) throws PIPException;
+	
+	/**
+	 * Gets a copy of the given Content <code>Node</code> from the {@link com.att.research.xacml.api.Request} as the document
+	 * element of its own <code>Document</code>, which is what an <code>AttributeSelector</code> Path is evaluated against.
+	 * Implementations may keep the copy so that it is only made once for each <code>Node</code> in this <code>EvaluationContext</code>.
+	 * 
+	 * @param nodeContent the Content <code>Node</code>
+	 * @return the copy of the <code>Node</code> as the root of its own <code>Document</code>
+	 * @throws DOMStructureException if the copy cannot be made
+	 */
+	default Node getContentDocumentRoot(Node nodeContent) throws DOMStructureException {
+		return DOMUtil.getDirectDocumentChild(nodeContent);
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacmlatt.pdp.policy.ExpressionResult} saved for the given
+	 * {@link com.att.research.xacmlatt.pdp.policy.VariableDefinition} by an earlier reference to it in this <code>EvaluationContext</code>.
+	 * 
+	 * @param variableDefinition the <code>VariableDefinition</code>
+	 * @return the saved <code>ExpressionResult</code> or null if the variable has not been evaluated or results are not saved
+	 */
+	default ExpressionResult getVariableResult(VariableDefinition variableDefinition) {
+		return null;
+	}
+	
+	/**
+	 * Saves the {@link com.att.research.xacmlatt.pdp.policy.ExpressionResult} of evaluating the given
+	 * {@link com.att.research.xacmlatt.pdp.policy.VariableDefinition} so that later references to it in this
+	 * <code>EvaluationContext</code> do not evaluate it again.
+	 * 
+	 * @param variableDefinition the <code>VariableDefinition</code>
+	 * @param expressionResult the <code>ExpressionResult</code> of evaluating it
+	 */
+	default void setVariableResult(VariableDefinition variableDefinition, ExpressionResult expressionResult) {
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacml.api.pip.PIPRequest}s for the attributes this <code>EvaluationContext</code> has
+	 * looked for outside of its {@link com.att.research.xacml.api.Request}, in the environment or the PIP engines.
+	 * 
+	 * @return the <code>PIPRequest</code>s not answered by the <code>Request</code>, or null if they are not known
+	 */
+	default Collection<PIPRequest> getAttributesFetched() {
+		return null;
+	}
+	
+	/**
+	 * Fetches the attributes for the given {@link com.att.research.xacml.api.pip.PIPRequest}s ahead of an evaluation that may
+	 * need them, so that the evaluation finds them already fetched.  Unlike <code>getAttributes</code>, they are not counted
+	 * in {@link #getAttributesFetched()} until the evaluation asks for them.
+	 * 
+	 * @param pipRequests the <code>PIPRequest</code>s to fetch
+	 * @throws PIPException if there is an error fetching them
+	 */
+	default void prefetchAttributes(Collection<PIPRequest> pipRequests) throws PIPException {
+		this.getAttributes(pipRequests, null, null);
+	}
 }
@@ -53,6 +53,39 @@ public abstract class EvaluationContextFactory {
 	 * @return a new <code>EvaluationContext</code> for the given <code>Request</code>
 	 */
 	public abstract EvaluationContext getEvaluationContext(Request request);
+	
+	/**
+	 * Gets an <code>EvaluationContextFactory</code> for the individual decisions of one multiple decision request.  The
+	 * {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext}s it creates may share the attributes they get from the PIP
+	 * engines with each other, but not with those of other requests.  The default implementation returns this
+	 * <code>EvaluationContextFactory</code>.
+	 * 
+	 * @return an <code>EvaluationContextFactory</code> to use until the request is decided
+	 */
+	public EvaluationContextFactory newMultipleDecisionFactory() {
+		return this;
+	}
+
+	/**
+	 * Creates anything this <code>EvaluationContextFactory</code> would otherwise create on first use, such as its
+	 * {@link com.att.research.xacmlatt.pdp.policy.PolicyFinder} and {@link com.att.research.xacml.api.pip.PIPFinder}, so that
+	 * configuration errors are found before the first decision.  The default implementation does nothing.
+	 * 
+	 * @throws FactoryException if the <code>EvaluationContextFactory</code> cannot be prepared from its configuration
+	 */
+	public void prepare() throws FactoryException {
+	}
+
+	/**
+	 * Gets a number that changes whenever the {@link com.att.research.xacmlatt.pdp.policy.PolicyFinder} or the
+	 * {@link com.att.research.xacml.api.pip.PIPFinder} of this <code>EvaluationContextFactory</code> is replaced, so that
+	 * anything remembered from earlier decisions can be discarded.  The default implementation always returns 0.
+	 * 
+	 * @return the version of the policies and PIP configuration
+	 */
+	public long getConfigurationVersion() {
+		return 0;
+	}
 
 	/**
 	 * Sets the {@link com.att.research.xacmlatt.pdp.policy.PolicyFinder} for this <code>EvaluationContextFactory</code> to an
@@ -82,6 +82,14 @@ public class AllOf extends PolicyComponent implements Matchable {
 		Iterator<Match> iterMatches	= this.getMatches();
 		assert(iterMatches != null && iterMatches.hasNext());
 		
+		return matchAll(evaluationContext, iterMatches);
+	}
+	
+	/*
+	 * No Match as soon as one Match does not match, otherwise the first indeterminate result or Match.  CompiledTarget matches
+	 * the same way.
+	 */
+	static MatchResult matchAll(EvaluationContext evaluationContext, Iterator<? extends Matchable> iterMatches) throws EvaluationException {
 		MatchResult matchResultFallThrough	= MatchResult.MM_MATCH;
 		while (iterMatches.hasNext()) {
 			MatchResult matchResultMatch	= iterMatches.next().match(evaluationContext);
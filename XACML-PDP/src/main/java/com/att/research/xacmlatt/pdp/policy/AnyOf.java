@@ -90,6 +90,14 @@ public class AnyOf extends PolicyComponent implements Matchable {
 			return MatchResult.MM_NOMATCH;
 		}
 		
+		return matchAny(evaluationContext, iterAllOfs);
+	}
+	
+	/*
+	 * Match as soon as one AllOf matches, otherwise the first indeterminate result or No Match.  CompiledTarget matches the
+	 * same way.
+	 */
+	static MatchResult matchAny(EvaluationContext evaluationContext, Iterator<? extends Matchable> iterAllOfs) throws EvaluationException {
 		/*
 		 * Assume "No Match" until we find a match or an indeterminate result
 		 */
@@ -0,0 +1,144 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacmlatt.pdp.policy.expressions.Apply;
+import com.att.research.xacmlatt.pdp.policy.expressions.AttributeDesignator;
+
+/**
+ * AttributeDependencies finds the attributes that a {@link com.att.research.xacmlatt.pdp.policy.PolicyDef} and everything it
+ * contains can ask for, as one <code>PIPRequest</code> for each distinct <code>AttributeDesignator</code> in its
+ * <code>Target</code>s, variable definitions, <code>Condition</code>s, obligation and advice expressions.
+ *
+ * Policies that are only referenced by id are not followed, and <code>AttributeSelector</code>s are left out as they work
+ * on the request content.
+ *
+ * @author car
+ * @version $Revision$
+ */
+final class AttributeDependencies {
+	private final Set<PIPRequest> pipRequests	= new LinkedHashSet<>();
+
+	private AttributeDependencies() {
+	}
+
+	/**
+	 * Finds the attributes the given <code>PolicyDef</code> can ask for.
+	 *
+	 * @param policyDef the <code>PolicyDef</code> to analyze
+	 * @return an unmodifiable <code>Collection</code> of <code>PIPRequest</code>s in the order they first appear
+	 */
+	static Collection<PIPRequest> analyze(PolicyDef policyDef) {
+		AttributeDependencies attributeDependencies	= new AttributeDependencies();
+		attributeDependencies.add(policyDef);
+		return Collections.unmodifiableSet(attributeDependencies.pipRequests);
+	}
+
+	private void add(PolicyDef policyDef) {
+		this.add(policyDef.getTarget());
+		if (policyDef instanceof Policy) {
+			Iterator<VariableDefinition> iterVariableDefinitions	= ((Policy)policyDef).getVariableDefinitions();
+			if (iterVariableDefinitions != null) {
+				while (iterVariableDefinitions.hasNext()) {
+					this.add(iterVariableDefinitions.next().getExpression());
+				}
+			}
+			Iterator<Rule> iterRules	= ((Policy)policyDef).getRules();
+			while (iterRules.hasNext()) {
+				Rule rule	= iterRules.next();
+				this.add(rule.getTarget());
+				if (rule.getCondition() != null) {
+					this.add(rule.getCondition().getExpression());
+				}
+				this.addObligationExpressions(rule.getObligationExpressions());
+				this.addAdviceExpressions(rule.getAdviceExpressions());
+			}
+		} else if (policyDef instanceof PolicySet) {
+			Iterator<PolicySetChild> iterChildren	= ((PolicySet)policyDef).getChildren();
+			if (iterChildren != null) {
+				while (iterChildren.hasNext()) {
+					PolicySetChild policySetChild	= iterChildren.next();
+					if (policySetChild instanceof PolicyDef) {
+						this.add((PolicyDef)policySetChild);
+					}
+				}
+			}
+		}
+		this.addObligationExpressions(policyDef.getObligationExpressions());
+		this.addAdviceExpressions(policyDef.getAdviceExpressions());
+	}
+
+	private void add(Target target) {
+		List<AnyOf> listAnyOfs	= (target == null ? null : target.getAnyOfList(false));
+		if (listAnyOfs == null) {
+			return;
+		}
+		for (AnyOf anyOf : listAnyOfs) {
+			List<AllOf> listAllOfs	= (anyOf == null ? null : anyOf.getAllOfList(false));
+			if (listAllOfs == null) {
+				continue;
+			}
+			for (AllOf allOf : listAllOfs) {
+				List<Match> listMatches	= (allOf == null ? null : allOf.getMatchList(false));
+				if (listMatches == null) {
+					continue;
+				}
+				for (Match match : listMatches) {
+					if (match != null) {
+						this.add(match.getAttributeRetrievalBase());
+					}
+				}
+			}
+		}
+	}
+
+	private void addObligationExpressions(Iterator<ObligationExpression> iterObligationExpressions) {
+		if (iterObligationExpressions != null) {
+			while (iterObligationExpressions.hasNext()) {
+				this.addAttributeAssignmentExpressions(iterObligationExpressions.next().getAttributeAssignmentExpressions());
+			}
+		}
+	}
+
+	private void addAdviceExpressions(Iterator<AdviceExpression> iterAdviceExpressions) {
+		if (iterAdviceExpressions != null) {
+			while (iterAdviceExpressions.hasNext()) {
+				this.addAttributeAssignmentExpressions(iterAdviceExpressions.next().getAttributeAssignmentExpressions());
+			}
+		}
+	}
+
+	private void addAttributeAssignmentExpressions(Iterator<AttributeAssignmentExpression> iterAttributeAssignmentExpressions) {
+		if (iterAttributeAssignmentExpressions != null) {
+			while (iterAttributeAssignmentExpressions.hasNext()) {
+				this.add(iterAttributeAssignmentExpressions.next().getExpression());
+			}
+		}
+	}
+
+	private void add(Expression expression) {
+		if (expression instanceof AttributeDesignator) {
+			AttributeDesignator attributeDesignator	= (AttributeDesignator)expression;
+			if (attributeDesignator.getCategory() != null && attributeDesignator.getAttributeId() != null && attributeDesignator.getDataTypeId() != null) {
+				this.pipRequests.add(new StdPIPRequest(attributeDesignator.getCategory(), attributeDesignator.getAttributeId(), attributeDesignator.getDataTypeId(), attributeDesignator.getIssuer()));
+			}
+		} else if (expression instanceof Apply) {
+			Iterator<Expression> iterArguments	= ((Apply)expression).getArguments();
+			while (iterArguments.hasNext()) {
+				this.add(iterArguments.next());
+			}
+		}
+	}
+}
@@ -5,30 +5,166 @@
  */
 package com.att.research.xacmlatt.pdp.policy;
 
+import java.math.BigInteger;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
 
 import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataType;
+import com.att.research.xacml.api.DataTypeException;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.datatypes.Base64Binary;
+import com.att.research.xacml.std.datatypes.HexBinary;
+import com.att.research.xacml.std.datatypes.ISO8601Date;
+import com.att.research.xacml.std.datatypes.ISO8601DateTime;
+import com.att.research.xacml.std.datatypes.ISO8601Time;
+import com.att.research.xacml.std.datatypes.RFC2396DomainName;
+import com.att.research.xacml.std.datatypes.RFC822Name;
+import com.att.research.xacml.util.ObjUtil;
 
 /**
  * Bag represents a collection of XACML attribute values for the same attribute.
  * 
+ * Once a <code>Bag</code> holds more than <code>INDEX_THRESHOLD</code> values, the first membership test builds a hash index
+ * over the data type and value of each {@link com.att.research.xacml.api.AttributeValue}, so that the set and bag functions
+ * do not have to search the whole <code>Bag</code> for each value.  Only values whose Java classes have a <code>hashCode</code>
+ * consistent with their <code>equals</code> are indexed; the rest are always searched.  Values can only be added through
+ * {@link #add(AttributeValue)}, which keeps the index current.
+ * 
  * @author car
  * @version $Revision: 1.1 $
  */
 public class Bag {
 	public static final Bag	EMPTY	= new Bag();
 	
+	public static final int INDEX_THRESHOLD	= 16;
+	
 	private List<AttributeValue<?>> attributeValues	= new ArrayList<AttributeValue<?>>();
+	private final List<AttributeValue<?>> attributeValuesView	= Collections.unmodifiableList(this.attributeValues);
+	private volatile Index index;
+	private volatile DataTypeCheck dataTypeCheck;
+	
+	/*
+	 * The data type and value of an AttributeValue, which is what StdAttributeValue.equals compares
+	 */
+	private static final class IndexKey {
+		private final Identifier dataTypeId;
+		private final Object value;
+		
+		IndexKey(Identifier dataTypeIdIn, Object valueIn) {
+			this.dataTypeId	= dataTypeIdIn;
+			this.value		= valueIn;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * (this.dataTypeId == null ? 0 : this.dataTypeId.hashCode()) + this.value.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof IndexKey)) {
+				return false;
+			} else {
+				IndexKey indexKey	= (IndexKey)obj;
+				return ObjUtil.equalsAllowNull(this.dataTypeId, indexKey.dataTypeId) && this.value.equals(indexKey.value);
+			}
+		}
+	}
+	
+	private static final class Index {
+		private final Map<IndexKey, List<AttributeValue<?>>> indexed	= new HashMap<>();
+		private final List<AttributeValue<?>> unindexed					= new ArrayList<>();
+		
+		Index(List<AttributeValue<?>> listAttributeValues) {
+			for (AttributeValue<?> attributeValue : listAttributeValues) {
+				this.add(attributeValue);
+			}
+		}
+		
+		void add(AttributeValue<?> attributeValue) {
+			IndexKey indexKey	= newIndexKey(attributeValue);
+			if (indexKey == null) {
+				this.unindexed.add(attributeValue);
+			} else {
+				this.indexed.computeIfAbsent(indexKey, k -> new ArrayList<>(1)).add(attributeValue);
+			}
+		}
+	}
+	
+	/*
+	 * Whether every value in the Bag has the given data type and already holds the Java value it converts to
+	 */
+	private static final class DataTypeCheck {
+		private final DataType<?> dataType;
+		private final boolean allValues;
+		
+		DataTypeCheck(DataType<?> dataTypeIn, boolean allValuesIn) {
+			this.dataType	= dataTypeIn;
+			this.allValues	= allValuesIn;
+		}
+	}
+	
+	/*
+	 * Only classes whose hashCode agrees with their equals can be indexed
+	 */
+	private static boolean isHashable(Object value) {
+		return (value instanceof String || value instanceof Boolean || value instanceof BigInteger || value instanceof Double ||
+				value instanceof URI || value instanceof X500Principal || value instanceof RFC822Name || value instanceof RFC2396DomainName ||
+				value instanceof ISO8601Date || value instanceof ISO8601Time || value instanceof ISO8601DateTime ||
+				value instanceof HexBinary || value instanceof Base64Binary);
+	}
+	
+	/*
+	 * Other AttributeValue implementations may not compare the way StdAttributeValue does, so they are not indexed
+	 */
+	private static IndexKey newIndexKey(AttributeValue<?> attributeValue) {
+		if (!(attributeValue instanceof StdAttributeValue) || !isHashable(attributeValue.getValue())) {
+			return null;
+		}
+		return new IndexKey(attributeValue.getDataTypeId(), attributeValue.getValue());
+	}
+	
+	/*
+	 * Gets the index, building it if the Bag has grown past the threshold
+	 */
+	private Index getIndex() {
+		Index thisIndex	= this.index;
+		if (thisIndex == null && this.attributeValues.size() > INDEX_THRESHOLD) {
+			thisIndex	= new Index(this.attributeValues);
+			this.index	= thisIndex;
+		}
+		return thisIndex;
+	}
+	
+	private static boolean isOfDataType(DataType<?> dataType, AttributeValue<?> attributeValue) {
+		if (attributeValue == null || attributeValue.getValue() == null || !dataType.getId().equals(attributeValue.getDataTypeId())) {
+			return false;
+		}
+		try {
+			return dataType.convert(attributeValue.getValue()) == attributeValue.getValue();
+		} catch (DataTypeException ex) {
+			return false;
+		}
+	}
 
 	/**
 	 * Gets the <code>List</code> of <code>AttributeValue</code>s for this <code>Bag</code>.
 	 * 
-	 * @return the <code>List</code> of <code>AttributeValue</code>s for this <code>Bag</code>
+	 * @return the unmodifiable <code>List</code> of <code>AttributeValue</code>s for this <code>Bag</code>
 	 */
 	public List<AttributeValue<?>> getAttributeValueList() {
-		return this.attributeValues;
+		return this.attributeValuesView;
 	}
 	
 	/**
@@ -65,6 +201,14 @@ public class Bag {
 	 */
 	public void add(AttributeValue<?> attributeValue) {
 		this.attributeValues.add(attributeValue);
+		Index thisIndex	= this.index;
+		if (thisIndex != null) {
+			thisIndex.add(attributeValue);
+		}
+		DataTypeCheck thisDataTypeCheck	= this.dataTypeCheck;
+		if (thisDataTypeCheck != null && thisDataTypeCheck.allValues && !isOfDataType(thisDataTypeCheck.dataType, attributeValue)) {
+			this.dataTypeCheck	= new DataTypeCheck(thisDataTypeCheck.dataType, false);
+		}
 	}
 	
 	/**
@@ -84,5 +228,77 @@ public class Bag {
 	public Iterator<AttributeValue<?>> getAttributeValues() {
 		return this.getAttributeValueList().iterator();
 	}
+	
+	/**
+	 * Determines if this <code>Bag</code> contains the given <code>AttributeValue</code>.  The result is the same as
+	 * <code>getAttributeValueList().contains(attributeValue)</code>, which uses <code>attributeValue.equals</code>.
+	 * 
+	 * @param attributeValue the <code>AttributeValue</code> to look for
+	 * @return true if an <code>AttributeValue</code> in this <code>Bag</code> is equal to the given one, else false
+	 */
+	public boolean contains(AttributeValue<?> attributeValue) {
+		Index thisIndex	= this.getIndex();
+		IndexKey indexKey;
+		if (thisIndex == null || (indexKey = newIndexKey(attributeValue)) == null) {
+			return this.attributeValues.contains(attributeValue);
+		}
+		List<AttributeValue<?>> listCandidates	= thisIndex.indexed.get(indexKey);
+		if (listCandidates != null && listCandidates.contains(attributeValue)) {
+			return true;
+		}
+		return thisIndex.unindexed.contains(attributeValue);
+	}
+	
+	/**
+	 * Determines if this <code>Bag</code> contains an <code>AttributeValue</code> with the given data type whose value
+	 * <code>equals</code> the given value.
+	 * 
+	 * @param dataTypeId the <code>Identifier</code> of the data type to look for
+	 * @param value the <code>Object</code> value to look for
+	 * @return true if an <code>AttributeValue</code> in this <code>Bag</code> has the data type and value, else false
+	 */
+	public boolean containsValue(Identifier dataTypeId, Object value) {
+		Index thisIndex	= this.getIndex();
+		List<AttributeValue<?>> listCandidates;
+		if (thisIndex == null || !isHashable(value)) {
+			listCandidates	= this.attributeValues;
+		} else {
+			List<AttributeValue<?>> listIndexed	= thisIndex.indexed.get(new IndexKey(dataTypeId, value));
+			if (listIndexed != null && !listIndexed.isEmpty()) {
+				return true;
+			}
+			listCandidates	= thisIndex.unindexed;
+		}
+		for (AttributeValue<?> attributeValue : listCandidates) {
+			if (attributeValue != null && ObjUtil.equalsAllowNull(dataTypeId, attributeValue.getDataTypeId()) && ObjUtil.equalsAllowNull(value, attributeValue.getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Determines if every <code>AttributeValue</code> in this <code>Bag</code> has the given <code>DataType</code> and a value
+	 * that the <code>DataType</code> would not convert.  The answer for the last <code>DataType</code> asked about is kept
+	 * up to date as values are added.
+	 * 
+	 * @param dataType the <code>DataType</code> to check for
+	 * @return true if every <code>AttributeValue</code> in this <code>Bag</code> has the <code>DataType</code>, else false
+	 */
+	public boolean isAllOfDataType(DataType<?> dataType) {
+		DataTypeCheck thisDataTypeCheck	= this.dataTypeCheck;
+		if (thisDataTypeCheck == null || thisDataTypeCheck.dataType != dataType) {
+			boolean allValues	= true;
+			for (AttributeValue<?> attributeValue : this.attributeValues) {
+				if (!isOfDataType(dataType, attributeValue)) {
+					allValues	= false;
+					break;
+				}
+			}
+			thisDataTypeCheck	= new DataTypeCheck(dataType, allValues);
+			this.dataTypeCheck	= thisDataTypeCheck;
+		}
+		return thisDataTypeCheck.allValues;
+	}
 
 }
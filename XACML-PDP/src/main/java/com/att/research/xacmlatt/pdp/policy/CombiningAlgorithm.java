@@ -40,4 +40,15 @@ public interface CombiningAlgorithm<T extends Evaluatable> {
 	 * @throws EvaluationException if there is an error in the <code>evaluate</code> method of any of the <code>CombiningElement</code>s
 	 */
 	public EvaluationResult combine(EvaluationContext evaluationContext, List<CombiningElement<T>> elements, List<CombinerParameter> combinerParameters) throws EvaluationException;
+	
+	/**
+	 * Determines whether elements whose <code>Target</code> does not match play no part in the combined result.  If so, a
+	 * caller may leave such elements out of the <code>List</code> passed to <code>combine</code>, provided it keeps the
+	 * remaining elements in their original order.
+	 * 
+	 * @return true if non-matching elements can be left out without changing the result of <code>combine</code>
+	 */
+	public default boolean ignoresNonMatchingElements() {
+		return false;
+	}
 }
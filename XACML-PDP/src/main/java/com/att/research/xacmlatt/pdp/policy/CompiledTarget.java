@@ -0,0 +1,134 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationException;
+import com.att.research.xacmlatt.pdp.eval.MatchResult;
+import com.att.research.xacmlatt.pdp.eval.Matchable;
+import com.att.research.xacmlatt.pdp.policy.expressions.AttributeRetrievalBase;
+
+/**
+ * CompiledTarget is a {@link com.att.research.xacmlatt.pdp.policy.Target} flattened into lists of pre-linked matches.  The
+ * <code>AnyOf</code>, <code>AllOf</code> and <code>Match</code> elements are validated once when the <code>CompiledTarget</code>
+ * is built, and each match holds its resolved {@link com.att.research.xacmlatt.pdp.policy.FunctionDefinition} and prepared
+ * <code>AttributeValue</code> argument, so matching does none of the per-element validation or lookups of the element tree.
+ * The matching itself is done by the same code as <code>Match</code>, <code>AllOf</code> and <code>AnyOf</code>, so the results
+ * are those of <code>Target.match</code> on the element tree.
+ *
+ * @author car
+ * @version $Revision$
+ */
+final class CompiledTarget {
+	/*
+	 * A Match with everything but the request attributes resolved
+	 */
+	private static final class CompiledMatch implements Matchable {
+		private final FunctionDefinition functionDefinition;
+		private final FunctionArgument functionArgument;
+		private final AttributeRetrievalBase attributeRetrievalBase;
+		private final PolicyDefaults policyDefaults;
+
+		CompiledMatch(Match match) {
+			this.functionDefinition		= match.getFunctionDefinition();
+			this.functionArgument		= match.getFunctionArgument();
+			this.attributeRetrievalBase	= match.getAttributeRetrievalBase();
+			this.policyDefaults			= match.getPolicyDefaults();
+		}
+
+		@Override
+		public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
+			return Match.matchValues(evaluationContext, this.functionDefinition, this.functionArgument, this.attributeRetrievalBase.evaluate(evaluationContext, this.policyDefaults));
+		}
+	}
+
+	/*
+	 * The matches of an AllOf
+	 */
+	private static final class CompiledAllOf implements Matchable {
+		private final List<CompiledMatch> matches;
+
+		CompiledAllOf(List<CompiledMatch> matchesIn) {
+			this.matches	= matchesIn;
+		}
+
+		@Override
+		public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
+			return AllOf.matchAll(evaluationContext, this.matches.iterator());
+		}
+	}
+
+	/*
+	 * The AllOfs of each AnyOf
+	 */
+	private final List<List<CompiledAllOf>> anyOfs;
+
+	private CompiledTarget(List<List<CompiledAllOf>> anyOfsIn) {
+		this.anyOfs	= anyOfsIn;
+	}
+
+	/**
+	 * Compiles the given <code>Target</code>.
+	 *
+	 * @param target the <code>Target</code> to compile
+	 * @return the <code>CompiledTarget</code> or null if any element of the <code>Target</code> is not valid, in which case
+	 * the element tree has to report the error
+	 */
+	static CompiledTarget compile(Target target) {
+		if (!target.validate()) {
+			return null;
+		}
+		List<AnyOf> listAnyOfs	= target.getAnyOfList(false);
+		if (listAnyOfs == null) {
+			return new CompiledTarget(Collections.emptyList());
+		}
+		List<List<CompiledAllOf>> compiledAnyOfs	= new ArrayList<>(listAnyOfs.size());
+		for (AnyOf anyOf : listAnyOfs) {
+			if (anyOf == null || !anyOf.validate()) {
+				return null;
+			}
+			List<AllOf> listAllOfs	= anyOf.getAllOfList(false);
+			List<CompiledAllOf> compiledAllOfs	= new ArrayList<>(listAllOfs.size());
+			for (AllOf allOf : listAllOfs) {
+				if (allOf == null || !allOf.validate()) {
+					return null;
+				}
+				List<Match> listMatches	= allOf.getMatchList(false);
+				List<CompiledMatch> compiledMatches	= new ArrayList<>(listMatches.size());
+				for (Match match : listMatches) {
+					if (match == null || !match.validate()) {
+						return null;
+					}
+					compiledMatches.add(new CompiledMatch(match));
+				}
+				compiledAllOfs.add(new CompiledAllOf(compiledMatches));
+			}
+			compiledAnyOfs.add(compiledAllOfs);
+		}
+		return new CompiledTarget(compiledAnyOfs);
+	}
+
+	/**
+	 * Matches the <code>Target</code> against the request in the given <code>EvaluationContext</code>.
+	 *
+	 * @param evaluationContext the <code>EvaluationContext</code> for the request
+	 * @return the <code>MatchResult</code> that <code>Target.match</code> would return
+	 * @throws EvaluationException if there is an error retrieving attributes
+	 */
+	MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
+		for (List<CompiledAllOf> anyOf : this.anyOfs) {
+			MatchResult matchResult	= AnyOf.matchAny(evaluationContext, anyOf.iterator());
+			if (matchResult.getMatchCode() != MatchResult.MatchCode.MATCH) {
+				return matchResult;
+			}
+		}
+		return MatchResult.MM_MATCH;
+	}
+}
@@ -7,6 +7,7 @@ package com.att.research.xacmlatt.pdp.policy;
 
 import java.util.List;
 
+import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.Identifier;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
 
@@ -48,4 +49,17 @@ public interface FunctionDefinition {
 	 * @return an {@link com.att.research.xacmlatt.pdp.policy.ExpressionResult} with the results of the call
 	 */
 	public ExpressionResult evaluate(EvaluationContext evaluationContext, List<FunctionArgument> arguments);
+	
+	/**
+	 * Gives this <code>FunctionDefinition</code> the chance to do its work on a literal argument once, when the <code>Match</code> or
+	 * <code>Apply</code> holding it is first used, instead of on every call to <code>evaluate</code>.  The returned
+	 * {@link com.att.research.xacmlatt.pdp.policy.FunctionArgument} is passed in place of the literal from then on.
+	 * 
+	 * @param index the zero-based position of the argument
+	 * @param attributeValue the literal {@link com.att.research.xacml.api.AttributeValue} for the argument
+	 * @return the <code>FunctionArgument</code> to pass for the literal, or null to evaluate it as usual
+	 */
+	default FunctionArgument prepareArgument(int index, AttributeValue<?> attributeValue) {
+		return null;
+	}
 }
@@ -37,6 +37,7 @@ public class Match extends PolicyComponent implements Matchable {
 	private AttributeRetrievalBase	attributeRetrievalBase;
 	private PolicyDefaults			policyDefaults;
 	private FunctionDefinition		functionDefinition;
+	private volatile FunctionArgument	functionArgument;
 	
 	protected FunctionDefinition getFunctionDefinition() {
 		Identifier functionDefinitionId	= this.getMatchId();
@@ -50,6 +51,21 @@ public class Match extends PolicyComponent implements Matchable {
 		return this.functionDefinition;
 	}
 	
+	/*
+	 * The AttributeValue is always the first argument to the match function, so it only has to be prepared once
+	 */
+	protected FunctionArgument getFunctionArgument() {
+		FunctionArgument thisFunctionArgument	= this.functionArgument;
+		if (thisFunctionArgument == null) {
+			AttributeValue<?> thisAttributeValue	= this.getAttributeValue();
+			if ((thisFunctionArgument = this.getFunctionDefinition().prepareArgument(0, thisAttributeValue)) == null) {
+				thisFunctionArgument	= new FunctionArgumentAttributeValue(thisAttributeValue);
+			}
+			this.functionArgument	= thisFunctionArgument;
+		}
+		return thisFunctionArgument;
+	}
+	
 	public Match(StatusCode statusCodeIn, String statusMessageIn) {
 		super(statusCodeIn, statusMessageIn);
 	}
@@ -74,7 +90,9 @@ public class Match extends PolicyComponent implements Matchable {
 	}
 	
 	public void setMatchId(Identifier matchIdIn) {
-		this.matchId	= matchIdIn;
+		this.matchId			= matchIdIn;
+		this.functionDefinition	= null;
+		this.functionArgument	= null;
 	}
 	
 	public AttributeValue<?> getAttributeValue() {
@@ -82,7 +100,8 @@ public class Match extends PolicyComponent implements Matchable {
 	}
 	
 	public void setAttributeValue(AttributeValue<?> attributeValueIn) {
-		this.attributeValue	= attributeValueIn;
+		this.attributeValue		= attributeValueIn;
+		this.functionArgument	= null;
 	}
 	
 	public AttributeRetrievalBase getAttributeRetrievalBase() {
@@ -137,14 +156,20 @@ public class Match extends PolicyComponent implements Matchable {
 		FunctionDefinition functionDefinitionMatch		= this.getFunctionDefinition();
 		assert(functionDefinitionMatch != null);
 		
-		AttributeValue<?> attributeValue				= this.getAttributeValue();
-		assert(attributeValue != null);
-		FunctionArgument functionArgument1				= new FunctionArgumentAttributeValue(attributeValue);
+		assert(this.getAttributeValue() != null);
+		FunctionArgument functionArgument1				= this.getFunctionArgument();
 		
 		AttributeRetrievalBase attributeRetrievalBase	= this.getAttributeRetrievalBase();
 		assert(attributeRetrievalBase != null);
 		
-		ExpressionResult expressionResult	= attributeRetrievalBase.evaluate(evaluationContext, this.getPolicyDefaults());
+		return matchValues(evaluationContext, functionDefinitionMatch, functionArgument1, attributeRetrievalBase.evaluate(evaluationContext, this.getPolicyDefaults()));
+	}
+	
+	/*
+	 * Matches the value or bag of values retrieved for a Match against its prepared first argument.  Any value in a bag matching is
+	 * a match, otherwise the first indeterminate result wins.  CompiledTarget matches the same way.
+	 */
+	static MatchResult matchValues(EvaluationContext evaluationContext, FunctionDefinition functionDefinitionMatch, FunctionArgument functionArgument1, ExpressionResult expressionResult) throws EvaluationException {
 		assert(expressionResult != null);
 		if (!expressionResult.isOk()) {
 			return new MatchResult(expressionResult.getStatus());
@@ -33,7 +33,8 @@ public class Policy extends PolicyDef {
 	private TargetedCombinerParameterMap<String,Rule>		ruleCombinerParameters	= new TargetedCombinerParameterMap<>();
 	private VariableMap										variableMap				= new VariableMap();
 	private List<Rule>										rules					= new ArrayList<>();
-	private List<CombiningElement<Rule>>					combiningRules;
+	private volatile List<CombiningElement<Rule>>			combiningRules;
+	private volatile TargetIndex<CombiningElement<Rule>>	combiningRulesIndex;
 	private CombiningAlgorithm<Rule>						ruleCombiningAlgorithm;
 	
 	@Override
@@ -51,20 +52,44 @@ public class Policy extends PolicyDef {
 	}
 	
 	/**
-	 * Performs lazy evaluation of the combining parameters from this <code>Policy</code>.
+	 * Performs lazy evaluation of the combining parameters from this <code>Policy</code>.  The list is fully built
+	 * before it is published so that concurrent evaluations never see a partially populated list.
 	 * 
 	 * @return the <code>List</code> of <code>CombiningElement</code>s for all of the <code>Rule</code>s
 	 */
 	protected List<CombiningElement<Rule>> getCombiningRules() {
-		if (this.combiningRules == null) {
-			this.combiningRules			= new ArrayList<CombiningElement<Rule>>();
+		List<CombiningElement<Rule>> thisCombiningRules	= this.combiningRules;
+		if (thisCombiningRules == null) {
+			thisCombiningRules			= new ArrayList<CombiningElement<Rule>>();
 			Iterator<Rule> iterRules	= this.getRules();
 			while (iterRules.hasNext()) {
 				Rule rule	= iterRules.next();
-				this.combiningRules.add(new CombiningElement<Rule>(rule, this.ruleCombinerParameters.getCombinerParameters(rule)));
+				thisCombiningRules.add(new CombiningElement<Rule>(rule, this.ruleCombinerParameters.getCombinerParameters(rule)));
 			}
+			CombiningAlgorithm<Rule> thisRuleCombiningAlgorithm	= this.getRuleCombiningAlgorithm();
+			if (thisRuleCombiningAlgorithm != null && thisRuleCombiningAlgorithm.ignoresNonMatchingElements()) {
+				this.combiningRulesIndex	= TargetIndex.newInstance(thisCombiningRules, 
+						combiningElement -> (combiningElement.getEvaluatable().validate() ? combiningElement.getEvaluatable().getTarget() : null), 
+						TargetIndex.MINIMUM_CHILDREN);
+			}
+			this.combiningRules	= thisCombiningRules;
 		}
-		return this.combiningRules;
+		return thisCombiningRules;
+	}
+	
+	/**
+	 * Gets the <code>CombiningElement</code>s for the <code>Rule</code>s whose <code>Target</code> may match in the given
+	 * <code>EvaluationContext</code>, in document order.  If the rule combining algorithm ignores rules that do not
+	 * match, the rules are selected through a {@link com.att.research.xacmlatt.pdp.policy.TargetIndex}; otherwise all of
+	 * them are returned.
+	 * 
+	 * @param evaluationContext the <code>EvaluationContext</code> for the current request
+	 * @return the <code>List</code> of <code>CombiningElement</code>s to pass to the rule combining algorithm
+	 */
+	protected List<CombiningElement<Rule>> getCombiningRules(EvaluationContext evaluationContext) {
+		List<CombiningElement<Rule>> thisCombiningRules			= this.getCombiningRules();
+		TargetIndex<CombiningElement<Rule>> thisCombiningRulesIndex	= this.combiningRulesIndex;
+		return (thisCombiningRulesIndex == null ? thisCombiningRules : thisCombiningRulesIndex.getCandidates(evaluationContext));
 	}
 	
 	public Policy(PolicySet policySetParent, StatusCode statusCodeIn, String statusMessageIn) {
@@ -260,7 +285,7 @@ public class Policy extends PolicyDef {
 		/*
 		 * Get the combining elements
 		 */
-		List<CombiningElement<Rule>> ruleCombiningElements	= this.getCombiningRules();
+		List<CombiningElement<Rule>> ruleCombiningElements	= this.getCombiningRules(evaluationContext);
 		assert(ruleCombiningElements != null);
 		
 		/*
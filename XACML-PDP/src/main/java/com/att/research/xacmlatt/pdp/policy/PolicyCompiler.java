@@ -0,0 +1,67 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import java.util.Iterator;
+
+/**
+ * PolicyCompiler compiles the {@link com.att.research.xacmlatt.pdp.policy.Target}s of a loaded
+ * {@link com.att.research.xacmlatt.pdp.policy.PolicyDef} and everything it contains, so that they are matched through a
+ * flat, pre-linked {@link com.att.research.xacmlatt.pdp.policy.CompiledTarget} instead of the element tree.  Targets are
+ * matched for every policy, policy set and rule that is considered for a request, so they are where the element tree
+ * costs the most.
+ *
+ * Targets with invalid elements are left as they are, so that they report the same errors as before.  Policies that are
+ * only referenced from a policy set have to be compiled on their own.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public final class PolicyCompiler {
+
+	private PolicyCompiler() {
+	}
+
+	private static int compile(Target target) {
+		return (target != null && target.compile() ? 1 : 0);
+	}
+
+	/**
+	 * Compiles the <code>Target</code>s of the given <code>PolicyDef</code>, of its <code>Rule</code>s if it is a
+	 * <code>Policy</code>, and of its children if it is a <code>PolicySet</code>.
+	 *
+	 * @param policyDef the <code>PolicyDef</code> to compile
+	 * @return the number of <code>Target</code>s compiled
+	 */
+	public static int compile(PolicyDef policyDef) {
+		if (policyDef == null) {
+			return 0;
+		}
+		int compiled	= compile(policyDef.getTarget());
+		if (policyDef instanceof Policy) {
+			Iterator<Rule> iterRules	= ((Policy)policyDef).getRules();
+			if (iterRules != null) {
+				while (iterRules.hasNext()) {
+					Rule rule	= iterRules.next();
+					if (rule != null) {
+						compiled	+= compile(rule.getTarget());
+					}
+				}
+			}
+		} else if (policyDef instanceof PolicySet) {
+			Iterator<PolicySetChild> iterChildren	= ((PolicySet)policyDef).getChildren();
+			if (iterChildren != null) {
+				while (iterChildren.hasNext()) {
+					PolicySetChild policySetChild	= iterChildren.next();
+					if (policySetChild instanceof PolicyDef) {
+						compiled	+= compile((PolicyDef)policySetChild);
+					}
+				}
+			}
+		}
+		return compiled;
+	}
+}
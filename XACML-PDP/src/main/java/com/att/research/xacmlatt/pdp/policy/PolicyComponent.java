@@ -16,8 +16,8 @@ import com.att.research.xacml.std.StdStatusCode;
  * @version $Revision: 1.1 $
  */
 abstract class PolicyComponent {
-	private StatusCode	statusCode;
-	private String		statusMessage;
+	private volatile StatusCode	statusCode;
+	private volatile String		statusMessage;
 	
 	/**
 	 * Creates a new <code>PolicyComponent</code> with the given {@link com.att.research.xacml.api.StatusCode} and
@@ -18,6 +18,7 @@ import com.att.research.xacml.api.Obligation;
 import com.att.research.xacml.api.StatusCode;
 import com.att.research.xacml.api.Version;
 import com.att.research.xacml.api.VersionMatch;
+import com.att.research.xacml.api.pip.PIPRequest;
 import com.att.research.xacml.std.StdIdReference;
 import com.att.research.xacml.std.StdStatus;
 import com.att.research.xacml.std.StdStatusCode;
@@ -44,7 +45,8 @@ public abstract class PolicyDef extends PolicySetChild {
 	private Version						version;
 	private Integer 					maxDelegationDepth;
 	
-	private IdReference					idReference;
+	private volatile IdReference		idReference;
+	private volatile Collection<PIPRequest>	attributeDependencies;
 
 	private void ensureCombinerParameters() {
 		if (this.combinerParameters == null) {
@@ -351,6 +353,21 @@ public abstract class PolicyDef extends PolicySetChild {
 		return this.idReference;
 	}
 	
+	/**
+	 * Gets the attributes this <code>PolicyDef</code> and everything it contains can ask for, as one <code>PIPRequest</code> for
+	 * each distinct <code>AttributeDesignator</code>.  They are found the first time they are asked for, so the
+	 * <code>PolicyDef</code> must be complete by then.
+	 * 
+	 * @return an unmodifiable <code>Collection</code> of <code>PIPRequest</code>s
+	 */
+	public Collection<PIPRequest> getAttributeDependencies() {
+		Collection<PIPRequest> thisAttributeDependencies	= this.attributeDependencies;
+		if (thisAttributeDependencies == null) {
+			this.attributeDependencies	= thisAttributeDependencies	= AttributeDependencies.analyze(this);
+		}
+		return thisAttributeDependencies;
+	}
+	
 	public boolean matches(IdReferenceMatch idReferenceRequest) {
 		IdReference thisIdReference	= this.getIdReference();
 		if (thisIdReference == null || thisIdReference.getId() == null || idReferenceRequest == null || idReferenceRequest.getId() == null) {
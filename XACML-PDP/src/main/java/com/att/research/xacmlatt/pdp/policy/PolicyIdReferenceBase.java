@@ -25,7 +25,7 @@ import com.att.research.xacmlatt.pdp.eval.MatchResult;
  */
 public abstract class PolicyIdReferenceBase<T extends PolicyDef> extends PolicySetChild {
 	private IdReferenceMatch	idReferenceMatch;
-	private T					referencee;
+	private volatile T			referencee;
 	
 	@Override
 	protected boolean validateComponent() {
@@ -33,7 +33,8 @@ import com.att.research.xacmlatt.pdp.eval.MatchResult;
 public class PolicySet extends PolicyDef {
 	private TargetedCombinerParameterMap<Identifier,PolicySetChild>		policyCombinerParameters	= new TargetedCombinerParameterMap<Identifier,PolicySetChild>();
 	private List<PolicySetChild>										children;
-	private List<CombiningElement<PolicySetChild>>						combiningPolicies;
+	private volatile List<CombiningElement<PolicySetChild>>				combiningPolicies;
+	private volatile TargetIndex<CombiningElement<PolicySetChild>>		combiningPoliciesIndex;
 	private CombiningAlgorithm<PolicySetChild>							combiningAlgorithm;
 	
 	private void ensureChildren() {
@@ -43,22 +44,56 @@ public class PolicySet extends PolicyDef {
 	}
 	
 	/**
-	 * Performs lazy evaluation of the combining parameters from this <code>Policy</code>.
+	 * Performs lazy evaluation of the combining parameters from this <code>Policy</code>.  The list is fully built
+	 * before it is published so that concurrent evaluations never see a partially populated list.
 	 * 
 	 * @return the <code>List</code> of <code>CombiningElement</code>s for all of the <code>Rule</code>s
 	 */
 	protected List<CombiningElement<PolicySetChild>> getCombiningPolicies() {
-		if (this.combiningPolicies == null) {
-			this.combiningPolicies			= new ArrayList<CombiningElement<PolicySetChild>>();
+		List<CombiningElement<PolicySetChild>> thisCombiningPolicies	= this.combiningPolicies;
+		if (thisCombiningPolicies == null) {
+			thisCombiningPolicies			= new ArrayList<CombiningElement<PolicySetChild>>();
 			Iterator<PolicySetChild> iterPolicies	= this.getChildren();
 			if (iterPolicies != null) {
 				while (iterPolicies.hasNext()) {
 					PolicySetChild policySetChild	= iterPolicies.next();
-					this.combiningPolicies.add(new CombiningElement<PolicySetChild>(policySetChild, this.policyCombinerParameters.getCombinerParameters(policySetChild)));
+					thisCombiningPolicies.add(new CombiningElement<PolicySetChild>(policySetChild, this.policyCombinerParameters.getCombinerParameters(policySetChild)));
 				}
 			}
+			CombiningAlgorithm<PolicySetChild> thisPolicyCombiningAlgorithm	= this.getPolicyCombiningAlgorithm();
+			if (thisPolicyCombiningAlgorithm != null && thisPolicyCombiningAlgorithm.ignoresNonMatchingElements()) {
+				this.combiningPoliciesIndex	= TargetIndex.newInstance(thisCombiningPolicies, PolicySet::getIndexableTarget, TargetIndex.MINIMUM_CHILDREN);
+			}
+			this.combiningPolicies	= thisCombiningPolicies;
+		}
+		return thisCombiningPolicies;
+	}
+	
+	/*
+	 * Only children that are PolicyDefs carry their own Target.  References are resolved and matched through the
+	 * referencee at evaluation time, so they are always evaluated.
+	 */
+	private static Target getIndexableTarget(CombiningElement<PolicySetChild> combiningElement) {
+		PolicySetChild policySetChild	= combiningElement.getEvaluatable();
+		if (policySetChild instanceof PolicyDef && ((PolicyDef)policySetChild).validate()) {
+			return ((PolicyDef)policySetChild).getTarget();
 		}
-		return this.combiningPolicies;
+		return null;
+	}
+	
+	/**
+	 * Gets the <code>CombiningElement</code>s for the children whose <code>Target</code> may match in the given
+	 * <code>EvaluationContext</code>, in document order.  If the policy combining algorithm ignores children that do
+	 * not match, the children are selected through a {@link com.att.research.xacmlatt.pdp.policy.TargetIndex};
+	 * otherwise all of them are returned.
+	 * 
+	 * @param evaluationContext the <code>EvaluationContext</code> for the current request
+	 * @return the <code>List</code> of <code>CombiningElement</code>s to pass to the policy combining algorithm
+	 */
+	protected List<CombiningElement<PolicySetChild>> getCombiningPolicies(EvaluationContext evaluationContext) {
+		List<CombiningElement<PolicySetChild>> thisCombiningPolicies			= this.getCombiningPolicies();
+		TargetIndex<CombiningElement<PolicySetChild>> thisCombiningPoliciesIndex	= this.combiningPoliciesIndex;
+		return (thisCombiningPoliciesIndex == null ? thisCombiningPolicies : thisCombiningPoliciesIndex.getCandidates(evaluationContext));
 	}
 	
 	@Override
@@ -191,7 +226,7 @@ public class PolicySet extends PolicyDef {
 		/*
 		 * Get the combining elements
 		 */
-		List<CombiningElement<PolicySetChild>> listCombiningElements	= this.getCombiningPolicies();
+		List<CombiningElement<PolicySetChild>> listCombiningElements	= this.getCombiningPolicies(evaluationContext);
 		assert(listCombiningElements != null);
 		
 		/*
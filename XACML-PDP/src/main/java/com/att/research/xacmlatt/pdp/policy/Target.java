@@ -27,6 +27,7 @@ import com.att.research.xacmlatt.pdp.eval.Matchable;
  */
 public class Target extends PolicyComponent implements Matchable {
 	private List<AnyOf>	anyOfs;
+	private volatile CompiledTarget compiledTarget;
 	
 	protected List<AnyOf> getAnyOfList(boolean bNoNull) {
 		if (this.anyOfs == null && bNoNull) {
@@ -39,6 +40,7 @@ public class Target extends PolicyComponent implements Matchable {
 		if (this.anyOfs != null) {
 			this.anyOfs.clear();
 		}
+		this.compiledTarget	= null;
 	}
 	
 	public Target(StatusCode statusCodeIn, String statusMessageIn) {
@@ -83,15 +85,42 @@ public class Target extends PolicyComponent implements Matchable {
 	public void addAnyOf(AnyOf anyOfIn) {
 		List<AnyOf> listAnyOfs	= this.getAnyOfList(true);
 		listAnyOfs.add(anyOfIn);
+		this.compiledTarget	= null;
 	}
 	
 	public void addAnyOfs(Collection<AnyOf> anyOfsIn) {
 		List<AnyOf> listAnyOfs	= this.getAnyOfList(true);
 		listAnyOfs.addAll(anyOfsIn);
+		this.compiledTarget	= null;
+	}
+	
+	/**
+	 * Compiles this <code>Target</code> into a {@link com.att.research.xacmlatt.pdp.policy.CompiledTarget} that
+	 * <code>match</code> uses from then on.  The <code>AnyOf</code>, <code>AllOf</code> and <code>Match</code> elements must
+	 * not be changed once the <code>Target</code> is compiled.
+	 * 
+	 * @return true if the <code>Target</code> was compiled, false if it has invalid elements and is matched as before
+	 */
+	public boolean compile() {
+		this.compiledTarget	= CompiledTarget.compile(this);
+		return (this.compiledTarget != null);
+	}
+	
+	/**
+	 * Determines if this <code>Target</code> is matched with a {@link com.att.research.xacmlatt.pdp.policy.CompiledTarget}.
+	 * 
+	 * @return true if the <code>Target</code> has been compiled
+	 */
+	public boolean isCompiled() {
+		return (this.compiledTarget != null);
 	}
 
 	@Override
 	public MatchResult match(EvaluationContext evaluationContext) throws EvaluationException {
+		CompiledTarget thisCompiledTarget	= this.compiledTarget;
+		if (thisCompiledTarget != null) {
+			return thisCompiledTarget.match(evaluationContext);
+		}
 		if (!this.validate()) {
 			return new MatchResult(new StdStatus(this.getStatusCode(), this.getStatusMessage()));
 		}
@@ -0,0 +1,328 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataType;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.datatypes.DataTypes;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationException;
+import com.att.research.xacmlatt.pdp.policy.expressions.AttributeDesignator;
+
+/**
+ * TargetIndex is a discrimination index over the {@link Target}s of an ordered list of items (root policies, or the
+ * children of a policy set).  Given an {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext} it returns the
+ * sub-list of items whose <code>Target</code> could possibly match, in their original order.  Every item it leaves
+ * out is one whose <code>Target</code> would have evaluated to "No Match", so callers can run their usual match loop
+ * over the candidates and get exactly the result of a full scan.
+ *
+ * An item is indexed on the first <code>AnyOf</code> of its <code>Target</code>, and only if every <code>AllOf</code>
+ * in it contains a <code>Match</code> of the form string-equal, anyURI-equal or integer-equal between a literal and an
+ * {@link com.att.research.xacmlatt.pdp.policy.expressions.AttributeDesignator} of the same data type.  Each such
+ * <code>AllOf</code> contributes a posting for its (designator, literal value) pair.  At evaluation time each distinct
+ * designator is evaluated once, and its bag of values selects the postings.  Whenever a designator does not yield a
+ * clean bag of well-typed values (missing required attribute, PIP error, unexpected data type) every item that
+ * depends on it is treated as a candidate, since its <code>Match</code> would not be a clean "No Match".
+ *
+ * Items that cannot be indexed are always candidates.
+ *
+ * @author car
+ * @version $Revision$
+ * @param <T> the type of item being indexed
+ */
+public class TargetIndex<T> {
+	private static final Logger logger	= LoggerFactory.getLogger(TargetIndex.class);
+
+	/**
+	 * The smallest number of rules or child policies for which a <code>Policy</code> or <code>PolicySet</code> indexes
+	 * their targets.  Below this the index costs more than matching each target in turn, particularly for combining
+	 * algorithms such as first-applicable that may stop early.
+	 */
+	public static final int MINIMUM_CHILDREN	= 8;
+
+	private static final Map<Identifier, DataType<?>> indexableFunctions	= new HashMap<>();
+	static {
+		indexableFunctions.put(XACML3.ID_FUNCTION_STRING_EQUAL, DataTypes.DT_STRING);
+		indexableFunctions.put(XACML3.ID_FUNCTION_ANYURI_EQUAL, DataTypes.DT_ANYURI);
+		indexableFunctions.put(XACML3.ID_FUNCTION_INTEGER_EQUAL, DataTypes.DT_INTEGER);
+	}
+
+	/**
+	 * Identifies the bag of values an <code>AttributeDesignator</code> produces.  Two designators with the same key
+	 * evaluate to the same result within one request.
+	 */
+	private static class DesignatorKey {
+		private final Identifier category;
+		private final Identifier attributeId;
+		private final Identifier dataTypeId;
+		private final String issuer;
+		private final boolean mustBePresent;
+		private final int hashCode;
+
+		DesignatorKey(AttributeDesignator attributeDesignator) {
+			this.category		= attributeDesignator.getCategory();
+			this.attributeId	= attributeDesignator.getAttributeId();
+			this.dataTypeId		= attributeDesignator.getDataTypeId();
+			this.issuer			= attributeDesignator.getIssuer();
+			this.mustBePresent	= attributeDesignator.getMustBePresent();
+			this.hashCode		= Objects.hash(this.category, this.attributeId, this.dataTypeId, this.issuer, this.mustBePresent);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof DesignatorKey)) {
+				return false;
+			}
+			DesignatorKey other	= (DesignatorKey)obj;
+			return this.mustBePresent == other.mustBePresent
+					&& this.category.equals(other.category)
+					&& this.attributeId.equals(other.attributeId)
+					&& this.dataTypeId.equals(other.dataTypeId)
+					&& Objects.equals(this.issuer, other.issuer);
+		}
+	}
+
+	/**
+	 * The postings for one designator: which items a given value may select, and which items depend on the designator
+	 * at all.
+	 */
+	private static class Postings {
+		private final AttributeDesignator attributeDesignator;
+		private final PolicyDefaults policyDefaults;
+		private final DataType<?> dataType;
+		private final Map<Object, BitSet> mapValueToItems	= new HashMap<>();
+		private final BitSet allItems	= new BitSet();
+
+		Postings(AttributeDesignator attributeDesignatorIn, PolicyDefaults policyDefaultsIn, DataType<?> dataTypeIn) {
+			this.attributeDesignator	= attributeDesignatorIn;
+			this.policyDefaults			= policyDefaultsIn;
+			this.dataType				= dataTypeIn;
+		}
+
+		void add(Object value, int item) {
+			this.mapValueToItems.computeIfAbsent(value, v -> new BitSet()).set(item);
+			this.allItems.set(item);
+		}
+
+		/*
+		 * Adds the items the designator's bag of values can select for this request.
+		 */
+		void select(EvaluationContext evaluationContext, BitSet candidates) {
+			ExpressionResult expressionResult;
+			try {
+				expressionResult	= this.attributeDesignator.evaluate(evaluationContext, this.policyDefaults);
+			} catch (EvaluationException ex) {
+				candidates.or(this.allItems);
+				return;
+			}
+			if (expressionResult == null || !expressionResult.isOk() || !expressionResult.isBag() || expressionResult.getBag() == null) {
+				candidates.or(this.allItems);
+				return;
+			}
+			List<BitSet> listSelected	= new ArrayList<>();
+			Iterator<AttributeValue<?>> iterAttributeValues	= expressionResult.getBag().getAttributeValues();
+			while (iterAttributeValues.hasNext()) {
+				Object value	= convert(this.dataType, iterAttributeValues.next());
+				if (value == null) {
+					candidates.or(this.allItems);
+					return;
+				}
+				BitSet selected	= this.mapValueToItems.get(value);
+				if (selected != null) {
+					listSelected.add(selected);
+				}
+			}
+			for (BitSet selected : listSelected) {
+				candidates.or(selected);
+			}
+		}
+	}
+
+	private final List<T> items;
+	private final Map<DesignatorKey, Postings> mapPostings	= new LinkedHashMap<>();
+	private final BitSet unindexedItems	= new BitSet();
+	private final int indexedCount;
+
+	/*
+	 * Converts the given AttributeValue the same way the equality functions convert their arguments, returning null
+	 * wherever the function would have returned an error instead of a boolean.
+	 */
+	private static Object convert(DataType<?> dataType, AttributeValue<?> attributeValue) {
+		if (attributeValue == null || attributeValue.getValue() == null || !dataType.getId().equals(attributeValue.getDataTypeId())) {
+			return null;
+		}
+		try {
+			return dataType.convert(attributeValue.getValue());
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	/*
+	 * Returns the DataType an equality Match compares with if the Match can be indexed, otherwise null.  A Match can
+	 * be indexed when it is guaranteed to return a clean "No Match" for any bag that does not contain its literal.
+	 */
+	private static DataType<?> getIndexableDataType(Match match) {
+		if (match.getMatchId() == null || !match.validate()) {
+			return null;
+		}
+		DataType<?> dataType	= indexableFunctions.get(match.getMatchId());
+		if (dataType == null || match.getFunctionDefinition() == null || !match.getMatchId().equals(match.getFunctionDefinition().getId())) {
+			return null;
+		}
+		if (!(match.getAttributeRetrievalBase() instanceof AttributeDesignator)) {
+			return null;
+		}
+		AttributeDesignator attributeDesignator	= (AttributeDesignator)match.getAttributeRetrievalBase();
+		if (!attributeDesignator.validate() || !dataType.getId().equals(attributeDesignator.getDataTypeId())) {
+			return null;
+		}
+		if (convert(dataType, match.getAttributeValue()) == null) {
+			return null;
+		}
+		return dataType;
+	}
+
+	/*
+	 * Collects one indexable Match per AllOf of the first AnyOf in the given Target, or returns null if the Target
+	 * cannot be indexed.
+	 */
+	private static List<Match> getIndexableMatches(Target target) {
+		if (target == null || !target.validate()) {
+			return null;
+		}
+		Iterator<AnyOf> iterAnyOfs	= target.getAnyOfs();
+		if (iterAnyOfs == null || !iterAnyOfs.hasNext()) {
+			return null;
+		}
+		AnyOf anyOf	= iterAnyOfs.next();
+		if (!anyOf.validate()) {
+			return null;
+		}
+		List<Match> listMatches		= new ArrayList<>();
+		Iterator<AllOf> iterAllOfs	= anyOf.getAllOfs();
+		while (iterAllOfs.hasNext()) {
+			AllOf allOf	= iterAllOfs.next();
+			if (!allOf.validate()) {
+				return null;
+			}
+			Match matchIndexable		= null;
+			Iterator<Match> iterMatches	= allOf.getMatches();
+			while (matchIndexable == null && iterMatches.hasNext()) {
+				Match match	= iterMatches.next();
+				if (getIndexableDataType(match) != null) {
+					matchIndexable	= match;
+				}
+			}
+			if (matchIndexable == null) {
+				return null;
+			}
+			listMatches.add(matchIndexable);
+		}
+		return (listMatches.isEmpty() ? null : listMatches);
+	}
+
+	/**
+	 * Builds a <code>TargetIndex</code> over the given items.
+	 *
+	 * @param itemsIn the ordered <code>List</code> of items to index
+	 * @param targetFunction returns the <code>Target</code> the item is matched on, or null if the item must always be
+	 * evaluated (for example because the item itself does not validate)
+	 */
+	public TargetIndex(List<T> itemsIn, Function<? super T, Target> targetFunction) {
+		this.items	= Collections.unmodifiableList(new ArrayList<>(itemsIn));
+		int indexed	= 0;
+		for (int i = 0 ; i < this.items.size() ; i++) {
+			List<Match> listMatches	= getIndexableMatches(targetFunction.apply(this.items.get(i)));
+			if (listMatches == null) {
+				this.unindexedItems.set(i);
+				continue;
+			}
+			for (Match match : listMatches) {
+				AttributeDesignator attributeDesignator	= (AttributeDesignator)match.getAttributeRetrievalBase();
+				DataType<?> dataType					= getIndexableDataType(match);
+				this.mapPostings.computeIfAbsent(new DesignatorKey(attributeDesignator), k -> new Postings(attributeDesignator, match.getPolicyDefaults(), dataType))
+								.add(convert(dataType, match.getAttributeValue()), i);
+			}
+			indexed++;
+		}
+		this.indexedCount	= indexed;
+		logger.debug("Indexed {} of {} targets on {} attribute designators", this.indexedCount, this.items.size(), this.mapPostings.size());
+	}
+
+	/**
+	 * Builds a <code>TargetIndex</code> over the given items if it is worth having one.
+	 *
+	 * @param <T> the type of item being indexed
+	 * @param itemsIn the ordered <code>List</code> of items to index
+	 * @param targetFunction returns the <code>Target</code> the item is matched on, or null if the item must always be
+	 * evaluated
+	 * @param minimumItems the smallest number of items for which an index is built
+	 * @return a new <code>TargetIndex</code>, or null if there are fewer than <code>minimumItems</code> items or none of
+	 * them can be indexed
+	 */
+	public static <T> TargetIndex<T> newInstance(List<T> itemsIn, Function<? super T, Target> targetFunction, int minimumItems) {
+		if (itemsIn == null || itemsIn.size() < minimumItems) {
+			return null;
+		}
+		TargetIndex<T> targetIndex	= new TargetIndex<>(itemsIn, targetFunction);
+		return (targetIndex.getIndexedCount() > 0 ? targetIndex : null);
+	}
+
+	/**
+	 * Gets the number of items that are selected through the index rather than always evaluated.
+	 *
+	 * @return the number of indexed items
+	 */
+	public int getIndexedCount() {
+		return this.indexedCount;
+	}
+
+	/**
+	 * Gets the items whose <code>Target</code> may match in the given <code>EvaluationContext</code>, in their
+	 * original order.
+	 *
+	 * @param evaluationContext the <code>EvaluationContext</code> for the current request
+	 * @return the <code>List</code> of candidate items
+	 */
+	public List<T> getCandidates(EvaluationContext evaluationContext) {
+		if (this.indexedCount == 0) {
+			return this.items;
+		}
+		BitSet candidates	= (BitSet)this.unindexedItems.clone();
+		for (Postings postings : this.mapPostings.values()) {
+			postings.select(evaluationContext, candidates);
+		}
+		List<T> listCandidates	= new ArrayList<>(candidates.cardinality());
+		for (int i = candidates.nextSetBit(0) ; i >= 0 ; i = candidates.nextSetBit(i + 1)) {
+			listCandidates.add(this.items.get(i));
+		}
+		return listCandidates;
+	}
+}
@@ -25,7 +25,7 @@ import java.util.Map;
 public class TargetedCombinerParameterMap<T, U> {
 	List<TargetedCombinerParameter<T,U>>	targetedCombinerParameters		= null;
 	Map<T,U>								mapTargetIdToTarget				= new HashMap<T,U>();
-	Map<U,List<CombinerParameter>>			mapTargetToCombinerParameters	= null;
+	volatile Map<U,List<CombinerParameter>>	mapTargetToCombinerParameters	= null;
 	
 	private void ensureTargetedCombinerParameters() {
 		if (this.targetedCombinerParameters == null) {
@@ -55,28 +55,32 @@ public class TargetedCombinerParameterMap<T, U> {
 	
 	/**
 	 * Ensures the <code>Map</code> from targets to <code>List</code> of <code>CombinerParameter</code>s has been
-	 * created if needed.
+	 * created if needed.  The map is only published once it is complete.
 	 * 
+	 * @return the <code>Map</code> from targets to <code>CombinerParameter</code>s or null if there are none
 	 * @throws IllegalStateException if there are <code>TargetedCombinerParameter</code>s that cannot be resolved
 	 */
-	protected void ensureMap() throws IllegalStateException {
-		if (this.mapTargetToCombinerParameters == null) {
+	protected Map<U,List<CombinerParameter>> ensureMap() throws IllegalStateException {
+		Map<U,List<CombinerParameter>> mapResult	= this.mapTargetToCombinerParameters;
+		if (mapResult == null) {
 			if (this.targetedCombinerParameters != null && this.targetedCombinerParameters.size() > 0) {
-				this.mapTargetToCombinerParameters	= new HashMap<U,List<CombinerParameter>>();
+				mapResult	= new HashMap<U,List<CombinerParameter>>();
 				for (TargetedCombinerParameter<T,U> targetedCombinerParameter: this.targetedCombinerParameters) {
 					U	target	= this.resolve(targetedCombinerParameter);
 					if (target == null) {
 						throw new IllegalStateException("Unresolved TargetCombinerParameter \"" + targetedCombinerParameter.toString() + "\"");
 					}
-					List<CombinerParameter>	listCombinerParameters	= this.mapTargetToCombinerParameters.get(target);
+					List<CombinerParameter>	listCombinerParameters	= mapResult.get(target);
 					if (listCombinerParameters == null) {
 						listCombinerParameters	= new ArrayList<>();
-						this.mapTargetToCombinerParameters.put(target, listCombinerParameters);
+						mapResult.put(target, listCombinerParameters);
 					}
 					listCombinerParameters.add(targetedCombinerParameter);
 				}
+				this.mapTargetToCombinerParameters	= mapResult;
 			}
 		}
+		return mapResult;
 	}
 	
 	/**
@@ -140,8 +144,8 @@ public class TargetedCombinerParameterMap<T, U> {
 	 * @throws IllegalStateException if there are <code>TargetedCombinerParameter</code>s that cannot be resolved
 	 */
 	public List<CombinerParameter> getCombinerParameters(U target) throws IllegalStateException {
-		this.ensureMap();
-		return (this.mapTargetToCombinerParameters == null ? null : this.mapTargetToCombinerParameters.get(target));
+		Map<U,List<CombinerParameter>> mapResult	= this.ensureMap();
+		return (mapResult == null ? null : mapResult.get(target));
 	}
 	
 	public Iterator<TargetedCombinerParameter<T,U>> getTargetedCombinerParameters() {
@@ -33,9 +33,10 @@ import com.att.research.xacmlatt.pdp.policy.PolicyDefaults;
  */
 public class Apply extends Expression {
 	private Identifier functionId;
-	private FunctionDefinition functionDefinition;
+	private volatile FunctionDefinition functionDefinition;
 	private String description;
 	private List<Expression> arguments	= new ArrayList<>();
+	private volatile FunctionArgument[] preparedArguments;
 	
 	protected List<Expression> getArgumentList() {
 		return this.arguments;
@@ -43,6 +44,27 @@ public class Apply extends Expression {
 	
 	protected void clearArgumentList() {
 		this.getArgumentList().clear();
+		this.preparedArguments	= null;
+	}
+	
+	/*
+	 * Gives the FunctionDefinition the chance to prepare each literal argument once.  Arguments that are
+	 * not prepared are left null and evaluated on every call.
+	 */
+	protected FunctionArgument[] getPreparedArguments(FunctionDefinition thisFunctionDefinition) {
+		FunctionArgument[] thisPreparedArguments	= this.preparedArguments;
+		if (thisPreparedArguments == null) {
+			List<Expression> listExpressions	= this.getArgumentList();
+			thisPreparedArguments	= new FunctionArgument[listExpressions.size()];
+			for (int i = 0 ; i < thisPreparedArguments.length ; i++) {
+				Expression expression	= listExpressions.get(i);
+				if (expression instanceof AttributeValueExpression && ((AttributeValueExpression)expression).getAttributeValue() != null) {
+					thisPreparedArguments[i]	= thisFunctionDefinition.prepareArgument(i, ((AttributeValueExpression)expression).getAttributeValue());
+				}
+			}
+			this.preparedArguments	= thisPreparedArguments;
+		}
+		return thisPreparedArguments;
 	}
 	
 	public Apply(StatusCode statusCodeIn, String statusMessageIn) {
@@ -71,6 +93,7 @@ public class Apply extends Expression {
 	public void setFunctionId(Identifier identifier) {
 		this.functionId			= identifier;
 		this.functionDefinition	= null;
+		this.preparedArguments	= null;
 	}
 	
 	/**
@@ -114,10 +137,12 @@ public class Apply extends Expression {
 	
 	public void addArgument(Expression expression) {
 		this.getArgumentList().add(expression);
+		this.preparedArguments	= null;
 	}
 	
 	public void addArguments(Collection<Expression> listExpressions) {
 		this.getArgumentList().addAll(listExpressions);
+		this.preparedArguments	= null;
 	}
 
 	@Override
@@ -137,11 +162,14 @@ public class Apply extends Expression {
 		/*
 		 * Get all of the arguments and convert them into FunctionArgument objects.
 		 */
-		List<FunctionArgument> listFunctionArguments	= new ArrayList<>();
-		Iterator<Expression> iterExpressionArguments	= this.getArguments();
-		if (iterExpressionArguments != null) {
-			while (iterExpressionArguments.hasNext()) {
-				listFunctionArguments.add(new FunctionArgumentExpression(iterExpressionArguments.next(), evaluationContext, policyDefaults));
+		List<Expression> listExpressions				= this.getArgumentList();
+		FunctionArgument[] thisPreparedArguments		= this.getPreparedArguments(thisFunctionDefinition);
+		List<FunctionArgument> listFunctionArguments	= new ArrayList<>(listExpressions.size());
+		for (int i = 0 ; i < listExpressions.size() ; i++) {
+			if (i < thisPreparedArguments.length && thisPreparedArguments[i] != null) {
+				listFunctionArguments.add(thisPreparedArguments[i]);
+			} else {
+				listFunctionArguments.add(new FunctionArgumentExpression(listExpressions.get(i), evaluationContext, policyDefaults));
 			}
 		}
 		
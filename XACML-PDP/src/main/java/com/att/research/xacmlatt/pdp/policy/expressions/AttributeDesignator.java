@@ -38,9 +38,9 @@ import com.att.research.xacmlatt.pdp.policy.PolicyDefaults;
 public class AttributeDesignator extends AttributeRetrievalBase {
 	private Identifier attributeId;
 	private String issuer;
-	private PIPRequest pipRequestCached;
-	private MissingAttributeDetail missingAttributeDetail;
-	private StatusDetail statusDetail;
+	private volatile PIPRequest pipRequestCached;
+	private volatile MissingAttributeDetail missingAttributeDetail;
+	private volatile StatusDetail statusDetail;
 	
 	protected PIPRequest getPIPRequest() {
 		if (this.pipRequestCached == null) {
@@ -6,15 +6,20 @@
 package com.att.research.xacmlatt.pdp.policy.expressions;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
+import javax.xml.namespace.NamespaceContext;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -33,7 +38,6 @@ import com.att.research.xacml.std.datatypes.DataTypes;
 import com.att.research.xacml.std.datatypes.NodeNamespaceContext;
 import com.att.research.xacml.std.datatypes.XPathExpressionWrapper;
 import com.att.research.xacml.std.dom.DOMStructureException;
-import com.att.research.xacml.std.dom.DOMUtil;
 import com.att.research.xacml.util.FactoryException;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
 import com.att.research.xacmlatt.pdp.eval.EvaluationException;
@@ -49,8 +53,20 @@ import com.att.research.xacmlatt.pdp.policy.PolicyDefaults;
  * @version $Revision: 1.2 $
  */
 public class AttributeSelector extends AttributeRetrievalBase {
+	/*
+	 * XPathFactory.newInstance() searches for an implementation each time it is called, and neither it nor
+	 * the XPath objects it makes are thread-safe, so each thread keeps its own XPath.
+	 */
+	private static final ThreadLocal<XPath> threadXPath	= ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+	
+	/*
+	 * The most compiled Paths a selector keeps while they are not being evaluated
+	 */
+	private static final int MAX_IDLE_COMPILED_PATHS	= 8;
+	
 	private Identifier 		contextSelectorId;
 	private String			path;
+	private final ConcurrentLinkedDeque<CompiledPath> idleCompiledPaths	= new ConcurrentLinkedDeque<>();
 	@SuppressWarnings("unused")
 	private DataType<?> 	dataType;
 	
@@ -72,6 +88,72 @@ public class AttributeSelector extends AttributeRetrievalBase {
 		}
 	}
 
+	/**
+	 * CompiledPath is the compiled Path.  Namespace prefixes in the Path are resolved against the document holding
+	 * the Content when it is compiled, so it records the prefixes it looked up and is only reused for Content where
+	 * those prefixes mean the same thing.  An <code>XPathExpression</code> is not thread-safe, so a CompiledPath is
+	 * used by one evaluation at a time.
+	 */
+	private static class CompiledPath implements NamespaceContext {
+		private final String path;
+		private final Map<String,String> namespaces	= new HashMap<>();
+		private NamespaceContext namespaceContext;
+		private XPathExpression xPathExpression;
+		
+		CompiledPath(String pathIn, NamespaceContext namespaceContextIn) throws XPathExpressionException {
+			this.path				= pathIn;
+			this.namespaceContext	= namespaceContextIn;
+			XPath xPath	= threadXPath.get();
+			xPath.setNamespaceContext(this);
+			try {
+				this.xPathExpression	= xPath.compile(pathIn);
+			} finally {
+				//
+				// Do not hold on to the Content after the prefixes have been resolved, and do not leave this
+				// selector's classes reachable from the thread's XPath
+				//
+				this.namespaceContext	= null;
+				xPath.reset();
+			}
+		}
+		
+		boolean isValidFor(String pathIn, NamespaceContext namespaceContextIn) {
+			if (!this.path.equals(pathIn)) {
+				return false;
+			}
+			for (Map.Entry<String,String> entry : this.namespaces.entrySet()) {
+				String namespaceURI	= namespaceContextIn.getNamespaceURI(entry.getKey());
+				if (namespaceURI == null ? entry.getValue() != null : !namespaceURI.equals(entry.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		XPathExpression getXPathExpression() {
+			return this.xPathExpression;
+		}
+
+		@Override
+		public String getNamespaceURI(String prefix) {
+			if (this.namespaceContext != null && !this.namespaces.containsKey(prefix)) {
+				this.namespaces.put(prefix, this.namespaceContext.getNamespaceURI(prefix));
+			}
+			return this.namespaces.get(prefix);
+		}
+
+		@Override
+		public String getPrefix(String namespaceURI) {
+			return null;
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Iterator getPrefixes(String namespaceURI) {
+			return null;
+		}
+	}
+	
 	public AttributeSelector(StatusCode statusCodeIn, String statusMessageIn) {
 		super(statusCodeIn, statusMessageIn);
 	}
@@ -111,6 +193,32 @@ public class AttributeSelector extends AttributeRetrievalBase {
 		}
 	}
 	
+	/*
+	 * Takes an idle Path compiled for Content in the given Document, or compiles a new one.  The caller hands it back
+	 * with returnCompiledPath when it is done evaluating it.
+	 */
+	private CompiledPath takeCompiledPath(Document document) throws XPathExpressionException {
+		String thisPath						= this.getPath();
+		NamespaceContext namespaceContext	= new NodeNamespaceContext(document);
+		for (CompiledPath compiledPath : this.idleCompiledPaths) {
+			if (compiledPath.isValidFor(thisPath, namespaceContext) && this.idleCompiledPaths.remove(compiledPath)) {
+				return compiledPath;
+			}
+		}
+		return new CompiledPath(thisPath, namespaceContext);
+	}
+	
+	/*
+	 * Keeps the most recently used compiled Paths, so a selector holds at most a few no matter how many threads
+	 * evaluate it
+	 */
+	private void returnCompiledPath(CompiledPath compiledPath) {
+		this.idleCompiledPaths.offerFirst(compiledPath);
+		while (this.idleCompiledPaths.size() > MAX_IDLE_COMPILED_PATHS) {
+			this.idleCompiledPaths.pollLast();
+		}
+	}
+	
 	/**
 	 * If there is a context selector ID, get the attributes from the given <code>RequestAttributes</code> with that
 	 * ID, ensure they are <code>XPathExpression</code>s and return them.
@@ -204,22 +312,25 @@ public class AttributeSelector extends AttributeRetrievalBase {
 				 */
 				if (listNodesToQuery.size() > 0) {
 					for (Node nodeToQuery : listNodesToQuery) {
-						NodeList nodeList	= null;
+						NodeList nodeList			= null;
+						CompiledPath compiledPath	= null;
 						try {
-							XPath xPath	= XPathFactory.newInstance().newXPath();
-							xPath.setNamespaceContext(new NodeNamespaceContext(nodeToQuery.getOwnerDocument()));
-							XPathExpression xPathExpression	= xPath.compile(this.getPath());
+							compiledPath	= this.takeCompiledPath(nodeToQuery.getOwnerDocument());
 							Node nodeToQueryDocumentRoot	= null;
 							try {
-								nodeToQueryDocumentRoot	= DOMUtil.getDirectDocumentChild(nodeToQuery);
+								nodeToQueryDocumentRoot	= evaluationContext.getContentDocumentRoot(nodeToQuery);
 							} catch (DOMStructureException ex) {
 								return ExpressionResult.newError(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Exception processing context node: " + ex.getMessage()));
 							}
-							nodeList	= (NodeList)xPathExpression.evaluate(nodeToQueryDocumentRoot, XPathConstants.NODESET);
+							nodeList	= (NodeList)compiledPath.getXPathExpression().evaluate(nodeToQueryDocumentRoot, XPathConstants.NODESET);
 						} catch (XPathExpressionException ex) {
 							if (statusFirstError == null) {
 								statusFirstError	= new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "XPathExpressionException: " + ex.getMessage());
 							}
+						} finally {
+							if (compiledPath != null) {
+								this.returnCompiledPath(compiledPath);
+							}
 						}
 						if (nodeList != null && nodeList.getLength() > 0) {
 							for (int i = 0 ; i < nodeList.getLength() ; i++) {
@@ -28,8 +28,8 @@ import com.att.research.xacmlatt.pdp.policy.PolicyDefaults;
  */
 public class Function extends Expression {
 	private Identifier functionId;
-	private AttributeValue<URI> attributeValue;
-	private ExpressionResult expressionResultOk;
+	private volatile AttributeValue<URI> attributeValue;
+	private volatile ExpressionResult expressionResultOk;
 	
 	protected ExpressionResult getExpressionResultOk() {
 		if (this.expressionResultOk == null) {
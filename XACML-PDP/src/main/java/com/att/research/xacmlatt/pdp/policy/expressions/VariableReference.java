@@ -30,7 +30,7 @@ public class VariableReference extends Expression implements Traceable {
 	
 	private Policy policy;
 	private String variableId;
-	private VariableDefinition variableDefinition;
+	private volatile VariableDefinition variableDefinition;
 	
 	protected VariableDefinition getVariableDefinition() {
 		if (this.variableDefinition == null) {
@@ -92,7 +92,22 @@ public class VariableReference extends Expression implements Traceable {
 			return ER_SE_NO_EXPRESSION;
 		}
 		
-		ExpressionResult result = expression.evaluate(evaluationContext, policyDefaults);
+		/*
+		 * A variable has the same value everywhere it is referenced in a decision, so it is only evaluated the first time.
+		 * Indeterminate results are kept as well, so that every reference sees the same status.
+		 */
+		ExpressionResult result = evaluationContext.getVariableResult(variableDefinition);
+		if (result != null) {
+			if (evaluationContext.isTracing()) {
+				evaluationContext.trace(new StdTraceEvent<ExpressionResult>("Variable (cached)", this, result));
+			}
+			return result;
+		}
+		
+		result = expression.evaluate(evaluationContext, policyDefaults);
+		if (result != null) {
+			evaluationContext.setVariableResult(variableDefinition, result);
+		}
 		
 		if (evaluationContext.isTracing()) {
 			evaluationContext.trace(new StdTraceEvent<ExpressionResult>("Variable", this, result));
@@ -29,7 +29,7 @@ public class StdCombiningAlgorithmFactory extends CombiningAlgorithmFactory {
 		= new HashMap<Identifier,CombiningAlgorithm<Rule>>();
 	private static Map<Identifier,CombiningAlgorithm<PolicySetChild>> 		mapPolicyCombiningAlgorithms	
 		= new HashMap<Identifier,CombiningAlgorithm<PolicySetChild>>();
-	private static boolean needInit	= true;
+	private static volatile boolean needInit	= true;
 	
 	protected static void registerRuleCombiningAlgorithm(CombiningAlgorithm<Rule> ruleCombiningAlgorithm) {
 		mapRuleCombiningAlgorithms.put(ruleCombiningAlgorithm.getId(), ruleCombiningAlgorithm);
@@ -44,7 +44,6 @@ public class StdCombiningAlgorithmFactory extends CombiningAlgorithmFactory {
 		if (needInit) {
 			synchronized(mapRuleCombiningAlgorithms) {
 				if (needInit) {
-					needInit	= false;
 					Field[]	declaredFields	= StdCombiningAlgorithms.class.getFields();
 					for (Field field : declaredFields) {
 						if (Modifier.isStatic(field.getModifiers()) &&
@@ -63,6 +62,7 @@ public class StdCombiningAlgorithmFactory extends CombiningAlgorithmFactory {
 							}
 						}
 					}
+					needInit	= false;
 				}
 			}
 		}
@@ -6,10 +6,13 @@
 package com.att.research.xacmlatt.pdp.std;
 
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
 
 import com.att.research.xacml.api.IdReferenceMatch;
 import com.att.research.xacml.api.Request;
@@ -21,15 +24,19 @@ import com.att.research.xacml.api.pip.PIPResponse;
 import com.att.research.xacml.api.trace.TraceEngine;
 import com.att.research.xacml.api.trace.TraceEngineFactory;
 import com.att.research.xacml.api.trace.TraceEvent;
+import com.att.research.xacml.std.dom.DOMStructureException;
+import com.att.research.xacml.std.dom.DOMUtil;
 import com.att.research.xacml.std.pip.engines.RequestEngine;
 import com.att.research.xacml.std.pip.finders.RequestFinder;
 import com.att.research.xacml.util.FactoryException;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
 import com.att.research.xacmlatt.pdp.policy.Policy;
 import com.att.research.xacmlatt.pdp.policy.PolicyDef;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinder;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinderResult;
 import com.att.research.xacmlatt.pdp.policy.PolicySet;
+import com.att.research.xacmlatt.pdp.policy.VariableDefinition;
 
 /**
  * StdEvaluationContext implements the {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext} interface using
@@ -46,6 +53,8 @@ public class StdEvaluationContext implements EvaluationContext {
 	private PolicyFinder policyFinder;
 	private TraceEngine traceEngine;
     private boolean shutdown = false;
+	private Map<Node, Node> contentDocumentRoots;
+	private Map<VariableDefinition, ExpressionResult> variableResults;
 	
 	/**
 	 * Creates a new <code>StdEvaluationContext</code> with the given {@link com.att.research.xacml.api.Request} and
@@ -114,6 +123,11 @@ public class StdEvaluationContext implements EvaluationContext {
 		return this.requestFinder.getAttributes(pipRequest, exclude, pipFinderRoot);
 	}
 
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderRoot) throws PIPException {
+		return this.requestFinder.getAttributes(pipRequests, exclude, pipFinderRoot);
+	}
+
 	@Override
 	public PolicyFinderResult<PolicyDef> getRootPolicyDef() {
 		return this.policyFinder.getRootPolicyDef(this);
@@ -162,6 +176,50 @@ public class StdEvaluationContext implements EvaluationContext {
 		return this.requestFinder.getPIPEngines();
 	}
 
+	/**
+	 * Copies each Content <code>Node</code> once and hands out the same copy to every <code>AttributeSelector</code>
+	 * evaluated in this <code>StdEvaluationContext</code>.  The copies are only read, never changed.
+	 */
+	@Override
+	public synchronized Node getContentDocumentRoot(Node nodeContent) throws DOMStructureException {
+		if (this.contentDocumentRoots == null) {
+			this.contentDocumentRoots	= new IdentityHashMap<>();
+		}
+		Node nodeContentDocumentRoot	= this.contentDocumentRoots.get(nodeContent);
+		if (nodeContentDocumentRoot == null) {
+			nodeContentDocumentRoot	= DOMUtil.getDirectDocumentChild(nodeContent);
+			this.contentDocumentRoots.put(nodeContent, nodeContentDocumentRoot);
+		}
+		return nodeContentDocumentRoot;
+	}
+
+	/**
+	 * A <code>StdEvaluationContext</code> lasts for one individual decision, so a variable evaluated once here
+	 * has the same value for every other reference to it.
+	 */
+	@Override
+	public synchronized ExpressionResult getVariableResult(VariableDefinition variableDefinition) {
+		return (this.variableResults == null ? null : this.variableResults.get(variableDefinition));
+	}
+
+	@Override
+	public synchronized void setVariableResult(VariableDefinition variableDefinition, ExpressionResult expressionResult) {
+		if (this.variableResults == null) {
+			this.variableResults	= new IdentityHashMap<>();
+		}
+		this.variableResults.put(variableDefinition, expressionResult);
+	}
+
+	@Override
+	public Collection<PIPRequest> getAttributesFetched() {
+		return this.requestFinder.getAttributesFetched();
+	}
+
+	@Override
+	public void prefetchAttributes(Collection<PIPRequest> pipRequests) throws PIPException {
+		this.requestFinder.prefetchAttributes(pipRequests);
+	}
+
     @Override
     public void shutdown() {
         this.policyFinder.shutdown();
@@ -13,10 +13,14 @@ import org.slf4j.LoggerFactory;
 
 import com.att.research.xacml.api.Request;
 import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPFinderFactory;
 import com.att.research.xacml.api.trace.TraceEngine;
 import com.att.research.xacml.api.trace.TraceEngineFactory;
+import com.att.research.xacml.std.pip.finders.MultipleDecisionFinder;
+import com.att.research.xacml.std.pip.finders.PIPDependencies;
+import com.att.research.xacml.util.FactoryException;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinder;
@@ -26,15 +30,24 @@ import com.att.research.xacmlatt.pdp.policy.PolicyFinderFactory;
  * StdEvaluationContextFactory extends {@link com.att.research.xacmlatt.pdp.eval.EvaluationContextFactory} to implement
  * the <code>getEvaluationContext</code> method with a standard {@link com.att.research.xacmlatt.pdp.eval.EvaluationContext}.
  * 
+ * The shared <code>PolicyFinder</code>, <code>PIPFinder</code> and <code>TraceEngine</code> are created lazily on first use,
+ * or by <code>prepare</code>, and then read without locking, so <code>getEvaluationContext</code> may be called concurrently.
+ * 
+ * The <code>EvaluationContextFactory</code> returned by <code>newMultipleDecisionFactory</code> puts a
+ * {@link com.att.research.xacml.std.pip.finders.MultipleDecisionFinder} in front of the shared <code>PIPFinder</code>, so that
+ * the individual decisions of one request fetch an attribute they have in common only once.
+ * 
  * @author car
  * @version $Revision: 1.1 $
  */
 public class StdEvaluationContextFactory extends EvaluationContextFactory {
 	private final Logger logger	= LoggerFactory.getLogger(this.getClass());
-	private PolicyFinder policyFinder;
-	private PIPFinder pipFinder;
-	private TraceEngine traceEngine;
-    private boolean shutdown = false;
+	private volatile PolicyFinder policyFinder;
+	private volatile PIPFinder pipFinder;
+	private volatile TraceEngine traceEngine;
+	private volatile FinderDependencies finderDependencies;
+	private volatile long configurationVersion;
+    private volatile boolean shutdown = false;
 	
 	/**
      * Should this properties file be passed onward when instantiating the PolicyFinder and the
@@ -56,68 +69,97 @@ public class StdEvaluationContextFactory extends EvaluationContextFactory {
      */
 	protected Properties properties = null;
 
-	protected synchronized PolicyFinder getPolicyFinder() {
+	private PolicyFinder newPolicyFinder() throws FactoryException {
+		if (this.properties == null) {
+			this.logger.debug("getting Policy finder using default properties");
+			PolicyFinderFactory policyFinderFactory	= PolicyFinderFactory.newInstance();
+			return policyFinderFactory.getPolicyFinder();
+		} else {
+			this.logger.debug("getting Policy finder using properties: {}", this.properties);
+			PolicyFinderFactory policyFinderFactory	= PolicyFinderFactory.newInstance(this.properties);
+			return policyFinderFactory.getPolicyFinder(this.properties);
+		}
+	}
+	
+	private PIPFinder newPIPFinder() throws FactoryException, PIPException {
+		if (this.properties == null) {
+			this.logger.debug("getting PIP finder using default properties");
+			PIPFinderFactory pipFinderFactory	= PIPFinderFactory.newInstance();
+			return pipFinderFactory.getFinder();
+		} else {
+			this.logger.debug("getting PIP finder using properties: {}", this.properties);
+			PIPFinderFactory pipFinderFactory	= PIPFinderFactory.newInstance(this.properties);
+			return pipFinderFactory.getFinder(this.properties);
+		}
+	}
+
+	protected PolicyFinder getPolicyFinder() {
         if (this.shutdown) {
             return null;
         }
-		if (this.policyFinder == null) {
-			try {
-				if (this.properties == null) {
-					this.logger.debug("getting Policy finder using default properties");
-					PolicyFinderFactory policyFinderFactory	= PolicyFinderFactory.newInstance();
-					this.policyFinder	= policyFinderFactory.getPolicyFinder();
-				} else {
-					this.logger.debug("getting Policy finder using properties: {}", this.properties);
-					PolicyFinderFactory policyFinderFactory	= PolicyFinderFactory.newInstance(this.properties);
-					this.policyFinder	= policyFinderFactory.getPolicyFinder(this.properties);
+		PolicyFinder thisPolicyFinder	= this.policyFinder;
+		if (thisPolicyFinder == null) {
+			synchronized(this) {
+				thisPolicyFinder	= this.policyFinder;
+				if (thisPolicyFinder == null) {
+					try {
+						this.policyFinder	= this.newPolicyFinder();
+					} catch (Exception ex) {
+						this.logger.error("Exception getting PolicyFinder: " + ex.getMessage(), ex);
+					}
+					thisPolicyFinder	= this.policyFinder;
 				}
-			} catch (Exception ex) {
-				this.logger.error("Exception getting PolicyFinder: " + ex.getMessage(), ex);
 			}
 		}
-		return this.policyFinder;
+		return thisPolicyFinder;
 	}
 	
-	protected synchronized PIPFinder getPIPFinder() {
+	protected PIPFinder getPIPFinder() {
         if (this.shutdown) {
             return null;
         }
-		if (this.pipFinder == null) {
-			try {
-				if (this.properties == null) {
-					this.logger.debug("getting PIP finder using default properties");
-					PIPFinderFactory pipFinderFactory	= PIPFinderFactory.newInstance();
-					this.pipFinder						= pipFinderFactory.getFinder();
-				} else {
-					this.logger.debug("getting PIP finder using properties: {}", this.properties);
-					PIPFinderFactory pipFinderFactory	= PIPFinderFactory.newInstance(this.properties);
-					this.pipFinder						= pipFinderFactory.getFinder(this.properties);
+		PIPFinder thisPIPFinder	= this.pipFinder;
+		if (thisPIPFinder == null) {
+			synchronized(this) {
+				thisPIPFinder	= this.pipFinder;
+				if (thisPIPFinder == null) {
+					try {
+						this.pipFinder	= this.newPIPFinder();
+					} catch (Exception ex) {
+						this.logger.error("Exception getting PIPFinder: " + ex.toString(), ex);
+					}
+					thisPIPFinder	= this.pipFinder;
 				}
-			} catch (Exception ex) {
-				this.logger.error("Exception getting PIPFinder: " + ex.toString(), ex);
 			}
 		}
-		return this.pipFinder;
+		return thisPIPFinder;
 	}
 	
-	protected synchronized TraceEngine getTraceEngine() {
+	protected TraceEngine getTraceEngine() {
         if (this.shutdown) {
             return null;
         }
-		if (this.traceEngine == null) {
-			try {
-				if (this.properties == null) {
-					TraceEngineFactory traceEngineFactory	= TraceEngineFactory.newInstance();
-					this.traceEngine	= traceEngineFactory.getTraceEngine();
-				} else {
-					TraceEngineFactory traceEngineFactory	= TraceEngineFactory.newInstance(this.properties);
-					this.traceEngine	= traceEngineFactory.getTraceEngine(this.properties);
+		TraceEngine thisTraceEngine	= this.traceEngine;
+		if (thisTraceEngine == null) {
+			synchronized(this) {
+				thisTraceEngine	= this.traceEngine;
+				if (thisTraceEngine == null) {
+					try {
+						if (this.properties == null) {
+							TraceEngineFactory traceEngineFactory	= TraceEngineFactory.newInstance();
+							this.traceEngine	= traceEngineFactory.getTraceEngine();
+						} else {
+							TraceEngineFactory traceEngineFactory	= TraceEngineFactory.newInstance(this.properties);
+							this.traceEngine	= traceEngineFactory.getTraceEngine(this.properties);
+						}
+					} catch (Exception ex) {
+						this.logger.error("Exception getting TraceEngine: " + ex.toString(), ex);
+					}
+					thisTraceEngine	= this.traceEngine;
 				}
-			} catch (Exception ex) {
-				this.logger.error("Exception getting TraceEngine: " + ex.toString(), ex);
 			}
 		}
-		return this.traceEngine;
+		return thisTraceEngine;
 	}
 	
 	public StdEvaluationContextFactory() {
@@ -127,30 +169,155 @@ public class StdEvaluationContextFactory extends EvaluationContextFactory {
 		this.properties = properties;
 	}
 
-	@Override
-	public EvaluationContext getEvaluationContext(Request request) {
+	/*
+	 * The individual decisions of one request, sharing a MultipleDecisionFinder
+	 */
+	private static class MultipleDecisionFactory extends EvaluationContextFactory {
+		private final StdEvaluationContextFactory evaluationContextFactory;
+		private final MultipleDecisionFinder pipFinder;
+		
+		MultipleDecisionFactory(StdEvaluationContextFactory evaluationContextFactoryIn, MultipleDecisionFinder pipFinderIn) {
+			this.evaluationContextFactory	= evaluationContextFactoryIn;
+			this.pipFinder					= pipFinderIn;
+		}
+		
+		@Override
+		public EvaluationContext getEvaluationContext(Request request) {
+			return this.evaluationContextFactory.getEvaluationContext(request, this.pipFinder);
+		}
+		
+		@Override
+		public long getConfigurationVersion() {
+			return this.evaluationContextFactory.getConfigurationVersion();
+		}
+		
+		@Override
+		public void setPolicyFinder(PolicyFinder policyFinder) {
+			this.evaluationContextFactory.setPolicyFinder(policyFinder);
+		}
+		
+		@Override
+		public void setPIPFinder(PIPFinder pipFinder) {
+			this.evaluationContextFactory.setPIPFinder(pipFinder);
+		}
+		
+		/*
+		 * Only the responses of this request are discarded, the StdEvaluationContextFactory is shared
+		 */
+		@Override
+		public void shutdown() {
+			this.pipFinder.shutdown();
+		}
+	}
+	
+	/*
+	 * The PIPDependencies together with the PIPFinder they were found from, so that they are never used with another one
+	 */
+	private static final class FinderDependencies {
+		private final PIPFinder pipFinder;
+		private final PIPDependencies pipDependencies;
+		
+		FinderDependencies(PIPFinder pipFinderIn) {
+			this.pipFinder			= pipFinderIn;
+			this.pipDependencies	= new PIPDependencies(pipFinderIn);
+		}
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacml.std.pip.finders.PIPDependencies} for the given <code>PIPFinder</code>.  Only the
+	 * dependencies of the most recent <code>PIPFinder</code> asked for are kept; they are found again when another one is asked for.
+	 * 
+	 * @param thisPIPFinder the <code>PIPFinder</code> whose engines the dependencies are found from
+	 * @return the <code>PIPDependencies</code> for <code>thisPIPFinder</code>
+	 */
+	protected PIPDependencies getPIPDependencies(PIPFinder thisPIPFinder) {
+		FinderDependencies thisFinderDependencies	= this.finderDependencies;
+		if (thisFinderDependencies == null || thisFinderDependencies.pipFinder != thisPIPFinder) {
+			synchronized(this) {
+				thisFinderDependencies	= this.finderDependencies;
+				if (thisFinderDependencies == null || thisFinderDependencies.pipFinder != thisPIPFinder) {
+					this.finderDependencies	= thisFinderDependencies	= new FinderDependencies(thisPIPFinder);
+				}
+			}
+		}
+		return thisFinderDependencies.pipDependencies;
+	}
+	
+	private EvaluationContext getEvaluationContext(Request request, PIPFinder thisPIPFinder) {
         if (this.shutdown) {
             return null;
         }
 		if (this.properties == null) {
-			return new StdEvaluationContext(request, this.getPolicyFinder(), this.getPIPFinder(), this.getTraceEngine());
+			return new StdEvaluationContext(request, this.getPolicyFinder(), thisPIPFinder, this.getTraceEngine());
 		} else {
-			return new StdEvaluationContext(request, this.getPolicyFinder(), this.getPIPFinder(), this.getTraceEngine(), this.properties);
+			return new StdEvaluationContext(request, this.getPolicyFinder(), thisPIPFinder, this.getTraceEngine(), this.properties);
+		}
+	}
+
+	@Override
+	public EvaluationContext getEvaluationContext(Request request) {
+		return this.getEvaluationContext(request, this.getPIPFinder());
+	}
+	
+	@Override
+	public EvaluationContextFactory newMultipleDecisionFactory() {
+		PIPFinder thisPIPFinder	= this.getPIPFinder();
+		if (thisPIPFinder == null) {
+			return this;
+		}
+		return new MultipleDecisionFactory(this, new MultipleDecisionFinder(thisPIPFinder, this.getPIPDependencies(thisPIPFinder)));
+	}
+
+	/**
+	 * Creates the <code>PolicyFinder</code> and the <code>PIPFinder</code> now if they have not been created or set yet, so that
+	 * a configuration they cannot be created from is reported here rather than by the first decision.
+	 */
+	@Override
+	public synchronized void prepare() throws FactoryException {
+		if (this.shutdown) {
+			throw new FactoryException("EvaluationContextFactory has been shut down");
 		}
+		if (this.policyFinder == null) {
+			this.policyFinder	= this.newPolicyFinder();
+			if (this.policyFinder == null) {
+				throw new FactoryException("No PolicyFinder");
+			}
+		}
+		if (this.pipFinder == null) {
+			try {
+				this.pipFinder	= this.newPIPFinder();
+			} catch (PIPException ex) {
+				throw new FactoryException("Exception getting PIPFinder: " + ex.getMessage(), ex);
+			}
+			if (this.pipFinder == null) {
+				throw new FactoryException("No PIPFinder");
+			}
+		}
+	}
+
+	@Override
+	public long getConfigurationVersion() {
+		return this.configurationVersion;
 	}
 
+	/*
+	 * The version only changes after the new finder is visible
+	 */
 	@Override
 	public synchronized void setPolicyFinder(PolicyFinder policyFinderIn) {
 		this.policyFinder	= policyFinderIn;
+		this.configurationVersion++;
 	}
 
 	@Override
 	public synchronized void setPIPFinder(PIPFinder pipFinderIn) {
-		this.pipFinder		= pipFinderIn;
+		this.pipFinder			= pipFinderIn;
+		this.finderDependencies	= null;
+		this.configurationVersion++;
 	}
 
     @Override
-    public void shutdown() {
+    public synchronized void shutdown() {
         if (this.pipFinder != null) {
             this.pipFinder.shutdown();
             for (PIPEngine pipEngine : this.pipFinder.getPIPEngines()) {
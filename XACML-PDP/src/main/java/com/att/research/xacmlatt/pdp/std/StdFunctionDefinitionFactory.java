@@ -24,7 +24,7 @@ import com.att.research.xacmlatt.pdp.policy.FunctionDefinitionFactory;
  */
 public class StdFunctionDefinitionFactory extends FunctionDefinitionFactory {
 	private static Map<Identifier,FunctionDefinition> 	mapFunctionDefinitions	= new HashMap<Identifier,FunctionDefinition>();
-	private static boolean								needMapInit				= true;
+	private static volatile boolean							needMapInit				= true;
 	
 	private static void register(FunctionDefinition functionDefinition) {
 		mapFunctionDefinitions.put(functionDefinition.getId(), functionDefinition);
@@ -34,7 +34,6 @@ public class StdFunctionDefinitionFactory extends FunctionDefinitionFactory {
 		if (needMapInit) {
 			synchronized(mapFunctionDefinitions) {
 				if (needMapInit) {
-					needMapInit	= false;
 					Field[] declaredFields	= StdFunctions.class.getDeclaredFields();
 					for (Field field : declaredFields) {
 						if (Modifier.isStatic(field.getModifiers()) && 
@@ -49,6 +48,7 @@ public class StdFunctionDefinitionFactory extends FunctionDefinitionFactory {
 							}
 						}
 					}
+					needMapInit	= false;
 				}
 			}
 		}
@@ -11,17 +11,19 @@ import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.att.research.xacml.api.IdReferenceMatch;
 import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.pip.PIPRequest;
 import com.att.research.xacml.api.Version;
 import com.att.research.xacml.std.StdStatus;
 import com.att.research.xacml.std.StdStatusCode;
@@ -29,17 +31,32 @@ import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
 import com.att.research.xacmlatt.pdp.eval.EvaluationException;
 import com.att.research.xacmlatt.pdp.eval.MatchResult;
 import com.att.research.xacmlatt.pdp.policy.Policy;
+import com.att.research.xacmlatt.pdp.policy.PolicyCompiler;
 import com.att.research.xacmlatt.pdp.policy.PolicyDef;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinder;
 import com.att.research.xacmlatt.pdp.policy.PolicyFinderResult;
 import com.att.research.xacmlatt.pdp.policy.PolicySet;
 import com.att.research.xacmlatt.pdp.policy.PolicySetChild;
+import com.att.research.xacmlatt.pdp.policy.TargetIndex;
 import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
 
 /**
  * StdPolicyFinder implements the {@link com.att.research.xacmlatt.pdp.policy.PolicyFinder} interface to look up policies
  * by their internal ID or an externally visible ID.
  * 
+ * The root policy list is fixed at construction time.  The policy map may still grow while decisions are being made
+ * (policies fetched by URL are cached on first reference), so it is kept in concurrent collections.
+ * 
+ * When there is more than one root policy their <code>Target</code>s are compiled into a
+ * {@link com.att.research.xacmlatt.pdp.policy.TargetIndex} so that only the roots that can possibly match a request
+ * are evaluated.
+ * 
+ * When <code>xacml.att.policyFinderFactory.compilePolicies</code> is true, the <code>Target</code>s of every policy the
+ * <code>StdPolicyFinder</code> holds are compiled with {@link com.att.research.xacmlatt.pdp.policy.PolicyCompiler}.  It is
+ * false by default, so policies are evaluated from the element tree unless compilation is asked for.  When
+ * <code>xacml.att.pip.prefetch</code> is true, the attributes each policy depends on are found as it is loaded.
+ * 
  * @author car
  * @version $Revision: 1.4 $
  */
@@ -53,9 +70,12 @@ public class StdPolicyFinder implements PolicyFinder {
 	private static final PolicyFinderResult<PolicySet> PFR_NOT_A_POLICYSET		= new StdPolicyFinderResult<>(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Not a policy set"));	
 
 	private final Logger logger	= LoggerFactory.getLogger(this.getClass());
-	private List<PolicyDef> listRoots					= new ArrayList<>();
-    private Map<Identifier, List<PolicyDef>> mapPolicies = new HashMap<>();
-    private boolean shutdown = false;
+	private final List<PolicyDef> listRoots				= new ArrayList<>();
+    private final Map<Identifier, List<PolicyDef>> mapPolicies = new ConcurrentHashMap<>();
+    private volatile boolean shutdown = false;
+    private TargetIndex<PolicyDef> rootIndex;
+    private final boolean compilePolicies;
+    private final boolean findDependencies;
 	
 	public static class StdPolicyFinderException extends Exception {
 		private static final long serialVersionUID = -8969282995787463288L;
@@ -68,12 +88,7 @@ public class StdPolicyFinder implements PolicyFinder {
 	}
 	
 	private void storeInPolicyMap(PolicyDef policyDef) {
-		List<PolicyDef> listPolicyDefs	= this.mapPolicies.get(policyDef.getIdentifier());
-		if (listPolicyDefs == null) {
-			listPolicyDefs	= new ArrayList<>();
-			this.mapPolicies.put(policyDef.getIdentifier(), listPolicyDefs);
-		}
-		listPolicyDefs.add(policyDef);
+		this.mapPolicies.computeIfAbsent(policyDef.getIdentifier(), id -> new CopyOnWriteArrayList<>()).add(policyDef);
 	}
 	
 	private <T extends PolicyDef> List<T> getFromPolicyMap(IdReferenceMatch idReferenceMatch, Class<T> classPolicyDef) {
@@ -148,6 +163,9 @@ public class StdPolicyFinder implements PolicyFinder {
 			
 			inputStream	= url.openStream();
 			policyDef	= DOMPolicyDef.load(inputStream);
+			if (policyDef != null) {
+				this.prepare(policyDef);
+			}
 		} catch (MalformedURLException ex) {
 			this.logger.debug("Unknown protocol for URI {}", uri);
 			return null;
@@ -190,7 +208,7 @@ public class StdPolicyFinder implements PolicyFinder {
 				}
 				if (policyDef != null) {
 					if (policyDef instanceof Policy) {
-						List<PolicyDef> listPolicyDefs	= new ArrayList<>();
+						List<PolicyDef> listPolicyDefs	= new CopyOnWriteArrayList<>();
 						listPolicyDefs.add(policyDef);
 						this.mapPolicies.put(id, listPolicyDefs);
 						this.mapPolicies.put(policyDef.getIdentifier(), listPolicyDefs);
@@ -230,7 +248,7 @@ public class StdPolicyFinder implements PolicyFinder {
 					return PFR_POLICYSET_NOT_FOUND;
 				}
 				if (policyDef instanceof PolicySet) {
-					List<PolicyDef> listPolicyDefs	= new ArrayList<>();
+					List<PolicyDef> listPolicyDefs	= new CopyOnWriteArrayList<>();
 					listPolicyDefs.add(policyDef);
 					this.mapPolicies.put(id, listPolicyDefs);
 					this.mapPolicies.put(policyDef.getIdentifier(), listPolicyDefs);
@@ -264,19 +282,62 @@ public class StdPolicyFinder implements PolicyFinder {
 		}
 	}
 	
-	public StdPolicyFinder(Collection<PolicyDef> listRootPolicies, Collection<PolicyDef> referencedPolicyDefs) {
+	private void buildRootIndex() {
+		this.rootIndex	= TargetIndex.newInstance(this.listRoots, policyDef -> (policyDef.validate() ? policyDef.getTarget() : null), 2);
+		if (this.rootIndex != null) {
+			logger.info("Indexed {} of {} root policy targets", this.rootIndex.getIndexedCount(), this.listRoots.size());
+		}
+	}
+	
+	private static boolean isCompilePolicies(Properties properties) {
+		String value	= (properties == null ? ATTPDPProperties.getProperty(ATTPDPProperties.PROP_POLICYFINDERFACTORY_COMPILEPOLICIES, null) 
+											  : properties.getProperty(ATTPDPProperties.PROP_POLICYFINDERFACTORY_COMPILEPOLICIES));
+		return (value != null && Boolean.parseBoolean(value.trim()));
+	}
+	
+	private static boolean isPrefetch(Properties properties) {
+		String value	= (properties == null ? ATTPDPProperties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH, null) 
+											  : properties.getProperty(ATTPDPProperties.PROP_PIP_PREFETCH));
+		return (value != null && Boolean.parseBoolean(value.trim()));
+	}
+	
+	/*
+	 * Compiles the PolicyDef and its children, which are all in the policy map by now, and finds the attributes they depend on
+	 * if they will be prefetched
+	 */
+	private void prepare(PolicyDef policyDef) {
+		if (this.compilePolicies) {
+			int compiled	= PolicyCompiler.compile(policyDef);
+			logger.debug("Compiled {} targets in {}", compiled, policyDef.getIdentifier());
+		}
+		if (this.findDependencies) {
+			Collection<PIPRequest> attributeDependencies	= policyDef.getAttributeDependencies();
+			logger.debug("{} depends on {} attributes", policyDef.getIdentifier(), attributeDependencies.size());
+		}
+	}
+	
+	private StdPolicyFinder(Collection<PolicyDef> listRootPolicies, Collection<PolicyDef> referencedPolicyDefs, boolean compilePoliciesIn, boolean findDependenciesIn) {
+		this.compilePolicies	= compilePoliciesIn;
+		this.findDependencies	= findDependenciesIn;
 		if (listRootPolicies != null) {
 			for (PolicyDef policyDef: listRootPolicies) {
 				logger.debug("Loading root policy {} version {}", policyDef.getIdentifier(), policyDef.getVersion());
 				this.listRoots.add(policyDef);
 				this.updatePolicyMap(policyDef);
+				this.prepare(policyDef);
 			}
 		}
 		if (referencedPolicyDefs != null) {
 			for (PolicyDef policyDef: referencedPolicyDefs) {
 				this.storeInPolicyMap(policyDef);
+				this.prepare(policyDef);
 			}
 		}
+		this.buildRootIndex();
+	}
+	
+	public StdPolicyFinder(Collection<PolicyDef> listRootPolicies, Collection<PolicyDef> referencedPolicyDefs) {
+		this(listRootPolicies, referencedPolicyDefs, isCompilePolicies(null), isPrefetch(null));
 	}
 	
 	/**
@@ -286,20 +347,24 @@ public class StdPolicyFinder implements PolicyFinder {
 	 * @param referencedPolicyDefs the <code>PolicyDef</code> acting as reference policies
 	 */
 	public StdPolicyFinder(PolicyDef rootPolicyDef, Collection<PolicyDef> referencedPolicyDefs) {
+		this.compilePolicies	= isCompilePolicies(null);
+		this.findDependencies	= isPrefetch(null);
 		if (rootPolicyDef != null) {
 			this.listRoots.add(rootPolicyDef);
 			this.updatePolicyMap(rootPolicyDef);
+			this.prepare(rootPolicyDef);
 		}
 		
 		if (referencedPolicyDefs != null) {
 			for (PolicyDef policyDef: referencedPolicyDefs) {
 				this.storeInPolicyMap(policyDef);
+				this.prepare(policyDef);
 			}
 		}
 	}
 	
 	public StdPolicyFinder(List<PolicyDef> rootPolicies, List<PolicyDef> referencedPolicies, Properties properties) {
-		this(rootPolicies, referencedPolicies);
+		this(rootPolicies, referencedPolicies, isCompilePolicies(properties), isPrefetch(properties));
 	}
 
 	@Override
@@ -309,7 +374,10 @@ public class StdPolicyFinder implements PolicyFinder {
         }
 		logger.debug("getRootPolicyDef called");
 		PolicyDef policyDefFirstMatch			= null;
-		Iterator<PolicyDef> iterRootPolicies	= this.listRoots.iterator();
+		//
+		// Roots the index rules out would all have been "No Match", which does not change the result
+		//
+		Iterator<PolicyDef> iterRootPolicies	= (this.rootIndex == null ? this.listRoots : this.rootIndex.getCandidates(evaluationContext)).iterator();
 		PolicyFinderResult<PolicyDef> firstIndeterminate	= null;
 		while (iterRootPolicies.hasNext()) {
 			PolicyDef policyDef	= iterRootPolicies.next();
@@ -20,6 +20,15 @@ public abstract class CombiningAlgorithmBase<T extends com.att.research.xacmlatt
 		return this.id;
 	}
 
+	/**
+	 * All of the standard combining algorithms treat an element whose <code>Target</code> does not match as
+	 * "NotApplicable" (or, for only-one-applicable, as not applicable) and otherwise skip over it.
+	 */
+	@Override
+	public boolean ignoresNonMatchingElements() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder stringBuilder	= new StringBuilder("{");
@@ -5,7 +5,6 @@
  */
 package com.att.research.xacmlatt.pdp.std.functions;
 
-import java.util.Iterator;
 import java.util.List;
 
 import com.att.research.xacml.api.AttributeValue;
@@ -105,17 +104,13 @@ public class FunctionDefinitionBagIsIn<I> extends FunctionDefinitionBase<Boolean
 	
 		Bag bag = convertedBagArgument.getBag();
 
-		Iterator<AttributeValue<?>> iterBagContents	= bag.getAttributeValues();
-		while (iterBagContents.hasNext()) {
-			AttributeValue<?> attributeValueBagContents	= iterBagContents.next();
-			
-			/*
-			 * Should we be checking the type of the bag contents and returning an error if the bag contents are not of the
-			 * right type?  The spec does not say this, so we just use the AttributeValue.equals() method for now.
-			 */
-			if (attributeValueElement.equals(attributeValueBagContents)) {
-				return ER_TRUE;
-			}
+		/*
+		 * Should we be checking the type of the bag contents and returning an error if the bag contents are not of the
+		 * right type?  The spec does not say this, so we just use the AttributeValue.equals() method for now.
+		 * Bag.contains uses AttributeValue.equals as well, but does not search large bags one value at a time.
+		 */
+		if (bag.contains(attributeValueElement)) {
+			return ER_TRUE;
 		}
 		
 		return ER_FALSE;
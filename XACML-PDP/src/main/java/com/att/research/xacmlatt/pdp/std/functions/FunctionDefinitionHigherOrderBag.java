@@ -7,11 +7,13 @@ package com.att.research.xacmlatt.pdp.std.functions;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.DataType;
+import com.att.research.xacml.api.DataTypeException;
 import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.std.IdentifierImpl;
 import com.att.research.xacml.std.StdStatus;
@@ -85,6 +87,50 @@ public class FunctionDefinitionHigherOrderBag<O,I> extends FunctionDefinitionBas
 	}
 
 
+	/*
+	 * Gets the value of the given AttributeValue if the equality predicate is certain to accept it, which is when it has the
+	 * predicate's data type and does not need converting.  Otherwise returns null.
+	 */
+	private static Object getEqualityValue(DataType<?> dataType, AttributeValue<?> attributeValue) {
+		if (attributeValue == null || attributeValue.getValue() == null || !dataType.getId().equals(attributeValue.getDataTypeId())) {
+			return null;
+		}
+		try {
+			return (dataType.convert(attributeValue.getValue()) == attributeValue.getValue() ? attributeValue.getValue() : null);
+		} catch (DataTypeException ex) {
+			return null;
+		}
+	}
+	
+	/*
+	 * With an equality predicate, any-of(value, bag) and any-of-any(bag1, bag2) just ask whether the bag contains one of the values,
+	 * which a large Bag answers from its index.  This is only done when the predicate would accept every value, so that it
+	 * could not have returned an error, and the result is the same as calling it on each pair.  Returns null otherwise.
+	 */
+	private static ExpressionResult evaluateEquality(FunctionDefinition predicate, Iterator<AttributeValue<?>> iterValues, Bag bag) {
+		if (predicate.getClass() != FunctionDefinitionEquality.class || bag.size() <= Bag.INDEX_THRESHOLD) {
+			return null;
+		}
+		DataType<?> dataType	= ((FunctionDefinitionEquality<?>) predicate).getDataTypeArgs();
+		if (!bag.isAllOfDataType(dataType)) {
+			return null;
+		}
+		List<Object> listValues	= new ArrayList<>();
+		while (iterValues.hasNext()) {
+			Object value	= getEqualityValue(dataType, iterValues.next());
+			if (value == null) {
+				return null;
+			}
+			listValues.add(value);
+		}
+		for (Object value : listValues) {
+			if (bag.containsValue(dataType.getId(), value)) {
+				return ER_TRUE;
+			}
+		}
+		return ER_FALSE;
+	}
+
 	@Override
 	public ExpressionResult evaluate(EvaluationContext evaluationContext, List<FunctionArgument> arguments) {
 
@@ -210,6 +256,14 @@ public class FunctionDefinitionHigherOrderBag<O,I> extends FunctionDefinitionBas
 				}
 			}
 			
+			// a value compared for equality with each value in a large bag
+			if (arguments.size() == 3 && indexOfBagInOriginalArgs == 2) {
+				ExpressionResult res = evaluateEquality(predicate, Collections.<AttributeValue<?>>singletonList(arguments.get(1).getValue()).iterator(), arguments.get(2).getBag());
+				if (res != null) {
+					return res;
+				}
+			}
+			
 			// get each primitive value in turn
 			bagIterator1 = arguments.get(indexOfBagInOriginalArgs).getBag().getAttributeValues();
 			while (bagIterator1.hasNext()) {
@@ -270,6 +324,16 @@ public class FunctionDefinitionHigherOrderBag<O,I> extends FunctionDefinitionBas
 							" Bag is empty at index " + i ));
 				}
 			}
+			// values compared for equality with each value in a large bag
+			if (arguments.size() == 3 && arguments.get(2).isBag()) {
+				Iterator<AttributeValue<?>> iterValues = (arguments.get(1).isBag() ? arguments.get(1).getBag().getAttributeValues() : 
+					Collections.<AttributeValue<?>>singletonList(arguments.get(1).getValue()).iterator());
+				ExpressionResult res = evaluateEquality(predicate, iterValues, arguments.get(2).getBag());
+				if (res != null) {
+					return res;
+				}
+			}
+			
 			// This is different from all the other Higher-order bag functions because it can take an unbounded number of arguments any/all of which may be bags.
 			// (The others take either an unbounded number of args of which exactly 1 is a bag, or they take exactly 2 bags)
 			// To handle the possibility of multiple bags without knowing a priori how many there might be,
@@ -7,7 +7,11 @@ package com.att.research.xacmlatt.pdp.std.functions;
 
 
 import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.DataType;
 import com.att.research.xacml.api.DataTypeException;
 import com.att.research.xacml.api.Identifier;
@@ -17,6 +21,10 @@ import com.att.research.xacml.std.datatypes.DataTypes;
 import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
 import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
 import com.att.research.xacmlatt.pdp.policy.FunctionArgument;
+import com.att.research.xacmlatt.pdp.policy.FunctionArgumentAttributeValue;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * FunctionDefinitionRegexMatch implements {@link com.att.research.xacmlatt.pdp.policy.FunctionDefinition} to
@@ -34,6 +42,11 @@ import com.att.research.xacmlatt.pdp.policy.FunctionArgument;
  * 		ipAddress-regexp-match
  * 		dnsName-regexp-match
  * 
+ * A regular expression given as a literal in a Match or Apply is compiled once, through {@link #prepareArgument(int, AttributeValue)}.
+ * Any other regular expression is compiled through this function's cache of <code>Pattern</code>s, bounded by the
+ * "xacml.att.function.regexp.cacheSize" property as it was when the function was created.  The functions in
+ * {@link com.att.research.xacmlatt.pdp.std.StdFunctions} that policies use are created once per class loader, so for them this is
+ * the global XACML property, not one in the <code>Properties</code> a PDP engine was created with.
  * 
  * @author glenngriffin
  * @version $Revision: 1.1 $
@@ -41,6 +54,55 @@ import com.att.research.xacmlatt.pdp.policy.FunctionArgument;
  * @param <I> the java class for the data type of the function Input arguments
  */
 public class FunctionDefinitionRegexpMatch<I> extends FunctionDefinitionBase<Boolean, I> {
+	public static final long DEFAULT_PATTERN_CACHESIZE	= 1000;
+	
+	private final Cache<String, Pattern> patternCache;
+	
+	/**
+	 * The literal regular expression argument, compiled when the <code>Match</code> or <code>Apply</code> was prepared.
+	 */
+	protected static class FunctionArgumentPattern extends FunctionArgumentAttributeValue {
+		private final Pattern pattern;
+		
+		public FunctionArgumentPattern(AttributeValue<?> attributeValueIn, Pattern patternIn) {
+			super(attributeValueIn);
+			this.pattern	= patternIn;
+		}
+		
+		public Pattern getPattern() {
+			return this.pattern;
+		}
+	}
+	
+	private static long getPatternCacheSize(Properties properties) {
+		String cacheSize	= (properties == null
+								? ATTPDPProperties.getProperty(ATTPDPProperties.PROP_FUNCTION_REGEXP_CACHESIZE, Long.toString(DEFAULT_PATTERN_CACHESIZE))
+								: properties.getProperty(ATTPDPProperties.PROP_FUNCTION_REGEXP_CACHESIZE, Long.toString(DEFAULT_PATTERN_CACHESIZE)));
+		try {
+			return Math.max(0, Long.parseLong(cacheSize.trim()));
+		} catch (NumberFormatException ex) {
+			return DEFAULT_PATTERN_CACHESIZE;
+		}
+	}
+	
+	/**
+	 * Gets the compiled <code>Pattern</code> for the given regular expression from the cache, compiling and caching it if it is not there.
+	 * 
+	 * @param regexp the <code>String</code> regular expression
+	 * @return the compiled <code>Pattern</code>
+	 * @throws PatternSyntaxException if the regular expression is not valid
+	 */
+	public Pattern getPattern(String regexp) {
+		Pattern pattern	= this.patternCache.getIfPresent(regexp);
+		if (pattern == null) {
+			//
+			// Two threads may compile the same regexp at once, which is harmless
+			//
+			pattern	= Pattern.compile(regexp);
+			this.patternCache.put(regexp, pattern);
+		}
+		return pattern;
+	}
 
 	
 	/**
@@ -50,10 +112,41 @@ public class FunctionDefinitionRegexpMatch<I> extends FunctionDefinitionBase<Boo
 	 * @param dataTypeArgsIn
 	 */
 	public FunctionDefinitionRegexpMatch(Identifier idIn, DataType<I> dataTypeArgsIn) {
+		this(idIn, dataTypeArgsIn, null);
+	}
+
+	/**
+	 * Constructor that sizes the <code>Pattern</code> cache from the given <code>Properties</code>, or from the
+	 * XACML properties if they are null.
+	 * 
+	 * @param idIn
+	 * @param dataTypeArgsIn
+	 * @param properties
+	 */
+	public FunctionDefinitionRegexpMatch(Identifier idIn, DataType<I> dataTypeArgsIn, Properties properties) {
 		super(idIn, DataTypes.DT_BOOLEAN, dataTypeArgsIn, false);
+		this.patternCache	= CacheBuilder.newBuilder()
+				.maximumSize(getPatternCacheSize(properties))
+				.build();
 	}
 
 
+	/**
+	 * Compiles a literal regular expression given as the first argument.  A literal that is not a valid regular expression is left
+	 * to <code>evaluate</code> so that it is reported the same way as any other.
+	 */
+	@Override
+	public FunctionArgument prepareArgument(int index, AttributeValue<?> attributeValue) {
+		if (index != 0 || !DataTypes.DT_STRING.getId().equals(attributeValue.getDataTypeId()) || !(attributeValue.getValue() instanceof String)) {
+			return null;
+		}
+		try {
+			return new FunctionArgumentPattern(attributeValue, Pattern.compile((String) attributeValue.getValue()));
+		} catch (PatternSyntaxException ex) {
+			return null;
+		}
+	}
+
 	@Override
 	public ExpressionResult evaluate(EvaluationContext evaluationContext, List<FunctionArgument> arguments) {
 
@@ -62,16 +155,25 @@ public class FunctionDefinitionRegexpMatch<I> extends FunctionDefinitionBase<Boo
 					((arguments == null) ? "null" : arguments.size()) ));
 		}
 		
-		// get the regular expression
+		// get the regular expression, already compiled if it was a literal
 		FunctionArgument regexpArgument = arguments.get(0);
-
-		ConvertedArgument<String> convertedArgument = new ConvertedArgument<String>(regexpArgument, DataTypes.DT_STRING, false);
-		if ( ! convertedArgument.isOk()) {
-			return ExpressionResult.newError(getFunctionStatus(convertedArgument.getStatus()));
+		Pattern pattern;
+		if (regexpArgument instanceof FunctionArgumentPattern) {
+			pattern	= ((FunctionArgumentPattern) regexpArgument).getPattern();
+		} else {
+			ConvertedArgument<String> convertedArgument = new ConvertedArgument<String>(regexpArgument, DataTypes.DT_STRING, false);
+			if ( ! convertedArgument.isOk()) {
+				return ExpressionResult.newError(getFunctionStatus(convertedArgument.getStatus()));
+			}
+			
+			// String regexpValue = (String)regexpArgument.getValue().getValue();
+			String regexpValue	= convertedArgument.getValue();
+			try {
+				pattern	= getPattern(regexpValue);
+			} catch (PatternSyntaxException e) {
+				return ExpressionResult.newError(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, this.getShortFunctionId() + " Invalid regular expression '" + regexpValue + "': " + e.getDescription()));
+			}
 		}
-		
-		// String regexpValue = (String)regexpArgument.getValue().getValue();
-		String regexpValue	= convertedArgument.getValue();
 
 		
 		// now get the element to match
@@ -97,7 +199,7 @@ public class FunctionDefinitionRegexpMatch<I> extends FunctionDefinitionBase<Boo
 		
 		// ConvertedArgument checks for null value, so do not need to do again here
 
-		if (elementValueString.matches(regexpValue)) {
+		if (pattern.matcher(elementValueString).matches()) {
 			return ER_TRUE;
 		} else {
 			return ER_FALSE;
@@ -5,7 +5,6 @@
  */
 package com.att.research.xacmlatt.pdp.std.functions;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.att.research.xacml.api.AttributeValue;
@@ -114,28 +113,20 @@ public class FunctionDefinitionSet<O,I> extends FunctionDefinitionBase<O, I> {
 		
 		// some functions return a bag rather than boolean
 		Bag outBag;
-		List<AttributeValue<?>> outList;
 		
 		
 		switch (operation) {
 		case INTERSECTION:
-			outList = new ArrayList<AttributeValue<?>>();
+			// the Bags index their values once they are large, so contains does not search the whole Bag
+			outBag = new Bag();
 			
 			for (AttributeValue<?> element : list1) {
-				if (outList.contains(element)) {
+				if (outBag.contains(element)) {
 					continue;
 				}
-				if (list2.contains(element)) {
-					outList.add(element);
-				}
-			}
-			
-			// now have the intersection; put it in a bag
-			
-			outBag = new Bag();
-			
-			for (AttributeValue<?> element : outList) {
+				if (bag2.contains(element)) {
 					outBag.add(element);
+				}
 			}
 
 			expressionResult = ExpressionResult.newBag(outBag);
@@ -149,7 +140,7 @@ public class FunctionDefinitionSet<O,I> extends FunctionDefinitionBase<O, I> {
 			// If the first bag is empty, this should fail because no element from the first set can be found in the second set 
 			// (because there IS no element in first set).
 			for (AttributeValue<?> element : list1) {
-				if (list2.contains(element)) {
+				if (bag2.contains(element)) {
 					return ER_TRUE;
 				}
 			}
@@ -157,27 +148,19 @@ public class FunctionDefinitionSet<O,I> extends FunctionDefinitionBase<O, I> {
 			return ER_FALSE;
 			
 		case UNION:
-			outList = new ArrayList<AttributeValue<?>>();
+			outBag = new Bag();
 			
 			for (AttributeValue<?> element : list1) {
-				if (outList.contains(element)) {
+				if (outBag.contains(element)) {
 					continue;
 				}
-				outList.add((AttributeValue<?>) element);
+				outBag.add((AttributeValue<?>) element);
 			}
 			for (AttributeValue<?> element : list2) {
-				if (outList.contains(element)) {
+				if (outBag.contains(element)) {
 					continue;
 				}
-				outList.add((AttributeValue<?>) element);
-			}
-			
-			// now have the intersection; put it in a bag
-			
-			outBag = new Bag();
-			
-			for (AttributeValue<?> element : outList) {
-				outBag.add(element);
+				outBag.add((AttributeValue<?>) element);
 			}
 
 			expressionResult = ExpressionResult.newBag(outBag);
@@ -190,7 +173,7 @@ public class FunctionDefinitionSet<O,I> extends FunctionDefinitionBase<O, I> {
 			// and if it is found the first time it will also be found for the duplicate.
 			// If the first set is empty we return TRUE because all elements (i.e. none) in the first set are in the second.
 			for (AttributeValue<?> element : list1) {
-				if ( ! list2.contains(element)) {
+				if ( ! bag2.contains(element)) {
 					return ER_FALSE;
 				}
 			}
@@ -204,12 +187,12 @@ public class FunctionDefinitionSet<O,I> extends FunctionDefinitionBase<O, I> {
 			//		are all elements in list 1 in list 2 (ignoring duplicates)
 			//		are all elements in list 2 in list 1 (ignoring duplicates)
 			for (AttributeValue<?> element : list1) {
-				if ( ! list2.contains(element)) {
+				if ( ! bag2.contains(element)) {
 					return ER_FALSE;
 				}
 			}
 			for (AttributeValue<?> element : list2) {
-				if ( ! list1.contains(element)) {
+				if ( ! bag1.contains(element)) {
 					return ER_FALSE;
 				}
 			}
@@ -15,6 +15,17 @@ public class ATTPDPProperties extends XACMLProperties {
 	public static final String PROP_FUNCTIONDEFINITIONFACTORY	= "xacml.att.functionDefinitionFactory";
 	public static final String PROP_POLICYFINDERFACTORY			= "xacml.att.policyFinderFactory";
 	public static final String PROP_POLICYFINDERFACTORY_COMBINEROOTPOLICIES = "xacml.att.policyFinderFactory.combineRootPolicies";
+	public static final String PROP_POLICYFINDERFACTORY_COMPILEPOLICIES = "xacml.att.policyFinderFactory.compilePolicies";
+	public static final String PROP_FUNCTION_REGEXP_CACHESIZE	= "xacml.att.function.regexp.cacheSize";
+	public static final String PROP_MULTIPLE_THREADS			= "xacml.att.multiple.threads";
+	public static final String PROP_MULTIPLE_PARALLELISM		= "xacml.att.multiple.parallelism";
+	public static final String PROP_DECISIONCACHE				= "xacml.att.decisionCache";
+	public static final String PROP_DECISIONCACHE_MAXIMUMSIZE	= "xacml.att.decisionCache.maximumSize";
+	public static final String PROP_DECISIONCACHE_TTL			= "xacml.att.decisionCache.ttl";
+	public static final String PROP_DECISIONCACHE_PIPTTL		= "xacml.att.decisionCache.pipTtl";
+	public static final String PROP_DECISIONCACHE_NONCACHEABLE	= "xacml.att.decisionCache.nonCacheable";
+	public static final String PROP_PIP_PREFETCH				= "xacml.att.pip.prefetch";
+	public static final String PROP_PIP_PREFETCH_THREADS		= "xacml.att.pip.prefetch.threads";
 	
 	public static final Identifier ID_POLICY_COMBINEDPERMITOVERRIDES = new IdentifierImpl("urn:com:att:xacml:3.0:policy-combining-algorithm:combined-permit-overrides");
 	public static final Identifier ID_POLICY_COMBINEDDENYOVERRIDES = new IdentifierImpl("urn:com:att:xacml:3.0:policy-combining-algorithm:combined-deny-overrides");
@@ -0,0 +1,204 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.Result;
+import com.att.research.xacml.api.pdp.PDPEngine;
+import com.att.research.xacml.api.pdp.PDPException;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+
+/**
+ * Drives a single shared {@link ATTPDPEngine} from many threads at once and checks that every decision matches the
+ * one the policies in <code>testsets/concurrency</code> call for.
+ */
+public class ATTPDPEngineConcurrencyTest {
+	private static final int THREADS				= 16;
+	private static final int REQUESTS_PER_THREAD	= 500;
+
+	private static final String[] ROLES		= {"admin", "manager", "auditor", "guest"};
+	private static final String[] ACTIONS	= {"read", "write", "delete"};
+	private static final String[] RESOURCES	= {"document", "audit-log", "printer"};
+
+	private static PDPEngine engine;
+
+	private static Properties newProperties() throws Exception {
+		Properties properties	= new Properties();
+		try (InputStream is = new FileInputStream("src/test/resources/testsets/concurrency/xacml.properties")) {
+			properties.load(is);
+		}
+		return properties;
+	}
+
+	private static PDPEngine newEngine() throws Exception {
+		return new ATTPDPEngineFactory().newEngine(newProperties());
+	}
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		engine	= newEngine();
+		assertNotNull(engine);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		if (engine != null) {
+			engine.shutdown();
+		}
+	}
+
+	private static Decision expectedDecision(String role, String action, String resource) {
+		switch (resource) {
+		case "document":
+			if ("delete".equals(action)) {
+				return ("admin".equals(role) ? Decision.PERMIT : Decision.DENY);
+			}
+			if ("admin".equals(role) || "manager".equals(role) || "read".equals(action)) {
+				return Decision.PERMIT;
+			}
+			return Decision.NOTAPPLICABLE;
+		case "audit-log":
+			return ("auditor".equals(role) ? Decision.PERMIT : Decision.DENY);
+		default:
+			return Decision.NOTAPPLICABLE;
+		}
+	}
+
+	private static Request newRequest(String subject, String role, String action, String resource) throws Exception {
+		String json	= "{\"Request\":{"
+				+ "\"AccessSubject\":[{\"Attribute\":["
+				+ "{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\",\"Value\":\"" + subject + "\"},"
+				+ "{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"" + role + "\"}]}],"
+				+ "\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"" + action + "\"}]}],"
+				+ "\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"" + resource + "\"}]}]"
+				+ "}}";
+		return JsonRequestTranslator.load(json);
+	}
+
+	private static Decision decide(String role, String action, String resource) throws Exception {
+		Response response	= engine.decide(newRequest("user-" + role, role, action, resource));
+		assertNotNull(response);
+		assertEquals(1, response.getResults().size());
+		Result result		= response.getResults().iterator().next();
+		return result.getDecision();
+	}
+
+	@Test
+	public void testPrepare() throws Exception {
+		ATTPDPEngine pdpEngine	= (ATTPDPEngine) newEngine();
+		pdpEngine.prepare();
+		pdpEngine.shutdown();
+		//
+		// A PIP configuration that cannot be used is found before the first decision
+		//
+		Properties properties	= newProperties();
+		properties.setProperty("xacml.pip.finder.threads", "many");
+		pdpEngine	= (ATTPDPEngine) new ATTPDPEngineFactory().newEngine(properties);
+		try {
+			pdpEngine.prepare();
+			fail("Expected PDPException");
+		} catch (PDPException ex) {
+			// expected
+		} finally {
+			pdpEngine.shutdown();
+		}
+	}
+
+	@Test
+	public void testDecideIsNotSynchronized() throws NoSuchMethodException {
+		assertFalse(Modifier.isSynchronized(ATTPDPEngine.class.getMethod("decide", Request.class).getModifiers()));
+	}
+
+	@Test
+	public void testSingleThreaded() throws Exception {
+		for (String role : ROLES) {
+			for (String action : ACTIONS) {
+				for (String resource : RESOURCES) {
+					assertEquals(role + "/" + action + "/" + resource, expectedDecision(role, action, resource), decide(role, action, resource));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentDecisions() throws Exception {
+		ExecutorService executor	= Executors.newFixedThreadPool(THREADS);
+		CountDownLatch startGate	= new CountDownLatch(1);
+		AtomicInteger inFlight		= new AtomicInteger();
+		AtomicInteger maxInFlight	= new AtomicInteger();
+		List<Future<Integer>> futures	= new ArrayList<>();
+		try {
+			for (int t = 0 ; t < THREADS ; t++) {
+				final long seed	= 31L * t;
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						Random random	= new Random(seed);
+						startGate.await();
+						int mismatches	= 0;
+						for (int i = 0 ; i < REQUESTS_PER_THREAD ; i++) {
+							String role		= ROLES[random.nextInt(ROLES.length)];
+							String action	= ACTIONS[random.nextInt(ACTIONS.length)];
+							String resource	= RESOURCES[random.nextInt(RESOURCES.length)];
+							maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+							try {
+								if (decide(role, action, resource) != expectedDecision(role, action, resource)) {
+									mismatches++;
+								}
+							} finally {
+								inFlight.decrementAndGet();
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			startGate.countDown();
+			int totalMismatches	= 0;
+			for (Future<Integer> future : futures) {
+				totalMismatches	+= future.get(2, TimeUnit.MINUTES);
+			}
+			assertEquals(0, totalMismatches);
+			assertTrue("decide() never ran concurrently", maxInFlight.get() > 1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = PDPException.class)
+	public void testDecideAfterShutdown() throws Exception {
+		PDPEngine engineShutdown	= newEngine();
+		engineShutdown.shutdown();
+		engineShutdown.decide(newRequest("user", "admin", "read", "document"));
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeCategory;
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.Result;
+import com.att.research.xacml.api.pdp.PDPEngine;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+/**
+ * Checks that evaluating the individual decisions of a Multiple Decision Profile request in parallel gives the same
+ * response, in the same order, as evaluating them one after the other.
+ */
+public class ATTPDPEngineMultipleTest {
+	private static final String[] RESOURCES	= {"document", "audit-log", "printer"};
+
+	private static PDPEngine newEngine(int threads, int parallelism) throws Exception {
+		Properties properties	= new Properties();
+		try (InputStream is = new FileInputStream("src/test/resources/testsets/concurrency/xacml.properties")) {
+			properties.load(is);
+		}
+		if (threads > 0) {
+			properties.setProperty(ATTPDPProperties.PROP_MULTIPLE_THREADS, Integer.toString(threads));
+			properties.setProperty(ATTPDPProperties.PROP_MULTIPLE_PARALLELISM, Integer.toString(parallelism));
+		}
+		return new ATTPDPEngineFactory().newEngine(properties);
+	}
+
+	/*
+	 * A request for the given role to read each of the resources, numbered so that the results can be told apart
+	 */
+	private static Request newRequest(String role, boolean combined, String... resources) throws Exception {
+		StringBuilder json	= new StringBuilder();
+		json.append("{\"Request\":{\"CombinedDecision\":").append(combined).append(",");
+		json.append("\"AccessSubject\":[{\"Attribute\":[");
+		json.append("{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\",\"Value\":\"user-").append(role).append("\"},");
+		json.append("{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"").append(role).append("\"}]}],");
+		json.append("\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"read\"}]}],");
+		json.append("\"Resource\":[");
+		for (int i = 0 ; i < resources.length ; i++) {
+			if (i > 0) {
+				json.append(",");
+			}
+			json.append("{\"Attribute\":[");
+			json.append("{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"").append(resources[i]).append("\"},");
+			json.append("{\"AttributeId\":\"urn:com:att:xacml:test:sequence\",\"Value\":").append(i).append(",\"DataType\":\"integer\",\"IncludeInResult\":true}]}");
+		}
+		json.append("]}}");
+		return JsonRequestTranslator.load(json.toString());
+	}
+
+	private static String[] getResources(int count) {
+		String[] resources	= new String[count];
+		for (int i = 0 ; i < count ; i++) {
+			resources[i]	= RESOURCES[i % RESOURCES.length];
+		}
+		return resources;
+	}
+
+	/*
+	 * The decision and sequence number of each result
+	 */
+	private static List<String> describe(Response response) {
+		List<String> descriptions	= new ArrayList<>();
+		for (Result result : response.getResults()) {
+			StringBuilder description	= new StringBuilder(result.getDecision().toString());
+			for (AttributeCategory attributeCategory : result.getAttributes()) {
+				for (Attribute attribute : attributeCategory.getAttributes()) {
+					description.append(" ").append(attribute.getValues().iterator().next().getValue());
+				}
+			}
+			descriptions.add(description.toString());
+		}
+		return descriptions;
+	}
+
+	@Test
+	public void testOrdering() throws Exception {
+		PDPEngine engineSerial		= newEngine(0, 0);
+		PDPEngine engineParallel	= newEngine(4, 3);
+		try {
+			for (String role : new String[] {"admin", "auditor", "guest"}) {
+				Request request	= newRequest(role, false, getResources(300));
+				List<String> expected	= describe(engineSerial.decide(request));
+				assertEquals(300, expected.size());
+				assertEquals(expected, describe(engineParallel.decide(request)));
+			}
+		} finally {
+			engineSerial.shutdown();
+			engineParallel.shutdown();
+		}
+	}
+
+	@Test
+	public void testCombinedDecision() throws Exception {
+		PDPEngine engineParallel	= newEngine(2, 2);
+		try {
+			Response response	= engineParallel.decide(newRequest("guest", true, "document", "document", "document", "document"));
+			assertEquals(1, response.getResults().size());
+			assertEquals(Decision.PERMIT, response.getResults().iterator().next().getDecision());
+
+			response	= engineParallel.decide(newRequest("guest", true, getResources(30)));
+			assertEquals(1, response.getResults().size());
+			assertEquals(Decision.INDETERMINATE, response.getResults().iterator().next().getDecision());
+		} finally {
+			engineParallel.shutdown();
+		}
+	}
+
+	@Test
+	public void testSharedPool() throws Exception {
+		//
+		// More concurrent requests than pool threads, each allowed to use the whole pool
+		//
+		PDPEngine engineSerial		= newEngine(0, 0);
+		PDPEngine engineParallel	= newEngine(2, 8);
+		ExecutorService executor	= Executors.newFixedThreadPool(8);
+		try {
+			Request request	= newRequest("manager", false, getResources(100));
+			List<String> expected	= describe(engineSerial.decide(request));
+			List<Future<List<String>>> futures	= new ArrayList<>();
+			for (int i = 0 ; i < 32 ; i++) {
+				futures.add(executor.submit(() -> describe(engineParallel.decide(request))));
+			}
+			for (Iterator<Future<List<String>>> iterFutures = futures.iterator() ; iterFutures.hasNext() ; ) {
+				assertEquals(expected, iterFutures.next().get(1, TimeUnit.MINUTES));
+			}
+		} finally {
+			executor.shutdownNow();
+			engineSerial.shutdown();
+			engineParallel.shutdown();
+		}
+	}
+}
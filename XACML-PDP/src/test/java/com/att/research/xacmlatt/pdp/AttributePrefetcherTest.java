@@ -0,0 +1,294 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttribute;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.StdMutableResult;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.StdPIPResponse;
+import com.att.research.xacml.std.pip.finders.EngineFinder;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.policy.PolicyDef;
+import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContextFactory;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+/**
+ * Checks the attributes found in a policy, that prefetching them asks the PIP engines at the same time and leaves
+ * nothing for the evaluation to fetch, and that only what the evaluation uses decides whether its result is cached.
+ */
+public class AttributePrefetcherTest {
+	private static final String XSD_STRING	= "http://www.w3.org/2001/XMLSchema#string";
+	private static final String CAT_SUBJECT	= "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+
+	private static final Identifier ID_ROLE			= new IdentifierImpl("urn:com:att:xacml:test:role");
+	private static final Identifier ID_DEPARTMENT	= new IdentifierImpl("urn:com:att:xacml:test:department");
+	private static final Identifier ID_CLEARANCE	= new IdentifierImpl("urn:com:att:xacml:test:clearance");
+
+	private static final String POLICY	= "<Policy xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicyId=\"urn:com:att:xacml:test:prefetch\" Version=\"1.0\""
+			+ " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+			+ "<Target><AnyOf><AllOf><Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+			+ "<AttributeValue DataType=\"" + XSD_STRING + "\">admin</AttributeValue>"
+			+ designator(ID_ROLE)
+			+ "</Match></AllOf></AnyOf></Target>"
+			+ "<Rule RuleId=\"urn:com:att:xacml:test:prefetch:rule\" Effect=\"Permit\">"
+			+ "<Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:and\">"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\"><AttributeValue DataType=\"" + XSD_STRING + "\">sales</AttributeValue>" + designator(ID_DEPARTMENT) + "</Apply>"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\"><AttributeValue DataType=\"" + XSD_STRING + "\">secret</AttributeValue>" + designator(ID_CLEARANCE) + "</Apply>"
+			+ "</Apply></Condition>"
+			+ "<ObligationExpressions><ObligationExpression ObligationId=\"urn:com:att:xacml:test:log\" FulfillOn=\"Permit\">"
+			+ "<AttributeAssignmentExpression AttributeId=\"urn:com:att:xacml:test:department\">" + designator(ID_DEPARTMENT) + "</AttributeAssignmentExpression>"
+			+ "</ObligationExpression></ObligationExpressions>"
+			+ "</Rule>"
+			+ "<Rule RuleId=\"urn:com:att:xacml:test:prefetch:deny\" Effect=\"Deny\"/>"
+			+ "</Policy>";
+
+	/*
+	 * Admins are let in at once, anyone else only from sales and at a time of day that is always true
+	 */
+	private static final String POLICY_HOURS	= "<Policy xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicyId=\"urn:com:att:xacml:test:hours\" Version=\"1.0\""
+			+ " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\">"
+			+ "<Target/>"
+			+ "<Rule RuleId=\"urn:com:att:xacml:test:hours:admin\" Effect=\"Permit\">"
+			+ "<Target><AnyOf><AllOf><Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+			+ "<AttributeValue DataType=\"" + XSD_STRING + "\">admin</AttributeValue>"
+			+ designator(ID_ROLE)
+			+ "</Match></AllOf></AnyOf></Target>"
+			+ "</Rule>"
+			+ "<Rule RuleId=\"urn:com:att:xacml:test:hours:sales\" Effect=\"Permit\">"
+			+ "<Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:and\">"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\"><AttributeValue DataType=\"" + XSD_STRING + "\">sales</AttributeValue>" + designator(ID_DEPARTMENT) + "</Apply>"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:time-greater-than-or-equal\">"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:time-one-and-only\">"
+			+ "<AttributeDesignator Category=\"urn:oasis:names:tc:xacml:3.0:attribute-category:environment\" AttributeId=\"" + XACML3.ID_ENVIRONMENT_CURRENT_TIME.stringValue()
+			+ "\" DataType=\"" + XACML3.ID_DATATYPE_TIME.stringValue() + "\" MustBePresent=\"true\"/></Apply>"
+			+ "<AttributeValue DataType=\"" + XACML3.ID_DATATYPE_TIME.stringValue() + "\">00:00:00</AttributeValue></Apply>"
+			+ "</Apply></Condition>"
+			+ "</Rule>"
+			+ "<Rule RuleId=\"urn:com:att:xacml:test:hours:deny\" Effect=\"Deny\"/>"
+			+ "</Policy>";
+
+	private static String designator(Identifier attributeId) {
+		return "<AttributeDesignator Category=\"" + CAT_SUBJECT + "\" AttributeId=\"" + attributeId.stringValue() + "\" DataType=\"" + XSD_STRING + "\" MustBePresent=\"false\"/>";
+	}
+
+	/**
+	 * Answers the department and clearance of every subject after a delay, keeping track of how many calls overlap.
+	 */
+	private static class SlowEngine implements PIPEngine {
+		private final AtomicInteger calls	= new AtomicInteger();
+		private final AtomicInteger running	= new AtomicInteger();
+		private final AtomicInteger overlap	= new AtomicInteger();
+
+		@Override
+		public String getName() {
+			return "slow";
+		}
+
+		@Override
+		public String getDescription() {
+			return "slow";
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesRequired() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesProvided() {
+			return Arrays.asList(new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_DEPARTMENT, XACML3.ID_DATATYPE_STRING),
+								 new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_CLEARANCE, XACML3.ID_DATATYPE_STRING));
+		}
+
+		@Override
+		public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+			this.calls.incrementAndGet();
+			this.overlap.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				this.running.decrementAndGet();
+			}
+			String value	= (ID_DEPARTMENT.equals(pipRequest.getAttributeId()) ? "sales" : "secret");
+			return new StdPIPResponse(new StdAttribute(pipRequest.getCategory(), pipRequest.getAttributeId(), new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, value)));
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	private static PolicyDef newPolicy(String policy) throws Exception {
+		return DOMPolicyDef.load(new ByteArrayInputStream(policy.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static PolicyDef newPolicy() throws Exception {
+		return newPolicy(POLICY);
+	}
+
+	private static EvaluationContext newContext(SlowEngine slowEngine, String role) throws Exception {
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(slowEngine);
+		return new StdEvaluationContext(JsonRequestTranslator.load("{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + ID_ROLE.stringValue() + "\",\"Value\":\"" + role + "\"}]}]}}"),
+										null, engineFinder, NullTraceEngine.newInstance());
+	}
+
+	private static EvaluationContext newContext(SlowEngine slowEngine) throws Exception {
+		return newContext(slowEngine, "admin");
+	}
+
+	@Test
+	public void testAttributeDependencies() throws Exception {
+		Set<Identifier> attributeIds	= new HashSet<>();
+		for (PIPRequest pipRequest : newPolicy().getAttributeDependencies()) {
+			assertEquals(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, pipRequest.getCategory());
+			assertEquals(XACML3.ID_DATATYPE_STRING, pipRequest.getDataTypeId());
+			attributeIds.add(pipRequest.getAttributeId());
+		}
+		assertEquals(new HashSet<>(Arrays.asList(ID_ROLE, ID_DEPARTMENT, ID_CLEARANCE)), attributeIds);
+		assertEquals(3, newPolicy().getAttributeDependencies().size());
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		PolicyDef policyDef					= newPolicy();
+		AttributePrefetcher attributePrefetcher	= new AttributePrefetcher(2);
+		try {
+			SlowEngine slowEngine				= new SlowEngine();
+			EvaluationContext evaluationContext	= newContext(slowEngine);
+			attributePrefetcher.prefetch(evaluationContext, policyDef);
+			assertEquals(2, slowEngine.calls.get());
+			assertEquals(2, slowEngine.overlap.get());
+			assertEquals(1, attributePrefetcher.getPrefetchCount());
+			assertEquals(2, attributePrefetcher.getAttributeCount());
+
+			//
+			// The evaluation finds everything it needs cached
+			//
+			assertEquals(Decision.PERMIT, policyDef.evaluate(evaluationContext).getDecision());
+			assertEquals(2, slowEngine.calls.get());
+		} finally {
+			attributePrefetcher.shutdown();
+		}
+
+		//
+		// Without pool threads the attributes are asked for in one batch, which this engine answers one after the other
+		//
+		SlowEngine slowEngine				= new SlowEngine();
+		EvaluationContext evaluationContext	= newContext(slowEngine);
+		new AttributePrefetcher(0).prefetch(evaluationContext, policyDef);
+		assertEquals(2, slowEngine.calls.get());
+		assertEquals(1, slowEngine.overlap.get());
+		assertEquals(Decision.PERMIT, policyDef.evaluate(evaluationContext).getDecision());
+		assertEquals(2, slowEngine.calls.get());
+	}
+
+	@Test
+	public void testDecisionCache() throws Exception {
+		PolicyDef policyDef	= newPolicy(POLICY_HOURS);
+		Properties properties	= new Properties();
+		properties.setProperty(ATTPDPProperties.PROP_DECISIONCACHE, "true");
+		properties.setProperty(ATTPDPProperties.PROP_DECISIONCACHE_PIPTTL, "0");
+		for (AttributePrefetcher attributePrefetcher : new AttributePrefetcher[] { new AttributePrefetcher(2), new AttributePrefetcher(0) }) {
+			DecisionCache decisionCache	= new DecisionCache(new StdEvaluationContextFactory(), properties);
+			try {
+				//
+				// The department and the time are fetched ahead, but an admin is let in without either, so the decision
+				// is cached as one that depends on the request alone
+				//
+				SlowEngine slowEngine				= new SlowEngine();
+				EvaluationContext evaluationContext	= newContext(slowEngine, "admin");
+				attributePrefetcher.prefetch(evaluationContext, policyDef);
+				assertEquals(1, slowEngine.calls.get());
+				Decision decision	= policyDef.evaluate(evaluationContext).getDecision();
+				assertEquals(Decision.PERMIT, decision);
+				assertTrue(evaluationContext.getAttributesFetched().isEmpty());
+				decisionCache.lookup(evaluationContext.getRequest()).store(evaluationContext, new StdMutableResult(decision));
+				assertEquals(1, decisionCache.size());
+				assertEquals(0, decisionCache.getUncacheableCount());
+
+				//
+				// Anyone else is let in on the time of day, which is never cached
+				//
+				evaluationContext	= newContext(slowEngine, "guest");
+				attributePrefetcher.prefetch(evaluationContext, policyDef);
+				decision	= policyDef.evaluate(evaluationContext).getDecision();
+				assertEquals(Decision.PERMIT, decision);
+				assertEquals(2, slowEngine.calls.get());
+				assertEquals(2, evaluationContext.getAttributesFetched().size());
+				decisionCache.lookup(evaluationContext.getRequest()).store(evaluationContext, new StdMutableResult(decision));
+				assertEquals(1, decisionCache.size());
+				assertEquals(1, decisionCache.getUncacheableCount());
+			} finally {
+				attributePrefetcher.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testEngine() throws Exception {
+		Properties properties	= new Properties();
+		try (InputStream is = new FileInputStream("src/test/resources/testsets/concurrency/xacml.properties")) {
+			properties.load(is);
+		}
+		assertNull(new ATTPDPEngine(new StdEvaluationContextFactory(properties), Decision.INDETERMINATE, null, properties).getAttributePrefetcher());
+
+		properties.setProperty(ATTPDPProperties.PROP_PIP_PREFETCH, "true");
+		ATTPDPEngine engine	= new ATTPDPEngine(new StdEvaluationContextFactory(properties), Decision.INDETERMINATE, null, properties);
+		try {
+			AttributePrefetcher attributePrefetcher	= engine.getAttributePrefetcher();
+			assertNotNull(attributePrefetcher);
+			Response response	= engine.decide(JsonRequestTranslator.load("{\"Request\":{" +
+					"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"admin\"}]}]," +
+					"\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"delete\"}]}]," +
+					"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"document\"}]}]}}"));
+			assertEquals(Decision.PERMIT, response.getResults().iterator().next().getDecision());
+
+			//
+			// Everything these policies ask for is in the request
+			//
+			assertEquals(0, attributePrefetcher.getPrefetchCount());
+		} finally {
+			engine.shutdown();
+		}
+	}
+}
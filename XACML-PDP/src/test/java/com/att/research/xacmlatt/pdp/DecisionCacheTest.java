@@ -0,0 +1,192 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.Result;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.StdMutableAttribute;
+import com.att.research.xacml.std.StdMutableRequest;
+import com.att.research.xacml.std.StdMutableRequestAttributes;
+import com.att.research.xacml.std.StdMutableResult;
+import com.att.research.xacml.std.StdStatus;
+import com.att.research.xacml.std.StdStatusCode;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContextFactory;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+public class DecisionCacheTest {
+	private static Properties newProperties() throws Exception {
+		Properties properties	= new Properties();
+		try (InputStream is = new FileInputStream("src/test/resources/testsets/concurrency/xacml.properties")) {
+			properties.load(is);
+		}
+		properties.setProperty(ATTPDPProperties.PROP_DECISIONCACHE, "true");
+		return properties;
+	}
+
+	private static Request newRequest(String role, String resource, boolean includeInResult) throws Exception {
+		return JsonRequestTranslator.load("{\"Request\":{" +
+				"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"" + role + "\"}]}]," +
+				"\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"read\"}]}]," +
+				"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"" + resource +
+				"\",\"IncludeInResult\":" + includeInResult + "}]}]}}");
+	}
+
+	private static Attribute newAttribute(String attributeId, boolean includeInResult, String... values) {
+		List<AttributeValue<?>> attributeValues	= new ArrayList<>();
+		for (String value : values) {
+			attributeValues.add(new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, value));
+		}
+		return new StdMutableAttribute(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, new IdentifierImpl(attributeId), attributeValues, null, includeInResult);
+	}
+
+	private static Request newSubjectRequest(Attribute... attributes) {
+		StdMutableRequest request	= new StdMutableRequest();
+		request.add(new StdMutableRequestAttributes(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, Arrays.asList(attributes), null, null));
+		return request;
+	}
+
+	@Test
+	public void testEngine() throws Exception {
+		Properties properties	= newProperties();
+		StdEvaluationContextFactory evaluationContextFactory	= new StdEvaluationContextFactory(properties);
+		ATTPDPEngine engine	= new ATTPDPEngine(evaluationContextFactory, Decision.INDETERMINATE, null, properties);
+		try {
+			DecisionCache decisionCache	= engine.getDecisionCache();
+			assertNotNull(decisionCache);
+			Response expected	= engine.decide(newRequest("auditor", "audit-log", true));
+			assertEquals(Decision.PERMIT, expected.getResults().iterator().next().getDecision());
+			assertEquals(0, decisionCache.getHitCount());
+			assertEquals(1, decisionCache.getMissCount());
+			assertEquals(1, decisionCache.size());
+
+			assertEquals(expected, engine.decide(newRequest("auditor", "audit-log", true)));
+			assertEquals(1, decisionCache.getHitCount());
+			assertEquals(0.5, decisionCache.getHitRate(), 0.0);
+
+			//
+			// Including an attribute in the result is a different question
+			//
+			Response response	= engine.decide(newRequest("auditor", "audit-log", false));
+			assertEquals(Decision.PERMIT, response.getResults().iterator().next().getDecision());
+			assertEquals(0, response.getResults().iterator().next().getAttributes().size());
+			assertEquals(2, decisionCache.getMissCount());
+
+			//
+			// Reloading the policies discards everything
+			//
+			evaluationContextFactory.setPolicyFinder(null);
+			assertEquals(expected, engine.decide(newRequest("auditor", "audit-log", true)));
+			assertEquals(3, decisionCache.getMissCount());
+			assertEquals(1, decisionCache.size());
+		} finally {
+			engine.shutdown();
+		}
+		assertNull(new ATTPDPEngine(new StdEvaluationContextFactory(), Decision.INDETERMINATE, null, new Properties()).getDecisionCache());
+	}
+
+	@Test
+	public void testCanonicalKey() throws Exception {
+		DecisionCache decisionCache	= new DecisionCache(new StdEvaluationContextFactory(), newProperties());
+		Request request	= JsonRequestTranslator.load("{\"Request\":{" +
+				"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"subject-id\",\"Value\":\"Alice\"},{\"AttributeId\":\"role\",\"Value\":\"admin\"}]}]," +
+				"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"resource-id\",\"Value\":\"document\"}]}]}}");
+		Request requestReordered	= JsonRequestTranslator.load("{\"Request\":{" +
+				"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"resource-id\",\"Value\":\"document\"}]}]," +
+				"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"role\",\"Value\":\"admin\"},{\"AttributeId\":\"subject-id\",\"Value\":\"Alice\"}]}]}}");
+		Request requestOther	= JsonRequestTranslator.load("{\"Request\":{" +
+				"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"resource-id\",\"Value\":\"document\"}]}]," +
+				"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"role\",\"Value\":\"admin\"},{\"AttributeId\":\"subject-id\",\"Value\":\"Alice\",\"Issuer\":\"me\"}]}]}}");
+
+		DecisionCache.Lookup lookup	= decisionCache.lookup(request);
+		assertNull(lookup.getResult());
+		Result result	= lookup.store(new StdEvaluationContext(request, null, null, NullTraceEngine.newInstance()), new StdMutableResult(Decision.PERMIT));
+		assertSame(result, decisionCache.lookup(requestReordered).getResult());
+		assertNull(decisionCache.lookup(requestOther).getResult());
+
+		//
+		// The order of the values in a bag, and of attributes that differ only in their values or IncludeInResult, does not matter
+		//
+		Request requestBags	= newSubjectRequest(newAttribute("role", false, "admin", "auditor"), newAttribute("role", false, "guest"),
+													newAttribute("group", true, "staff"), newAttribute("group", false, "staff"));
+		Request requestBagsReordered	= newSubjectRequest(newAttribute("group", false, "staff"), newAttribute("role", false, "guest"),
+													newAttribute("role", false, "auditor", "admin"), newAttribute("group", true, "staff"));
+		result	= decisionCache.lookup(requestBags).store(new StdEvaluationContext(requestBags, null, null, NullTraceEngine.newInstance()), new StdMutableResult(Decision.DENY));
+		assertSame(result, decisionCache.lookup(requestBagsReordered).getResult());
+		assertNull(decisionCache.lookup(newSubjectRequest(newAttribute("role", false, "admin", "auditor", "guest"), newAttribute("group", true, "staff"),
+															newAttribute("group", false, "staff"))).getResult());
+
+		decisionCache.invalidateAll();
+		assertNull(decisionCache.lookup(request).getResult());
+		assertEquals(0, decisionCache.size());
+	}
+
+	@Test
+	public void testUncacheable() throws Exception {
+		Properties properties	= newProperties();
+		properties.setProperty(ATTPDPProperties.PROP_DECISIONCACHE_PIPTTL, "0");
+		DecisionCache decisionCache	= new DecisionCache(new StdEvaluationContextFactory(), properties);
+		Request request	= newRequest("guest", "document", false);
+
+		//
+		// The time from the environment
+		//
+		StdEvaluationContext evaluationContext	= new StdEvaluationContext(request, null, null, NullTraceEngine.newInstance());
+		evaluationContext.getAttributes(new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_ENVIRONMENT, XACML3.ID_ENVIRONMENT_CURRENT_DATETIME, XACML3.ID_DATATYPE_DATETIME));
+		decisionCache.lookup(request).store(evaluationContext, new StdMutableResult(Decision.PERMIT));
+		assertEquals(1, decisionCache.getUncacheableCount());
+		assertEquals(0, decisionCache.size());
+
+		//
+		// Anything not in the request with a PIP time to live of 0
+		//
+		evaluationContext	= new StdEvaluationContext(request, null, null, NullTraceEngine.newInstance());
+		evaluationContext.getAttributes(new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, XACML3.ID_DATATYPE_STRING));
+		decisionCache.lookup(request).store(evaluationContext, new StdMutableResult(Decision.PERMIT));
+		assertEquals(2, decisionCache.getUncacheableCount());
+		assertEquals(0, decisionCache.size());
+
+		//
+		// Attributes in the request are fine
+		//
+		evaluationContext	= new StdEvaluationContext(request, null, null, NullTraceEngine.newInstance());
+		evaluationContext.getAttributes(new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, XACML3.ID_RESOURCE_RESOURCE_ID, XACML3.ID_DATATYPE_STRING));
+		decisionCache.lookup(request).store(evaluationContext, new StdMutableResult(Decision.PERMIT));
+		assertEquals(1, decisionCache.size());
+
+		//
+		// Errors are not cached
+		//
+		Request requestError	= newRequest("guest", "printer", false);
+		decisionCache.lookup(requestError).store(new StdEvaluationContext(requestError, null, null, NullTraceEngine.newInstance()),
+												 new StdMutableResult(Decision.INDETERMINATE, new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR)));
+		assertEquals(1, decisionCache.size());
+	}
+}
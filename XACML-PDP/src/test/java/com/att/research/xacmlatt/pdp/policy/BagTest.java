@@ -0,0 +1,179 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.datatypes.DataTypes;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+import com.att.research.xacmlatt.pdp.std.StdFunctions;
+
+public class BagTest {
+	private static final int SIZE	= 200;
+
+	/**
+	 * An AttributeValue that is not a StdAttributeValue, and so is never indexed
+	 */
+	private static class OtherAttributeValue implements AttributeValue<String> {
+		private final String value;
+
+		OtherAttributeValue(String valueIn) {
+			this.value	= valueIn;
+		}
+
+		@Override
+		public Identifier getDataTypeId() {
+			return XACML3.ID_DATATYPE_STRING;
+		}
+
+		@Override
+		public String getValue() {
+			return this.value;
+		}
+
+		@Override
+		public Identifier getXPathCategory() {
+			return null;
+		}
+	}
+
+	private static Bag newStringBag(int size, String prefix) throws Exception {
+		Bag bag	= new Bag();
+		for (int i = 0 ; i < size ; i++) {
+			bag.add(DataTypes.DT_STRING.createAttributeValue(prefix + i));
+		}
+		return bag;
+	}
+
+	@Test
+	public void testContains() throws Exception {
+		Bag bag	= newStringBag(SIZE, "v");
+		bag.add(DataTypes.DT_INTEGER.createAttributeValue(BigInteger.valueOf(7)));
+		bag.add(new StdAttributeValue<Object>(XACML3.ID_DATATYPE_STRING, new StringBuilder("builder")));
+		bag.add(new OtherAttributeValue("other"));
+
+		List<AttributeValue<?>> probes	= new ArrayList<>();
+		for (int i = -5 ; i < SIZE + 5 ; i++) {
+			probes.add(DataTypes.DT_STRING.createAttributeValue("v" + i));
+		}
+		probes.add(DataTypes.DT_INTEGER.createAttributeValue(BigInteger.valueOf(7)));
+		probes.add(DataTypes.DT_INTEGER.createAttributeValue(BigInteger.valueOf(8)));
+		probes.add(new StdAttributeValue<Object>(XACML3.ID_DATATYPE_ANYURI, "v1"));
+		probes.add(DataTypes.DT_STRING.createAttributeValue("other"));
+		probes.add(new OtherAttributeValue("other"));
+		probes.add(new OtherAttributeValue("v1"));
+		for (AttributeValue<?> probe : probes) {
+			assertEquals(probe.toString(), bag.getAttributeValueList().contains(probe), bag.contains(probe));
+		}
+		assertTrue(bag.containsValue(XACML3.ID_DATATYPE_STRING, "v42"));
+		assertTrue(bag.containsValue(XACML3.ID_DATATYPE_STRING, "other"));
+		assertTrue(bag.containsValue(XACML3.ID_DATATYPE_INTEGER, BigInteger.valueOf(7)));
+		assertFalse(bag.containsValue(XACML3.ID_DATATYPE_INTEGER, "v42"));
+		assertFalse(bag.containsValue(XACML3.ID_DATATYPE_STRING, "missing"));
+		//
+		// Values added after the index is built are found
+		//
+		bag.add(DataTypes.DT_STRING.createAttributeValue("added"));
+		assertTrue(bag.contains(DataTypes.DT_STRING.createAttributeValue("added")));
+		assertTrue(bag.containsValue(XACML3.ID_DATATYPE_STRING, "added"));
+		//
+		// The list cannot be changed behind the index's back
+		//
+		try {
+			bag.getAttributeValueList().set(0, DataTypes.DT_STRING.createAttributeValue("listed"));
+			fail("Bag list was modifiable");
+		} catch (UnsupportedOperationException ex) {
+		}
+	}
+
+	@Test
+	public void testAllOfDataType() throws Exception {
+		Bag bag	= newStringBag(SIZE, "v");
+		assertTrue(bag.isAllOfDataType(DataTypes.DT_STRING));
+		assertFalse(bag.isAllOfDataType(DataTypes.DT_INTEGER));
+		assertTrue(bag.isAllOfDataType(DataTypes.DT_STRING));
+		bag.add(DataTypes.DT_STRING.createAttributeValue("added"));
+		assertTrue(bag.isAllOfDataType(DataTypes.DT_STRING));
+		bag.add(new StdAttributeValue<Object>(XACML3.ID_DATATYPE_STRING, new StringBuilder("builder")));
+		assertFalse(bag.isAllOfDataType(DataTypes.DT_STRING));
+		assertTrue(new Bag().isAllOfDataType(DataTypes.DT_INTEGER));
+	}
+
+	private static ExpressionResult apply(FunctionDefinition functionDefinition, Object... args) throws Exception {
+		List<FunctionArgument> arguments	= new ArrayList<>();
+		for (Object arg : args) {
+			if (arg instanceof Bag) {
+				arguments.add(new FunctionArgumentBag((Bag)arg));
+			} else if (arg instanceof FunctionDefinition) {
+				arguments.add(new FunctionArgumentAttributeValue(DataTypes.DT_ANYURI.createAttributeValue(((FunctionDefinition)arg).getId())));
+			} else {
+				arguments.add(new FunctionArgumentAttributeValue((AttributeValue<?>)arg));
+			}
+		}
+		return functionDefinition.evaluate(new StdEvaluationContext(null, null, null), arguments);
+	}
+
+	private static Bag getBag(ExpressionResult expressionResult) {
+		assertTrue(expressionResult.isOk());
+		return expressionResult.getBag();
+	}
+
+	private static boolean getBoolean(ExpressionResult expressionResult) {
+		assertTrue(expressionResult.isOk());
+		return (Boolean) expressionResult.getValue().getValue();
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		Bag bag1	= newStringBag(SIZE, "v");
+		bag1.add(DataTypes.DT_STRING.createAttributeValue("v3"));
+		Bag bag2	= newStringBag(SIZE / 2, "v");
+		Bag bag3	= newStringBag(SIZE, "w");
+
+		Bag intersection	= getBag(apply(StdFunctions.FD_STRING_INTERSECTION, bag1, bag2));
+		assertEquals(SIZE / 2, intersection.size());
+		assertEquals(bag2.getAttributeValueList(), intersection.getAttributeValueList());
+		assertEquals(0, getBag(apply(StdFunctions.FD_STRING_INTERSECTION, bag1, bag3)).size());
+
+		Bag union	= getBag(apply(StdFunctions.FD_STRING_UNION, bag1, bag3));
+		assertEquals(2 * SIZE, union.size());
+		assertEquals(bag1.getAttributeValueList().subList(0, SIZE), union.getAttributeValueList().subList(0, SIZE));
+
+		assertTrue(getBoolean(apply(StdFunctions.FD_STRING_SUBSET, bag2, bag1)));
+		assertFalse(getBoolean(apply(StdFunctions.FD_STRING_SUBSET, bag1, bag2)));
+		assertTrue(getBoolean(apply(StdFunctions.FD_STRING_SET_EQUALS, bag1, newStringBag(SIZE, "v"))));
+		assertFalse(getBoolean(apply(StdFunctions.FD_STRING_SET_EQUALS, bag1, bag3)));
+		assertTrue(getBoolean(apply(StdFunctions.FD_STRING_AT_LEAST_ONE_MEMBER_OF, bag3, union)));
+		assertFalse(getBoolean(apply(StdFunctions.FD_STRING_AT_LEAST_ONE_MEMBER_OF, bag2, bag3)));
+
+		assertTrue(getBoolean(apply(StdFunctions.FD_STRING_IS_IN, DataTypes.DT_STRING.createAttributeValue("v199"), bag1)));
+		assertFalse(getBoolean(apply(StdFunctions.FD_STRING_IS_IN, DataTypes.DT_STRING.createAttributeValue("w1"), bag1)));
+
+		assertTrue(getBoolean(apply(StdFunctions.FD_ANY_OF, StdFunctions.FD_STRING_EQUAL, DataTypes.DT_STRING.createAttributeValue("w150"), bag3)));
+		assertFalse(getBoolean(apply(StdFunctions.FD_ANY_OF, StdFunctions.FD_STRING_EQUAL, DataTypes.DT_STRING.createAttributeValue("v150"), bag3)));
+		assertTrue(getBoolean(apply(StdFunctions.FD_ANY_OF_ANY, StdFunctions.FD_STRING_EQUAL, bag2, bag1)));
+		assertFalse(getBoolean(apply(StdFunctions.FD_ANY_OF_ANY, StdFunctions.FD_STRING_EQUAL, bag2, bag3)));
+		//
+		// A value of the wrong data type is still an error from the predicate
+		//
+		assertFalse(apply(StdFunctions.FD_ANY_OF, StdFunctions.FD_STRING_EQUAL, DataTypes.DT_INTEGER.createAttributeValue(BigInteger.ONE), bag3).isOk());
+		bag3.add(DataTypes.DT_INTEGER.createAttributeValue(BigInteger.ONE));
+		assertFalse(apply(StdFunctions.FD_ANY_OF, StdFunctions.FD_STRING_EQUAL, DataTypes.DT_STRING.createAttributeValue("v150"), bag3).isOk());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationResult;
+import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+import com.att.research.xacmlatt.pdp.std.StdPolicyFinder;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+/**
+ * Compares evaluating the policies in <code>testsets/concurrency</code> through the element tree against evaluating them
+ * with their <code>Target</code>s compiled by {@link PolicyCompiler} in the {@link StdPolicyFinder}, and checks that both
+ * give the same decisions.
+ *
+ * Run it from the IDE or with:
+ * 		mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.att.research.xacmlatt.pdp.policy.PolicyCompilerBenchmark
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class PolicyCompilerBenchmark {
+	private static final String POLICY		= "src/test/resources/testsets/concurrency/ConcurrencyPolicySet.xml";
+	private static final String REFERENCED	= "src/test/resources/testsets/concurrency/AuditPolicy.xml";
+	private static final int ITERATIONS		= 200000;
+	private static final int ROUNDS			= 5;
+
+	private static final String[][] REQUESTS	= {
+		{"admin", "delete", "document"},
+		{"manager", "read", "document"},
+		{"auditor", "read", "audit-log"},
+		{"guest", "write", "printer"}
+	};
+
+	private static long time(PolicyDef policyDef, EvaluationContext[] evaluationContexts) throws Exception {
+		long start	= System.nanoTime();
+		for (int i = 0 ; i < ITERATIONS ; i++) {
+			policyDef.evaluate(evaluationContexts[i % evaluationContexts.length]);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String name, long nanos) {
+		System.out.println(String.format("%-12s %8.1f ns/op", name, (double) nanos / ITERATIONS));
+	}
+
+	private static PolicyFinder newPolicyFinder(boolean compilePolicies) throws Exception {
+		Properties properties	= new Properties();
+		properties.setProperty(ATTPDPProperties.PROP_POLICYFINDERFACTORY_COMPILEPOLICIES, Boolean.toString(compilePolicies));
+		return new StdPolicyFinder(Collections.singletonList(DOMPolicyDef.load(new File(POLICY))),
+								   Collections.singletonList(DOMPolicyDef.load(new File(REFERENCED))), properties);
+	}
+
+	public static void main(String[] args) throws Exception {
+		PolicyFinder policyFinderInterpreted	= newPolicyFinder(false);
+		PolicyFinder policyFinderCompiled		= newPolicyFinder(true);
+
+		EvaluationContext[] evaluationContextsInterpreted	= new EvaluationContext[REQUESTS.length];
+		EvaluationContext[] evaluationContextsCompiled		= new EvaluationContext[REQUESTS.length];
+		PolicyDef policyDefInterpreted	= null;
+		PolicyDef policyDefCompiled		= null;
+		for (int i = 0 ; i < REQUESTS.length ; i++) {
+			Request request	= JsonRequestTranslator.load("{\"Request\":{" +
+					"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"" + REQUESTS[i][0] + "\"}]}]," +
+					"\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"" + REQUESTS[i][1] + "\"}]}]," +
+					"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"" + REQUESTS[i][2] + "\"}]}]}}");
+			evaluationContextsInterpreted[i]	= new StdEvaluationContext(request, policyFinderInterpreted, null, NullTraceEngine.newInstance());
+			evaluationContextsCompiled[i]		= new StdEvaluationContext(request, policyFinderCompiled, null, NullTraceEngine.newInstance());
+			policyDefInterpreted	= policyFinderInterpreted.getRootPolicyDef(evaluationContextsInterpreted[i]).getPolicyDef();
+			policyDefCompiled		= policyFinderCompiled.getRootPolicyDef(evaluationContextsCompiled[i]).getPolicyDef();
+			EvaluationResult evaluationResultInterpreted	= policyDefInterpreted.evaluate(evaluationContextsInterpreted[i]);
+			EvaluationResult evaluationResultCompiled		= policyDefCompiled.evaluate(evaluationContextsCompiled[i]);
+			if (evaluationResultInterpreted.getDecision() != evaluationResultCompiled.getDecision()) {
+				throw new IllegalStateException("Decisions differ for " + String.join(" ", REQUESTS[i]) + ": " + evaluationResultInterpreted + " " + evaluationResultCompiled);
+			}
+		}
+
+		for (int round = 1 ; round <= ROUNDS ; round++) {
+			System.out.println("Round " + round);
+			report("interpreted", time(policyDefInterpreted, evaluationContextsInterpreted));
+			report("compiled", time(policyDefCompiled, evaluationContextsCompiled));
+		}
+	}
+}
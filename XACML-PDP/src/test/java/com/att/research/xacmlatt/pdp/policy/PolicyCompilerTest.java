@@ -0,0 +1,111 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.pdp.PDPEngine;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.ATTPDPEngineFactory;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.MatchResult;
+import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
+
+/**
+ * Checks that compiled {@link Target}s give the same results as the element tree, both for whole engines over the
+ * policies in <code>testsets/concurrency</code> and for targets that are empty or not valid.
+ */
+public class PolicyCompilerTest {
+	private static final String[] ROLES		= {"admin", "manager", "auditor", "guest", ""};
+	private static final String[] ACTIONS	= {"read", "write", "delete"};
+	private static final String[] RESOURCES	= {"document", "audit-log", "printer"};
+
+	private static PDPEngine newEngine(boolean compilePolicies) throws Exception {
+		Properties properties	= new Properties();
+		try (InputStream is = new FileInputStream("src/test/resources/testsets/concurrency/xacml.properties")) {
+			properties.load(is);
+		}
+		properties.setProperty(ATTPDPProperties.PROP_POLICYFINDERFACTORY_COMPILEPOLICIES, Boolean.toString(compilePolicies));
+		return new ATTPDPEngineFactory().newEngine(properties);
+	}
+
+	private static Request newRequest(String role, String action, String resource) throws Exception {
+		return JsonRequestTranslator.load("{\"Request\":{" +
+				"\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:2.0:subject:role\",\"Value\":\"" + role + "\"}]}]," +
+				"\"Action\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:action:action-id\",\"Value\":\"" + action + "\"}]}]," +
+				"\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:resource:resource-id\",\"Value\":\"" + resource + "\"}]}]}}");
+	}
+
+	@Test
+	public void testEngines() throws Exception {
+		PDPEngine engineInterpreted	= newEngine(false);
+		PDPEngine engineCompiled	= newEngine(true);
+		for (String role : ROLES) {
+			for (String action : ACTIONS) {
+				for (String resource : RESOURCES) {
+					Request request	= newRequest(role, action, resource);
+					assertEquals(role + " " + action + " " + resource, engineInterpreted.decide(request), engineCompiled.decide(request));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCompile() throws Exception {
+		PolicyDef policyDef	= DOMPolicyDef.load(new File("src/test/resources/testsets/concurrency/ConcurrencyPolicySet.xml"));
+		assertFalse(policyDef.getTarget().isCompiled());
+		assertTrue(PolicyCompiler.compile(policyDef) > 1);
+		assertTrue(policyDef.getTarget().isCompiled());
+		assertEquals(0, PolicyCompiler.compile(null));
+	}
+
+	@Test
+	public void testTargets() throws Exception {
+		EvaluationContext evaluationContext	= new StdEvaluationContext(newRequest("admin", "read", "document"), null, null, NullTraceEngine.newInstance());
+
+		//
+		// An empty Target matches everything
+		//
+		Target target	= new Target();
+		assertTrue(target.compile());
+		assertEquals(MatchResult.MatchCode.MATCH, target.match(evaluationContext).getMatchCode());
+
+		//
+		// A Target with a Match that is missing everything is left to the element tree to report
+		//
+		AllOf allOf	= new AllOf();
+		allOf.addMatch(new Match());
+		AnyOf anyOf	= new AnyOf();
+		anyOf.addAllOf(allOf);
+		target	= new Target(anyOf);
+		MatchResult matchResult	= target.match(evaluationContext);
+		assertFalse(target.compile());
+		assertFalse(target.isCompiled());
+		assertEquals(MatchResult.MatchCode.INDETERMINATE, matchResult.getMatchCode());
+		assertEquals(matchResult.getStatus(), target.match(evaluationContext).getStatus());
+
+		//
+		// Changing the Target drops the compiled form
+		//
+		target	= new Target();
+		assertTrue(target.compile());
+		target.addAnyOf(anyOf);
+		assertFalse(target.isCompiled());
+	}
+}
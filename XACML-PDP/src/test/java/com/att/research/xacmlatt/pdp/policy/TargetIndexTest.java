@@ -0,0 +1,202 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationResult;
+import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+
+/**
+ * Checks that combining over the children a {@link TargetIndex} selects gives the same result as combining over every
+ * child, for rules in a <code>Policy</code> and for policies in a <code>PolicySet</code>, under order-sensitive and
+ * order-insensitive combining algorithms.
+ */
+public class TargetIndexTest {
+	private static final String XSD_STRING		= "http://www.w3.org/2001/XMLSchema#string";
+	private static final String XSD_INTEGER		= "http://www.w3.org/2001/XMLSchema#integer";
+
+	private static final String CAT_SUBJECT		= "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+	private static final String CAT_RESOURCE	= "urn:oasis:names:tc:xacml:3.0:attribute-category:resource";
+	private static final String CAT_ACTION		= "urn:oasis:names:tc:xacml:3.0:attribute-category:action";
+
+	private static final String ID_RESOURCE		= "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ID_LEVEL		= "urn:com:att:xacml:test:level";
+	private static final String ID_ACTION		= "urn:oasis:names:tc:xacml:1.0:action:action-id";
+
+	private static final String RULE_FIRST_APPLICABLE			= "urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable";
+	private static final String RULE_DENY_OVERRIDES				= "urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-overrides";
+	private static final String RULE_PERMIT_OVERRIDES			= "urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:permit-overrides";
+	private static final String RULE_PERMIT_UNLESS_DENY			= "urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:permit-unless-deny";
+	private static final String POLICY_FIRST_APPLICABLE			= "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable";
+	private static final String POLICY_ONLY_ONE_APPLICABLE		= "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:only-one-applicable";
+	private static final String POLICY_DENY_OVERRIDES			= "urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-overrides";
+	private static final String POLICY_PERMIT_OVERRIDES			= "urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:permit-overrides";
+	private static final String POLICY_DENY_UNLESS_PERMIT		= "urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-unless-permit";
+
+	private static String match(String function, String dataType, String value, String category, String attributeId, boolean mustBePresent) {
+		return "<Match MatchId=\"" + function + "\">"
+				+ "<AttributeValue DataType=\"" + dataType + "\">" + value + "</AttributeValue>"
+				+ "<AttributeDesignator Category=\"" + category + "\" AttributeId=\"" + attributeId + "\" DataType=\"" + dataType + "\" MustBePresent=\"" + mustBePresent + "\"/>"
+				+ "</Match>";
+	}
+
+	private static String randomTarget(Random random) {
+		switch (random.nextInt(6)) {
+		case 0:
+			return "<Target/>";
+		case 1:
+			return "<Target><AnyOf><AllOf>" + match("urn:oasis:names:tc:xacml:1.0:function:integer-equal", XSD_INTEGER, Integer.toString(random.nextInt(6)), CAT_SUBJECT, ID_LEVEL, random.nextBoolean()) + "</AllOf></AnyOf></Target>";
+		case 2:
+			return "<Target><AnyOf><AllOf>" + match("urn:oasis:names:tc:xacml:3.0:function:string-equal-ignore-case", XSD_STRING, "ACT-" + random.nextInt(4), CAT_ACTION, ID_ACTION, false) + "</AllOf></AnyOf></Target>";
+		case 3:
+			return "<Target><AnyOf>"
+					+ "<AllOf>" + match("urn:oasis:names:tc:xacml:1.0:function:string-equal", XSD_STRING, "res-" + random.nextInt(6), CAT_RESOURCE, ID_RESOURCE, false) + "</AllOf>"
+					+ "<AllOf>" + match("urn:oasis:names:tc:xacml:1.0:function:string-equal", XSD_STRING, "act-" + random.nextInt(4), CAT_ACTION, ID_ACTION, false) + "</AllOf>"
+					+ "</AnyOf></Target>";
+		default:
+			return "<Target><AnyOf><AllOf>" + match("urn:oasis:names:tc:xacml:1.0:function:string-equal", XSD_STRING, "res-" + random.nextInt(6), CAT_RESOURCE, ID_RESOURCE, false) + "</AllOf></AnyOf></Target>";
+		}
+	}
+
+	private static String randomPolicy(Random random, String id, String ruleAlgorithm) {
+		StringBuilder stringBuilder	= new StringBuilder();
+		stringBuilder.append("<Policy xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicyId=\"").append(id).append("\" Version=\"1.0\" RuleCombiningAlgId=\"")
+					 .append(ruleAlgorithm).append("\">");
+		stringBuilder.append(random.nextInt(3) == 0 ? randomTarget(random) : "<Target/>");
+		int rules	= TargetIndex.MINIMUM_CHILDREN + random.nextInt(8);
+		for (int i = 0 ; i < rules ; i++) {
+			stringBuilder.append("<Rule RuleId=\"").append(id).append(":rule:").append(i).append("\" Effect=\"").append(random.nextBoolean() ? "Permit" : "Deny").append("\">");
+			stringBuilder.append(randomTarget(random));
+			stringBuilder.append("</Rule>");
+		}
+		stringBuilder.append("</Policy>");
+		return stringBuilder.toString();
+	}
+
+	private static PolicySet randomPolicySet(Random random, String policyAlgorithm, String ruleAlgorithm) throws Exception {
+		StringBuilder stringBuilder	= new StringBuilder();
+		stringBuilder.append("<PolicySet xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicySetId=\"urn:com:att:xacml:test:index\" Version=\"1.0\" PolicyCombiningAlgId=\"")
+					 .append(policyAlgorithm).append("\">");
+		stringBuilder.append("<Target/>");
+		int policies	= TargetIndex.MINIMUM_CHILDREN + random.nextInt(8);
+		for (int i = 0 ; i < policies ; i++) {
+			String policy	= randomPolicy(random, "urn:com:att:xacml:test:index:policy:" + i, ruleAlgorithm);
+			if (random.nextBoolean()) {
+				policy	= policy.replaceFirst("<Target/>", randomTarget(random));
+			}
+			stringBuilder.append(policy.replaceFirst(" xmlns=\"[^\"]*\"", ""));
+		}
+		stringBuilder.append("</PolicySet>");
+		return (PolicySet)DOMPolicyDef.load(new ByteArrayInputStream(stringBuilder.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static Request newRequest(Random random) throws Exception {
+		StringBuilder subject	= new StringBuilder("{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\",\"Value\":\"user\"}");
+		if (random.nextInt(4) != 0) {
+			subject.append(",{\"AttributeId\":\"" + ID_LEVEL + "\",\"DataType\":\"" + XSD_INTEGER + "\",\"Value\":" + random.nextInt(7) + "}");
+		}
+		String json	= "{\"Request\":{"
+				+ "\"AccessSubject\":[{\"Attribute\":[" + subject + "]}],"
+				+ "\"Action\":[{\"Attribute\":[{\"AttributeId\":\"" + ID_ACTION + "\",\"Value\":\"act-" + random.nextInt(5) + "\"}]}],"
+				+ "\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"" + ID_RESOURCE + "\",\"Value\":\"res-" + random.nextInt(7) + "\"}]}]"
+				+ "}}";
+		return JsonRequestTranslator.load(json);
+	}
+
+	private static EvaluationContext newContext(Request request) {
+		return new StdEvaluationContext(request, null, null, NullTraceEngine.newInstance());
+	}
+
+	private static void assertSameResult(EvaluationResult expected, EvaluationResult actual) {
+		assertEquals(expected.getDecision(), actual.getDecision());
+		assertEquals(expected.getStatus().getStatusCode(), actual.getStatus().getStatusCode());
+		assertEquals(expected.getStatus().getStatusMessage(), actual.getStatus().getStatusMessage());
+	}
+
+	private static Set<Decision> compare(String policyAlgorithm, String ruleAlgorithm) throws Exception {
+		Random random			= new Random(policyAlgorithm.hashCode() * 31L + ruleAlgorithm.hashCode());
+		Set<Decision> decisions	= EnumSet.noneOf(Decision.class);
+		for (int p = 0 ; p < 20 ; p++) {
+			PolicySet policySet	= randomPolicySet(random, policyAlgorithm, ruleAlgorithm);
+			for (int r = 0 ; r < 50 ; r++) {
+				Request request	= newRequest(random);
+				//
+				// Children of the policy set
+				//
+				EvaluationResult expected	= policySet.getPolicyCombiningAlgorithm().combine(newContext(request), policySet.getCombiningPolicies(), policySet.getCombinerParameterList());
+				EvaluationResult actual		= policySet.getPolicyCombiningAlgorithm().combine(newContext(request), policySet.getCombiningPolicies(newContext(request)), policySet.getCombinerParameterList());
+				assertSameResult(expected, actual);
+				decisions.add(actual.getDecision());
+				//
+				// Rules of each policy
+				//
+				Iterator<PolicySetChild> iterChildren	= policySet.getChildren();
+				while (iterChildren.hasNext()) {
+					Policy policy	= (Policy)iterChildren.next();
+					List<CombiningElement<Rule>> listRules	= policy.getCombiningRules();
+					expected	= policy.getRuleCombiningAlgorithm().combine(newContext(request), listRules, policy.getCombinerParameterList());
+					actual		= policy.getRuleCombiningAlgorithm().combine(newContext(request), policy.getCombiningRules(newContext(request)), policy.getCombinerParameterList());
+					assertSameResult(expected, actual);
+				}
+			}
+		}
+		return decisions;
+	}
+
+	@Test
+	public void testFirstApplicable() throws Exception {
+		Set<Decision> decisions	= compare(POLICY_FIRST_APPLICABLE, RULE_FIRST_APPLICABLE);
+		assertTrue(decisions.contains(Decision.PERMIT) && decisions.contains(Decision.DENY) && decisions.contains(Decision.INDETERMINATE));
+	}
+
+	@Test
+	public void testOnlyOneApplicable() throws Exception {
+		Set<Decision> decisions	= compare(POLICY_ONLY_ONE_APPLICABLE, RULE_DENY_OVERRIDES);
+		assertTrue(decisions.contains(Decision.INDETERMINATE) && decisions.contains(Decision.NOTAPPLICABLE));
+	}
+
+	@Test
+	public void testOverrides() throws Exception {
+		compare(POLICY_DENY_OVERRIDES, RULE_PERMIT_OVERRIDES);
+		compare(POLICY_PERMIT_OVERRIDES, RULE_DENY_OVERRIDES);
+	}
+
+	@Test
+	public void testUnless() throws Exception {
+		compare(POLICY_DENY_UNLESS_PERMIT, RULE_PERMIT_UNLESS_DENY);
+	}
+
+	@Test
+	public void testIndexIsUsed() throws Exception {
+		Random random		= new Random(42L);
+		PolicySet policySet	= randomPolicySet(random, POLICY_FIRST_APPLICABLE, RULE_FIRST_APPLICABLE);
+		Request request		= newRequest(random);
+		assertTrue(policySet.getCombiningPolicies(newContext(request)).size() <= policySet.getCombiningPolicies().size());
+		TargetIndex<CombiningElement<PolicySetChild>> targetIndex	= TargetIndex.newInstance(policySet.getCombiningPolicies(),
+				combiningElement -> ((PolicyDef)combiningElement.getEvaluatable()).getTarget(), TargetIndex.MINIMUM_CHILDREN);
+		assertTrue(targetIndex == null || targetIndex.getIndexedCount() > 0);
+		assertEquals(null, TargetIndex.newInstance(policySet.getCombiningPolicies().subList(0, 1),
+				combiningElement -> ((PolicyDef)combiningElement.getEvaluatable()).getTarget(), TargetIndex.MINIMUM_CHILDREN));
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.dom.DOMRequest;
+import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+
+public class AttributeSelectorTest {
+	private static Request newRequest(String namespace, String name) throws Exception {
+		return DOMRequest.load(
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" xmlns:md=\"" + namespace + "\" CombinedDecision=\"false\" ReturnPolicyIdList=\"false\">" +
+			"<Attributes Category=\"urn:oasis:names:tc:xacml:3.0:attribute-category:resource\">" +
+			"<Content><md:record><md:patient><md:name>" + name + "</md:name></md:patient></md:record></Content>" +
+			"</Attributes>" +
+			"</Request>");
+	}
+
+	private static AttributeSelector newSelector() {
+		AttributeSelector attributeSelector	= new AttributeSelector();
+		attributeSelector.setCategory(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE);
+		attributeSelector.setDataTypeId(XACML3.ID_DATATYPE_STRING);
+		attributeSelector.setMustBePresent(false);
+		attributeSelector.setPath("/md:record/md:patient/md:name/text()");
+		return attributeSelector;
+	}
+
+	private static List<Object> getValues(ExpressionResult expressionResult) {
+		assertTrue(expressionResult.isOk());
+		List<Object> values	= new ArrayList<>();
+		if (expressionResult.isBag()) {
+			Iterator<AttributeValue<?>> iterAttributeValues	= expressionResult.getBag().getAttributeValues();
+			while (iterAttributeValues.hasNext()) {
+				values.add(iterAttributeValues.next().getValue());
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void testContentCopiedOnce() throws Exception {
+		Request request	= newRequest("urn:example:med", "Alice");
+		StdEvaluationContext evaluationContext	= new StdEvaluationContext(request, null, null);
+		AttributeSelector attributeSelector	= newSelector();
+		assertEquals(1, getValues(attributeSelector.evaluate(evaluationContext, null)).size());
+		assertEquals("Alice", getValues(attributeSelector.evaluate(evaluationContext, null)).get(0));
+
+		Node nodeContent	= request.getRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE).next().getContentRoot();
+		Node nodeCopy		= evaluationContext.getContentDocumentRoot(nodeContent);
+		assertSame(nodeCopy, evaluationContext.getContentDocumentRoot(nodeContent));
+		assertNotSame(nodeCopy, new StdEvaluationContext(request, null, null).getContentDocumentRoot(nodeContent));
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		AttributeSelector attributeSelector	= newSelector();
+		assertEquals("Alice", getValues(attributeSelector.evaluate(new StdEvaluationContext(newRequest("urn:example:med", "Alice"), null, null), null)).get(0));
+		//
+		// The same prefix bound to another namespace must not reuse the Path compiled for the first one
+		//
+		assertEquals("Bob", getValues(attributeSelector.evaluate(new StdEvaluationContext(newRequest("urn:example:other", "Bob"), null, null), null)).get(0));
+		//
+		// A new Path is compiled again
+		//
+		attributeSelector.setPath("count(/md:record/md:patient)");
+		attributeSelector.setPath("/md:record/md:patient/md:name");
+		assertEquals("Carol", getValues(attributeSelector.evaluate(new StdEvaluationContext(newRequest("urn:example:med", "Carol"), null, null), null)).get(0));
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		AttributeSelector attributeSelector	= newSelector();
+		ExecutorService executor	= Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> futures	= new ArrayList<>();
+			for (int i = 0 ; i < 200 ; i++) {
+				String name	= "name" + i;
+				String namespace	= (i % 2 == 0 ? "urn:example:med" : "urn:example:other");
+				futures.add(executor.submit(() -> getValues(attributeSelector.evaluate(new StdEvaluationContext(newRequest(namespace, name), null, null), null)).get(0)));
+			}
+			for (int i = 0 ; i < futures.size() ; i++) {
+				assertEquals("name" + i, futures.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.policy.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.trace.TraceEngine;
+import com.att.research.xacml.api.trace.TraceEvent;
+import com.att.research.xacml.std.StdStatus;
+import com.att.research.xacml.std.StdStatusCode;
+import com.att.research.xacml.std.datatypes.DataTypes;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationException;
+import com.att.research.xacmlatt.pdp.policy.Expression;
+import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
+import com.att.research.xacmlatt.pdp.policy.Policy;
+import com.att.research.xacmlatt.pdp.policy.PolicyDefaults;
+import com.att.research.xacmlatt.pdp.policy.VariableDefinition;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
+
+public class VariableReferenceTest {
+	/**
+	 * Counts how many times it is evaluated and returns the given result.
+	 */
+	private static class CountingExpression extends Expression {
+		private final AtomicInteger calls	= new AtomicInteger();
+		private final ExpressionResult result;
+
+		CountingExpression(ExpressionResult resultIn) {
+			this.result	= resultIn;
+		}
+
+		@Override
+		public ExpressionResult evaluate(EvaluationContext evaluationContext, PolicyDefaults policyDefaults) throws EvaluationException {
+			this.calls.incrementAndGet();
+			return this.result;
+		}
+
+		@Override
+		protected boolean validateComponent() {
+			return true;
+		}
+	}
+
+	private static class ListTraceEngine implements TraceEngine {
+		private final List<String> messages	= new ArrayList<>();
+
+		@Override
+		public void trace(TraceEvent<?> traceEvent) {
+			this.messages.add(traceEvent.getMessage());
+		}
+
+		@Override
+		public boolean isTracing() {
+			return true;
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	private static Policy newPolicy(String variableId, Expression expression) {
+		VariableDefinition variableDefinition	= new VariableDefinition();
+		variableDefinition.setId(variableId);
+		variableDefinition.setExpression(expression);
+		Policy policy	= new Policy();
+		policy.addVariableDefinition(variableDefinition);
+		return policy;
+	}
+
+	@Test
+	public void testMemoized() throws Exception {
+		CountingExpression expression	= new CountingExpression(ExpressionResult.newSingle(DataTypes.DT_STRING.createAttributeValue("value")));
+		Policy policy	= newPolicy("var", expression);
+		VariableReference reference1	= new VariableReference(policy, "var");
+		VariableReference reference2	= new VariableReference(policy, "var");
+
+		ListTraceEngine traceEngine	= new ListTraceEngine();
+		StdEvaluationContext evaluationContext	= new StdEvaluationContext(null, null, null, traceEngine);
+		ExpressionResult result	= reference1.evaluate(evaluationContext, null);
+		assertSame(result, reference2.evaluate(evaluationContext, null));
+		assertSame(result, reference1.evaluate(evaluationContext, null));
+		assertEquals(1, expression.calls.get());
+		assertEquals("Variable", traceEngine.messages.get(0));
+		assertEquals("Variable (cached)", traceEngine.messages.get(1));
+		assertEquals(3, traceEngine.messages.size());
+		//
+		// A new decision evaluates it again
+		//
+		reference1.evaluate(new StdEvaluationContext(null, null, null, traceEngine), null);
+		assertEquals(2, expression.calls.get());
+	}
+
+	@Test
+	public void testIndeterminate() throws Exception {
+		CountingExpression expression	= new CountingExpression(ExpressionResult.newError(new StdStatus(StdStatusCode.STATUS_CODE_MISSING_ATTRIBUTE, "missing")));
+		Policy policy	= newPolicy("var", expression);
+		VariableReference reference	= new VariableReference(policy, "var");
+
+		StdEvaluationContext evaluationContext	= new StdEvaluationContext(null, null, null);
+		for (int i = 0 ; i < 3 ; i++) {
+			ExpressionResult result	= reference.evaluate(evaluationContext, null);
+			assertFalse(result.isOk());
+			assertEquals(StdStatusCode.STATUS_CODE_MISSING_ATTRIBUTE, result.getStatus().getStatusCode());
+		}
+		assertEquals(1, expression.calls.get());
+	}
+}
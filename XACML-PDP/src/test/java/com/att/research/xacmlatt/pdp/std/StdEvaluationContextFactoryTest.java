@@ -0,0 +1,34 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.std;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.std.pip.finders.EngineFinder;
+import com.att.research.xacml.std.pip.finders.PIPDependencies;
+
+public class StdEvaluationContextFactoryTest {
+
+	@Test
+	public void testPIPDependencies() throws Exception {
+		StdEvaluationContextFactory evaluationContextFactory	= new StdEvaluationContextFactory();
+		PIPFinder pipFinder1	= new EngineFinder();
+		PIPFinder pipFinder2	= new EngineFinder();
+		PIPDependencies pipDependencies1	= evaluationContextFactory.getPIPDependencies(pipFinder1);
+		assertSame(pipDependencies1, evaluationContextFactory.getPIPDependencies(pipFinder1));
+		//
+		// A caller still holding the previous finder must not get the dependencies of the new one, nor the other way round
+		//
+		PIPDependencies pipDependencies2	= evaluationContextFactory.getPIPDependencies(pipFinder2);
+		assertNotSame(pipDependencies1, pipDependencies2);
+		assertSame(pipDependencies2, evaluationContextFactory.getPIPDependencies(pipFinder2));
+		assertNotSame(pipDependencies2, evaluationContextFactory.getPIPDependencies(pipFinder1));
+	}
+}
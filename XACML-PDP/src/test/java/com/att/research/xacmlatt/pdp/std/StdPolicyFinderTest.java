@@ -0,0 +1,229 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.std;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.std.StdStatus;
+import com.att.research.xacml.std.StdStatusCode;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.trace.NullTraceEngine;
+import com.att.research.xacmlatt.pdp.eval.EvaluationContext;
+import com.att.research.xacmlatt.pdp.eval.EvaluationException;
+import com.att.research.xacmlatt.pdp.eval.MatchResult;
+import com.att.research.xacmlatt.pdp.policy.PolicyDef;
+import com.att.research.xacmlatt.pdp.policy.PolicyFinderResult;
+import com.att.research.xacmlatt.pdp.policy.TargetIndex;
+import com.att.research.xacmlatt.pdp.policy.dom.DOMPolicyDef;
+
+/**
+ * Checks that the root policy selection in {@link StdPolicyFinder}, which goes through a
+ * {@link com.att.research.xacmlatt.pdp.policy.TargetIndex}, returns exactly what a linear scan of the root policies
+ * returns.
+ */
+public class StdPolicyFinderTest {
+	private static final String XSD_STRING		= "http://www.w3.org/2001/XMLSchema#string";
+	private static final String XSD_INTEGER		= "http://www.w3.org/2001/XMLSchema#integer";
+	private static final String XSD_ANYURI		= "http://www.w3.org/2001/XMLSchema#anyURI";
+
+	private static final String CAT_SUBJECT		= "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+	private static final String CAT_RESOURCE	= "urn:oasis:names:tc:xacml:3.0:attribute-category:resource";
+	private static final String CAT_ACTION		= "urn:oasis:names:tc:xacml:3.0:attribute-category:action";
+
+	private static final String ID_RESOURCE		= "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ID_LOCATION		= "urn:com:att:xacml:test:location";
+	private static final String ID_LEVEL		= "urn:com:att:xacml:test:level";
+	private static final String ID_DEPARTMENT	= "urn:com:att:xacml:test:department";
+	private static final String ID_ACTION		= "urn:oasis:names:tc:xacml:1.0:action:action-id";
+
+	private static final String FN_STRING_EQUAL	= "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+	private static final String FN_INTEGER_EQUAL	= "urn:oasis:names:tc:xacml:1.0:function:integer-equal";
+	private static final String FN_ANYURI_EQUAL	= "urn:oasis:names:tc:xacml:1.0:function:anyURI-equal";
+	private static final String FN_STRING_EQUAL_IGNORE_CASE	= "urn:oasis:names:tc:xacml:3.0:function:string-equal-ignore-case";
+
+	private static List<PolicyDef> listRoots;
+	private static StdPolicyFinder policyFinder;
+
+	private static String match(String function, String dataType, String value, String category, String attributeId, boolean mustBePresent) {
+		return "<Match MatchId=\"" + function + "\">"
+				+ "<AttributeValue DataType=\"" + dataType + "\">" + value + "</AttributeValue>"
+				+ "<AttributeDesignator Category=\"" + category + "\" AttributeId=\"" + attributeId + "\" DataType=\"" + dataType + "\" MustBePresent=\"" + mustBePresent + "\"/>"
+				+ "</Match>";
+	}
+
+	private static String anyOf(String... allOfs) {
+		StringBuilder stringBuilder	= new StringBuilder("<AnyOf>");
+		for (String allOf : allOfs) {
+			stringBuilder.append("<AllOf>").append(allOf).append("</AllOf>");
+		}
+		return stringBuilder.append("</AnyOf>").toString();
+	}
+
+	private static PolicyDef policy(int id, String... anyOfs) throws Exception {
+		StringBuilder stringBuilder	= new StringBuilder();
+		stringBuilder.append("<Policy xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" PolicyId=\"urn:com:att:xacml:test:root:").append(id)
+					 .append("\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-overrides\">");
+		stringBuilder.append("<Target>");
+		for (String anyOf : anyOfs) {
+			stringBuilder.append(anyOf);
+		}
+		stringBuilder.append("</Target>");
+		stringBuilder.append("<Rule RuleId=\"permit\" Effect=\"Permit\"/>");
+		stringBuilder.append("</Policy>");
+		return DOMPolicyDef.load(new ByteArrayInputStream(stringBuilder.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String resource(int k) {
+		return match(FN_STRING_EQUAL, XSD_STRING, "res-" + k, CAT_RESOURCE, ID_RESOURCE, false);
+	}
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Random random	= new Random(1234L);
+		listRoots		= new ArrayList<>();
+		for (int i = 0 ; i < 200 ; i++) {
+			switch (random.nextInt(9)) {
+			case 0:
+				listRoots.add(policy(i, anyOf(resource(random.nextInt(400)))));
+				break;
+			case 1:
+				listRoots.add(policy(i, anyOf(match(FN_INTEGER_EQUAL, XSD_INTEGER, Integer.toString(random.nextInt(200)), CAT_SUBJECT, ID_LEVEL, false))));
+				break;
+			case 2:
+				listRoots.add(policy(i, anyOf(match(FN_ANYURI_EQUAL, XSD_ANYURI, "http://example.com/" + random.nextInt(200), CAT_RESOURCE, ID_LOCATION, false))));
+				break;
+			case 3:
+				listRoots.add(policy(i, anyOf(resource(random.nextInt(400)), match(FN_STRING_EQUAL, XSD_STRING, "act-" + random.nextInt(100), CAT_ACTION, ID_ACTION, false))));
+				break;
+			case 4:
+				listRoots.add(policy(i,
+						anyOf(resource(random.nextInt(400)) + match(FN_INTEGER_EQUAL, XSD_INTEGER, Integer.toString(random.nextInt(200)), CAT_SUBJECT, ID_LEVEL, false)),
+						anyOf(match(FN_STRING_EQUAL, XSD_STRING, "act-" + random.nextInt(100), CAT_ACTION, ID_ACTION, false))));
+				break;
+			case 5:
+				listRoots.add(policy(i, anyOf(match(FN_STRING_EQUAL_IGNORE_CASE, XSD_STRING, "RES-" + random.nextInt(400), CAT_RESOURCE, ID_RESOURCE, false))));
+				break;
+			case 6:
+				listRoots.add(policy(i, anyOf(match(FN_STRING_EQUAL, XSD_STRING, "dept-" + random.nextInt(5), CAT_SUBJECT, ID_DEPARTMENT, true))));
+				break;
+			case 7:
+				listRoots.add(policy(i,
+						anyOf(match(FN_STRING_EQUAL, XSD_STRING, "dept-" + random.nextInt(5), CAT_SUBJECT, ID_DEPARTMENT, true)),
+						anyOf(resource(random.nextInt(400)))));
+				break;
+			default:
+				listRoots.add(policy(i, anyOf(resource(random.nextInt(400)))));
+				break;
+			}
+		}
+		policyFinder	= new StdPolicyFinder(listRoots, Collections.emptyList());
+	}
+
+	private static Request newRequest(Random random) throws Exception {
+		StringBuilder subject	= new StringBuilder("{\"AttributeId\":\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\",\"Value\":\"user\"}");
+		if (random.nextInt(4) != 0) {
+			subject.append(",{\"AttributeId\":\"" + ID_LEVEL + "\",\"DataType\":\"" + XSD_INTEGER + "\",\"Value\":" + random.nextInt(250) + "}");
+		}
+		if (random.nextInt(2) != 0) {
+			subject.append(",{\"AttributeId\":\"" + ID_DEPARTMENT + "\",\"Value\":\"dept-" + random.nextInt(6) + "\"}");
+		}
+		StringBuilder resource	= new StringBuilder("{\"AttributeId\":\"" + ID_RESOURCE + "\",\"Value\":\"res-" + random.nextInt(450) + "\"}");
+		if (random.nextInt(3) == 0) {
+			resource.append(",{\"AttributeId\":\"" + ID_RESOURCE + "\",\"Value\":\"res-" + random.nextInt(450) + "\"}");
+		}
+		if (random.nextInt(2) == 0) {
+			resource.append(",{\"AttributeId\":\"" + ID_LOCATION + "\",\"DataType\":\"" + XSD_ANYURI + "\",\"Value\":\"http://example.com/" + random.nextInt(250) + "\"}");
+		}
+		String json	= "{\"Request\":{"
+				+ "\"AccessSubject\":[{\"Attribute\":[" + subject + "]}],"
+				+ "\"Action\":[{\"Attribute\":[{\"AttributeId\":\"" + ID_ACTION + "\",\"Value\":\"act-" + random.nextInt(120) + "\"}]}],"
+				+ "\"Resource\":[{\"Attribute\":[" + resource + "]}]"
+				+ "}}";
+		return JsonRequestTranslator.load(json);
+	}
+
+	/*
+	 * The linear scan StdPolicyFinder used before root targets were indexed.
+	 */
+	private static PolicyFinderResult<PolicyDef> scan(EvaluationContext evaluationContext) {
+		PolicyDef policyDefFirstMatch	= null;
+		PolicyFinderResult<PolicyDef> firstIndeterminate	= null;
+		for (PolicyDef policyDef : listRoots) {
+			try {
+				MatchResult matchResult	= policyDef.match(evaluationContext);
+				switch(matchResult.getMatchCode()) {
+				case INDETERMINATE:
+					if (firstIndeterminate == null) {
+						firstIndeterminate	= new StdPolicyFinderResult<>(matchResult.getStatus());
+					}
+					break;
+				case MATCH:
+					if (policyDefFirstMatch != null) {
+						return new StdPolicyFinderResult<>(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "Multiple applicable root policies"));
+					}
+					policyDefFirstMatch	= policyDef;
+					break;
+				case NOMATCH:
+					break;
+				}
+			} catch (EvaluationException ex) {
+				if (firstIndeterminate == null) {
+					firstIndeterminate	= new StdPolicyFinderResult<>(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage()));
+				}
+			}
+		}
+		if (policyDefFirstMatch != null) {
+			return new StdPolicyFinderResult<>(policyDefFirstMatch);
+		}
+		return (firstIndeterminate != null ? firstIndeterminate : new StdPolicyFinderResult<>(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "No matching root policy found")));
+	}
+
+	@Test
+	public void testIndexedCount() {
+		int indexed	= new TargetIndex<>(listRoots, PolicyDef::getTarget).getIndexedCount();
+		assertTrue(indexed > 0);
+		assertTrue(indexed < listRoots.size());
+	}
+
+	@Test
+	public void testIndexMatchesScan() throws Exception {
+		Random random		= new Random(5678L);
+		int found			= 0;
+		int notFound		= 0;
+		int indeterminate	= 0;
+		for (int i = 0 ; i < 2000 ; i++) {
+			Request request	= newRequest(random);
+			PolicyFinderResult<PolicyDef> expected	= scan(new StdEvaluationContext(request, policyFinder, null, NullTraceEngine.newInstance()));
+			PolicyFinderResult<PolicyDef> actual	= policyFinder.getRootPolicyDef(new StdEvaluationContext(request, policyFinder, null, NullTraceEngine.newInstance()));
+			assertSame(expected.getPolicyDef(), actual.getPolicyDef());
+			assertEquals(expected.getStatus().getStatusCode(), actual.getStatus().getStatusCode());
+			assertEquals(expected.getStatus().getStatusMessage(), actual.getStatus().getStatusMessage());
+			if (actual.getPolicyDef() != null) {
+				found++;
+			} else if (StdStatusCode.STATUS_CODE_MISSING_ATTRIBUTE.equals(actual.getStatus().getStatusCode())) {
+				indeterminate++;
+			} else {
+				notFound++;
+			}
+		}
+		assertTrue(found > 0);
+		assertTrue(notFound > 0);
+		assertTrue(indeterminate > 0);
+	}
+}
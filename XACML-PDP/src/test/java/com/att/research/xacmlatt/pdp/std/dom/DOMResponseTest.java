@@ -6,8 +6,11 @@
 package com.att.research.xacmlatt.pdp.std.dom;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -2272,6 +2275,24 @@ public class DOMResponseTest {
 	// test indentation???
 	
 	
+	@Test
+	public void testConvertStream() throws Exception {
+		response = new StdMutableResponse();
+		result = new StdMutableResult();
+		result.setDecision(Decision.PERMIT);
+		StdMutableAttribute mutableAttribute = new StdMutableAttribute(new IdentifierImpl("firstCategory"), new IdentifierImpl("attrIdent"), DataTypes.DT_STRING.createAttributeValue("Zo\u00eb \u6771\u4eac"), null, true);
+		result.addAttributeCategory(new StdAttributeCategory(new IdentifierImpl("firstCategory"), Arrays.asList((Attribute) mutableAttribute)));
+		response.add(result);
+		for (boolean prettyPrint : new boolean[] {false, true}) {
+			// the bytes are UTF-8 whatever the platform encoding is
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			DOMResponse.convert(response, os, prettyPrint);
+			String xml = new String(os.toByteArray(), StandardCharsets.UTF_8);
+			assertEquals(DOMResponse.toString(response, prettyPrint), xml);
+			assertTrue(xml.contains("<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">Zo\u00eb \u6771\u4eac</AttributeValue>"));
+		}
+	}
+	
 }
 
 
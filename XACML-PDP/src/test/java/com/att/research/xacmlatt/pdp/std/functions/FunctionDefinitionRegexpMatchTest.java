@@ -2,26 +2,36 @@ package com.att.research.xacmlatt.pdp.std.functions;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 import javax.security.auth.x500.X500Principal;
 
 import org.junit.Test;
 
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataType;
 import com.att.research.xacml.api.XACML3;
 import com.att.research.xacml.std.datatypes.DataTypes;
 import com.att.research.xacml.std.datatypes.IPAddress;
 import com.att.research.xacml.std.datatypes.RFC2396DomainName;
 import com.att.research.xacml.std.datatypes.RFC822Name;
+import com.att.research.xacmlatt.pdp.policy.Expression;
 import com.att.research.xacmlatt.pdp.policy.ExpressionResult;
 import com.att.research.xacmlatt.pdp.policy.FunctionArgument;
 import com.att.research.xacmlatt.pdp.policy.FunctionArgumentAttributeValue;
+import com.att.research.xacmlatt.pdp.policy.expressions.Apply;
+import com.att.research.xacmlatt.pdp.policy.expressions.AttributeValueExpression;
+import com.att.research.xacmlatt.pdp.std.StdEvaluationContext;
 import com.att.research.xacmlatt.pdp.std.StdFunctions;
+import com.att.research.xacmlatt.pdp.util.ATTPDPProperties;
 
 /**
  * Test of PDP Functions (See XACML core spec section A.3)
@@ -488,4 +498,96 @@ public class FunctionDefinitionRegexpMatchTest {
 	
 	
 
+	/*
+	 * A literal regexp is compiled once by prepareArgument and must give the same results as one compiled on each call
+	 */
+	private void checkPrepared(FunctionDefinitionRegexpMatch<?> fd, DataType<?> dataType, String regexp, String matching, String notMatching) throws Exception {
+		AttributeValue<String> attributeValueRegexp	= DataTypes.DT_STRING.createAttributeValue(regexp);
+		FunctionArgument prepared	= fd.prepareArgument(0, attributeValueRegexp);
+		assertTrue(prepared instanceof FunctionDefinitionRegexpMatch.FunctionArgumentPattern);
+		assertNull(fd.prepareArgument(1, attributeValueRegexp));
+		
+		for (FunctionArgument attrRegexp : new FunctionArgument[] { prepared, new FunctionArgumentAttributeValue(attributeValueRegexp) }) {
+			arguments.clear();
+			arguments.add(attrRegexp);
+			arguments.add(new FunctionArgumentAttributeValue(dataType.createAttributeValue(matching)));
+			ExpressionResult res = fd.evaluate(null, arguments);
+			assertTrue(res.isOk());
+			assertEquals(true, res.getValue().getValue());
+			
+			arguments.clear();
+			arguments.add(attrRegexp);
+			arguments.add(new FunctionArgumentAttributeValue(dataType.createAttributeValue(notMatching)));
+			res = fd.evaluate(null, arguments);
+			assertTrue(res.isOk());
+			assertEquals(false, res.getValue().getValue());
+		}
+	}
+	
+	@Test
+	public void testPrepared() throws Exception {
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_STRING_REGEXP_MATCH, DataTypes.DT_STRING, "a.c", "abc", "abcd");
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_ANYURI_REGEXP_MATCH, DataTypes.DT_ANYURI, "https?://.*\\.att\\.com/.*", "http://www.att.com/index.html", "ftp://www.att.com/index.html");
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_IPADDRESS_REGEXP_MATCH, DataTypes.DT_IPADDRESS, "10\\..*", "10.1.2.3", "192.168.1.2");
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_DNSNAME_REGEXP_MATCH, DataTypes.DT_DNSNAME, ".*\\.att\\.com", "www.att.com", "www.example.com");
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_RFC822NAME_REGEXP_MATCH, DataTypes.DT_RFC822NAME, ".*@att\\.com", "someone@att.com", "someone@example.com");
+		checkPrepared((FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_X500NAME_REGEXP_MATCH, DataTypes.DT_X500NAME, ".*O=ATT.*", "CN=Some One, O=ATT", "CN=Some One, O=Example");
+	}
+	
+	@Test
+	public void testInvalidRegexp() throws Exception {
+		FunctionDefinitionRegexpMatch<?> fd = (FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_STRING_REGEXP_MATCH;
+		AttributeValue<String> attributeValueRegexp	= DataTypes.DT_STRING.createAttributeValue("a(b");
+		
+		// not compiled ahead of time, so it is reported when evaluated
+		assertNull(fd.prepareArgument(0, attributeValueRegexp));
+		assertNull(fd.prepareArgument(0, DataTypes.DT_INTEGER.createAttributeValue(1234)));
+		arguments.clear();
+		arguments.add(new FunctionArgumentAttributeValue(attributeValueRegexp));
+		arguments.add(new FunctionArgumentAttributeValue(DataTypes.DT_STRING.createAttributeValue("ab")));
+		ExpressionResult res = fd.evaluate(null, arguments);
+		assertFalse(res.isOk());
+		assertTrue(res.getStatus().getStatusMessage().startsWith("function:string-regexp-match Invalid regular expression 'a(b'"));
+		assertEquals("urn:oasis:names:tc:xacml:1.0:status:processing-error", res.getStatus().getStatusCode().getStatusCodeValue().stringValue());
+	}
+	
+	@Test
+	public void testCacheSizeProperty() throws Exception {
+		Properties properties	= new Properties();
+		properties.setProperty(ATTPDPProperties.PROP_FUNCTION_REGEXP_CACHESIZE, "0");
+		FunctionDefinitionRegexpMatch<URI> fd	= new FunctionDefinitionRegexpMatch<>(XACML3.ID_FUNCTION_ANYURI_REGEXP_MATCH, DataTypes.DT_ANYURI, properties);
+		
+		// nothing is kept in a cache of size zero, but the regexp still matches
+		assertNotSame(fd.getPattern("a.c"), fd.getPattern("a.c"));
+		arguments.clear();
+		arguments.add(new FunctionArgumentAttributeValue(DataTypes.DT_STRING.createAttributeValue("http://.*")));
+		arguments.add(new FunctionArgumentAttributeValue(DataTypes.DT_ANYURI.createAttributeValue("http://www.att.com")));
+		ExpressionResult res = fd.evaluate(null, arguments);
+		assertTrue(res.isOk());
+		assertEquals(true, res.getValue().getValue());
+	}
+	
+	@Test
+	public void testApply() throws Exception {
+		List<Expression> listExpressions	= new ArrayList<>();
+		listExpressions.add(new AttributeValueExpression(DataTypes.DT_STRING.createAttributeValue("/api/v[0-9]+/users/.*")));
+		listExpressions.add(new AttributeValueExpression(DataTypes.DT_STRING.createAttributeValue("/api/v2/users/alice")));
+		Apply apply	= new Apply(XACML3.ID_FUNCTION_STRING_REGEXP_MATCH, null, listExpressions);
+		StdEvaluationContext evaluationContext	= new StdEvaluationContext(null, null, null);
+		
+		// the second call uses the regexp prepared by the first
+		for (int i = 0 ; i < 2 ; i++) {
+			ExpressionResult res = apply.evaluate(evaluationContext, null);
+			assertTrue(res.isOk());
+			assertEquals(true, res.getValue().getValue());
+		}
+		
+		// changing the arguments prepares them again
+		listExpressions.set(1, new AttributeValueExpression(DataTypes.DT_STRING.createAttributeValue("/api/users/alice")));
+		apply.setArguments(listExpressions);
+		ExpressionResult res = apply.evaluate(evaluationContext, null);
+		assertTrue(res.isOk());
+		assertEquals(false, res.getValue().getValue());
+	}
+
 }
@@ -0,0 +1,88 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacmlatt.pdp.std.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.std.datatypes.DataTypes;
+import com.att.research.xacmlatt.pdp.policy.FunctionArgument;
+import com.att.research.xacmlatt.pdp.policy.FunctionArgumentAttributeValue;
+import com.att.research.xacmlatt.pdp.std.StdFunctions;
+
+/**
+ * Compares string-regexp-match with the regular expression compiled on every call, as it was done with <code>String.matches</code>,
+ * against the literal compiled once by <code>prepareArgument</code> and a regular expression found in the <code>Pattern</code> cache.
+ *
+ * Run it from the IDE or with:
+ * 		mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.att.research.xacmlatt.pdp.std.functions.RegexpMatchBenchmark
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class RegexpMatchBenchmark {
+	private static final String REGEXP		= "/api/v[0-9]+/(users|groups)/[a-z0-9_-]+(/.*)?";
+	private static final int ITERATIONS		= 1000000;
+	private static final int ROUNDS			= 5;
+
+	private static final String[] PATHS	= {
+		"/api/v2/users/alice/profile",
+		"/api/v10/groups/admins",
+		"/api/users/bob",
+		"/static/index.html"
+	};
+
+	private interface Call {
+		public void run(int i) throws Exception;
+	}
+
+	private static long time(Call call) throws Exception {
+		long start	= System.nanoTime();
+		for (int i = 0 ; i < ITERATIONS ; i++) {
+			call.run(i);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String name, long nanos) {
+		System.out.println(String.format("%-12s %8.1f ns/op", name, (double) nanos / ITERATIONS));
+	}
+
+	public static void main(String[] args) throws Exception {
+		FunctionDefinitionRegexpMatch<?> fd	= (FunctionDefinitionRegexpMatch<?>) StdFunctions.FD_STRING_REGEXP_MATCH;
+		AttributeValue<String> attributeValueRegexp	= DataTypes.DT_STRING.createAttributeValue(REGEXP);
+		FunctionArgument argumentLiteral	= new FunctionArgumentAttributeValue(attributeValueRegexp);
+		FunctionArgument argumentPrepared	= fd.prepareArgument(0, attributeValueRegexp);
+		FunctionArgument[] argumentPaths	= new FunctionArgument[PATHS.length];
+		for (int i = 0 ; i < PATHS.length ; i++) {
+			argumentPaths[i]	= new FunctionArgumentAttributeValue(DataTypes.DT_STRING.createAttributeValue(PATHS[i]));
+		}
+		List<FunctionArgument> listPrepared	= new ArrayList<>(2);
+		List<FunctionArgument> listCached	= new ArrayList<>(2);
+
+		Call callMatches	= i -> PATHS[i % PATHS.length].matches(REGEXP);
+		Call callCached		= i -> {
+			listCached.clear();
+			listCached.add(argumentLiteral);
+			listCached.add(argumentPaths[i % PATHS.length]);
+			fd.evaluate(null, listCached);
+		};
+		Call callPrepared	= i -> {
+			listPrepared.clear();
+			listPrepared.add(argumentPrepared);
+			listPrepared.add(argumentPaths[i % PATHS.length]);
+			fd.evaluate(null, listPrepared);
+		};
+
+		for (int round = 1 ; round <= ROUNDS ; round++) {
+			System.out.println("Round " + round);
+			report("matches", time(callMatches));
+			report("cached", time(callCached));
+			report("prepared", time(callPrepared));
+		}
+	}
+}
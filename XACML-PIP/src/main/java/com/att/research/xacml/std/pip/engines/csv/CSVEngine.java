@@ -9,6 +9,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,7 @@ import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.DataType;
 import com.att.research.xacml.api.DataTypeException;
 import com.att.research.xacml.api.DataTypeFactory;
+import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPRequest;
@@ -54,6 +56,7 @@ public class CSVEngine extends StdConfigurableEngine {
 	public static final String PROP_DELIMITER		= "delimiter";
 	public static final String PROP_QUOTE			= "quote";
 	public static final String PROP_SKIP			= "skip";
+	public static final String PROP_INDEX			= "index";
 	
 	public static final String PROP_RESOLVERS		= "resolvers";
 	public static final String PROP_RESOLVER		= "resolver";
@@ -83,9 +86,18 @@ public class CSVEngine extends StdConfigurableEngine {
 	//
 	private boolean fileIsBig = false;
 	//
-	// small files get all lines read at once into this list
+	// build hash indexes on the resolver parameter columns; on by default for small files
 	//
-	private List<String[]> allLines = null;
+	private boolean buildIndex = true;
+	//
+	// small files, and big files that are indexed, are held in memory here. When null the
+	// file is read one line at a time for every request. Reloads swap in a new index.
+	//
+	private volatile CSVIndex csvIndex = null;
+	//
+	// reloads the in-memory file when it changes, if asked to
+	//
+	private CSVFileWatcher fileWatcher = null;
 
 	//
 	// Our list of resolvers
@@ -174,6 +186,101 @@ public class CSVEngine extends StdConfigurableEngine {
 			logger.error(message);
 			throw new PIPException(message);
 		}
+		//
+		// Big files are only loaded for indexing when asked for explicitly
+		//
+		tmpString = properties.getProperty(prefix + PROP_INDEX);
+		this.buildIndex = (tmpString == null ? ! this.fileIsBig : Boolean.parseBoolean(tmpString));
+	}
+	
+	/**
+	 * Helper to read the CSV file into memory and index it.  Small files are read in full.  Big files are only read if
+	 * indexing is on and every resolver says which columns it uses; just those columns are kept.  Otherwise big files
+	 * are left to be read one line at a time.
+	 * 
+	 * @param id
+	 * @return the new <code>CSVIndex</code> or null if the file is read one line at a time
+	 * @throws PIPException
+	 */
+	private CSVIndex loadCSVFile(String id) throws PIPException {
+		//
+		// Which columns do the resolvers search on, and which do they read at all?
+		//
+		Map<Integer, Set<Identifier>> indexColumns = new HashMap<>();
+		Set<Integer> columns = new HashSet<>();
+		for (CSVResolver resolver : this.csvResolvers) {
+			if (this.buildIndex) {
+				for (Map.Entry<Integer, Identifier> entry : resolver.getParameterColumns().entrySet()) {
+					indexColumns.computeIfAbsent(entry.getKey(), key -> new HashSet<>()).add(entry.getValue());
+				}
+			}
+			Collection<Integer> resolverColumns = resolver.getColumns();
+			if (columns != null && resolverColumns != null) {
+				columns.addAll(resolverColumns);
+			} else {
+				columns = null;
+			}
+		}
+		if (this.fileIsBig && (! this.buildIndex || columns == null)) {
+			if (this.buildIndex) {
+				this.logger.warn("{}: Not indexing csv.source '{}', a resolver does not list its columns", id, csvSourceFile.getAbsolutePath());
+			}
+			return null;
+		}
+		int maxColumn = -1;
+		if (this.fileIsBig) {
+			for (Integer column : columns) {
+				maxColumn = Math.max(maxColumn, column);
+			}
+		}
+		List<String[]> lines = new ArrayList<>();
+		try (CSVReader csvReader = new CSVReader(new FileReader(csvSourceFile), csvDelimiter, csvQuote, csvSkip)) {
+			String[] line;
+			while ((line = csvReader.readNext()) != null) {
+				if (this.fileIsBig) {
+					//
+					// Keep only the columns the resolvers read
+					//
+					String[] projected = new String[Math.min(line.length, maxColumn + 1)];
+					for (Integer column : columns) {
+						if (column < projected.length) {
+							projected[column] = line[column];
+						}
+					}
+					line = projected;
+				}
+				lines.add(line);
+			}
+		} catch (IOException e) {
+			String message = id + ": CSVReader unable to read csv.source '" + csvSourceFile.getAbsolutePath() + "': " + e;
+			logger.error(message, e);
+			throw new PIPException(message);
+		}
+		CSVIndex newIndex = new CSVIndex(lines, indexColumns, dataTypeFactory);
+		if (logger.isDebugEnabled()) {
+            logger.debug("{}: All lines read from csv file, size={}, indexed columns={}", id, lines.size(), newIndex.getIndexedColumnCount());
+		}
+		return newIndex;
+	}
+	
+	/**
+	 * Helper called by the {@link com.att.research.xacml.std.pip.engines.csv.CSVFileWatcher} to re-read the file.  The
+	 * new rows and index are built before they replace the old ones, so requests are never held up.
+	 * 
+	 * @param id
+	 * @return the number of rows loaded
+	 * @throws PIPException if the file is missing, empty or cannot be read
+	 */
+	private long reloadCSVFile(String id) throws PIPException {
+		if ( ! csvSourceFile.exists() || csvSourceFile.length() == 0) {
+			throw new PIPException("The csv.source '" + csvSourceFile.getAbsolutePath() + "' does not exist or has no content");
+		}
+		CSVIndex newIndex = this.loadCSVFile(id);
+		if (newIndex == null) {
+			throw new PIPException("The csv.source '" + csvSourceFile.getAbsolutePath() + "' is not held in memory");
+		}
+		this.csvIndex = newIndex;
+		return newIndex.getRows().size();
 	}
 	
 	@Override
@@ -202,20 +309,21 @@ public class CSVEngine extends StdConfigurableEngine {
 			this.createResolver(id + "." + PROP_RESOLVER + "." + resolverId, properties);
 		}
 		//
-		// If the file is small, we read it fully into memory.
+		// If the file is small, or we are indexing it, we read it into memory.
 		//
-		if ( ! this.fileIsBig) {
-			try (CSVReader csvReader = new CSVReader(new FileReader(csvSourceFile), csvDelimiter, csvQuote, csvSkip)) {
-				this.allLines = csvReader.readAll();
-				if (logger.isDebugEnabled()) {
-                    logger.debug("{}: All lines read from csv file, size={}", id, allLines.size());
-				}
-			} catch (IOException e) {
-				String message = id + ": CSVReader unable to read csv.source '" + csvSourceFile.getAbsolutePath() + "': " + e;
-				logger.error(message, e);
-				throw new PIPException(message);
-			}
+		this.csvIndex = this.loadCSVFile(id);
+		//
+		// Watch the file for changes? Files read one line at a time always see the current contents.
+		//
+		if (this.csvIndex != null) {
+			this.fileWatcher = CSVFileWatcher.newInstance(id, properties, csvSourceFile.toPath(), () -> this.reloadCSVFile(id));
+		} else if (Boolean.parseBoolean(properties.getProperty(id + "." + CSVFileWatcher.PROP_WATCH))) {
+            this.logger.info("{}: csv.source '{}' is read for every request and does not need watching", id, csvSourceFile.getAbsolutePath());
 		}
+		//
+		// Ready for requests
+		//
+		this.shutdown = false;
 	}
 
 	/**
@@ -309,8 +417,12 @@ public class CSVEngine extends StdConfigurableEngine {
 		//
 		StdMutablePIPResponse mutablePIPResponse	= new StdMutablePIPResponse();
 		//
-		// for smaller files, this is the index in the allLines List
+		// for files in memory, this is the position in the list of rows, or in the candidate
+		// rows if the index could narrow them down
 		//
+		CSVIndex thisIndex = this.csvIndex;
+		List<String[]> rows = (thisIndex == null ? null : thisIndex.getRows());
+		int[] candidates = (thisIndex == null ? null : thisIndex.getCandidates(listParameters));
 		int lineIndex = 0;
 		//
 		// for big files we need to read one line at a time from the CSVReader
@@ -318,21 +430,24 @@ public class CSVEngine extends StdConfigurableEngine {
 		CSVReader csvReader = null;
 		
 		try {
-			if (this.fileIsBig) {
+			if (thisIndex == null) {
 				csvReader = new CSVReader(new FileReader(csvSourceFile), csvDelimiter, csvQuote, csvSkip);
 			} 
 			
 			while (true) {
 				String[] line = null;
-				if (this.fileIsBig) {
+				if (thisIndex == null) {
 					line = csvReader.readNext();
 					if (line == null) {
 						// end of file
 						break;
 					}
 				} else {
-					if (lineIndex < this.allLines.size()) {
-						line = this.allLines.get(lineIndex);
+					if (candidates != null && lineIndex < candidates.length) {
+						line = rows.get(candidates[lineIndex]);
+						lineIndex++;
+					} else if (candidates == null && lineIndex < rows.size()) {
+						line = rows.get(lineIndex);
 						lineIndex++;
 					} else {
 						//
@@ -461,9 +576,21 @@ public class CSVEngine extends StdConfigurableEngine {
 		return attributes;
 	}
 
+	/**
+	 * Gets the watcher that reloads the CSV file when it changes.
+	 * 
+	 * @return the <code>CSVFileWatcher</code> or null if the file is not watched
+	 */
+	public CSVFileWatcher getFileWatcher() {
+		return this.fileWatcher;
+	}
+
     @Override
     public void shutdown() {
         this.shutdown = true;
+        if (this.fileWatcher != null) {
+        	this.fileWatcher.close();
+        }
     }
 
 }
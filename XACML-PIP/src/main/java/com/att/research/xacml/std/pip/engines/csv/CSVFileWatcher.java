@@ -0,0 +1,235 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.csv;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.pip.PIPException;
+
+/**
+ * CSVFileWatcher watches the source file of a CSV-backed PIP engine with a {@link java.nio.file.WatchService} and has
+ * the engine reload it whenever the file is modified or replaced.  Reloads run on the watcher's own daemon thread.
+ * The engine builds its new data on the side and swaps it in when it is complete, so lookups keep using the old data
+ * until then and never wait for a reload.
+ *
+ * Files that are regenerated are usually written in several steps, so the watcher waits until the file has been quiet
+ * for <code>quietPeriod</code> milliseconds before it reloads.  Writing the new file elsewhere and moving it into place
+ * avoids reading a half-written file altogether.  If a reload fails the engine keeps the data it has.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class CSVFileWatcher implements AutoCloseable {
+	private static final Logger logger	= LoggerFactory.getLogger(CSVFileWatcher.class);
+
+	public static final String PROP_WATCH				= "watch";
+	public static final String PROP_WATCH_QUIETPERIOD	= "watch.quietPeriod";
+
+	public static final long DEFAULT_QUIETPERIOD		= 1000;
+
+	/**
+	 * Implemented by the engine to rebuild its data from the source file and swap it in.
+	 */
+	@FunctionalInterface
+	public interface Reloader {
+		/**
+		 * Reloads the source file.
+		 *
+		 * @return the number of rows loaded
+		 * @throws PIPException if the file could not be loaded, in which case the old data is kept
+		 */
+		public long reload() throws PIPException;
+	}
+
+	private final String id;
+	private final Path source;
+	private final long quietPeriod;
+	private final Reloader reloader;
+	private final WatchService watchService;
+	private final Thread thread;
+	private final AtomicLong reloadCount	= new AtomicLong();
+	private final AtomicLong reloadFailures	= new AtomicLong();
+	private volatile long lastReloadRows	= -1;
+	private volatile long lastReloadMillis	= -1;
+	private volatile boolean closed			= false;
+
+	/**
+	 * Creates a watcher for the given engine if its "watch" property is true.
+	 *
+	 * @param id the <code>String</code> engine id, used as the property prefix
+	 * @param properties the <code>Properties</code> to search for the "watch" properties
+	 * @param source the <code>Path</code> to the source file
+	 * @param reloader the <code>Reloader</code> to call when the file changes
+	 * @return a started <code>CSVFileWatcher</code> or null if the file is not watched
+	 * @throws PIPException if the properties are invalid or the file cannot be watched
+	 */
+	public static CSVFileWatcher newInstance(String id, Properties properties, Path source, Reloader reloader) throws PIPException {
+		if (! Boolean.parseBoolean(properties.getProperty(id + "." + PROP_WATCH, "false"))) {
+			return null;
+		}
+		String prop			= id + "." + PROP_WATCH_QUIETPERIOD;
+		String stringProp	= properties.getProperty(prop, Long.toString(DEFAULT_QUIETPERIOD));
+		long quietPeriod;
+		try {
+			quietPeriod	= Long.parseLong(stringProp.trim());
+		} catch (NumberFormatException ex) {
+			String message = id + ": The " + prop + " value of '" + stringProp + "' cannot be converted to a number";
+			logger.error(message);
+			throw new PIPException(message);
+		}
+		return new CSVFileWatcher(id, source, quietPeriod, reloader);
+	}
+
+	/**
+	 * Creates and starts a watcher on the given source file.
+	 *
+	 * @param idIn the <code>String</code> engine id used in log messages and the thread name
+	 * @param sourceIn the <code>Path</code> to the source file
+	 * @param quietPeriodIn the number of milliseconds the file must be unchanged before it is reloaded
+	 * @param reloaderIn the <code>Reloader</code> to call when the file changes
+	 * @throws PIPException if the file's directory cannot be watched
+	 */
+	public CSVFileWatcher(String idIn, Path sourceIn, long quietPeriodIn, Reloader reloaderIn) throws PIPException {
+		this.id				= idIn;
+		this.source			= sourceIn.toAbsolutePath();
+		this.quietPeriod	= Math.max(0, quietPeriodIn);
+		this.reloader		= reloaderIn;
+		//
+		// Watch the directory, so that a file moved into place is seen as well as one written in place
+		//
+		try {
+			this.watchService	= this.source.getFileSystem().newWatchService();
+			this.source.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException ex) {
+			String message = this.id + ": Unable to watch '" + this.source + "': " + ex;
+			logger.error(message, ex);
+			throw new PIPException(message, ex);
+		}
+		this.thread	= new Thread(this::run, "CSVFileWatcher-" + this.id);
+		this.thread.setDaemon(true);
+		this.thread.start();
+        logger.info("{}: Watching '{}' for changes", this.id, this.source);
+	}
+
+	/*
+	 * Does the key have any events for our source file?
+	 */
+	private boolean isSourceChanged(WatchKey watchKey) {
+		boolean changed	= false;
+		for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+			if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed	= true;
+			} else if (this.source.getFileName().equals(watchEvent.context())) {
+				changed	= true;
+			}
+		}
+		watchKey.reset();
+		return changed;
+	}
+
+	private void run() {
+		try {
+			while (! this.closed) {
+				if (! this.isSourceChanged(this.watchService.take())) {
+					continue;
+				}
+				//
+				// Wait for the writer to finish
+				//
+				WatchKey watchKey;
+				while ((watchKey = this.watchService.poll(this.quietPeriod, TimeUnit.MILLISECONDS)) != null) {
+					this.isSourceChanged(watchKey);
+				}
+				if (! this.closed) {
+					this.reload();
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			//
+			// We were closed
+			//
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+        logger.debug("{}: Stopped watching '{}'", this.id, this.source);
+	}
+
+	private void reload() {
+		long start	= System.nanoTime();
+		try {
+			long rows	= this.reloader.reload();
+			long millis	= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			this.lastReloadRows		= rows;
+			this.lastReloadMillis	= millis;
+			this.reloadCount.incrementAndGet();
+            logger.info("{}: Reloaded {} rows from '{}' in {} ms", this.id, rows, this.source, millis);
+		} catch (Exception ex) {
+			this.reloadFailures.incrementAndGet();
+            logger.error("{}: Reloading '{}' failed, keeping the current data: {}", this.id, this.source, ex.getLocalizedMessage(), ex);
+		}
+	}
+
+	/**
+	 * Stops watching the source file.  A reload that is running is allowed to finish.
+	 */
+	@Override
+	public void close() {
+		this.closed	= true;
+		try {
+			this.watchService.close();
+		} catch (IOException ex) {
+            logger.warn("{}: Closing WatchService: {}", this.id, ex.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Gets the number of successful reloads.
+	 *
+	 * @return the number of times the source file was reloaded
+	 */
+	public long getReloadCount() {
+		return this.reloadCount.get();
+	}
+
+	/**
+	 * Gets the number of reloads that failed and left the old data in place.
+	 *
+	 * @return the number of failed reloads
+	 */
+	public long getReloadFailures() {
+		return this.reloadFailures.get();
+	}
+
+	/**
+	 * Gets the number of rows loaded by the last successful reload.
+	 *
+	 * @return the number of rows or -1 if the file has not been reloaded
+	 */
+	public long getLastReloadRows() {
+		return this.lastReloadRows;
+	}
+
+	/**
+	 * Gets how long the last successful reload took.
+	 *
+	 * @return the duration in milliseconds or -1 if the file has not been reloaded
+	 */
+	public long getLastReloadMillis() {
+		return this.lastReloadMillis;
+	}
+}
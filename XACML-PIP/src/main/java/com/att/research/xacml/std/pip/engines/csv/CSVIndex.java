@@ -0,0 +1,226 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataType;
+import com.att.research.xacml.api.DataTypeException;
+import com.att.research.xacml.api.DataTypeFactory;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+
+/**
+ * CSVIndex holds the rows of a CSV file in memory together with hash indexes on the columns that
+ * {@link com.att.research.xacml.std.pip.engines.csv.CSVResolver}s search on.  Cell values are converted to the column's
+ * data type once, when the index is built, so finding the rows for a set of parameter values is a hash probe per value
+ * instead of a conversion per row.
+ *
+ * Only data types whose values have a consistent <code>hashCode</code> are indexed.  Columns with other data types, and
+ * parameter values of a different data type than the column was indexed with, are simply not used to narrow the search.
+ * A <code>CSVIndex</code> is immutable once built and may be shared between threads.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class CSVIndex {
+	private static final Logger logger	= LoggerFactory.getLogger(CSVIndex.class);
+
+	private static final Set<Identifier> INDEXABLE_DATATYPES	= new HashSet<>(Arrays.asList(
+			XACML3.ID_DATATYPE_STRING,
+			XACML3.ID_DATATYPE_BOOLEAN,
+			XACML3.ID_DATATYPE_INTEGER,
+			XACML3.ID_DATATYPE_DOUBLE,
+			XACML3.ID_DATATYPE_ANYURI,
+			XACML3.ID_DATATYPE_DATE,
+			XACML3.ID_DATATYPE_DATETIME,
+			XACML3.ID_DATATYPE_TIME
+			));
+
+	private static final int[] NO_ROWS	= new int[0];
+
+	/*
+	 * The postings for a single column converted to a single data type
+	 */
+	private static class ColumnIndex {
+		private final Map<Object, int[]> postings;
+
+		ColumnIndex(Map<Object, int[]> postingsIn) {
+			this.postings	= postingsIn;
+		}
+
+		int[] get(Object value) {
+			int[] rows	= this.postings.get(value);
+			return (rows == null ? NO_ROWS : rows);
+		}
+	}
+
+	private final List<String[]> rows;
+	private final Map<Integer, Map<Identifier, ColumnIndex>> columnIndexes	= new HashMap<>();
+
+	/**
+	 * Builds a new <code>CSVIndex</code> over the given rows.
+	 *
+	 * @param rowsIn the <code>List</code> of rows, each split into its cells
+	 * @param indexColumns the <code>Map</code> from each column number to index to the <code>Identifier</code>s of the data types to index it as
+	 * @param dataTypeFactory the <code>DataTypeFactory</code> used to convert cell values
+	 */
+	public CSVIndex(List<String[]> rowsIn, Map<Integer, Set<Identifier>> indexColumns, DataTypeFactory dataTypeFactory) {
+		this.rows	= Collections.unmodifiableList(rowsIn);
+		for (Map.Entry<Integer, Set<Identifier>> entry : indexColumns.entrySet()) {
+			for (Identifier dataTypeId : entry.getValue()) {
+				DataType<?> dataType	= dataTypeFactory.getDataType(dataTypeId);
+				if (dataType == null || !INDEXABLE_DATATYPES.contains(dataTypeId)) {
+					logger.debug("Not indexing column {} as {}", entry.getKey(), dataTypeId);
+					continue;
+				}
+				this.columnIndexes.computeIfAbsent(entry.getKey(), key -> new HashMap<>())
+								  .put(dataTypeId, this.buildColumnIndex(entry.getKey(), dataType));
+			}
+		}
+	}
+
+	private ColumnIndex buildColumnIndex(int column, DataType<?> dataType) {
+		Map<Object, List<Integer>> mapRows	= new HashMap<>();
+		int conversionErrors	= 0;
+		for (int row = 0 ; row < this.rows.size() ; row++) {
+			String[] line	= this.rows.get(row);
+			if (column >= line.length || line[column] == null || line[column].length() == 0) {
+				continue;
+			}
+			try {
+				mapRows.computeIfAbsent(dataType.convert(line[column]), key -> new ArrayList<>()).add(row);
+			} catch (DataTypeException e) {
+				conversionErrors++;
+			}
+		}
+		if (conversionErrors > 0) {
+			logger.warn("{} values in column {} could not be converted to {}", conversionErrors, column, dataType.getId());
+		}
+		//
+		// Row numbers were added in order, so each posting is already sorted
+		//
+		Map<Object, int[]> postings	= new HashMap<>(mapRows.size() * 4 / 3 + 1);
+		for (Map.Entry<Object, List<Integer>> entry : mapRows.entrySet()) {
+			postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+		}
+		logger.debug("Indexed column {} as {}: {} distinct values", column, dataType.getId(), postings.size());
+		return new ColumnIndex(postings);
+	}
+
+	/**
+	 * Gets the rows of the CSV file.
+	 *
+	 * @return an unmodifiable <code>List</code> of rows
+	 */
+	public List<String[]> getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * Gets the number of (column, data type) pairs that are indexed.
+	 *
+	 * @return the number of column indexes
+	 */
+	public int getIndexedColumnCount() {
+		int count	= 0;
+		for (Map<Identifier, ColumnIndex> map : this.columnIndexes.values()) {
+			count	+= map.size();
+		}
+		return count;
+	}
+
+	/*
+	 * Union of the postings for all of the values, or null if any value cannot be looked up
+	 */
+	private int[] getRows(int column, List<AttributeValue<?>> values) {
+		Map<Identifier, ColumnIndex> map	= this.columnIndexes.get(column);
+		if (map == null) {
+			return null;
+		}
+		int[] result	= NO_ROWS;
+		for (AttributeValue<?> value : values) {
+			ColumnIndex columnIndex	= map.get(value.getDataTypeId());
+			if (columnIndex == null) {
+				return null;
+			}
+			int[] rowsValue	= columnIndex.get(value.getValue());
+			result	= (result.length == 0 ? rowsValue : union(result, rowsValue));
+		}
+		return result;
+	}
+
+	private static int[] union(int[] a, int[] b) {
+		int[] result	= new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length) {
+			int next;
+			if (j >= b.length || (i < a.length && a[i] < b[j])) {
+				next	= a[i++];
+			} else if (i >= a.length || b[j] < a[i]) {
+				next	= b[j++];
+			} else {
+				next	= a[i++];
+				j++;
+			}
+			result[n++]	= next;
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result	= new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (b[j] < a[i]) {
+				j++;
+			} else {
+				result[n++]	= a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Finds the rows that may match the given parameter values, in file order.  Every row that matches all of the
+	 * parameters is included; the caller still has to check each candidate against any parameters that could not be
+	 * looked up in an index.
+	 *
+	 * @param listParameters the <code>List</code> of column to parameter value maps, one per resolver, as used by <code>CSVEngine</code>
+	 * @return the candidate row numbers in ascending order, or null if no parameter could be looked up and every row has to be checked
+	 */
+	public int[] getCandidates(List<Map<Integer, List<AttributeValue<?>>>> listParameters) {
+		int[] candidates	= null;
+		for (Map<Integer, List<AttributeValue<?>>> map : listParameters) {
+			for (Map.Entry<Integer, List<AttributeValue<?>>> entry : map.entrySet()) {
+				int[] rowsColumn	= this.getRows(entry.getKey(), entry.getValue());
+				if (rowsColumn == null) {
+					continue;
+				}
+				candidates	= (candidates == null ? rowsColumn : intersect(candidates, rowsColumn));
+				if (candidates.length == 0) {
+					return candidates;
+				}
+			}
+		}
+		return candidates;
+	}
+}
@@ -5,11 +5,14 @@
  */
 package com.att.research.xacml.std.pip.engines.csv;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import com.att.research.xacml.api.Attribute;
 import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.api.pip.PIPEngine;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
@@ -56,4 +59,24 @@ public interface CSVResolver extends ConfigurableResolver {
 	 */
 	List<Attribute>	decodeResult(String[] line)  throws PIPException;
 
+	/**
+	 * Returns the columns this resolver searches on, mapped to the data type their values are compared as.  The
+	 * engine may build an index on these columns.  The default is no columns, so nothing is indexed.
+	 * 
+	 * @return a <code>Map</code> from column number to data type <code>Identifier</code>
+	 */
+	default Map<Integer, Identifier> getParameterColumns() {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * Returns every column this resolver reads, both to search on and to decode.  The engine may keep only these
+	 * columns in memory.  The default of null means the resolver may read any column.
+	 * 
+	 * @return a <code>Collection</code> of column numbers, or null if unknown
+	 */
+	default Collection<Integer> getColumns() {
+		return null;
+	}
+
 }
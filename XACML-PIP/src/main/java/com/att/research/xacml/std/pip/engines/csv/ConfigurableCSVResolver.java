@@ -9,6 +9,7 @@ package com.att.research.xacml.std.pip.engines.csv;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -21,6 +22,7 @@ import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.DataType;
 import com.att.research.xacml.api.DataTypeException;
 import com.att.research.xacml.api.DataTypeFactory;
+import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.api.pip.PIPEngine;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
@@ -202,6 +204,22 @@ public class ConfigurableCSVResolver implements CSVResolver {
 		return false;
 	}
 
+	@Override
+	public Map<Integer, Identifier> getParameterColumns() {
+		Map<Integer, Identifier> map = new HashMap<Integer, Identifier>();
+		for (Integer column : this.parameterMap.keySet()) {
+			map.put(column, this.parameterMap.get(column).getDataTypeId());
+		}
+		return map;
+	}
+
+	@Override
+	public Collection<Integer> getColumns() {
+		Collection<Integer> columns = new HashSet<Integer>(this.parameterMap.keySet());
+		columns.addAll(this.fieldMap.keySet());
+		return columns;
+	}
+
 	@Override
 	public Map<Integer, List<AttributeValue<?>>>	getColumnParameterValues(PIPEngine engine, PIPRequest request, PIPFinder finder) throws PIPException {
 		Map<Integer, List<AttributeValue<?>>> map = new HashMap<Integer, List<AttributeValue<?>>>();
@@ -6,14 +6,19 @@
 package com.att.research.xacml.std.pip.engines.csv;
 
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import java.nio.file.FileSystems;
+import java.nio.file.Paths;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
 
 import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.std.pip.engines.jdbc.JDBCConnectionPool;
 import com.att.research.xacml.std.pip.engines.jdbc.JDBCEngine;
 
 public class HyperCSVEngine extends JDBCEngine {
@@ -27,16 +32,51 @@ public class HyperCSVEngine extends JDBCEngine {
 	public static final String HYPER_USER = "sa";
 	public static final String HYPER_PASS= "";
 
-	private static enum HyperInitState {
-		init,
-		completed,
-		failed
-	};
+	/*
+	 * Every load of the csv file goes into its own in-memory database so that a reload
+	 * can be built while the previous one is still answering queries.
+	 */
+	private static final AtomicLong hyperDatabaseCount = new AtomicLong();
+
+	/*
+	 * One loaded copy of the csv file. The anchor connection keeps the in-memory database
+	 * open; once it and every pooled connection are closed, HyperSQL drops the database.
+	 */
+	private class HyperDatabase {
+		private final String url;
+		private final Connection anchor;
+		private final JDBCConnectionPool pool;
+		private final long rows;
+
+		HyperDatabase(String url, Connection anchor, long rows) {
+			this.url = url;
+			this.anchor = anchor;
+			this.rows = rows;
+			this.pool = newConnectionPool(() -> DriverManager.getConnection(this.url, HYPER_USER, HYPER_PASS));
+		}
+
+		Connection getConnection() throws SQLException {
+			return (this.pool != null ? this.pool.getConnection() : DriverManager.getConnection(this.url, HYPER_USER, HYPER_PASS));
+		}
+
+		void close() {
+			if (this.pool != null) {
+				this.pool.close();
+			}
+			try {
+				this.anchor.close();
+			}
+			catch (SQLException sqlx) {
+				logger.warn("Closing HyperSQL database '" + this.url + "': " + sqlx.getMessage());
+			}
+		}
+	}
 
 	private String source,
 								 target,
 								 definition;
-	private HyperInitState hyperInitState = HyperInitState.init;
+	private volatile HyperDatabase hyperDatabase;
+	private CSVFileWatcher fileWatcher;
 
 
 
@@ -84,42 +124,104 @@ public class HyperCSVEngine extends JDBCEngine {
 		// early initialization
 		//
 		try {
-			getConnection().close();
+			hyperLoad();
 		}
-		catch(SQLException sqlx) {
-			throw new PIPException("The HyperSQL initialization failed");
+		catch(PIPException pipx) {
+			throw new PIPException("The HyperSQL initialization failed", pipx);
 		}
+		//
+		// reload when the csv file changes, if asked to
+		//
+		this.fileWatcher = CSVFileWatcher.newInstance(id, properties, Paths.get(this.source), this::hyperLoad);
 	}
 
 	/*
-	 * Late initialization approach ..
+	 * Each loaded copy of the csv file gets its own pool, so there is no pool for HYPER_URL itself; only the
+	 * jdbc.pool.* settings are wanted.
+	 */
+	@Override
+	protected void createConnectionPool(String propPrefix, Properties properties) throws PIPException {
+		this.configureConnectionPool(propPrefix, properties);
+	}
+
+	/**
+	 * Gets the pool of the currently loaded copy of the csv file.
+	 * 
+	 * @return the <code>JDBCConnectionPool</code> or null if connections are not pooled or the file has not been loaded
+	 */
+	@Override
+	public JDBCConnectionPool getConnectionPool() {
+		HyperDatabase database = this.hyperDatabase;
+		return (database == null ? null : database.pool);
+	}
+
+	/*
+	 * The connection properties are fixed by this engine rather than taken from the environment.
+	 */
+	@Override
+	protected String resolveProperty(String value) {
+		return value;
+	}
+
+	/*
+	 * Connections go to the most recently loaded copy of the csv file.
 	 */
 	@Override
 	protected Connection getConnection() throws PIPException {
-		switch(this.hyperInitState) {
-			case init: 
-				try {
-					hyperInit();
-					this.hyperInitState = HyperInitState.completed;
-				}
-				catch(PIPException pipx) {
-					this.hyperInitState = HyperInitState.failed;
-					throw pipx;
-				}
-			case completed:
-				return super.getConnection();
-			case failed:
+		while (true) {
+			HyperDatabase database = this.hyperDatabase;
+			if (database == null) {
 				throw new PIPException("The HyperSQL initialization failed");
+			}
+			try {
+				return database.getConnection();
+			}
+			catch (SQLException sqlx) {
+				//
+				// the database may have been replaced while we were asking for a connection
+				//
+				if (database == this.hyperDatabase) {
+					throw new PIPException("SQLException creating Connection", sqlx);
+				}
+			}
 		}
-		throw new PIPException("?? How did we get here");
 	}
 
+	/**
+	 * Reloads the csv file.  The new copy is loaded while requests keep using the current one, which is only
+	 * replaced if the load succeeds.
+	 */
 	public void hyperReset() {
-		this.hyperInitState = HyperInitState.init;
+		try {
+			hyperLoad();
+		}
+		catch (PIPException pipx) {
+			this.logger.error("Reloading '" + this.source + "' failed: " + pipx.getMessage(), pipx);
+		}
 	}
 
-	private void hyperInit() throws PIPException {
+	/**
+	 * Gets the watcher that reloads the csv file when it changes.
+	 * 
+	 * @return the <code>CSVFileWatcher</code> or null if the file is not watched
+	 */
+	public CSVFileWatcher getFileWatcher() {
+		return this.fileWatcher;
+	}
+
+	/**
+	 * Gets the number of rows in the currently loaded copy of the csv file.
+	 * 
+	 * @return the number of rows or -1 if the file has not been loaded
+	 */
+	public long getRowCount() {
+		HyperDatabase database = this.hyperDatabase;
+		return (database == null ? -1 : database.rows);
+	}
+
+	private synchronized long hyperLoad() throws PIPException {
 		this.logger.info("Starting csv load from '" + this.source + "' in '" + this.target + "'");
+		long start = System.currentTimeMillis();
 
 		StringBuilder createTable = new StringBuilder();
 		createTable.append("CREATE TEXT TABLE IF NOT EXISTS ")
@@ -136,26 +238,62 @@ public class HyperCSVEngine extends JDBCEngine {
 						 .append(this.source)
 						 .append(";ignore_first=true;all_quoted=true\"");
 
-		Connection conn = super.getConnection();
+		String url = HYPER_URL + "-" + this.target + "-" + hyperDatabaseCount.incrementAndGet() + ";shutdown=true";
+		Connection conn = null;
 		Statement stmt = null;
+		long rows = 0;
 		try {
+			conn = DriverManager.getConnection(url, HYPER_USER, HYPER_PASS);
 			stmt = conn.createStatement();
 			stmt.execute(createTable.toString());
 			stmt.execute(linkTable.toString());
+			try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + this.target)) {
+				if (rs.next()) {
+					rows = rs.getLong(1);
+				}
+			}
 		}
 		catch (SQLException sqlx) {
+			try {
+				if (conn != null)
+					conn.close();
+			}
+			catch (SQLException e) {}
 			throw new PIPException("Failed to inititialize HyperSQL", sqlx);
 		}
 		finally {
 			try {
 				if (stmt != null)
 					stmt.close();
-				if (conn != null)
-					conn.close();
 			}
 			catch (SQLException sqlx) {}
 		}
+		//
+		// swap in the new copy, then let the old one go once its queries are done
+		//
+		HyperDatabase oldDatabase = this.hyperDatabase;
+		this.hyperDatabase = new HyperDatabase(url, conn, rows);
+		if (oldDatabase != null) {
+			oldDatabase.close();
+		}
+		//
+		// results cached from the old copy may no longer be in the file
+		//
+		this.invalidateCaches();
 			
-		this.logger.info("Loading '" + this.target + "' from '" + this.source + "' completed");
+		this.logger.info("Loading '" + this.target + "' from '" + this.source + "' completed: " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms");
+		return rows;
+	}
+
+	@Override
+	public void shutdown() {
+		if (this.fileWatcher != null) {
+			this.fileWatcher.close();
+		}
+		super.shutdown();
+		HyperDatabase database = this.hyperDatabase;
+		if (database != null) {
+			database.close();
+		}
 	}
 }
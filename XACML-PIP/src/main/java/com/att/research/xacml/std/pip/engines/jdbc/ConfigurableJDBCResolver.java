@@ -271,8 +271,86 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
 		}
 	}
 
+	@Override
+	public List<AttributeValue<?>> getParameterValues(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+		/*
+		 * Do we support the request?
+		 */
+		if (!this.isSupported(pipRequest)) {
+			return null;
+		}
+		
+		/*
+		 * Gather all of the AttributeValues for parameters to the prepared statement.  For now, we assume a single value for each
+		 * parameter.  If there are multiple values we will log an error and return a null PreparedStatement.
+		 * 
+		 * TODO: Should the interface change to return a cross-product of PreparedStatements to deal with multiple values for parameters?
+		 * If not, should we just take the first value and use it as the parameter value?
+		 */
+		List<AttributeValue<?>> listParameterValues	= new ArrayList<AttributeValue<?>>(this.parameters.size());
+		for (PIPRequest pipRequestParameter : this.parameters) {
+			PIPResponse pipResponse	= pipFinder.getMatchingAttributes(pipRequestParameter, null);
+			if (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) {
+				Collection<Attribute> listAttributes	= pipResponse.getAttributes();
+				if (listAttributes.size() > 0) {
+					if (listAttributes.size() > 1) {
+						this.logger.error("PIPFinder returned more than one Attribute for " + pipRequestParameter.toString());
+						throw new PIPException("PIPFinder returned more than one Attribute for " + pipRequestParameter.toString());
+					}
+					Collection<AttributeValue<?>> listAttributeValuesReturned	= listAttributes.iterator().next().getValues();
+					if (listAttributeValuesReturned.size() > 0) {
+						if (listAttributeValuesReturned.size() > 1) {
+							this.logger.warn("PIPFinder returned more than one AttributeValue for " + pipRequestParameter.toString());
+							return null;
+						}
+						listParameterValues.add(listAttributeValuesReturned.iterator().next());
+					} else {
+						this.logger.warn("No AttributeValues returned for parameter " + pipRequestParameter.toString());
+						return null;
+					}
+				} else {
+					this.logger.warn("No Attributes returned for parameter " + pipRequestParameter.toString());
+					return null;
+				}
+			} else {
+				this.logger.warn("PIPFinder returned status " + pipResponse.getStatus().toString());
+				return null;
+			}
+		}
+		return listParameterValues;
+	}
+
+	@Override
+	public String getCacheKey(PIPEngine pipEngine, PIPRequest pipRequest, List<AttributeValue<?>> parameterValues) {
+		/*
+		 * Every supported request gets all of the configured fields back, so the key does not depend on which
+		 * attribute was asked for.  The data type keeps an integer 1 apart from a string "1".  Each field is prefixed
+		 * with its length, so no parameter value can be mistaken for the end of one field and the start of the next.
+		 */
+		StringBuilder stringBuilder	= new StringBuilder();
+		appendField(stringBuilder, this.sqlQuery);
+		for (AttributeValue<?> attributeValue : parameterValues) {
+			appendField(stringBuilder, attributeValue.getDataTypeId().stringValue());
+			appendField(stringBuilder, String.valueOf(attributeValue.getValue()));
+		}
+		return stringBuilder.toString();
+	}
+
+	private static void appendField(StringBuilder stringBuilder, String field) {
+		stringBuilder.append(field.length()).append(':').append(field);
+	}
+
 	@Override
 	public PreparedStatement getPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder, Connection connection) throws PIPException {
+		List<AttributeValue<?>> listParameterValues	= this.getParameterValues(pipEngine, pipRequest, pipFinder);
+		if (listParameterValues == null) {
+			return null;
+		}
+		return this.getPreparedStatement(pipEngine, pipRequest, pipFinder, listParameterValues, connection);
+	}
+
+	@Override
+	public PreparedStatement getPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder, List<AttributeValue<?>> parameterValues, Connection connection) throws PIPException {
 		/*
 		 * Do we support the request?
 		 */
@@ -289,66 +367,35 @@ public class ConfigurableJDBCResolver implements JDBCResolver {
 			return null;
 		}
 
-		if (this.parameters.size() > 0) {
-			/*
-			 * Gather all of the AttributeValues for parameters to the prepared statement.  For now, we assume a single value for each
-			 * parameter.  If there are multiple values we will log an error and return a null PreparedStatement.
-			 * 
-			 * TODO: Should the interface change to return a cross-product of PreparedStatements to deal with multiple values for parameters?
-			 * If not, should we just take the first value and use it as the parameter value?
-			 */
-			for (int i = 0 ; i < this.parameters.size() ; i++) {
-				PIPRequest pipRequestParameter	= this.parameters.get(i);
-				PIPResponse pipResponse	= pipFinder.getMatchingAttributes(pipRequestParameter, null);
-				if (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) {
-					Collection<Attribute> listAttributes	= pipResponse.getAttributes();
-					if (listAttributes.size() > 0) {
-						if (listAttributes.size() > 1) {
-							this.logger.error("PIPFinder returned more than one Attribute for " + pipRequestParameter.toString());
-							throw new PIPException("PIPFinder returned more than one Attribute for " + pipRequestParameter.toString());
-						}
-						Collection<AttributeValue<?>> listAttributeValuesReturned	= listAttributes.iterator().next().getValues();
-						if (listAttributeValuesReturned.size() > 0) {
-							if (listAttributeValuesReturned.size() > 1) {
-								this.logger.warn("PIPFinder returned more than one AttributeValue for " + pipRequestParameter.toString());
-								return null;
-							}
-							AttributeValue<?> attributeValue			= listAttributeValuesReturned.iterator().next();
-							Identifier identifierAttributeValueDataType	= attributeValue.getDataTypeId();
-							try {
-								if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
-									preparedStatement.setInt(i+1, DataTypes.DT_INTEGER.convert(attributeValue.getValue()).intValue());
-								} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
-									preparedStatement.setDouble(i+1, DataTypes.DT_DOUBLE.convert(attributeValue.getValue()));
-								} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_BOOLEAN)) {
-									preparedStatement.setBoolean(i+1, DataTypes.DT_BOOLEAN.convert(attributeValue.getValue()));
-								} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATETIME)) {
-									ISO8601DateTime iso8601DateTime	= DataTypes.DT_DATETIME.convert(attributeValue.getValue());
-									java.sql.Date sqlDate			= new java.sql.Date(iso8601DateTime.getCalendar().getTimeInMillis());
-									preparedStatement.setDate(i+1, sqlDate, iso8601DateTime.getCalendar());
-								} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATE)) {
-									ISO8601Date iso8601Date	= DataTypes.DT_DATE.convert(attributeValue.getValue());
-									java.sql.Date sqlDate			= new java.sql.Date(iso8601Date.getCalendar().getTimeInMillis());
-									preparedStatement.setDate(i+1, sqlDate, iso8601Date.getCalendar());
-								} else {
-									preparedStatement.setString(i+1, DataTypes.DT_STRING.convert(attributeValue.getValue()));
-								}
-							} catch (Exception ex) {
-								this.logger.error("Exception setting parameter " + (i+1) + " to " + attributeValue.toString() + ": " + ex.toString(), ex);
-								return null;
-							}
-						} else {
-							this.logger.warn("No AttributeValues returned for parameter " + pipRequestParameter.toString());
-							return null;
-						}
-					} else {
-						this.logger.warn("No Attributes returned for parameter " + pipRequestParameter.toString());
-						return null;
-					}
+		for (int i = 0 ; i < parameterValues.size() ; i++) {
+			AttributeValue<?> attributeValue			= parameterValues.get(i);
+			Identifier identifierAttributeValueDataType	= attributeValue.getDataTypeId();
+			try {
+				if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_INTEGER)) {
+					preparedStatement.setInt(i+1, DataTypes.DT_INTEGER.convert(attributeValue.getValue()).intValue());
+				} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DOUBLE)) {
+					preparedStatement.setDouble(i+1, DataTypes.DT_DOUBLE.convert(attributeValue.getValue()));
+				} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_BOOLEAN)) {
+					preparedStatement.setBoolean(i+1, DataTypes.DT_BOOLEAN.convert(attributeValue.getValue()));
+				} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATETIME)) {
+					ISO8601DateTime iso8601DateTime	= DataTypes.DT_DATETIME.convert(attributeValue.getValue());
+					java.sql.Date sqlDate			= new java.sql.Date(iso8601DateTime.getCalendar().getTimeInMillis());
+					preparedStatement.setDate(i+1, sqlDate, iso8601DateTime.getCalendar());
+				} else if (identifierAttributeValueDataType.equals(XACML3.ID_DATATYPE_DATE)) {
+					ISO8601Date iso8601Date	= DataTypes.DT_DATE.convert(attributeValue.getValue());
+					java.sql.Date sqlDate			= new java.sql.Date(iso8601Date.getCalendar().getTimeInMillis());
+					preparedStatement.setDate(i+1, sqlDate, iso8601Date.getCalendar());
 				} else {
-					this.logger.warn("PIPFinder returned status " + pipResponse.getStatus().toString());
-					return null;
+					preparedStatement.setString(i+1, DataTypes.DT_STRING.convert(attributeValue.getValue()));
 				}
+			} catch (Exception ex) {
+				this.logger.error("Exception setting parameter " + (i+1) + " to " + attributeValue.toString() + ": " + ex.toString(), ex);
+				try {
+					preparedStatement.close();
+				} catch (SQLException e) {
+					this.logger.error("SQLException closing preparedStatement: " + e.toString(), e);
+				}
+				return null;
 			}
 		}
 		
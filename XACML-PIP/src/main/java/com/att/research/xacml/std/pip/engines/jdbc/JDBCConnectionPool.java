@@ -0,0 +1,499 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JDBCConnectionPool is a small bounded pool of JDBC {@link java.sql.Connection}s used by the
+ * {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCEngine} when it connects with a JDBC URL.
+ *
+ * At most <code>maximumSize</code> connections are handed out at once; a caller waits up to <code>maximumWait</code>
+ * milliseconds for one to be returned.  Idle connections are validated before they are reused and are closed once they
+ * have been idle longer than <code>idleTimeout</code> milliseconds, checked whenever a connection is leased or returned.  Each pooled connection also keeps up to
+ * <code>statementCacheSize</code> idle {@link java.sql.PreparedStatement}s keyed on their SQL text, so a resolver that
+ * prepares the same query over and over only pays for it once per connection.
+ *
+ * Callers use the returned <code>Connection</code> and its statements exactly as they would an unpooled one.  Closing
+ * the connection returns it to the pool and closing a statement prepared with <code>prepareStatement(String)</code>
+ * returns it to its connection's cache; statements from the other <code>createStatement</code>,
+ * <code>prepareStatement</code> and <code>prepareCall</code> methods are closed as usual.  A statement's
+ * <code>getConnection()</code> gives back the pooled connection rather than the physical one.  Statements still
+ * open when the connection is closed are closed with it, and auto-commit, read-only and transaction isolation settings the
+ * caller changed are put back, rolling back first if auto-commit was turned off, so the next caller gets the connection
+ * as it was opened.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class JDBCConnectionPool {
+	private static final Logger logger	= LoggerFactory.getLogger(JDBCConnectionPool.class);
+
+	/**
+	 * Opens new physical connections for the pool.
+	 */
+	@FunctionalInterface
+	public interface ConnectionFactory {
+		public Connection newConnection() throws SQLException;
+	}
+
+	private final ConnectionFactory connectionFactory;
+	private final int maximumSize;
+	private final long maximumWait;
+	private final long idleTimeout;
+	private final int validationTimeout;
+	private final int statementCacheSize;
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<PooledConnection> idleConnections	= new ConcurrentLinkedDeque<>();
+	private final AtomicLong connectionsCreated	= new AtomicLong();
+	private final AtomicLong connectionsClosed	= new AtomicLong();
+	private final AtomicLong statementsPrepared	= new AtomicLong();
+	private final AtomicLong statementsReused	= new AtomicLong();
+	private volatile boolean closed	= false;
+
+	/**
+	 * A physical <code>Connection</code> together with its cache of idle <code>PreparedStatement</code>s.  A pooled
+	 * connection is only ever leased to one caller at a time.
+	 */
+	private class PooledConnection {
+		private final Connection connection;
+		private final Map<String, PreparedStatement> statements;
+		private volatile long lastUsed	= System.currentTimeMillis();
+
+		PooledConnection(Connection connectionIn) {
+			this.connection	= connectionIn;
+			this.statements	= new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+					if (this.size() > statementCacheSize) {
+						closeQuietly(eldest.getValue());
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized PreparedStatement takeStatement(String sql) throws SQLException {
+			PreparedStatement preparedStatement	= this.statements.remove(sql);
+			if (preparedStatement != null) {
+				statementsReused.incrementAndGet();
+				return preparedStatement;
+			}
+			statementsPrepared.incrementAndGet();
+			return this.connection.prepareStatement(sql);
+		}
+
+		synchronized void returnStatement(String sql, PreparedStatement preparedStatement) {
+			if (statementCacheSize <= 0 || this.statements.containsKey(sql)) {
+				closeQuietly(preparedStatement);
+				return;
+			}
+			try {
+				preparedStatement.clearParameters();
+			} catch (SQLException ex) {
+				closeQuietly(preparedStatement);
+				return;
+			}
+			this.statements.put(sql, preparedStatement);
+		}
+
+		synchronized void close() {
+			for (PreparedStatement preparedStatement : this.statements.values()) {
+				closeQuietly(preparedStatement);
+			}
+			this.statements.clear();
+			try {
+				this.connection.close();
+			} catch (SQLException ex) {
+				logger.warn("SQLException closing pooled connection: {}", ex.getMessage());
+			}
+			connectionsClosed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Hands the caller's <code>Connection</code> calls through to the physical connection, except that
+	 * <code>close()</code> returns it to the pool and the statements it creates are tracked, with
+	 * <code>prepareStatement(String)</code> using the statement cache.  The settings the caller changes are remembered so that they can be put back when it is returned.
+	 */
+	private class LeasedConnection implements InvocationHandler {
+		private final PooledConnection pooledConnection;
+		private final Set<LeasedStatement> openStatements	= Collections.newSetFromMap(new ConcurrentHashMap<>());
+		private Boolean autoCommit;
+		private Boolean readOnly;
+		private Integer transactionIsolation;
+		private volatile boolean released	= false;
+
+		LeasedConnection(PooledConnection pooledConnectionIn) {
+			this.pooledConnection	= pooledConnectionIn;
+		}
+
+		/*
+		 * Remembers the setting the caller is about to change, the first time it changes it
+		 */
+		private synchronized void saveSetting(String methodName) throws SQLException {
+			Connection connection	= this.pooledConnection.connection;
+			if ("setAutoCommit".equals(methodName) && this.autoCommit == null) {
+				this.autoCommit	= connection.getAutoCommit();
+			} else if ("setReadOnly".equals(methodName) && this.readOnly == null) {
+				this.readOnly	= connection.isReadOnly();
+			} else if ("setTransactionIsolation".equals(methodName) && this.transactionIsolation == null) {
+				this.transactionIsolation	= connection.getTransactionIsolation();
+			}
+		}
+
+		/*
+		 * Closes the statements the caller left open and puts back the settings it changed.  Returns false if the
+		 * connection could not be put back the way it was and should not be reused.
+		 */
+		private synchronized boolean reset() {
+			for (LeasedStatement leasedStatement : this.openStatements) {
+				if (leasedStatement.markClosed()) {
+					logger.warn("Closing statement left open on a pooled connection: {}", leasedStatement);
+					closeQuietly(leasedStatement.statement);
+				}
+			}
+			this.openStatements.clear();
+			Connection connection	= this.pooledConnection.connection;
+			try {
+				if (this.autoCommit != null) {
+					if (!connection.getAutoCommit()) {
+						connection.rollback();
+					}
+					connection.setAutoCommit(this.autoCommit);
+				}
+				if (this.readOnly != null) {
+					connection.setReadOnly(this.readOnly);
+				}
+				if (this.transactionIsolation != null) {
+					connection.setTransactionIsolation(this.transactionIsolation);
+				}
+				return true;
+			} catch (SQLException ex) {
+				logger.warn("SQLException resetting pooled connection: {}", ex.getMessage());
+				return false;
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!this.released) {
+					this.released	= true;
+					release(this.pooledConnection, this.reset());
+				}
+				return null;
+			case "isClosed":
+				return this.released || this.pooledConnection.connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled " + this.pooledConnection.connection.toString();
+			default:
+				break;
+			}
+			if (this.released) {
+				throw new SQLException("Connection has been returned to the pool");
+			}
+			switch (method.getName()) {
+			case "createStatement":
+			case "prepareStatement":
+			case "prepareCall":
+				return this.leaseStatement((Connection) proxy, method, args);
+			default:
+				break;
+			}
+			this.saveSetting(method.getName());
+			return invokeTarget(this.pooledConnection.connection, method, args);
+		}
+
+		/*
+		 * Creates the statement, from the cache for prepareStatement(String), and hands back a proxy of the same type
+		 * that is tracked until it is closed
+		 */
+		private Object leaseStatement(Connection connectionProxy, Method method, Object[] args) throws Throwable {
+			LeasedStatement leasedStatement;
+			if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+				String sql	= (String) args[0];
+				leasedStatement	= new LeasedStatement(this, connectionProxy, sql, this.pooledConnection.takeStatement(sql));
+			} else {
+				leasedStatement	= new LeasedStatement(this, connectionProxy, null, (Statement) invokeTarget(this.pooledConnection.connection, method, args));
+			}
+			this.openStatements.add(leasedStatement);
+			return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { method.getReturnType() }, leasedStatement);
+		}
+	}
+
+	/**
+	 * Hands the caller's <code>Statement</code> calls through to the physical statement, except that
+	 * <code>getConnection()</code> returns the caller's pooled connection and <code>close()</code> returns a statement
+	 * with <code>sql</code> to its connection's cache.
+	 */
+	private class LeasedStatement implements InvocationHandler {
+		private final LeasedConnection leasedConnection;
+		private final Connection connectionProxy;
+		private final String sql;
+		private final Statement statement;
+		private volatile boolean closed	= false;
+
+		LeasedStatement(LeasedConnection leasedConnectionIn, Connection connectionProxyIn, String sqlIn, Statement statementIn) {
+			this.leasedConnection	= leasedConnectionIn;
+			this.connectionProxy	= connectionProxyIn;
+			this.sql				= sqlIn;
+			this.statement			= statementIn;
+		}
+
+		/*
+		 * Only the first of the caller and the returned connection to close the statement gets to do so
+		 */
+		synchronized boolean markClosed() {
+			if (this.closed) {
+				return false;
+			}
+			this.closed	= true;
+			return true;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (this.markClosed()) {
+					this.leasedConnection.openStatements.remove(this);
+					if (this.sql == null || this.leasedConnection.released) {
+						closeQuietly(this.statement);
+					} else {
+						this.leasedConnection.pooledConnection.returnStatement(this.sql, (PreparedStatement) this.statement);
+					}
+				}
+				return null;
+			case "isClosed":
+				return this.closed || this.statement.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return this.statement.toString();
+			default:
+				break;
+			}
+			if (this.closed) {
+				throw new SQLException("Statement is closed");
+			}
+			if ("getConnection".equals(method.getName())) {
+				return this.connectionProxy;
+			}
+			return invokeTarget(this.statement, method, args);
+		}
+
+		@Override
+		public String toString() {
+			return this.sql == null ? this.statement.toString() : this.sql;
+		}
+	}
+
+	/**
+	 * Creates a new <code>JDBCConnectionPool</code>.
+	 *
+	 * @param connectionFactoryIn the <code>ConnectionFactory</code> used to open physical connections
+	 * @param maximumSizeIn the maximum number of connections open at once
+	 * @param maximumWaitIn the number of milliseconds to wait for a connection before giving up
+	 * @param idleTimeoutIn the number of milliseconds a connection may sit idle before it is closed, 0 to never close it
+	 * @param validationTimeoutIn the number of seconds to wait when validating an idle connection, 0 to skip validation
+	 * @param statementCacheSizeIn the maximum number of idle <code>PreparedStatement</code>s kept per connection
+	 */
+	public JDBCConnectionPool(ConnectionFactory connectionFactoryIn, int maximumSizeIn, long maximumWaitIn, long idleTimeoutIn, int validationTimeoutIn, int statementCacheSizeIn) {
+		if (maximumSizeIn <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		this.connectionFactory	= connectionFactoryIn;
+		this.maximumSize		= maximumSizeIn;
+		this.maximumWait		= maximumWaitIn;
+		this.idleTimeout		= idleTimeoutIn;
+		this.validationTimeout	= validationTimeoutIn;
+		this.statementCacheSize	= statementCacheSizeIn;
+		this.permits			= new Semaphore(maximumSizeIn, true);
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private static void closeQuietly(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException ex) {
+			logger.warn("SQLException closing pooled statement: {}", ex.getMessage());
+		}
+	}
+
+	private Connection newConnectionProxy(PooledConnection pooledConnection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				new LeasedConnection(pooledConnection));
+	}
+
+	/*
+	 * Idle connections are kept most recently used first, so the ones that have been idle the longest are at the end.
+	 */
+	private void evictIdleConnections() {
+		if (this.idleTimeout <= 0) {
+			return;
+		}
+		long cutoff	= System.currentTimeMillis() - this.idleTimeout;
+		Iterator<PooledConnection> iterConnections	= this.idleConnections.descendingIterator();
+		while (iterConnections.hasNext()) {
+			PooledConnection pooledConnection	= iterConnections.next();
+			if (pooledConnection.lastUsed > cutoff) {
+				break;
+			}
+			if (this.idleConnections.removeLastOccurrence(pooledConnection)) {
+				logger.debug("Closing idle connection");
+				pooledConnection.close();
+			}
+		}
+	}
+
+	private boolean isValid(PooledConnection pooledConnection) {
+		if (this.validationTimeout <= 0) {
+			return true;
+		}
+		try {
+			return pooledConnection.connection.isValid(this.validationTimeout);
+		} catch (SQLException ex) {
+			logger.warn("SQLException validating connection: {}", ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Gets a <code>Connection</code> from the pool, opening a new one if no valid idle connection is available.  The
+	 * caller must close the <code>Connection</code> to return it to the pool.
+	 *
+	 * @return a <code>Connection</code> leased from this pool
+	 * @throws SQLException if the pool is closed, no connection became available in time or a new connection could not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (this.closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		try {
+			if (!this.permits.tryAcquire(this.maximumWait, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out after " + this.maximumWait + "ms waiting for one of " + this.maximumSize + " pooled connections");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a pooled connection", ex);
+		}
+		try {
+			this.evictIdleConnections();
+			PooledConnection pooledConnection;
+			while ((pooledConnection = this.idleConnections.pollFirst()) != null) {
+				if (this.isValid(pooledConnection)) {
+					return this.newConnectionProxy(pooledConnection);
+				}
+				logger.warn("Discarding invalid pooled connection");
+				pooledConnection.close();
+			}
+			pooledConnection	= new PooledConnection(this.connectionFactory.newConnection());
+			this.connectionsCreated.incrementAndGet();
+			return this.newConnectionProxy(pooledConnection);
+		} catch (SQLException | RuntimeException ex) {
+			this.permits.release();
+			throw ex;
+		}
+	}
+
+	private void release(PooledConnection pooledConnection, boolean reusable) {
+		try {
+			pooledConnection.lastUsed	= System.currentTimeMillis();
+			if (this.closed || !reusable) {
+				pooledConnection.close();
+			} else {
+				this.idleConnections.offerFirst(pooledConnection);
+				//
+				// Close may have drained the pool between the check and the offer
+				//
+				if (this.closed && this.idleConnections.remove(pooledConnection)) {
+					pooledConnection.close();
+				}
+			}
+			this.evictIdleConnections();
+		} finally {
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * Closes all idle connections and stops handing out new ones.  Connections currently in use are closed when they
+	 * are returned.
+	 */
+	public void close() {
+		this.closed	= true;
+		PooledConnection pooledConnection;
+		while ((pooledConnection = this.idleConnections.pollFirst()) != null) {
+			pooledConnection.close();
+		}
+	}
+
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	public int getActiveCount() {
+		return this.maximumSize - this.permits.availablePermits();
+	}
+
+	public int getIdleCount() {
+		return this.idleConnections.size();
+	}
+
+	public long getConnectionsCreated() {
+		return this.connectionsCreated.get();
+	}
+
+	public long getConnectionsClosed() {
+		return this.connectionsClosed.get();
+	}
+
+	public long getStatementsPrepared() {
+		return this.statementsPrepared.get();
+	}
+
+	public long getStatementsReused() {
+		return this.statementsReused.get();
+	}
+}
@@ -12,10 +12,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -26,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPRequest;
@@ -37,11 +43,21 @@ import com.att.research.xacml.util.AttributeUtils;
 import com.att.research.xacml.util.XACMLProperties;
 import com.google.common.base.Splitter;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * PIPEgineJDBC extends {@link com.att.research.xacml.std.pip.engines.StdConfigurableEngine} to implement a PIP that
- * retrieves XACML attributes from a database using JDBC.  This is a minimal implementation that does not do any caching of
- * results.  It does not perform JDBC connection pooling either.
+ * retrieves XACML attributes from a database using JDBC.
+ * 
+ * When connecting with a JDBC URL the engine keeps its connections in a bounded
+ * {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCConnectionPool} configured with the <code>jdbc.pool.*</code>
+ * properties, which also caches each connection's <code>PreparedStatement</code>s.  Setting <code>jdbc.pool.size</code>
+ * to 0 opens a new connection for every query instead.  JNDI data sources are expected to do their own pooling.
+ * 
+ * Results are cached when the engine has a <code>cacheSpec</code> and the resolver supplies a
+ * {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCResolver#getCacheKey(com.att.research.xacml.api.pip.PIPEngine, PIPRequest, List) cache key}.
+ * A resolver may set its own <code>cacheSpec</code>, for example to give it a different <code>expireAfterWrite</code> time to live,
+ * and may turn off caching of empty results with <code>cacheEmpty=false</code>.
  * 
  * @author Christopher A. Rath
  * @version $Revision$
@@ -53,13 +69,25 @@ public class JDBCEngine extends StdConfigurableEngine {
 	public static final String PROP_JDBC_CONN		= "jdbc.conn";
 	public static final String PROP_JDBC_CONN_USER	= "jdbc.conn.user";
 	public static final String PROP_JDBC_CONN_PASS	= "jdbc.conn.password";
+	public static final String PROP_JDBC_POOL_SIZE			= "jdbc.pool.size";
+	public static final String PROP_JDBC_POOL_MAXWAIT		= "jdbc.pool.maxWait";
+	public static final String PROP_JDBC_POOL_IDLETIMEOUT	= "jdbc.pool.idleTimeout";
+	public static final String PROP_JDBC_POOL_VALIDATION	= "jdbc.pool.validationTimeout";
+	public static final String PROP_JDBC_POOL_STATEMENTS	= "jdbc.pool.statements";
 	public static final String PROP_RESOLVERS		= "resolvers";
 	public static final String PROP_RESOLVER		= "resolver";
 	public static final String PROP_CLASSNAME		= "classname";
+	public static final String PROP_CACHE_EMPTY		= "cacheEmpty";
 	
 	public static final String TYPE_JDBC			= "jdbc";
 	public static final String TYPE_JNDI			= "jndi";
 	
+	public static final int DEFAULT_POOL_SIZE			= 8;
+	public static final long DEFAULT_POOL_MAXWAIT		= 5000;
+	public static final long DEFAULT_POOL_IDLETIMEOUT	= 300000;
+	public static final int DEFAULT_POOL_VALIDATION		= 5;
+	public static final int DEFAULT_POOL_STATEMENTS		= 16;
+	
 	protected Logger logger	= LoggerFactory.getLogger(this.getClass());
 	private String type;
 	private String jndiDataSource;
@@ -67,8 +95,34 @@ public class JDBCEngine extends StdConfigurableEngine {
 	private boolean jdbcDriverClassLoaded;
 	private String jdbcUrl;
 	private Properties jdbcConnProperties	= new Properties();
+	private JDBCConnectionPool connectionPool;
+	private int poolSize = DEFAULT_POOL_SIZE;
+	private long poolMaxWait = DEFAULT_POOL_MAXWAIT;
+	private long poolIdleTimeout = DEFAULT_POOL_IDLETIMEOUT;
+	private int poolValidation = DEFAULT_POOL_VALIDATION;
+	private int poolStatements = DEFAULT_POOL_STATEMENTS;
     private List<JDBCResolver> jdbcResolvers = new ArrayList<>();
+    private Map<JDBCResolver, ResolverCache> resolverCaches = new HashMap<>();
+    private boolean cacheEmpty = true;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
     private boolean shutdown = false;
+    
+    /**
+     * The cache used for the results of a single <code>JDBCResolver</code>.  The resolver id is part of every key
+     * so resolvers sharing the engine's cache never see each other's entries.
+     */
+    private static class ResolverCache {
+    	private final String resolverId;
+    	private final Cache<String, PIPResponse> cache;
+    	private final boolean cacheEmpty;
+    	
+    	ResolverCache(String resolverIdIn, Cache<String, PIPResponse> cacheIn, boolean cacheEmptyIn) {
+    		this.resolverId	= resolverIdIn;
+    		this.cache		= cacheIn;
+    		this.cacheEmpty	= cacheEmptyIn;
+    	}
+    }
 	
 	/**
 	 * If the JDBC driver <code>Class</code> has not been loaded yet, do so now.
@@ -115,11 +169,15 @@ public class JDBCEngine extends StdConfigurableEngine {
 		}
 		
 		/*
-		 * Try to create a new Connection
+		 * Get a Connection from the pool or create a new one
 		 */
 		Connection connectionResult	= null;
 		try {
-			connectionResult	= DriverManager.getConnection(this.jdbcUrl, this.jdbcConnProperties);
+			if (this.connectionPool != null) {
+				connectionResult	= this.connectionPool.getConnection();
+			} else {
+				connectionResult	= DriverManager.getConnection(this.jdbcUrl, this.jdbcConnProperties);
+			}
 		} catch (SQLException ex) {
 			throw new PIPException("SQLException creating Connection", ex);
 		}
@@ -140,12 +198,75 @@ public class JDBCEngine extends StdConfigurableEngine {
 		}
 	}
 	
+	/**
+	 * Gets the pool the engine's JDBC connections come from.
+	 * 
+	 * @return the <code>JDBCConnectionPool</code> or null if connections are not pooled
+	 */
+	public JDBCConnectionPool getConnectionPool() {
+		return this.connectionPool;
+	}
+	
+	/**
+	 * Gets the number of resolver queries that were answered from the cache.
+	 * 
+	 * @return the number of cache hits since the engine was configured
+	 */
+	public long getCacheHits() {
+		return this.cacheHits.get();
+	}
+	
+	/**
+	 * Gets the number of cacheable resolver queries that were not found in the cache and went to the database.
+	 * 
+	 * @return the number of cache misses since the engine was configured
+	 */
+	public long getCacheMisses() {
+		return this.cacheMisses.get();
+	}
+	
 	protected void getAttributes(PIPRequest pipRequest, PIPFinder pipFinder, JDBCResolver jdbcResolver, StdMutablePIPResponse pipResponse) throws PIPException {
 		/*
-		 * First we need to get a PreparedStatement
+		 * The parameters are found once for both the cache key and the query
+		 */
+		List<AttributeValue<?>> parameterValues	= jdbcResolver.getParameterValues(this, pipRequest, pipFinder);
+		if (parameterValues == null) {
+            this.logger.debug("{} does not handle {}", this.getName(), pipRequest.toString());
+			return;
+		}
+		String queryKey	= (this.resolverCaches.containsKey(jdbcResolver) ? jdbcResolver.getCacheKey(this, pipRequest, parameterValues) : null);
+		Collection<Attribute> listAttributes	= this.query(pipRequest, pipFinder, jdbcResolver, parameterValues, queryKey);
+		if (listAttributes != null) {
+			pipResponse.addAttributes(listAttributes);
+		}
+	}
+	
+	/*
+	 * Answers the request from the cache or by running the query of the given resolver.  Returns null if the resolver
+	 * does not handle the request.
+	 */
+	private Collection<Attribute> query(PIPRequest pipRequest, PIPFinder pipFinder, JDBCResolver jdbcResolver, List<AttributeValue<?>> parameterValues, String queryKey) throws PIPException {
+		/*
+		 * Is it in the cache?
+		 */
+		ResolverCache resolverCache	= this.resolverCaches.get(jdbcResolver);
+		String cacheKey				= null;
+		if (resolverCache != null && queryKey != null) {
+			cacheKey	= resolverCache.resolverId + "::" + queryKey;
+			PIPResponse pipResponseCached	= resolverCache.cache.getIfPresent(cacheKey);
+			if (pipResponseCached != null) {
+				this.cacheHits.incrementAndGet();
+                this.logger.debug("Returning cached response for {}", cacheKey);
+				return pipResponseCached.getAttributes();
+			}
+			this.cacheMisses.incrementAndGet();
+		}
+		
+		/*
+		 * Not in the cache, so we need to get a PreparedStatement
 		 */
 		Connection connection = this.getConnection();
-		PreparedStatement preparedStatement	= jdbcResolver.getPreparedStatement(this, pipRequest, pipFinder, connection);
+		PreparedStatement preparedStatement	= jdbcResolver.getPreparedStatement(this, pipRequest, pipFinder, parameterValues, connection);
 		if (preparedStatement == null) {
             this.logger.debug("{} does not handle {}", this.getName(), pipRequest.toString());
 			try {
@@ -154,17 +275,10 @@ public class JDBCEngine extends StdConfigurableEngine {
 				}
 			} catch (Exception e) {				
 			}
-			return;
+			return null;
 		}
 		
-		/*
-		 * Is it in the cache?
-		 */
         this.logger.debug("{}", preparedStatement);
-		Cache<String, PIPResponse> cache = this.getCache();
-		if (cache != null) {
-			// TODO - a cache key
-		}
 		
 		/*
 		 * Execute the prepared statement
@@ -187,8 +301,9 @@ public class JDBCEngine extends StdConfigurableEngine {
 				}
 			} catch (Exception e) {				
 			}
-			return;
+			return Collections.emptyList();
 		}		
+		List<Attribute> listResults	= new ArrayList<>();
 		try {
 			/*
 			 * Get all the results
@@ -196,14 +311,19 @@ public class JDBCEngine extends StdConfigurableEngine {
 			while (resultSet.next()) {
 				List<Attribute> listAttributes	= jdbcResolver.decodeResult(resultSet);
 				if (listAttributes != null) {
-					pipResponse.addAttributes(listAttributes);
+					listResults.addAll(listAttributes);
 				}
 			}
 			/*
-			 * Save it in the cache
+			 * Save it in the cache.  Only a query that ran to completion is cached, and an empty
+			 * result is cached too unless the resolver asked us not to.
 			 */
-			if (cache != null) {
-				// TODO
+			if (cacheKey != null) {
+				if (!listResults.isEmpty()) {
+					resolverCache.cache.put(cacheKey, new StdPIPResponse(listResults));
+				} else if (resolverCache.cacheEmpty) {
+					resolverCache.cache.put(cacheKey, StdPIPResponse.PIP_RESPONSE_EMPTY);
+				}
 			}
 		} catch (SQLException ex) {
             this.logger.error("SQLException decoding results", ex);
@@ -226,6 +346,7 @@ public class JDBCEngine extends StdConfigurableEngine {
                 this.logger.error("SQLException closing connection: (May be memory leak)", e);
 			}
 		}
+		return listResults;
 	}
 
 	@Override
@@ -241,6 +362,62 @@ public class JDBCEngine extends StdConfigurableEngine {
 		for (JDBCResolver jdbcResolver : this.jdbcResolvers) {
 			this.getAttributes(pipRequest, pipFinder, jdbcResolver, mutablePIPResponse);
 		}
+		return this.newPIPResponse(mutablePIPResponse);
+	}
+	
+	/**
+	 * Runs each query only once for all of the given <code>PIPRequest</code>s, telling the queries apart by the
+	 * {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCResolver#getCacheKey(com.att.research.xacml.api.pip.PIPEngine, PIPRequest, List) cache key}
+	 * of the resolver.  A {@link com.att.research.xacml.std.pip.engines.jdbc.ConfigurableJDBCResolver} returns all of its fields
+	 * for any attribute it supports, so it is asked once for the whole batch.  Resolvers without cache keys are asked for
+	 * each <code>PIPRequest</code>.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+        if (this.shutdown) {
+            throw new PIPException("Engine is shutdown.");
+        }
+        if (this.jdbcResolvers.isEmpty()) {
+			throw new IllegalStateException(this.getClass().getCanonicalName() + " is not configured");
+		}
+		
+		Map<PIPRequest, StdMutablePIPResponse> mapMutableResponses	= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (!mapMutableResponses.containsKey(pipRequest)) {
+				mapMutableResponses.put(pipRequest, new StdMutablePIPResponse());
+			}
+		}
+		for (JDBCResolver jdbcResolver : this.jdbcResolvers) {
+			/*
+			 * The results of each query this resolver has run for the batch
+			 */
+			Map<String, Collection<Attribute>> mapQueries	= new HashMap<>();
+			for (Map.Entry<PIPRequest, StdMutablePIPResponse> entry : mapMutableResponses.entrySet()) {
+				List<AttributeValue<?>> parameterValues	= jdbcResolver.getParameterValues(this, entry.getKey(), pipFinder);
+				if (parameterValues == null) {
+					continue;
+				}
+				String queryKey	= jdbcResolver.getCacheKey(this, entry.getKey(), parameterValues);
+				Collection<Attribute> listAttributes	= (queryKey == null ? null : mapQueries.get(queryKey));
+				if (listAttributes == null) {
+					listAttributes	= this.query(entry.getKey(), pipFinder, jdbcResolver, parameterValues, queryKey);
+					if (queryKey != null && listAttributes != null) {
+						mapQueries.put(queryKey, listAttributes);
+					}
+				}
+				if (listAttributes != null) {
+					entry.getValue().addAttributes(listAttributes);
+				}
+			}
+		}
+		Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+		for (Map.Entry<PIPRequest, StdMutablePIPResponse> entry : mapMutableResponses.entrySet()) {
+			mapResponses.put(entry.getKey(), this.newPIPResponse(entry.getValue()));
+		}
+		return mapResponses;
+	}
+	
+	private PIPResponse newPIPResponse(StdMutablePIPResponse mutablePIPResponse) {
         if (mutablePIPResponse.getAttributes().isEmpty()) {
 			if (this.logger.isDebugEnabled()) {
 				this.logger.debug("returning empty response");
@@ -283,11 +460,120 @@ public class JDBCEngine extends StdConfigurableEngine {
 			JDBCResolver jdbcResolver	= JDBCResolver.class.cast(resolverClass.newInstance());
 			jdbcResolver.configure(resolverId, properties, this.getIssuer());
 			this.jdbcResolvers.add(jdbcResolver);
+			this.createResolverCache(resolverId, jdbcResolver, properties);
 		} catch (Exception ex) {
 			throw new PIPException("Exception creating JDBCResolver", ex);
 		}		
 	}
 
+	/**
+	 * Sets up the cache for the given <code>JDBCResolver</code>.  The resolver gets its own cache if it has a
+	 * "cacheSpec" property, otherwise it shares the engine's cache if there is one.
+	 * 
+	 * @param resolverId the <code>String</code> identifier of the resolver
+	 * @param jdbcResolver the configured <code>JDBCResolver</code>
+	 * @param properties the <code>Properties</code> to search for the resolver's cache properties
+	 */
+	protected void createResolverCache(String resolverId, JDBCResolver jdbcResolver, Properties properties) {
+		String propPrefix	= resolverId + ".";
+		Cache<String, PIPResponse> cache	= this.getCache();
+		String cacheSpec	= properties.getProperty(propPrefix + PROP_CACHESPEC);
+		if (cacheSpec != null) {
+			cache	= CacheBuilder.from(cacheSpec).build();
+		}
+		if (cache == null) {
+			return;
+		}
+		String stringProp	= properties.getProperty(propPrefix + PROP_CACHE_EMPTY);
+		boolean resolverCacheEmpty	= (stringProp == null ? this.cacheEmpty : Boolean.parseBoolean(stringProp));
+		this.resolverCaches.put(jdbcResolver, new ResolverCache(resolverId, cache, resolverCacheEmpty));
+        this.logger.info("{} caching results with {}, empty results {}", resolverId, (cacheSpec == null ? "the engine cache" : cacheSpec), 
+        		(resolverCacheEmpty ? "cached" : "not cached"));
+	}
+
+	/**
+	 * Throws away every cached result, so that the next request for each goes to the database.  Extensions call
+	 * this when the data behind the queries changes.
+	 */
+	protected void invalidateCaches() {
+		for (ResolverCache resolverCache : this.resolverCaches.values()) {
+			resolverCache.cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Resolves the value of a connection property such as the driver class, URL, user or password.  These values
+	 * MUST come from the environment, so the default implementation uses
+	 * {@link com.att.research.xacml.util.XACMLProperties#resolveEnvironmentProperty(String)}.
+	 * 
+	 * @param value the <code>String</code> property value as configured
+	 * @return the resolved <code>String</code> value or null if it could not be resolved
+	 */
+	protected String resolveProperty(String value) {
+		return XACMLProperties.resolveEnvironmentProperty(value);
+	}
+
+	private long getLongProperty(Properties properties, String property, long defaultValue) throws PIPException {
+		String stringProp	= properties.getProperty(property);
+		if (stringProp == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(stringProp.trim());
+		} catch (NumberFormatException ex) {
+			String message = this.getName() + ": The " + property + " value of '" + stringProp + "' cannot be converted to a number";
+			this.logger.error(message);
+			throw new PIPException(message);
+		}
+	}
+	
+	/**
+	 * Creates the connection pool from the "jdbc.pool.*" properties unless the pool size is 0.
+	 * 
+	 * @param propPrefix the <code>String</code> property prefix for this engine
+	 * @param properties the <code>Properties</code> to search for the pool properties
+	 * @throws PIPException if a pool property is not a number
+	 */
+	protected void createConnectionPool(String propPrefix, Properties properties) throws PIPException {
+		this.configureConnectionPool(propPrefix, properties);
+		if (this.poolSize <= 0) {
+            this.logger.info("{} connection pooling is disabled", this.getName());
+			return;
+		}
+		this.connectionPool	= this.newConnectionPool(() -> DriverManager.getConnection(this.jdbcUrl, this.jdbcConnProperties));
+        this.logger.info("{} pooling up to {} connections with {} cached statements each", this.getName(), this.poolSize, this.poolStatements);
+	}
+	
+	/**
+	 * Reads the "jdbc.pool.*" settings used by {@link #newConnectionPool(JDBCConnectionPool.ConnectionFactory)} without
+	 * creating a pool for the engine's own JDBC URL.
+	 * 
+	 * @param propPrefix the <code>String</code> property prefix for this engine
+	 * @param properties the <code>Properties</code> to search for the pool properties
+	 * @throws PIPException if a pool property is not a number
+	 */
+	protected void configureConnectionPool(String propPrefix, Properties properties) throws PIPException {
+		this.poolSize			= (int) this.getLongProperty(properties, propPrefix + PROP_JDBC_POOL_SIZE, DEFAULT_POOL_SIZE);
+		this.poolMaxWait		= this.getLongProperty(properties, propPrefix + PROP_JDBC_POOL_MAXWAIT, DEFAULT_POOL_MAXWAIT);
+		this.poolIdleTimeout	= this.getLongProperty(properties, propPrefix + PROP_JDBC_POOL_IDLETIMEOUT, DEFAULT_POOL_IDLETIMEOUT);
+		this.poolValidation		= (int) this.getLongProperty(properties, propPrefix + PROP_JDBC_POOL_VALIDATION, DEFAULT_POOL_VALIDATION);
+		this.poolStatements		= (int) this.getLongProperty(properties, propPrefix + PROP_JDBC_POOL_STATEMENTS, DEFAULT_POOL_STATEMENTS);
+	}
+	
+	/**
+	 * Creates a new <code>JDBCConnectionPool</code> with the engine's "jdbc.pool.*" settings that gets its connections
+	 * from the given factory.  Extensions that connect to more than one database use this to pool each of them.
+	 * 
+	 * @param connectionFactory the <code>JDBCConnectionPool.ConnectionFactory</code> that opens new connections
+	 * @return a new <code>JDBCConnectionPool</code> or null if pooling is disabled
+	 */
+	protected JDBCConnectionPool newConnectionPool(JDBCConnectionPool.ConnectionFactory connectionFactory) {
+		if (this.poolSize <= 0) {
+			return null;
+		}
+		return new JDBCConnectionPool(connectionFactory, this.poolSize, this.poolMaxWait, this.poolIdleTimeout, this.poolValidation, this.poolStatements);
+	}
+
 	@Override
 	public void configure(String id, Properties properties) throws PIPException {
 		//
@@ -311,7 +597,7 @@ public class JDBCEngine extends StdConfigurableEngine {
 			//
 			// MUST be an environment value
 			//
-			this.jdbcDriverClass = XACMLProperties.resolveEnvironmentProperty(this.jdbcDriverClass);
+			this.jdbcDriverClass = this.resolveProperty(this.jdbcDriverClass);
 		}
 		try {
 			Class.forName(this.jdbcDriverClass);
@@ -325,9 +611,13 @@ public class JDBCEngine extends StdConfigurableEngine {
 			//
 			// MUST be an environment value
 			//
-			this.jdbcUrl = XACMLProperties.resolveEnvironmentProperty(this.jdbcUrl);
+			this.jdbcUrl = this.resolveProperty(this.jdbcUrl);
 		}
 		//
+		// Do we cache empty results? Resolvers may override this.
+		//
+		this.cacheEmpty = Boolean.parseBoolean(properties.getProperty(propPrefix + PROP_CACHE_EMPTY, "true"));
+		//
 		// Go through all our resolvers
 		//
 		String propResolverPrefix	= propPrefix + PROP_RESOLVERS;
@@ -345,14 +635,14 @@ public class JDBCEngine extends StdConfigurableEngine {
 			//
 			// MUST be an environment value
 			//
-			stringProp = XACMLProperties.resolveEnvironmentProperty(stringProp);
+			stringProp = this.resolveProperty(stringProp);
 			this.jdbcConnProperties.setProperty("user", stringProp);
 		}
 		if ((stringProp = properties.getProperty(propPrefix + PROP_JDBC_CONN_PASS)) != null) {
 			//
 			// MUST be an environment value
 			//
-			stringProp = XACMLProperties.resolveEnvironmentProperty(stringProp);
+			stringProp = this.resolveProperty(stringProp);
 			this.jdbcConnProperties.setProperty("password", stringProp);
 		}
 		String jdbcConnPrefix	= propPrefix + PROP_JDBC_CONN;
@@ -365,6 +655,12 @@ public class JDBCEngine extends StdConfigurableEngine {
 				}
 			}
 		}
+		//
+		// JNDI data sources do their own pooling
+		//
+		if (TYPE_JDBC.equals(this.type)) {
+			this.createConnectionPool(propPrefix, properties);
+		}
 	}
 
 	@Override
@@ -388,5 +684,8 @@ public class JDBCEngine extends StdConfigurableEngine {
     @Override
     public void shutdown() {
         this.shutdown = true;
+        if (this.connectionPool != null) {
+        	this.connectionPool.close();
+        }
     }
 }
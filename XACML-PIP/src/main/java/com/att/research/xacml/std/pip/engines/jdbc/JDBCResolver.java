@@ -8,9 +8,11 @@ package com.att.research.xacml.std.pip.engines.jdbc;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Collections;
 import java.util.List;
 
 import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
 import com.att.research.xacml.api.pip.PIPEngine;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
@@ -39,6 +41,56 @@ public interface JDBCResolver extends ConfigurableResolver {
 	 * @throws PIPException if there is an error creating the <code>PreparedStatement</code>
 	 */
 	public PreparedStatement getPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder, Connection connection) throws PIPException;
+
+	/**
+	 * Creates a {@link java.sql.PreparedStatement} like {@link #getPreparedStatement(PIPEngine, PIPRequest, PIPFinder, Connection)}, binding
+	 * the given parameter values that {@link #getParameterValues(PIPEngine, PIPRequest, PIPFinder)} has already found so they are not looked
+	 * up again.  The default implementation ignores them and calls <code>getPreparedStatement</code> without them.
+	 * 
+	 * @param pipEngine the {@link com.att.research.xacml.api.pip.PIPEngine} making the request for XACML AttributeValues
+	 * @param pipRequest the {@link com.att.research.xacml.api.pip.PIPRequest} with the requested XACML Attributes
+	 * @param pipFinder the {@link com.att.research.xacml.api.pip.PIPFinder} for finding any other XACML AttributeValues required to build the query.
+	 * @param parameterValues the <code>List</code> of <code>AttributeValue</code>s returned by <code>getParameterValues</code>
+	 * @param connection the {@link java.sql.Connection} needed to create the <code>PreparedStatement</code>
+	 * @return a <code>PreparedStatement</code> to query the database for the required XACML AttributeValues.
+	 * @throws PIPException if there is an error creating the <code>PreparedStatement</code>
+	 */
+	public default PreparedStatement getPreparedStatement(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder, List<AttributeValue<?>> parameterValues, Connection connection) throws PIPException {
+		return this.getPreparedStatement(pipEngine, pipRequest, pipFinder, connection);
+	}
+
+	/**
+	 * Finds the {@link com.att.research.xacml.api.AttributeValue}s that would be bound to the parameters of the query for the given
+	 * {@link com.att.research.xacml.api.pip.PIPRequest}.  The {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCEngine} finds them once
+	 * and hands them to both {@link #getCacheKey(PIPEngine, PIPRequest, List)} and
+	 * {@link #getPreparedStatement(PIPEngine, PIPRequest, PIPFinder, List, Connection)}.  The default implementation returns an empty
+	 * <code>List</code>, leaving <code>getPreparedStatement</code> to find its own parameters.
+	 * 
+	 * @param pipEngine the {@link com.att.research.xacml.api.pip.PIPEngine} making the request for XACML AttributeValues
+	 * @param pipRequest the {@link com.att.research.xacml.api.pip.PIPRequest} with the requested XACML Attributes
+	 * @param pipFinder the {@link com.att.research.xacml.api.pip.PIPFinder} for finding the parameter values
+	 * @return a <code>List</code> with one <code>AttributeValue</code> per parameter, or null if the request is not supported or a parameter has no single value
+	 * @throws PIPException if there is an error gathering the query parameters
+	 */
+	public default List<AttributeValue<?>> getParameterValues(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Gets a <code>String</code> that identifies the query this <code>JDBCResolver</code> would run for the given
+	 * {@link com.att.research.xacml.api.pip.PIPRequest}: the SQL text together with the values that would be bound to its
+	 * parameters.  Requests with equal keys must produce the same results, which lets the
+	 * {@link com.att.research.xacml.std.pip.engines.jdbc.JDBCEngine} answer them from its cache without touching the database.
+	 * The default implementation returns null, so results are never cached.
+	 * 
+	 * @param pipEngine the {@link com.att.research.xacml.api.pip.PIPEngine} making the request for XACML AttributeValues
+	 * @param pipRequest the {@link com.att.research.xacml.api.pip.PIPRequest} with the requested XACML Attributes
+	 * @param parameterValues the <code>List</code> of <code>AttributeValue</code>s returned by {@link #getParameterValues(PIPEngine, PIPRequest, PIPFinder)}
+	 * @return the <code>String</code> cache key, or null if the results of the request should not be cached
+	 */
+	public default String getCacheKey(PIPEngine pipEngine, PIPRequest pipRequest, List<AttributeValue<?>> parameterValues) {
+		return null;
+	}
 	
 	/**
 	 * Creates a <code>List</code> of {@link com.att.research.xacml.api.Attribute}s from the given {@link java.sql.ResultSet}
@@ -365,6 +365,20 @@ public class ConfigurableLDAPResolver implements LDAPResolver {
 		return attr;
 	}
 
+	@Override
+	public String[] getReturningAttributes() {
+		/*
+		 * The dn comes with every search result
+		 */
+		List<String> attributeNames	= new ArrayList<String>();
+		for (String view : this.filterView.keySet()) {
+			if (!"dn".equalsIgnoreCase(view)) {
+				attributeNames.add(view);
+			}
+		}
+		return attributeNames.toArray(new String[attributeNames.size()]);
+	}
+
 	@Override
 	public List<Attribute> decodeResult(SearchResult searchResult)
 			throws PIPException {
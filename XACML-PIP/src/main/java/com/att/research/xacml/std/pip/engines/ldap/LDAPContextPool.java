@@ -0,0 +1,337 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LDAPContextPool is a small bounded pool of bound {@link javax.naming.directory.DirContext}s used by the
+ * {@link com.att.research.xacml.std.pip.engines.ldap.LDAPEngine}, so that searches reuse the connection and bind of an
+ * earlier search instead of opening and binding a new one each time.
+ *
+ * At most <code>maximumSize</code> contexts are handed out at once; a caller waits up to <code>maximumWait</code>
+ * milliseconds for one to be returned.  Idle contexts are closed once they have been idle longer than
+ * <code>idleTimeout</code> milliseconds, and every context is closed once it is older than <code>maximumLifetime</code>
+ * milliseconds so that connections are spread again after directory servers come and go.  A context that has been idle for
+ * at least <code>validateAfter</code> milliseconds is checked by reading the attribute-less root of the context before it is
+ * reused.  A context whose connection fails while it is leased, including while the caller reads the results of a search,
+ * is closed instead of being returned.
+ *
+ * Callers use the returned <code>DirContext</code> exactly as they would an unpooled one.  Closing it returns it to the pool.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class LDAPContextPool {
+	private static final Logger logger	= LoggerFactory.getLogger(LDAPContextPool.class);
+
+	/*
+	 * Asks the directory for the entry at the root of the context without any of its attributes
+	 */
+	private static final String[] NO_ATTRIBUTES	= new String[] { "1.1" };
+
+	/**
+	 * Opens and binds new <code>DirContext</code>s for the pool.
+	 */
+	@FunctionalInterface
+	public interface ContextFactory {
+		public DirContext newContext() throws NamingException;
+	}
+
+	private final ContextFactory contextFactory;
+	private final int maximumSize;
+	private final long maximumWait;
+	private final long idleTimeout;
+	private final long maximumLifetime;
+	private final long validateAfter;
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<PooledContext> idleContexts	= new ConcurrentLinkedDeque<>();
+	private final AtomicLong contextsCreated	= new AtomicLong();
+	private final AtomicLong contextsClosed		= new AtomicLong();
+	private final AtomicLong contextsReused		= new AtomicLong();
+	private final AtomicLong contextsBroken		= new AtomicLong();
+	private final AtomicLong waitTimeouts		= new AtomicLong();
+	private volatile boolean closed	= false;
+
+	/**
+	 * A bound <code>DirContext</code> and when it was opened.  A pooled context is only ever leased to one caller at a time.
+	 */
+	private class PooledContext {
+		private final DirContext dirContext;
+		private final long created		= System.currentTimeMillis();
+		private volatile long lastUsed	= this.created;
+
+		PooledContext(DirContext dirContextIn) {
+			this.dirContext	= dirContextIn;
+		}
+
+		boolean isExpired(long now) {
+			return maximumLifetime > 0 && now - this.created >= maximumLifetime;
+		}
+
+		void close() {
+			try {
+				this.dirContext.close();
+			} catch (NamingException ex) {
+				logger.warn("NamingException closing pooled DirContext: {}", ex.getMessage());
+			}
+			contextsClosed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Hands the caller's <code>DirContext</code> calls through to the pooled context, except that <code>close()</code>
+	 * returns it to the pool.  A call that fails because the connection is gone marks the context broken so that it is
+	 * closed when it is returned.  The results of a search usually come from the connection as they are read, so returned
+	 * <code>NamingEnumeration</code>s are watched the same way.
+	 */
+	private class LeasedContext implements InvocationHandler {
+		private final PooledContext pooledContext;
+		private volatile boolean released	= false;
+		private volatile boolean broken		= false;
+
+		LeasedContext(PooledContext pooledContextIn) {
+			this.pooledContext	= pooledContextIn;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!this.released) {
+					this.released	= true;
+					release(this.pooledContext, this.broken);
+				}
+				return null;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled " + this.pooledContext.dirContext.toString();
+			default:
+				break;
+			}
+			if (this.released) {
+				throw new NamingException("DirContext has been returned to the pool");
+			}
+			Object result	= this.invokeWatched(this.pooledContext.dirContext, method, args);
+			if (result instanceof NamingEnumeration) {
+				NamingEnumeration<?> namingEnumeration	= (NamingEnumeration<?>) result;
+				return Proxy.newProxyInstance(NamingEnumeration.class.getClassLoader(), new Class<?>[] { NamingEnumeration.class },
+						(proxyEnumeration, methodEnumeration, argsEnumeration) -> this.invokeWatched(namingEnumeration, methodEnumeration, argsEnumeration));
+			}
+			return result;
+		}
+
+		private Object invokeWatched(Object target, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException ex) {
+				if (isBroken(ex.getCause())) {
+					this.broken	= true;
+				}
+				throw ex.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new <code>LDAPContextPool</code>.
+	 *
+	 * @param contextFactoryIn the <code>ContextFactory</code> used to open and bind new contexts
+	 * @param maximumSizeIn the maximum number of contexts open at once
+	 * @param maximumWaitIn the number of milliseconds to wait for a context before giving up
+	 * @param idleTimeoutIn the number of milliseconds a context may sit idle before it is closed, 0 to never close it
+	 * @param maximumLifetimeIn the number of milliseconds after which a context is closed however busy it is, 0 to keep it forever
+	 * @param validateAfterIn the number of milliseconds a context may sit idle before it is checked on reuse, 0 to always check it
+	 * 			and a negative number to never check it
+	 */
+	public LDAPContextPool(ContextFactory contextFactoryIn, int maximumSizeIn, long maximumWaitIn, long idleTimeoutIn, long maximumLifetimeIn, long validateAfterIn) {
+		if (maximumSizeIn <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		this.contextFactory		= contextFactoryIn;
+		this.maximumSize		= maximumSizeIn;
+		this.maximumWait		= maximumWaitIn;
+		this.idleTimeout		= idleTimeoutIn;
+		this.maximumLifetime	= maximumLifetimeIn;
+		this.validateAfter		= validateAfterIn;
+		this.permits			= new Semaphore(maximumSizeIn, true);
+	}
+
+	/*
+	 * Only a lost connection makes a context useless; other errors are about the request
+	 */
+	private static boolean isBroken(Throwable throwable) {
+		return throwable instanceof CommunicationException || throwable instanceof ServiceUnavailableException;
+	}
+
+	private DirContext newContextProxy(PooledContext pooledContext) {
+		return (DirContext) Proxy.newProxyInstance(DirContext.class.getClassLoader(), new Class<?>[] { DirContext.class },
+				new LeasedContext(pooledContext));
+	}
+
+	/*
+	 * Idle contexts are kept most recently used first, so the ones that have been idle the longest are at the end.
+	 */
+	private void evictIdleContexts() {
+		long now	= System.currentTimeMillis();
+		Iterator<PooledContext> iterContexts	= this.idleContexts.descendingIterator();
+		while (iterContexts.hasNext()) {
+			PooledContext pooledContext	= iterContexts.next();
+			boolean idle	= this.idleTimeout > 0 && now - pooledContext.lastUsed >= this.idleTimeout;
+			if (!idle && !pooledContext.isExpired(now)) {
+				continue;
+			}
+			if (this.idleContexts.removeLastOccurrence(pooledContext)) {
+				logger.debug("Closing {} DirContext", (idle ? "idle" : "expired"));
+				pooledContext.close();
+			}
+		}
+	}
+
+	private boolean isValid(PooledContext pooledContext) {
+		if (this.validateAfter < 0 || System.currentTimeMillis() - pooledContext.lastUsed < this.validateAfter) {
+			return true;
+		}
+		try {
+			pooledContext.dirContext.getAttributes("", NO_ATTRIBUTES);
+			return true;
+		} catch (NamingException ex) {
+			if (isBroken(ex)) {
+				logger.warn("Pooled DirContext failed its check: {}", ex.getMessage());
+				return false;
+			}
+			//
+			// Not being allowed to read the root still means the connection works
+			//
+			return true;
+		}
+	}
+
+	/**
+	 * Gets a <code>DirContext</code> from the pool, opening a new one if no valid idle context is available.  The
+	 * caller must close the <code>DirContext</code> to return it to the pool.
+	 *
+	 * @return a <code>DirContext</code> leased from this pool
+	 * @throws NamingException if the pool is closed, no context became available in time or a new context could not be opened
+	 */
+	public DirContext getContext() throws NamingException {
+		if (this.closed) {
+			throw new NamingException("DirContext pool is closed");
+		}
+		try {
+			if (!this.permits.tryAcquire(this.maximumWait, TimeUnit.MILLISECONDS)) {
+				this.waitTimeouts.incrementAndGet();
+				throw new NamingException("Timed out after " + this.maximumWait + "ms waiting for one of " + this.maximumSize + " pooled DirContexts");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new NamingException("Interrupted waiting for a pooled DirContext");
+		}
+		try {
+			this.evictIdleContexts();
+			PooledContext pooledContext;
+			while ((pooledContext = this.idleContexts.pollFirst()) != null) {
+				if (this.isValid(pooledContext)) {
+					this.contextsReused.incrementAndGet();
+					return this.newContextProxy(pooledContext);
+				}
+				this.contextsBroken.incrementAndGet();
+				pooledContext.close();
+			}
+			pooledContext	= new PooledContext(this.contextFactory.newContext());
+			this.contextsCreated.incrementAndGet();
+			return this.newContextProxy(pooledContext);
+		} catch (NamingException | RuntimeException ex) {
+			this.permits.release();
+			throw ex;
+		}
+	}
+
+	private void release(PooledContext pooledContext, boolean broken) {
+		try {
+			pooledContext.lastUsed	= System.currentTimeMillis();
+			if (broken) {
+				this.contextsBroken.incrementAndGet();
+				pooledContext.close();
+			} else if (this.closed || pooledContext.isExpired(pooledContext.lastUsed)) {
+				pooledContext.close();
+			} else {
+				this.idleContexts.offerFirst(pooledContext);
+				//
+				// Close may have drained the pool between the check and the offer
+				//
+				if (this.closed && this.idleContexts.remove(pooledContext)) {
+					pooledContext.close();
+				}
+			}
+		} finally {
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * Closes all idle contexts and stops handing out new ones.  Contexts currently in use are closed when they are returned.
+	 */
+	public void close() {
+		this.closed	= true;
+		PooledContext pooledContext;
+		while ((pooledContext = this.idleContexts.pollFirst()) != null) {
+			pooledContext.close();
+		}
+	}
+
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	public int getActiveCount() {
+		return this.maximumSize - this.permits.availablePermits();
+	}
+
+	public int getIdleCount() {
+		return this.idleContexts.size();
+	}
+
+	public long getContextsCreated() {
+		return this.contextsCreated.get();
+	}
+
+	public long getContextsClosed() {
+		return this.contextsClosed.get();
+	}
+
+	public long getContextsReused() {
+		return this.contextsReused.get();
+	}
+
+	public long getContextsBroken() {
+		return this.contextsBroken.get();
+	}
+
+	public long getWaitTimeouts() {
+		return this.waitTimeouts.get();
+	}
+}
@@ -7,9 +7,12 @@ package com.att.research.xacml.std.pip.engines.ldap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -40,6 +43,11 @@ import com.google.common.cache.Cache;
  * LDAPEngine extends {@link com.att.research.xacml.std.pip.engines.StdConfigurableEngine} to implement a generic PIP for accessing
  * data from and LDAP server, including a configurable cache to avoid repeat queries.
  * 
+ * Searches lease their <code>DirContext</code> from a bounded {@link com.att.research.xacml.std.pip.engines.ldap.LDAPContextPool}
+ * configured with the <code>pool.*</code> properties, so that each search does not open a new connection and bind again.
+ * Setting <code>pool.size</code> to 0 opens a new <code>DirContext</code> for every search instead.  Each search only asks
+ * for the LDAP attributes its resolver decodes.
+ * 
  * @author car
  * @version $Revision$
  */
@@ -47,6 +55,17 @@ public class LDAPEngine extends StdConfigurableEngine {
 	public static final String PROP_RESOLVERS			= "resolvers";
 	public static final String PROP_RESOLVER			= "resolver";
 	public static final String PROP_LDAP_SCOPE			= "scope";
+	public static final String PROP_POOL_SIZE			= "pool.size";
+	public static final String PROP_POOL_MAXWAIT		= "pool.maxWait";
+	public static final String PROP_POOL_IDLETIMEOUT	= "pool.idleTimeout";
+	public static final String PROP_POOL_MAXLIFETIME	= "pool.maxLifetime";
+	public static final String PROP_POOL_VALIDATEAFTER	= "pool.validateAfter";
+	
+	public static final int DEFAULT_POOL_SIZE				= 8;
+	public static final long DEFAULT_POOL_MAXWAIT			= 5000;
+	public static final long DEFAULT_POOL_IDLETIMEOUT		= 300000;
+	public static final long DEFAULT_POOL_MAXLIFETIME		= 1800000;
+	public static final long DEFAULT_POOL_VALIDATEAFTER		= 30000;
 	
 	private static final String LDAP_SCOPE_SUBTREE		= "subtree";
 	private static final String LDAP_SCOPE_OBJECT		= "object";
@@ -59,6 +78,12 @@ public class LDAPEngine extends StdConfigurableEngine {
     private List<LDAPResolver> ldapResolvers = new ArrayList<>();
     private boolean shutdown = false;
 	private int ldapScope;
+	private LDAPContextPool contextPool;
+	private int poolSize = DEFAULT_POOL_SIZE;
+	private long poolMaxWait = DEFAULT_POOL_MAXWAIT;
+	private long poolIdleTimeout = DEFAULT_POOL_IDLETIMEOUT;
+	private long poolMaxLifetime = DEFAULT_POOL_MAXLIFETIME;
+	private long poolValidateAfter = DEFAULT_POOL_VALIDATEAFTER;
 	
 	/*
 	 * In addition, we pull the following standard LDAP properties from the configuration
@@ -118,6 +143,71 @@ public class LDAPEngine extends StdConfigurableEngine {
 		}
 	}
 	
+	private long getLongProperty(Properties properties, String property, long defaultValue) throws PIPException {
+		String stringProp	= properties.getProperty(property);
+		if (stringProp == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(stringProp.trim());
+		} catch (NumberFormatException ex) {
+			String message = this.getName() + ": The " + property + " value of '" + stringProp + "' cannot be converted to a number";
+			this.logger.error(message);
+			throw new PIPException(message);
+		}
+	}
+	
+	/**
+	 * Configures the {@link com.att.research.xacml.std.pip.engines.ldap.LDAPContextPool} from the <code>pool.*</code> properties.
+	 * 
+	 * @param propPrefix the <code>String</code> prefix of this engine's properties
+	 * @param properties the <code>Properties</code> to read the pool settings from
+	 * @throws PIPException if a pool setting is not a number
+	 */
+	protected void createContextPool(String propPrefix, Properties properties) throws PIPException {
+		this.poolSize			= (int) this.getLongProperty(properties, propPrefix + PROP_POOL_SIZE, DEFAULT_POOL_SIZE);
+		this.poolMaxWait		= this.getLongProperty(properties, propPrefix + PROP_POOL_MAXWAIT, DEFAULT_POOL_MAXWAIT);
+		this.poolIdleTimeout	= this.getLongProperty(properties, propPrefix + PROP_POOL_IDLETIMEOUT, DEFAULT_POOL_IDLETIMEOUT);
+		this.poolMaxLifetime	= this.getLongProperty(properties, propPrefix + PROP_POOL_MAXLIFETIME, DEFAULT_POOL_MAXLIFETIME);
+		this.poolValidateAfter	= this.getLongProperty(properties, propPrefix + PROP_POOL_VALIDATEAFTER, DEFAULT_POOL_VALIDATEAFTER);
+		if (this.poolSize <= 0) {
+            this.logger.info("{} DirContext pooling is disabled", this.getName());
+			return;
+		}
+		this.contextPool	= this.newContextPool(() -> new InitialDirContext(this.ldapEnvironment));
+        this.logger.info("{} pooling up to {} DirContexts", this.getName(), this.poolSize);
+	}
+	
+	protected LDAPContextPool newContextPool(LDAPContextPool.ContextFactory contextFactory) {
+		if (this.poolSize <= 0) {
+			return null;
+		}
+		return new LDAPContextPool(contextFactory, this.poolSize, this.poolMaxWait, this.poolIdleTimeout, this.poolMaxLifetime, this.poolValidateAfter);
+	}
+	
+	/**
+	 * Gets the {@link com.att.research.xacml.std.pip.engines.ldap.LDAPContextPool} searches lease their <code>DirContext</code>s
+	 * from, whose counters show how much the pool is used.
+	 * 
+	 * @return the <code>LDAPContextPool</code> or null if pooling is disabled
+	 */
+	public LDAPContextPool getContextPool() {
+		return this.contextPool;
+	}
+	
+	/**
+	 * Gets a <code>DirContext</code> to search with, which the caller must close.
+	 * 
+	 * @return a <code>DirContext</code> from the pool, or a new one if pooling is disabled
+	 * @throws NamingException if no <code>DirContext</code> could be had
+	 */
+	protected DirContext getDirContext() throws NamingException {
+		if (this.contextPool != null) {
+			return this.contextPool.getContext();
+		}
+		return new InitialDirContext(this.ldapEnvironment);
+	}
+	
 	@Override
 	public void configure(String id, Properties properties) throws PIPException {
 		/*
@@ -194,6 +284,7 @@ public class LDAPEngine extends StdConfigurableEngine {
 			this.ldapResolvers.add(ldapResolverNew);
 		}			
 		
+		this.createContextPool(propertyPrefix, properties);
 	}
 	
 	@Override
@@ -212,6 +303,58 @@ public class LDAPEngine extends StdConfigurableEngine {
 		for (LDAPResolver ldapResolver : this.ldapResolvers) {
 			this.getAttributes(pipRequest, pipFinder, mutablePIPResponse, ldapResolver);
 		}
+		return this.newPIPResponse(mutablePIPResponse);
+	}
+	
+	/**
+	 * Runs each search only once for all of the given <code>PIPRequest</code>s.  A resolver that builds the same base and
+	 * filter for several of them, as the {@link com.att.research.xacml.std.pip.engines.ldap.ConfigurableLDAPResolver} does for
+	 * all of the attributes of an entry, gets them all back from one search.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+        if (this.shutdown) {
+            throw new PIPException("Engine is shutdown.");
+        }
+        if (this.ldapResolvers.isEmpty()) {
+			throw new IllegalStateException(this.getClass().getCanonicalName() + " is not configured");
+		}
+		
+		Map<PIPRequest, StdMutablePIPResponse> mapMutableResponses	= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (!mapMutableResponses.containsKey(pipRequest)) {
+				mapMutableResponses.put(pipRequest, new StdMutablePIPResponse());
+			}
+		}
+		for (LDAPResolver ldapResolver : this.ldapResolvers) {
+			/*
+			 * The results of each search this resolver has run for the batch
+			 */
+			Map<String, Collection<Attribute>> mapSearches	= new HashMap<>();
+			for (Map.Entry<PIPRequest, StdMutablePIPResponse> entry : mapMutableResponses.entrySet()) {
+				String stringBase	= ldapResolver.getBase(this, entry.getKey(), pipFinder);
+				if (stringBase == null) {
+		            this.logger.debug("{} does not handle {}", this.getName(), entry.getKey());
+					continue;
+				}
+				String stringFilter	= ldapResolver.getFilterString(this, entry.getKey(), pipFinder);
+				String searchKey	= stringBase + "::" + (stringFilter == null ? "" : stringFilter);
+				Collection<Attribute> listAttributes	= mapSearches.get(searchKey);
+				if (listAttributes == null) {
+					listAttributes	= this.search(ldapResolver, stringBase, stringFilter);
+					mapSearches.put(searchKey, listAttributes);
+				}
+				entry.getValue().addAttributes(listAttributes);
+			}
+		}
+		Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+		for (Map.Entry<PIPRequest, StdMutablePIPResponse> entry : mapMutableResponses.entrySet()) {
+			mapResponses.put(entry.getKey(), this.newPIPResponse(entry.getValue()));
+		}
+		return mapResponses;
+	}
+	
+	private PIPResponse newPIPResponse(StdMutablePIPResponse mutablePIPResponse) {
         if (mutablePIPResponse.getAttributes().isEmpty()) {
 			if (this.logger.isDebugEnabled()) {
 				this.logger.debug("returning empty response");
@@ -241,6 +384,13 @@ public class LDAPEngine extends StdConfigurableEngine {
 		 */
 		String stringFilter	= ldapResolver.getFilterString(this, pipRequest, pipFinder);
 		
+		mutablePIPResponse.addAttributes(this.search(ldapResolver, stringBase, stringFilter));
+	}
+	
+	/*
+	 * Answers the search from the cache or the LDAP server
+	 */
+	private Collection<Attribute> search(LDAPResolver ldapResolver, String stringBase, String stringFilter) throws PIPException {
 		/*
 		 * Check the cache
 		 */
@@ -252,44 +402,52 @@ public class LDAPEngine extends StdConfigurableEngine {
 				if (this.logger.isDebugEnabled()) {
                     this.logger.debug("Returning cached response: {}", pipResponse);
 				}
-				mutablePIPResponse.addAttributes(pipResponse.getAttributes());
-				return;
+				return pipResponse.getAttributes();
 			}
 		}		
 		/*
 		 * Not in the cache, so set up the LDAP query session
 		 */
 		DirContext dirContext	= null;
-		PIPResponse pipResponse = null;
+		List<Attribute> listResults	= new ArrayList<>();
 		try {
 			/*
-			 * Create the DirContext
+			 * Get a DirContext
 			 */
-			dirContext	= new InitialDirContext(this.ldapEnvironment);
+			dirContext	= this.getDirContext();
 			
 			/*
-			 * Set up the search controls
+			 * Set up the search controls to return only what the resolver decodes
 			 */
 			SearchControls searchControls	= new SearchControls();
 			searchControls.setSearchScope(this.ldapScope);
+			searchControls.setReturningAttributes(ldapResolver.getReturningAttributes());
 			
 			/*
 			 * Do the search
 			 */
 			NamingEnumeration<SearchResult> namingEnumeration	= dirContext.search(stringBase, stringFilter, searchControls);
-			if (namingEnumeration != null && namingEnumeration.hasMore()) {
-				while (namingEnumeration.hasMore()) {
-					List<Attribute> listAttributes	= ldapResolver.decodeResult(namingEnumeration.next());
-                    if (listAttributes != null && !listAttributes.isEmpty()) {
-						mutablePIPResponse.addAttributes(listAttributes);
+			if (namingEnumeration != null) {
+				/*
+				 * Closing the enumeration ends the search even if decoding fails, so a pooled context is
+				 * not returned with results still pending
+				 */
+				try {
+					while (namingEnumeration.hasMore()) {
+						List<Attribute> listAttributes	= ldapResolver.decodeResult(namingEnumeration.next());
+						if (listAttributes != null && !listAttributes.isEmpty()) {
+							listResults.addAll(listAttributes);
+						}
 					}
+				} finally {
+					namingEnumeration.close();
 				}
 			}
 			/*
 			 * Put in the cache
 			 */
 			if (cache != null) {
-				cache.put(cacheKey, pipResponse);
+				cache.put(cacheKey, (listResults.isEmpty() ? StdPIPResponse.PIP_RESPONSE_EMPTY : new StdPIPResponse(listResults)));
 			}
 		} catch (NamingException ex) {
 			this.logger.error("NamingException creating the DirContext: " + ex.getMessage(), ex);
@@ -302,6 +460,7 @@ public class LDAPEngine extends StdConfigurableEngine {
 				}
 			}
 		}
+		return listResults;
 	}
 
 	@Override
@@ -325,5 +484,8 @@ public class LDAPEngine extends StdConfigurableEngine {
     @Override
     public void shutdown() {
         this.shutdown = true;
+        if (this.contextPool != null) {
+        	this.contextPool.close();
+        }
     }
 }
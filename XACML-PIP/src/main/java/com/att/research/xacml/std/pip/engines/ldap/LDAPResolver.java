@@ -56,4 +56,15 @@ public interface LDAPResolver extends ConfigurableResolver {
 	 */
 	public List<Attribute> decodeResult(SearchResult searchResult) throws PIPException;
 	
+	/**
+	 * Gets the names of the LDAP attributes {@link #decodeResult(SearchResult)} reads, which are the only ones the
+	 * {@link com.att.research.xacml.std.pip.engines.ldap.LDAPEngine} asks the directory to return.  The default
+	 * implementation returns null, which asks for all of them.
+	 * 
+	 * @return the LDAP attribute names, an empty array if no attributes are needed, or null for all attributes
+	 */
+	public default String[] getReturningAttributes() {
+		return null;
+	}
+	
 }
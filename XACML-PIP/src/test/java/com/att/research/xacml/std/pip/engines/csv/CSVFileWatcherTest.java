@@ -0,0 +1,131 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+import com.att.research.xacml.std.pip.finders.RequestFinder;
+
+public class CSVFileWatcherTest {
+	private static final Identifier ID_NAME		= new IdentifierImpl("urn:com:att:xacml:test:name");
+
+	private static final PIPRequest REQUEST_NAME	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_NAME, XACML3.ID_DATATYPE_STRING);
+
+	@Rule
+	public TemporaryFolder folder	= new TemporaryFolder();
+
+	private static Properties newProperties(File file, boolean watch) {
+		Properties properties	= new Properties();
+		properties.setProperty("csv.source", file.getAbsolutePath());
+		properties.setProperty("csv.delimiter", ",");
+		properties.setProperty("csv.quote", "\"");
+		properties.setProperty("csv.skip", "0");
+		properties.setProperty("csv.watch", Boolean.toString(watch));
+		properties.setProperty("csv.watch.quietPeriod", "50");
+		properties.setProperty("csv.resolvers", "data");
+		String prefix	= "csv.resolver.data.";
+		properties.setProperty(prefix + "classname", ConfigurableCSVResolver.class.getName());
+		properties.setProperty(prefix + "fields", "name");
+		properties.setProperty(prefix + "field.name.column", "1");
+		properties.setProperty(prefix + "field.name.id", ID_NAME.stringValue());
+		properties.setProperty(prefix + "field.name.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "field.name.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(prefix + "parameters", "subject");
+		properties.setProperty(prefix + "parameter.subject.column", "0");
+		properties.setProperty(prefix + "parameter.subject.id", XACML3.ID_SUBJECT_SUBJECT_ID.stringValue());
+		properties.setProperty(prefix + "parameter.subject.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "parameter.subject.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		return properties;
+	}
+
+	private static List<String> getNames(CSVEngine csvEngine, String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		PIPFinder pipFinder	= new RequestFinder(null, new RequestEngine(JsonRequestTranslator.load(json)));
+		List<String> names	= new ArrayList<>();
+		for (Attribute attribute : csvEngine.getAttributes(REQUEST_NAME, pipFinder).getAttributes()) {
+			for (AttributeValue<?> attributeValue : attribute.getValues()) {
+				names.add(attributeValue.getValue().toString());
+			}
+		}
+		return names;
+	}
+
+	private static void waitFor(CSVFileWatcher fileWatcher, long reloads, long failures) throws Exception {
+		long end	= System.currentTimeMillis() + 10000;
+		while ((fileWatcher.getReloadCount() < reloads || fileWatcher.getReloadFailures() < failures) && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertEquals(reloads, fileWatcher.getReloadCount());
+		assertEquals(failures, fileWatcher.getReloadFailures());
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		File file	= this.folder.newFile("users.csv");
+		Files.write(file.toPath(), Arrays.asList("alice,Alice", "bob,Bob"), StandardCharsets.UTF_8);
+		CSVEngine csvEngine	= new CSVEngine();
+		csvEngine.configure("csv", newProperties(file, true));
+		try {
+			CSVFileWatcher fileWatcher	= csvEngine.getFileWatcher();
+			assertEquals(Arrays.asList("Alice"), getNames(csvEngine, "alice"));
+			assertEquals(-1, fileWatcher.getLastReloadRows());
+			//
+			// Replace the file the way a generator should, by moving a new one into place
+			//
+			File next	= this.folder.newFile("users.next");
+			Files.write(next.toPath(), Arrays.asList("alice,Alice Smith", "bob,Bob", "carol,Carol"), StandardCharsets.UTF_8);
+			Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			waitFor(fileWatcher, 1, 0);
+			assertEquals(3, fileWatcher.getLastReloadRows());
+			assertTrue(fileWatcher.getLastReloadMillis() >= 0);
+			assertEquals(Arrays.asList("Alice Smith"), getNames(csvEngine, "alice"));
+			assertEquals(Arrays.asList("Carol"), getNames(csvEngine, "carol"));
+			//
+			// An empty file is rejected and the current rows are kept
+			//
+			Files.write(file.toPath(), new byte[0]);
+			waitFor(fileWatcher, 1, 1);
+			assertEquals(Arrays.asList("Carol"), getNames(csvEngine, "carol"));
+		} finally {
+			csvEngine.shutdown();
+		}
+	}
+
+	@Test
+	public void testNotWatched() throws Exception {
+		File file	= this.folder.newFile("users.csv");
+		Files.write(file.toPath(), Arrays.asList("alice,Alice"), StandardCharsets.UTF_8);
+		CSVEngine csvEngine	= new CSVEngine();
+		csvEngine.configure("csv", newProperties(file, false));
+		assertNull(csvEngine.getFileWatcher());
+		csvEngine.shutdown();
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataTypeFactory;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+import com.att.research.xacml.std.pip.finders.RequestFinder;
+
+public class CSVIndexTest {
+	private static final Identifier ID_NAME		= new IdentifierImpl("urn:com:att:xacml:test:name");
+	private static final Identifier ID_LEVEL	= new IdentifierImpl("urn:com:att:xacml:test:level");
+
+	private static final PIPRequest REQUEST_NAME	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_NAME, XACML3.ID_DATATYPE_STRING);
+
+	@Rule
+	public TemporaryFolder folder	= new TemporaryFolder();
+
+	private File newCSVFile(Random random, int rows) throws Exception {
+		List<String> lines	= new ArrayList<>();
+		for (int i = 0 ; i < rows ; i++) {
+			//
+			// id, unused, name, level; some ids repeat and some are blank
+			//
+			String id	= (random.nextInt(20) == 0 ? "" : "user" + random.nextInt(rows / 2));
+			lines.add(id + ",filler" + i + ",\"name " + i + "\"," + random.nextInt(5));
+		}
+		File file	= this.folder.newFile();
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	private static Properties newProperties(File file, Long maxSize, Boolean index) {
+		Properties properties	= new Properties();
+		properties.setProperty("csv.source", file.getAbsolutePath());
+		properties.setProperty("csv.delimiter", ",");
+		properties.setProperty("csv.quote", "\"");
+		properties.setProperty("csv.skip", "0");
+		if (maxSize != null) {
+			properties.setProperty("csv.maxsize", maxSize.toString());
+		}
+		if (index != null) {
+			properties.setProperty("csv.index", index.toString());
+		}
+		properties.setProperty("csv.resolvers", "data");
+		String prefix	= "csv.resolver.data.";
+		properties.setProperty(prefix + "classname", ConfigurableCSVResolver.class.getName());
+		properties.setProperty(prefix + "fields", "name,level");
+		properties.setProperty(prefix + "field.name.column", "2");
+		properties.setProperty(prefix + "field.name.id", ID_NAME.stringValue());
+		properties.setProperty(prefix + "field.name.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "field.name.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(prefix + "field.level.column", "3");
+		properties.setProperty(prefix + "field.level.id", ID_LEVEL.stringValue());
+		properties.setProperty(prefix + "field.level.datatype", XACML3.ID_DATATYPE_INTEGER.stringValue());
+		properties.setProperty(prefix + "field.level.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(prefix + "parameters", "subject");
+		properties.setProperty(prefix + "parameter.subject.column", "0");
+		properties.setProperty(prefix + "parameter.subject.id", XACML3.ID_SUBJECT_SUBJECT_ID.stringValue());
+		properties.setProperty(prefix + "parameter.subject.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "parameter.subject.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		return properties;
+	}
+
+	private static CSVEngine newEngine(Properties properties) throws Exception {
+		CSVEngine csvEngine	= new CSVEngine();
+		csvEngine.configure("csv", properties);
+		return csvEngine;
+	}
+
+	private static PIPFinder newFinder(List<String> subjectIds) throws Exception {
+		//
+		// One Attribute per value so that the request holds several string values
+		//
+		StringBuilder attributes	= new StringBuilder();
+		for (String subjectId : subjectIds) {
+			attributes.append(attributes.length() == 0 ? "" : ",")
+					  .append("{\"AttributeId\":\"").append(XACML3.ID_SUBJECT_SUBJECT_ID.stringValue())
+					  .append("\",\"Value\":\"").append(subjectId).append("\"}");
+		}
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[" + attributes + "]}]}}";
+		return new RequestFinder(null, new RequestEngine(JsonRequestTranslator.load(json)));
+	}
+
+	private static List<String> getValues(CSVEngine csvEngine, PIPFinder pipFinder) throws Exception {
+		List<String> values	= new ArrayList<>();
+		for (Attribute attribute : csvEngine.getAttributes(REQUEST_NAME, pipFinder).getAttributes()) {
+			for (AttributeValue<?> attributeValue : attribute.getValues()) {
+				values.add(attribute.getAttributeId().stringValue() + "=" + attributeValue.getValue());
+			}
+		}
+		return values;
+	}
+
+	@Test
+	public void testEnginesAgree() throws Exception {
+		Random random	= new Random(7);
+		File file		= this.newCSVFile(random, 400);
+		CSVEngine scanned	= newEngine(newProperties(file, null, false));
+		CSVEngine indexed	= newEngine(newProperties(file, null, null));
+		CSVEngine streamed	= newEngine(newProperties(file, 1L, null));
+		CSVEngine projected	= newEngine(newProperties(file, 1L, true));
+		int found	= 0;
+		for (int i = 0 ; i < 300 ; i++) {
+			List<String> subjectIds	= new ArrayList<>();
+			for (int n = 1 + random.nextInt(3) ; n > 0 ; n--) {
+				subjectIds.add("user" + random.nextInt(250));
+			}
+			PIPFinder pipFinder	= newFinder(subjectIds);
+			List<String> expected	= getValues(scanned, pipFinder);
+			assertEquals(expected, getValues(indexed, pipFinder));
+			assertEquals(expected, getValues(streamed, pipFinder));
+			assertEquals(expected, getValues(projected, pipFinder));
+			if (!expected.isEmpty()) {
+				found++;
+			}
+		}
+		assertTrue(found > 100);
+	}
+
+	@Test
+	public void testCandidates() throws Exception {
+		List<String[]> rows	= Arrays.asList(
+				new String[] { "a", "1" },
+				new String[] { "b", "2" },
+				new String[] { "a", "x" },
+				new String[] { "", "1" },
+				new String[] { "c" },
+				new String[] { "b", "01" });
+		Map<Integer, Set<Identifier>> indexColumns	= new HashMap<>();
+		indexColumns.put(0, Collections.singleton(XACML3.ID_DATATYPE_STRING));
+		indexColumns.put(1, new HashSet<>(Arrays.asList(XACML3.ID_DATATYPE_INTEGER, XACML3.ID_DATATYPE_IPADDRESS)));
+		CSVIndex csvIndex	= new CSVIndex(rows, indexColumns, DataTypeFactory.newInstance());
+		assertEquals(2, csvIndex.getIndexedColumnCount());
+
+		AttributeValue<?> a		= new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, "a");
+		AttributeValue<?> b		= new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, "b");
+		AttributeValue<?> one	= new StdAttributeValue<>(XACML3.ID_DATATYPE_INTEGER, java.math.BigInteger.ONE);
+
+		assertArrayEquals(new int[] { 0, 2 }, csvIndex.getCandidates(parameters(0, a)));
+		assertArrayEquals(new int[] { 0, 1, 2, 5 }, csvIndex.getCandidates(parameters(0, a, b)));
+		assertArrayEquals(new int[] { 0, 3, 5 }, csvIndex.getCandidates(parameters(1, one)));
+		Map<Integer, List<AttributeValue<?>>> map	= new HashMap<>();
+		map.put(0, Arrays.asList(a, b));
+		map.put(1, Collections.singletonList(one));
+		assertArrayEquals(new int[] { 0, 5 }, csvIndex.getCandidates(Collections.singletonList(map)));
+		//
+		// A string value against the integer-only column cannot be looked up
+		//
+		assertNull(csvIndex.getCandidates(parameters(1, a)));
+		assertArrayEquals(new int[0], csvIndex.getCandidates(parameters(0, new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, "z"))));
+	}
+
+	private static List<Map<Integer, List<AttributeValue<?>>>> parameters(int column, AttributeValue<?>... values) {
+		Map<Integer, List<AttributeValue<?>>> map	= new HashMap<>();
+		map.put(column, Arrays.asList(values));
+		return Collections.singletonList(map);
+	}
+
+	@Test
+	public void testResolverColumns() throws Exception {
+		ConfigurableCSVResolver resolver	= new ConfigurableCSVResolver();
+		resolver.configure("csv.resolver.data", newProperties(this.folder.newFile(), null, null), null);
+		assertEquals(Collections.singletonMap(0, XACML3.ID_DATATYPE_STRING), resolver.getParameterColumns());
+		assertEquals(new TreeSet<>(Arrays.asList(0, 2, 3)), new TreeSet<>(resolver.getColumns()));
+	}
+}
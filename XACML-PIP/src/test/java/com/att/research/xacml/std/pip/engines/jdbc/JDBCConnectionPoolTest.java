@@ -0,0 +1,338 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class JDBCConnectionPoolTest {
+
+	/**
+	 * Stands in for a physical connection and counts what the pool does with it.
+	 */
+	private static class FakeConnection {
+		private final AtomicBoolean valid		= new AtomicBoolean(true);
+		private final AtomicBoolean closed		= new AtomicBoolean();
+		private final AtomicInteger prepared	= new AtomicInteger();
+		private final AtomicInteger cleared		= new AtomicInteger();
+		private final AtomicBoolean autoCommit	= new AtomicBoolean(true);
+		private final AtomicBoolean readOnly	= new AtomicBoolean();
+		private final AtomicInteger isolation	= new AtomicInteger(Connection.TRANSACTION_READ_COMMITTED);
+		private final AtomicInteger rollbacks	= new AtomicInteger();
+		private final List<AtomicBoolean> statementsClosed	= new ArrayList<>();
+		private final Connection connection;
+
+		FakeConnection() {
+			this.connection	= (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "isValid":
+					return this.valid.get();
+				case "isClosed":
+					return this.closed.get();
+				case "close":
+					this.closed.set(true);
+					return null;
+				case "prepareStatement":
+					this.prepared.incrementAndGet();
+					return this.newStatement(PreparedStatement.class);
+				case "createStatement":
+					return this.newStatement(Statement.class);
+				case "prepareCall":
+					return this.newStatement(CallableStatement.class);
+				case "getAutoCommit":
+					return this.autoCommit.get();
+				case "setAutoCommit":
+					this.autoCommit.set((Boolean) args[0]);
+					return null;
+				case "isReadOnly":
+					return this.readOnly.get();
+				case "setReadOnly":
+					this.readOnly.set((Boolean) args[0]);
+					return null;
+				case "getTransactionIsolation":
+					return this.isolation.get();
+				case "setTransactionIsolation":
+					this.isolation.set((Integer) args[0]);
+					return null;
+				case "rollback":
+					this.rollbacks.incrementAndGet();
+					return null;
+				default:
+					return null;
+				}
+			});
+		}
+
+		private Statement newStatement(Class<? extends Statement> type) {
+			AtomicBoolean statementClosed	= new AtomicBoolean();
+			this.statementsClosed.add(statementClosed);
+			return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "getConnection":
+					return this.connection;
+				case "clearParameters":
+					this.cleared.incrementAndGet();
+					return null;
+				case "close":
+					statementClosed.set(true);
+					return null;
+				case "isClosed":
+					return statementClosed.get();
+				case "toString":
+					return "FakeStatement";
+				default:
+					return null;
+				}
+			});
+		}
+	}
+
+	private final List<FakeConnection> connections	= new ArrayList<>();
+
+	private JDBCConnectionPool newPool(int size, long maxWait, long idleTimeout, int statements) {
+		return new JDBCConnectionPool(() -> {
+			FakeConnection fakeConnection	= new FakeConnection();
+			this.connections.add(fakeConnection);
+			return fakeConnection.connection;
+		}, size, maxWait, idleTimeout, 1, statements);
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(2, 1000, 0, 4);
+		for (int i = 0 ; i < 5 ; i++) {
+			try (Connection connection = pool.getConnection()) {
+				assertFalse(connection.isClosed());
+				assertEquals(1, pool.getActiveCount());
+			}
+		}
+		assertEquals(1, pool.getConnectionsCreated());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void testClosedLeaseIsUnusable() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 1000, 0, 4);
+		Connection connection	= pool.getConnection();
+		connection.close();
+		connection.close();
+		assertTrue(connection.isClosed());
+		assertEquals(0, pool.getActiveCount());
+		try {
+			connection.prepareStatement("SELECT 1");
+			fail("Expected SQLException");
+		} catch (SQLException ex) {
+			// expected
+		}
+		assertFalse(this.connections.get(0).closed.get());
+	}
+
+	@Test
+	public void testMaximumWait() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 50, 0, 4);
+		Connection connection	= pool.getConnection();
+		long start	= System.currentTimeMillis();
+		try {
+			pool.getConnection();
+			fail("Expected SQLException");
+		} catch (SQLException ex) {
+			assertTrue(System.currentTimeMillis() - start >= 40);
+		}
+		connection.close();
+		pool.getConnection().close();
+		assertEquals(1, pool.getConnectionsCreated());
+	}
+
+	@Test
+	public void testValidation() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(2, 1000, 0, 4);
+		pool.getConnection().close();
+		this.connections.get(0).valid.set(false);
+		pool.getConnection().close();
+		assertEquals(2, pool.getConnectionsCreated());
+		assertTrue(this.connections.get(0).closed.get());
+		assertFalse(this.connections.get(1).closed.get());
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(2, 1000, 20, 4);
+		pool.getConnection().close();
+		Thread.sleep(60);
+		pool.getConnection().close();
+		assertEquals(2, pool.getConnectionsCreated());
+		assertTrue(this.connections.get(0).closed.get());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testIdleEvictionOnRelease() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(2, 1000, 20, 4);
+		Connection connection1	= pool.getConnection();
+		Connection connection2	= pool.getConnection();
+		connection1.close();
+		Thread.sleep(60);
+		connection2.close();
+		assertTrue(this.connections.get(0).closed.get());
+		assertFalse(this.connections.get(1).closed.get());
+		assertEquals(1, pool.getIdleCount());
+	}
+
+	@Test
+	public void testStatementCache() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 1000, 0, 2);
+		for (int i = 0 ; i < 3 ; i++) {
+			try (Connection connection = pool.getConnection()) {
+				PreparedStatement preparedStatement	= connection.prepareStatement("SELECT a FROM t WHERE id = ?");
+				preparedStatement.setString(1, "x");
+				preparedStatement.close();
+				assertTrue(preparedStatement.isClosed());
+			}
+		}
+		FakeConnection fakeConnection	= this.connections.get(0);
+		assertEquals(1, fakeConnection.prepared.get());
+		assertEquals(3, fakeConnection.cleared.get());
+		assertEquals(2, pool.getStatementsReused());
+		//
+		// The same SQL open twice at once needs two statements
+		//
+		try (Connection connection = pool.getConnection()) {
+			PreparedStatement preparedStatement1	= connection.prepareStatement("SELECT a FROM t WHERE id = ?");
+			PreparedStatement preparedStatement2	= connection.prepareStatement("SELECT a FROM t WHERE id = ?");
+			assertNotSame(preparedStatement1, preparedStatement2);
+			preparedStatement1.close();
+			preparedStatement2.close();
+		}
+		assertEquals(2, fakeConnection.prepared.get());
+		//
+		// Only two idle statements are kept per connection
+		//
+		try (Connection connection = pool.getConnection()) {
+			for (String sql : new String[] { "SELECT 1", "SELECT 2", "SELECT 3" }) {
+				connection.prepareStatement(sql).close();
+			}
+			connection.prepareStatement("SELECT 3").close();
+			connection.prepareStatement("SELECT 1").close();
+		}
+		assertEquals(6, fakeConnection.prepared.get());
+	}
+
+	@Test
+	public void testOtherStatements() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 1000, 0, 4);
+		FakeConnection fakeConnection;
+		try (Connection connection = pool.getConnection()) {
+			fakeConnection	= this.connections.get(0);
+			Statement statement	= connection.createStatement();
+			PreparedStatement preparedStatement	= connection.prepareStatement("SELECT a FROM t WHERE id = ?", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			CallableStatement callableStatement	= connection.prepareCall("{call p(?)}");
+			assertFalse(statement instanceof PreparedStatement);
+			assertFalse(preparedStatement instanceof CallableStatement);
+			assertSame(connection, callableStatement.getConnection());
+			//
+			// These are not cached, so closing one closes the physical statement
+			//
+			preparedStatement.close();
+			assertTrue(preparedStatement.isClosed());
+			assertTrue(fakeConnection.statementsClosed.get(1).get());
+			assertFalse(fakeConnection.statementsClosed.get(0).get());
+		}
+		//
+		// and the ones left open are closed when the connection is returned
+		//
+		assertTrue(fakeConnection.statementsClosed.get(0).get());
+		assertTrue(fakeConnection.statementsClosed.get(2).get());
+		assertEquals(0, pool.getStatementsPrepared());
+		assertEquals(0, pool.getStatementsReused());
+	}
+
+	@Test
+	public void testStatementConnection() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 1000, 0, 4);
+		Connection connection	= pool.getConnection();
+		PreparedStatement preparedStatement	= connection.prepareStatement("SELECT 1");
+		Connection statementConnection	= preparedStatement.getConnection();
+		assertSame(connection, statementConnection);
+		//
+		// Closing the statement's connection returns it to the pool rather than closing it
+		//
+		statementConnection.close();
+		assertTrue(connection.isClosed());
+		assertFalse(this.connections.get(0).closed.get());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(1, 1000, 0, 4);
+		Connection connection	= pool.getConnection();
+		PreparedStatement preparedStatement	= connection.prepareStatement("SELECT a FROM t WHERE id = ?");
+		connection.prepareStatement("SELECT 1").close();
+		connection.setAutoCommit(false);
+		connection.setReadOnly(true);
+		connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		connection.close();
+		//
+		// The statement left open is closed rather than cached, the one closed by the caller is cached
+		//
+		FakeConnection fakeConnection	= this.connections.get(0);
+		assertTrue(fakeConnection.statementsClosed.get(0).get());
+		assertFalse(fakeConnection.statementsClosed.get(1).get());
+		assertTrue(preparedStatement.isClosed());
+		preparedStatement.close();
+		assertEquals(1, fakeConnection.rollbacks.get());
+		assertTrue(fakeConnection.autoCommit.get());
+		assertFalse(fakeConnection.readOnly.get());
+		assertEquals(Connection.TRANSACTION_READ_COMMITTED, fakeConnection.isolation.get());
+		assertFalse(fakeConnection.closed.get());
+
+		//
+		// A connection that was not changed is handed back as it is
+		//
+		pool.getConnection().close();
+		assertEquals(1, fakeConnection.rollbacks.get());
+		assertEquals(1, pool.getConnectionsCreated());
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		JDBCConnectionPool pool	= this.newPool(2, 1000, 0, 4);
+		Connection connection1	= pool.getConnection();
+		Connection connection2	= pool.getConnection();
+		connection1.close();
+		pool.close();
+		assertTrue(this.connections.get(0).closed.get());
+		assertFalse(this.connections.get(1).closed.get());
+		connection2.close();
+		assertTrue(this.connections.get(1).closed.get());
+		try {
+			pool.getConnection();
+			fail("Expected SQLException");
+		} catch (SQLException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+import com.att.research.xacml.std.pip.finders.EngineFinder;
+import com.att.research.xacml.std.pip.finders.RequestFinder;
+
+/**
+ * Runs the <code>JDBCEngine</code> against an in-memory table served through <code>Connection</code> proxies so that
+ * the number of queries reaching the "database" can be counted.
+ */
+public class JDBCEngineTest {
+	private static final Identifier ID_ROLE	= new IdentifierImpl("urn:com:att:xacml:test:role");
+	private static final Identifier ID_DEPT	= new IdentifierImpl("urn:com:att:xacml:test:department");
+
+	private static final PIPRequest REQUEST_ROLE	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_ROLE, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_DEPT	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_DEPT, XACML3.ID_DATATYPE_STRING);
+
+	private final Map<String, String[]> table	= new HashMap<>();
+	private final AtomicInteger queries			= new AtomicInteger();
+
+	/**
+	 * Serves every <code>Connection</code> from {@link JDBCEngineTest#table}, keyed on the single bound parameter.
+	 */
+	private class TestEngine extends JDBCEngine {
+		@Override
+		protected String resolveProperty(String value) {
+			return value;
+		}
+
+		@Override
+		protected Connection getConnection() throws PIPException {
+			return proxy(Connection.class, (proxy, method, args) -> {
+				if ("prepareStatement".equals(method.getName())) {
+					return newPreparedStatement();
+				}
+				return null;
+			});
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> classInterface, InvocationHandler invocationHandler) {
+		return (T) Proxy.newProxyInstance(JDBCEngineTest.class.getClassLoader(), new Class<?>[] { classInterface }, (proxy, method, args) -> {
+			if ("toString".equals(method.getName())) {
+				return classInterface.getSimpleName();
+			}
+			return invocationHandler.invoke(proxy, method, args);
+		});
+	}
+
+	private PreparedStatement newPreparedStatement() {
+		String[] parameter	= new String[1];
+		return proxy(PreparedStatement.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "setString":
+				parameter[0]	= (String) args[1];
+				return null;
+			case "executeQuery":
+				this.queries.incrementAndGet();
+				return newResultSet(this.table.get(parameter[0]));
+			default:
+				return null;
+			}
+		});
+	}
+
+	private static ResultSet newResultSet(String[] row) {
+		boolean[] remaining	= new boolean[] { row != null };
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "next":
+				boolean next	= remaining[0];
+				remaining[0]	= false;
+				return next;
+			case "findColumn":
+				return "role".equals(args[0]) ? 1 : 2;
+			case "getString":
+				return row[(Integer) args[0] - 1];
+			default:
+				return null;
+			}
+		});
+	}
+
+	private static Properties newProperties(String engineCacheSpec) {
+		Properties properties	= new Properties();
+		//
+		// getConnection() is overridden, so the driver class only has to be loadable
+		//
+		properties.setProperty("sql.jdbc.driver", JDBCEngineTest.class.getName());
+		properties.setProperty("sql.jdbc.url", "jdbc:test");
+		if (engineCacheSpec != null) {
+			properties.setProperty("sql.cacheSpec", engineCacheSpec);
+		}
+		properties.setProperty("sql.resolvers", "subject");
+		String prefix	= "sql.resolver.subject.";
+		properties.setProperty(prefix + "classname", ConfigurableJDBCResolver.class.getName());
+		properties.setProperty(prefix + "select", "SELECT role, department FROM subjects WHERE id = ?");
+		properties.setProperty(prefix + "fields", "role,department");
+		properties.setProperty(prefix + "field.role.id", ID_ROLE.stringValue());
+		properties.setProperty(prefix + "field.role.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "field.role.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(prefix + "field.department.id", ID_DEPT.stringValue());
+		properties.setProperty(prefix + "field.department.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "field.department.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(prefix + "parameters", "subject");
+		properties.setProperty(prefix + "parameter.subject.id", XACML3.ID_SUBJECT_SUBJECT_ID.stringValue());
+		properties.setProperty(prefix + "parameter.subject.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "parameter.subject.category", XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		return properties;
+	}
+
+	private JDBCEngine newEngine(Properties properties) throws PIPException {
+		JDBCEngine jdbcEngine	= new TestEngine();
+		jdbcEngine.configure("sql", properties);
+		return jdbcEngine;
+	}
+
+	private static PIPFinder newFinder(String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		return new RequestFinder(null, new RequestEngine(JsonRequestTranslator.load(json)));
+	}
+
+	private static String getValue(PIPResponse pipResponse, Identifier attributeId) {
+		for (Attribute attribute : pipResponse.getAttributes()) {
+			if (attribute.getAttributeId().equals(attributeId)) {
+				return (String) attribute.getValues().iterator().next().getValue();
+			}
+		}
+		return null;
+	}
+
+	@Before
+	public void setUp() {
+		this.table.put("alice", new String[] { "admin", "engineering" });
+		this.table.put("bob", new String[] { "user", "sales" });
+	}
+
+	@Test
+	public void testNoCache() throws Exception {
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties(null));
+		for (int i = 0 ; i < 3 ; i++) {
+			assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		}
+		assertEquals(3, this.queries.get());
+		assertEquals(0, jdbcEngine.getCacheHits() + jdbcEngine.getCacheMisses());
+	}
+
+	@Test
+	public void testCacheKeyedOnParameters() throws Exception {
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties("maximumSize=100"));
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		//
+		// Same row, different attribute: the query does not depend on the attribute asked for
+		//
+		assertEquals("engineering", getValue(jdbcEngine.getAttributes(REQUEST_DEPT, newFinder("alice")), ID_DEPT));
+		assertEquals("user", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("bob")), ID_ROLE));
+		assertEquals("user", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("bob")), ID_ROLE));
+		assertEquals(2, this.queries.get());
+		assertEquals(2, jdbcEngine.getCacheHits());
+		assertEquals(2, jdbcEngine.getCacheMisses());
+	}
+
+	@Test
+	public void testCacheKeyUnambiguous() throws Exception {
+		//
+		// A value that looks like the separator between two parameters must not give another list of values the same key
+		//
+		ConfigurableJDBCResolver jdbcResolver	= new ConfigurableJDBCResolver();
+		jdbcResolver.configure("sql.resolver.subject", newProperties(null), null);
+		String separator	= "\n" + XACML3.ID_DATATYPE_STRING.stringValue() + "=";
+		String key1	= jdbcResolver.getCacheKey(null, REQUEST_ROLE, Arrays.asList(newString("alice" + separator + "sales"), newString("x")));
+		String key2	= jdbcResolver.getCacheKey(null, REQUEST_ROLE, Arrays.asList(newString("alice"), newString("sales" + separator + "x")));
+		assertNotEquals(key1, key2);
+		assertEquals(key1, jdbcResolver.getCacheKey(null, REQUEST_ROLE, Arrays.asList(newString("alice" + separator + "sales"), newString("x"))));
+	}
+
+	private static AttributeValue<?> newString(String value) {
+		return new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, value);
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		//
+		// Both attributes come from the one row, so without a cache they still take one query
+		//
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties(null));
+		Map<PIPRequest, PIPResponse> mapResponses	= jdbcEngine.getAttributes(Arrays.asList(REQUEST_ROLE, REQUEST_DEPT), newFinder("alice"));
+		assertEquals("admin", getValue(mapResponses.get(REQUEST_ROLE), ID_ROLE));
+		assertEquals("engineering", getValue(mapResponses.get(REQUEST_DEPT), ID_DEPT));
+		assertEquals(1, this.queries.get());
+
+		//
+		// Through the finders, which then have both cached
+		//
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(jdbcEngine);
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"bob\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(engineFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+		mapResponses	= requestFinder.getAttributes(Arrays.asList(REQUEST_ROLE, REQUEST_DEPT), null, null);
+		assertEquals("user", getValue(mapResponses.get(REQUEST_ROLE), ID_ROLE));
+		assertEquals("sales", getValue(mapResponses.get(REQUEST_DEPT), ID_DEPT));
+		assertEquals("sales", getValue(requestFinder.getMatchingAttributes(REQUEST_DEPT, null), ID_DEPT));
+		assertEquals(2, this.queries.get());
+	}
+
+	@Test
+	public void testParametersFoundOnce() throws Exception {
+		AtomicInteger lookups	= new AtomicInteger();
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"alice\"}]}]}}";
+		PIPFinder pipFinder	= new RequestFinder(null, new RequestEngine(JsonRequestTranslator.load(json))) {
+			@Override
+			public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude) throws PIPException {
+				lookups.incrementAndGet();
+				return super.getMatchingAttributes(pipRequest, exclude);
+			}
+		};
+		//
+		// The subject id is found once for both the cache key and the statement
+		//
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties("maximumSize=100"));
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, pipFinder), ID_ROLE));
+		assertEquals(1, lookups.get());
+		assertEquals(1, this.queries.get());
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, pipFinder), ID_ROLE));
+		assertEquals(2, lookups.get());
+		assertEquals(1, this.queries.get());
+	}
+
+	@Test
+	public void testNegativeCaching() throws Exception {
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties("maximumSize=100"));
+		assertTrue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("mallory")).getAttributes().isEmpty());
+		assertTrue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("mallory")).getAttributes().isEmpty());
+		assertEquals(1, this.queries.get());
+
+		Properties properties	= newProperties("maximumSize=100");
+		properties.setProperty("sql.resolver.subject.cacheEmpty", "false");
+		jdbcEngine	= this.newEngine(properties);
+		this.queries.set(0);
+		assertTrue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("mallory")).getAttributes().isEmpty());
+		this.table.put("mallory", new String[] { "guest", "none" });
+		assertEquals("guest", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("mallory")), ID_ROLE));
+		assertEquals(2, this.queries.get());
+	}
+
+	@Test
+	public void testInvalidateCaches() throws Exception {
+		JDBCEngine jdbcEngine	= this.newEngine(newProperties("maximumSize=100"));
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		this.table.put("alice", new String[] { "auditor", "engineering" });
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		//
+		// As when a HyperCSVEngine reloads its file
+		//
+		jdbcEngine.invalidateCaches();
+		assertEquals("auditor", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		assertEquals(2, this.queries.get());
+	}
+
+	@Test
+	public void testResolverCacheSpec() throws Exception {
+		Properties properties	= newProperties(null);
+		properties.setProperty("sql.resolver.subject.cacheSpec", "maximumSize=100,expireAfterWrite=0s");
+		JDBCEngine jdbcEngine	= this.newEngine(properties);
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		assertEquals(2, this.queries.get());
+		assertEquals(2, jdbcEngine.getCacheMisses());
+
+		properties.setProperty("sql.resolver.subject.cacheSpec", "maximumSize=100,expireAfterWrite=1h");
+		jdbcEngine	= this.newEngine(properties);
+		this.queries.set(0);
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		assertEquals("admin", getValue(jdbcEngine.getAttributes(REQUEST_ROLE, newFinder("alice")), ID_ROLE));
+		assertEquals(1, this.queries.get());
+		assertEquals(1, jdbcEngine.getCacheHits());
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.engines.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+
+public class LDAPContextPoolTest {
+	private static final Identifier ID_SHIP	= new IdentifierImpl("urn:com:att:xacml:test:ship");
+
+	/**
+	 * Stands in for a bound <code>DirContext</code> and counts what the pool and the engine do with it.
+	 */
+	private static class FakeContext {
+		private final AtomicBoolean down		= new AtomicBoolean();
+		private final AtomicBoolean closed		= new AtomicBoolean();
+		private final AtomicBoolean lostReading	= new AtomicBoolean();
+		private final AtomicInteger checks		= new AtomicInteger();
+		private final List<SearchControls> searches	= new ArrayList<>();
+		private final DirContext dirContext;
+
+		FakeContext() {
+			this.dirContext	= (DirContext) Proxy.newProxyInstance(DirContext.class.getClassLoader(), new Class<?>[] { DirContext.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "close":
+					this.closed.set(true);
+					return null;
+				case "getAttributes":
+					this.checks.incrementAndGet();
+					if (this.down.get()) {
+						throw new CommunicationException("connection closed");
+					}
+					return null;
+				case "search":
+					if (this.down.get()) {
+						throw new CommunicationException("connection closed");
+					}
+					this.searches.add((SearchControls) args[2]);
+					return newEmptyEnumeration(this.lostReading);
+				case "toString":
+					return "FakeContext";
+				default:
+					return null;
+				}
+			});
+		}
+	}
+
+	/*
+	 * An enumeration of no results, which fails to read them if the connection is lost
+	 */
+	private static NamingEnumeration<?> newEmptyEnumeration(AtomicBoolean lost) {
+		return (NamingEnumeration<?>) Proxy.newProxyInstance(NamingEnumeration.class.getClassLoader(), new Class<?>[] { NamingEnumeration.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "hasMore":
+				if (lost.get()) {
+					throw new CommunicationException("connection reset");
+				}
+				return false;
+			case "hasMoreElements":
+				return false;
+			default:
+				return null;
+			}
+		});
+	}
+
+	private final List<FakeContext> contexts	= new ArrayList<>();
+
+	private LDAPContextPool.ContextFactory newContextFactory() {
+		return () -> {
+			FakeContext fakeContext	= new FakeContext();
+			this.contexts.add(fakeContext);
+			return fakeContext.dirContext;
+		};
+	}
+
+	private LDAPContextPool newPool(int size, long maxWait, long idleTimeout, long maxLifetime, long validateAfter) {
+		return new LDAPContextPool(this.newContextFactory(), size, maxWait, idleTimeout, maxLifetime, validateAfter);
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		LDAPContextPool pool	= this.newPool(2, 1000, 0, 0, -1);
+		for (int i = 0 ; i < 5 ; i++) {
+			DirContext dirContext	= pool.getContext();
+			assertEquals(1, pool.getActiveCount());
+			dirContext.close();
+		}
+		assertEquals(1, pool.getContextsCreated());
+		assertEquals(4, pool.getContextsReused());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+		assertFalse(this.contexts.get(0).closed.get());
+	}
+
+	@Test
+	public void testMaximumWait() throws Exception {
+		LDAPContextPool pool	= this.newPool(1, 50, 0, 0, -1);
+		DirContext dirContext	= pool.getContext();
+		try {
+			pool.getContext();
+			fail("Expected NamingException");
+		} catch (NamingException ex) {
+			assertEquals(1, pool.getWaitTimeouts());
+		}
+		dirContext.close();
+		try {
+			dirContext.search("o=sevenseas", "(cn=*)", new SearchControls());
+			fail("Expected NamingException");
+		} catch (NamingException ex) {
+			// expected
+		}
+		pool.getContext().close();
+		assertEquals(1, pool.getContextsCreated());
+	}
+
+	@Test
+	public void testBrokenContext() throws Exception {
+		LDAPContextPool pool	= this.newPool(2, 1000, 0, 0, -1);
+		DirContext dirContext	= pool.getContext();
+		this.contexts.get(0).down.set(true);
+		try {
+			dirContext.search("o=sevenseas", "(cn=*)", new SearchControls());
+			fail("Expected CommunicationException");
+		} catch (CommunicationException ex) {
+			// expected
+		}
+		dirContext.close();
+		assertTrue(this.contexts.get(0).closed.get());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getContextsBroken());
+		pool.getContext().close();
+		assertEquals(2, pool.getContextsCreated());
+	}
+
+	@Test
+	public void testBrokenReadingResults() throws Exception {
+		//
+		// The search itself works but the connection is lost reading its results
+		//
+		LDAPContextPool pool	= this.newPool(2, 1000, 0, 0, -1);
+		DirContext dirContext	= pool.getContext();
+		this.contexts.get(0).lostReading.set(true);
+		NamingEnumeration<?> results	= dirContext.search("o=sevenseas", "(cn=*)", new SearchControls());
+		try {
+			results.hasMore();
+			fail("Expected CommunicationException");
+		} catch (CommunicationException ex) {
+			// expected
+		}
+		dirContext.close();
+		assertTrue(this.contexts.get(0).closed.get());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getContextsBroken());
+		pool.getContext().close();
+		assertEquals(2, pool.getContextsCreated());
+	}
+
+	@Test
+	public void testValidation() throws Exception {
+		LDAPContextPool pool	= this.newPool(2, 1000, 0, 0, 0);
+		pool.getContext().close();
+		pool.getContext().close();
+		assertEquals(1, this.contexts.get(0).checks.get());
+		this.contexts.get(0).down.set(true);
+		pool.getContext().close();
+		assertEquals(2, pool.getContextsCreated());
+		assertTrue(this.contexts.get(0).closed.get());
+		assertFalse(this.contexts.get(1).closed.get());
+		//
+		// Contexts used recently are not checked
+		//
+		pool	= this.newPool(2, 1000, 0, 0, 60000);
+		pool.getContext().close();
+		pool.getContext().close();
+		assertEquals(0, this.contexts.get(2).checks.get());
+	}
+
+	@Test
+	public void testIdleAndLifetime() throws Exception {
+		LDAPContextPool pool	= this.newPool(2, 1000, 20, 0, -1);
+		pool.getContext().close();
+		Thread.sleep(60);
+		pool.getContext().close();
+		assertEquals(2, pool.getContextsCreated());
+		assertTrue(this.contexts.get(0).closed.get());
+		assertEquals(1, pool.getIdleCount());
+
+		//
+		// An expired context is closed when it is returned, even if it was just used
+		//
+		pool	= this.newPool(2, 1000, 0, 20, -1);
+		DirContext dirContext	= pool.getContext();
+		Thread.sleep(40);
+		dirContext.close();
+		assertTrue(this.contexts.get(2).closed.get());
+		assertEquals(0, pool.getIdleCount());
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		LDAPContextPool pool	= this.newPool(2, 1000, 0, 0, -1);
+		DirContext dirContext1	= pool.getContext();
+		DirContext dirContext2	= pool.getContext();
+		dirContext1.close();
+		pool.close();
+		assertTrue(this.contexts.get(0).closed.get());
+		assertFalse(this.contexts.get(1).closed.get());
+		dirContext2.close();
+		assertTrue(this.contexts.get(1).closed.get());
+		assertEquals(2, pool.getContextsClosed());
+		try {
+			pool.getContext();
+			fail("Expected NamingException");
+		} catch (NamingException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testEngine() throws Exception {
+		Properties properties	= new Properties();
+		//
+		// The provider URL has to come from the environment, but the fake contexts never use it
+		//
+		properties.setProperty("ldap.java.naming.provider.url", "${envd:PATH}");
+		properties.setProperty("ldap.resolvers", "ship");
+		String prefix	= "ldap.resolver.ship.";
+		properties.setProperty(prefix + "classname", ConfigurableLDAPResolver.class.getName());
+		properties.setProperty(prefix + "base", "o=sevenseas");
+		properties.setProperty(prefix + "base.parameters", "");
+		properties.setProperty(prefix + "filter", "(objectClass=ship)");
+		properties.setProperty(prefix + "filter.parameters", "");
+		properties.setProperty(prefix + "filter.view", "cn,dn");
+		properties.setProperty(prefix + "filter.view.cn.id", ID_SHIP.stringValue());
+		properties.setProperty(prefix + "filter.view.cn.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "filter.view.cn.category", XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE.stringValue());
+		properties.setProperty(prefix + "filter.view.dn.id", ID_SHIP.stringValue() + ":dn");
+		properties.setProperty(prefix + "filter.view.dn.datatype", XACML3.ID_DATATYPE_STRING.stringValue());
+		properties.setProperty(prefix + "filter.view.dn.category", XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE.stringValue());
+		properties.setProperty("ldap.pool.size", "2");
+
+		LDAPEngine ldapEngine	= new LDAPEngine() {
+			@Override
+			protected LDAPContextPool newContextPool(LDAPContextPool.ContextFactory contextFactory) {
+				return super.newContextPool(newContextFactory());
+			}
+		};
+		ldapEngine.configure("ldap", properties);
+		PIPRequest pipRequest	= new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, ID_SHIP, XACML3.ID_DATATYPE_STRING);
+		ldapEngine.getAttributes(pipRequest, null);
+		ldapEngine.getAttributes(pipRequest, null);
+
+		LDAPContextPool pool	= ldapEngine.getContextPool();
+		assertEquals(2, pool.getMaximumSize());
+		assertEquals(1, pool.getContextsCreated());
+		assertEquals(1, pool.getContextsReused());
+		assertEquals(0, pool.getActiveCount());
+		//
+		// Only the attributes the resolver decodes are asked for; the dn comes with every result
+		//
+		FakeContext fakeContext	= this.contexts.get(0);
+		assertEquals(2, fakeContext.searches.size());
+		assertArrayEquals(new String[] { "cn" }, fakeContext.searches.get(0).getReturningAttributes());
+
+		ldapEngine.shutdown();
+		assertTrue(fakeContext.closed.get());
+	}
+}
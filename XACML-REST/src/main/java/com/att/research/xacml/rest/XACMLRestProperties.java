@@ -48,6 +48,11 @@ public class XACMLRestProperties extends XACMLProperties {
 	 * Max content length accepted for an incoming POST XML/JSON request. Default is 32767 bytes.
 	 */
 	public static final String	PROP_PDP_MAX_CONTENT = "xacml.rest.pdp.maxcontent";
+	/**
+	 * Number of bytes of a PDP response held in memory before any of it is sent. A response that fails to serialize
+	 * within this size still gets an error status. Default is 1048576 bytes.
+	 */
+	public static final String	PROP_PDP_RESPONSE_BUFFER = "xacml.rest.pdp.responseBuffer";
 	/**
 	 * Custom HTTP header used by PDP to send the value of the PROP_PDP_ID
 	 */
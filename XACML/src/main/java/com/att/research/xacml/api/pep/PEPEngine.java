@@ -25,4 +25,11 @@ public interface PEPEngine {
 	 * @throws PEPException PEP Exception
 	 */
 	public Response decide(Request pepRequest) throws PEPException;
+	
+	/**
+	 * Releases the Policy Decision Point and any other resources held by this <code>PEPEngine</code>.  The default
+	 * implementation does nothing.
+	 */
+	public default void shutdown() {
+	}
 }
@@ -5,6 +5,8 @@
 package com.att.research.xacml.api.pip;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * PIPEngine is the interface that objects implement that do look-up of {@link com.att.research.xacml.api.Attribute}s.
@@ -53,6 +55,27 @@ public interface PIPEngine {
 	 * @throws PIPException if there is an error retrieving the <code>Attribute</code>s.
 	 */
 	public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException;
+	
+	/**
+	 * Retrieves the <code>Attribute</code>s for each of the given {@link com.att.research.xacml.api.pip.PIPRequest}s.  Each
+	 * {@link com.att.research.xacml.api.pip.PIPResponse} is what {@link #getAttributes(PIPRequest, PIPFinder)} would return for
+	 * its <code>PIPRequest</code>.  The default implementation asks for them one at a time; engines that can look up several
+	 * <code>Attribute</code>s with one query should override it.
+	 * 
+	 * @param pipRequests the <code>PIPRequest</code>s defining which <code>Attribute</code>s should be retrieved
+	 * @param pipFinder the <code>PIPFinder</code> to use for retrieving supporting attribute values
+	 * @return a <code>Map</code> from each distinct <code>PIPRequest</code> to the <code>PIPResponse</code> with its results
+	 * @throws PIPException if there is an error retrieving the <code>Attribute</code>s.
+	 */
+	public default Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+		Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (!mapResponses.containsKey(pipRequest)) {
+				mapResponses.put(pipRequest, this.getAttributes(pipRequest, pipFinder));
+			}
+		}
+		return mapResponses;
+	}
 
     /**
      * Allows the PIP engine to shutdown and release handles etc. Any call to retrieve getAttributes
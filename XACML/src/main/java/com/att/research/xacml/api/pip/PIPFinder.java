@@ -5,6 +5,8 @@
 package com.att.research.xacml.api.pip;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * PIPFinder is the interface objects implement that can query multiple sources of {@link com.att.research.xacml.api.Attribute}s based
@@ -65,6 +67,28 @@ public interface PIPFinder {
 	 */
 	public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException;
 	
+	/**
+	 * Retrieves <code>Attribute</code>s for each of the given <code>PIPRequest</code>s as above, giving the
+	 * <code>PIPFinder</code> the chance to ask each {@link com.att.research.xacml.api.pip.PIPEngine} for all of the
+	 * <code>PIPRequest</code>s it can answer at once through {@link com.att.research.xacml.api.pip.PIPEngine#getAttributes(Collection, PIPFinder)}.
+	 * The default implementation asks for them one at a time.
+	 * 
+	 * @param pipRequests the <code>PIPRequest</code>s defining which <code>Attribute</code>s should be retrieved
+	 * @param exclude the (optional) <code>PIPEngine</code> to exclude from searches for the given <code>PIPRequest</code>s
+	 * @param pipFinderParent the <code>PIPFinder</code> to pass on to child <code>PIPEngine</code>s
+	 * @return a <code>Map</code> from each distinct <code>PIPRequest</code> to the <code>PIPResponse</code> with its results
+	 * @throws PIPException if there is an error retrieving the <code>Attribute</code>s.
+	 */
+	public default Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (!mapResponses.containsKey(pipRequest)) {
+				mapResponses.put(pipRequest, this.getAttributes(pipRequest, exclude, pipFinderParent));
+			}
+		}
+		return mapResponses;
+	}
+	
     /**
      * Returns a list of PIP Engines.
      * 
@@ -5,13 +5,17 @@
  */
 package com.att.research.xacml.std;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -39,11 +43,20 @@ import com.att.research.xacml.std.datatypes.XPathExpressionWrapper;
  * {@link com.att.research.xacml.api.Request} and turn it into a sequence of individual decision <code>Request</code>s.
  * This class implements all of the multiple-decision profiles specified in "XACML v3.0 Multiple Decision Profile Version 1.0"
  * 
+ * The individual decision <code>Request</code>s are generated as they are taken from the <code>Iterator</code>, rather than all
+ * at once, and the {@link com.att.research.xacml.api.RequestAttributes} of the original <code>Request</code> are shared by the
+ * individual decision <code>Request</code>s rather than copied.  If a maximum number of individual decision requests is given, a
+ * <code>Request</code> that would generate more than that ends with an individual decision <code>Request</code> with an error
+ * <code>Status</code> instead of the remaining ones.
+ * 
+ * The protected methods that added to an internal list of individual decision <code>Request</code>s are kept, deprecated, for
+ * subclasses that call them.  Anything they add is returned by {@link #getIndividualDecisionRequests()} in place of the
+ * generated <code>Request</code>s.
+ * 
  * @author car
  * @version $Revision$
  */
 public class StdIndividualDecisionRequestGenerator {
-	private static final Identifier[] idArray			= new Identifier[0];
 	private static final Status STATUS_NO_ATTRIBUTES	= new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "No attributes");
 	private static final Status STATUS_NO_XMLID			= new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "No xml:id");
 	private static final Status STATUS_NO_CATEGORY		= new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "No category");
@@ -51,8 +64,9 @@ public class StdIndividualDecisionRequestGenerator {
 	
 	private static final Logger logger									= LoggerFactory.getLogger(StdIndividualDecisionRequestGenerator.class);
 	private Request originalRequest;
-	private List<Request> individualDecisionRequests	= new ArrayList<>();
 	private ScopeResolver scopeResolver;
+	private int maxIndividualDecisionRequests;
+	private List<Request> individualDecisionRequests	= new ArrayList<>();
 	
 	private static StdMutableRequestAttributes removeMultipleContentSelector(RequestAttributes requestAttributes) {
 		StdMutableRequestAttributes stdRequestAttributes	= new StdMutableRequestAttributes();
@@ -74,8 +88,9 @@ public class StdIndividualDecisionRequestGenerator {
 	 * @param listRequestAttributes the <code>List</code> of <code>RequestAttribute</code>s for the new <code>Request</code>s
 	 * @param listPos the position within the <code>List</code>
 	 * @param requestInProgress the <code>StdMutableRequest</code> with all of the processed <code>RequestAttribute</code>s so far
+	 * @param individualDecisionRequests the <code>Collection</code> to add the new <code>Request</code>s to
 	 */
-	private void explodeOnContentSelector(List<RequestAttributes> listRequestAttributes, int listPos, StdMutableRequest requestInProgress) {
+	private void explodeOnContentSelector(List<RequestAttributes> listRequestAttributes, int listPos, StdMutableRequest requestInProgress, Collection<Request> individualDecisionRequests) {
 		int listSize	= listRequestAttributes.size();
 		while (listPos < listSize) {
 			RequestAttributes requestAttributes	= listRequestAttributes.get(listPos++);
@@ -87,7 +102,7 @@ public class StdIndividualDecisionRequestGenerator {
 				assert(iterAttributesMultipleContentSelector != null && iterAttributesMultipleContentSelector.hasNext());
 				Attribute attributeMultipleContentSelector	= iterAttributesMultipleContentSelector.next();
 				if (iterAttributesMultipleContentSelector.hasNext()) {
-					this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "multiple " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
+					individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "multiple " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
 					return;
 				}
 				
@@ -96,7 +111,7 @@ public class StdIndividualDecisionRequestGenerator {
 				 */
 				Iterator<AttributeValue<XPathExpressionWrapper>> iterXPathExpressions	= attributeMultipleContentSelector.findValues(DataTypes.DT_XPATHEXPRESSION);
 				if (iterXPathExpressions == null || !iterXPathExpressions.hasNext()) {
-					this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "no XPathExpression values in " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
+					individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "no XPathExpression values in " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
 					return;
 				}
 				
@@ -106,12 +121,12 @@ public class StdIndividualDecisionRequestGenerator {
 				 */
 				AttributeValue<XPathExpressionWrapper> attributeValueXPathExpression	= iterXPathExpressions.next();
 				if (iterXPathExpressions.hasNext()) {
-					this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "multiple XPathExpression values in " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
+					individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "multiple XPathExpression values in " + XACML3.ID_MULTIPLE_CONTENT_SELECTOR.stringValue() + " in category " + requestAttributes.getCategory().stringValue())));
 					return;
 				}
 				XPathExpressionWrapper xpathExpression							= attributeValueXPathExpression.getValue();
 				if (xpathExpression == null) {
-					this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "null XPathExpression")));
+					individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "null XPathExpression")));
 					return;
 				}
 				
@@ -120,7 +135,7 @@ public class StdIndividualDecisionRequestGenerator {
 				 */
 				NodeList nodeListXPathExpressionResults	= requestAttributes.getContentNodeListByXpathExpression(xpathExpression);
 				if (nodeListXPathExpressionResults == null || nodeListXPathExpressionResults.getLength() == 0) {
-					this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "no matching nodes in the Content for XPathExpression " + xpathExpression.toString() + " in category " + requestAttributes.getCategory().stringValue())));
+					individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, "no matching nodes in the Content for XPathExpression " + xpathExpression.toString() + " in category " + requestAttributes.getCategory().stringValue())));
 					return;
 				}
 				
@@ -143,9 +158,9 @@ public class StdIndividualDecisionRequestGenerator {
 						/*
 						 * Recurse to get the remaining attribute categories
 						 */
-						this.explodeOnContentSelector(listRequestAttributes, listPos, stdRequestSingleContentSelector);
+						this.explodeOnContentSelector(listRequestAttributes, listPos, stdRequestSingleContentSelector, individualDecisionRequests);
 					} catch (Exception ex) {
-						this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage())));
+						individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, ex.getMessage())));
 						return;
 					}
 				}
@@ -163,7 +178,19 @@ public class StdIndividualDecisionRequestGenerator {
 		/*
 		 * If we get here, then the request in progress is complete and should be added to the set
 		 */
-		this.individualDecisionRequests.add(requestInProgress);
+		individualDecisionRequests.add(requestInProgress);
+	}
+	
+	/**
+	 * Adds the individual decision <code>Request</code>s for the given <code>Request</code> with its multiple content selectors
+	 * resolved to the list returned by {@link #getIndividualDecisionRequests()}.
+	 * 
+	 * @param request
+	 * @deprecated use {@link #processContentSelectors(Request, Collection)}
+	 */
+	@Deprecated
+	protected void processContentSelectors(Request request) {
+		this.processContentSelectors(request, this.individualDecisionRequests);
 	}
 	
 	/**
@@ -171,11 +198,12 @@ public class StdIndividualDecisionRequestGenerator {
 	 * the multiple content selectors are resolved to individual content-selectors.
 	 * 
 	 * @param request
+	 * @param individualDecisionRequests the <code>Collection</code> to add the individual decision <code>Request</code>s to
 	 */
-	protected void processContentSelectors(Request request) {
+	protected void processContentSelectors(Request request, Collection<Request> individualDecisionRequests) {
 		Iterator<RequestAttributes> iterRequestAttributes	= request.getRequestAttributes().iterator();
 		if (!iterRequestAttributes.hasNext()) {
-			this.individualDecisionRequests.add(request);
+			individualDecisionRequests.add(request);
 			return;
 		}
 		
@@ -191,7 +219,7 @@ public class StdIndividualDecisionRequestGenerator {
 		 * Iterate over all of the categories and see if there are any attributes in them with a multiple:content-selector
 		 */
 		if (!hasMultipleContentSelectors) {
-			this.individualDecisionRequests.add(request);
+			individualDecisionRequests.add(request);
 		} else {
 			List<RequestAttributes> listRequestAttributes	= new ArrayList<>();
 			listRequestAttributes.addAll(request.getRequestAttributes());
@@ -199,7 +227,7 @@ public class StdIndividualDecisionRequestGenerator {
 			StdMutableRequest stdRequestInProgress	= new StdMutableRequest();
 			stdRequestInProgress.setRequestDefaults(request.getRequestDefaults());
 			stdRequestInProgress.setReturnPolicyIdList(request.getReturnPolicyIdList());
-			this.explodeOnContentSelector(listRequestAttributes, 0, stdRequestInProgress);
+			this.explodeOnContentSelector(listRequestAttributes, 0, stdRequestInProgress, individualDecisionRequests);
 		}
 	}
 	
@@ -284,20 +312,33 @@ public class StdIndividualDecisionRequestGenerator {
 		return scopeQualifier;
 	}
 	
+	/**
+	 * Adds the individual decision <code>Request</code>s for the given <code>Request</code> with its resource scopes
+	 * expanded to the list returned by {@link #getIndividualDecisionRequests()}.
+	 * 
+	 * @param request
+	 * @deprecated use {@link #processScopes(Request, Collection)}
+	 */
+	@Deprecated
+	protected void processScopes(Request request) {
+		this.processScopes(request, this.individualDecisionRequests);
+	}
+	
 	/**
 	 * Checks to see if there are any categories that include an attribute with a "scope" identifier.  If so, the scopes are expanded
 	 * and individual decision requests are generated with the expanded scopes.
 	 * 
 	 * @param request
+	 * @param individualDecisionRequests the <code>Collection</code> to add the individual decision <code>Request</code>s to
 	 */
-	protected void processScopes(Request request) {
+	protected void processScopes(Request request, Collection<Request> individualDecisionRequests) {
 		assert(request.getStatus() == null || request.getStatus().isOk());
 		
 		/*
 		 * If there is no scope resolver, then just move on to the content selectors
 		 */
 		if (this.scopeResolver == null) {
-			this.processContentSelectors(request);
+			this.processContentSelectors(request, individualDecisionRequests);
 			return;
 		}
 		
@@ -306,7 +347,7 @@ public class StdIndividualDecisionRequestGenerator {
 		 */
 		Iterator<RequestAttributes> iterRequestAttributesResource	= request.getRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE);
 		if (iterRequestAttributesResource == null || !iterRequestAttributesResource.hasNext()) {
-			this.processContentSelectors(request);
+			this.processContentSelectors(request, individualDecisionRequests);
 			return;
 		}
 		RequestAttributes requestAttributesResource	= iterRequestAttributesResource.next();
@@ -319,11 +360,11 @@ public class StdIndividualDecisionRequestGenerator {
 		try {
 			scopeQualifier	= getScopeQualifier(requestAttributesResource);
 		} catch (ScopeResolverException ex) {
-			this.individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, ex.getMessage())));
+			individualDecisionRequests.add(new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_SYNTAX_ERROR, ex.getMessage())));
 			return;
 		}
 		if (scopeQualifier == null) {
-			this.processContentSelectors(request);
+			this.processContentSelectors(request, individualDecisionRequests);
 			return;
 		}
 		
@@ -333,7 +374,7 @@ public class StdIndividualDecisionRequestGenerator {
 		 */
 		Iterator<Attribute> iterAttributesResourceId	= requestAttributesResource.getAttributes(XACML3.ID_RESOURCE_RESOURCE_ID);
 		if (iterAttributesResourceId == null || !iterAttributesResourceId.hasNext()) {
-			this.individualDecisionRequests.add(new StdMutableRequest(STATUS_NO_RESOURCE_ID));
+			individualDecisionRequests.add(new StdMutableRequest(STATUS_NO_RESOURCE_ID));
 			return;
 		}
 		
@@ -358,7 +399,7 @@ public class StdIndividualDecisionRequestGenerator {
 				continue;
 			}
 			if (scopeResolverResult.getStatus() != null && !scopeResolverResult.getStatus().isOk()) {
-				this.individualDecisionRequests.add(new StdMutableRequest(scopeResolverResult.getStatus()));
+				individualDecisionRequests.add(new StdMutableRequest(scopeResolverResult.getStatus()));
 				return;
 			}
 			Iterator<Attribute> iterAttributesResourceIdResolved	= scopeResolverResult.getAttributes();
@@ -368,7 +409,7 @@ public class StdIndividualDecisionRequestGenerator {
 					stdRequestAttributes.add(iterAttributesResourceIdResolved.next());
 					StdMutableRequest stdRequestExploded				= new StdMutableRequest(stdRequest);
 					stdRequestExploded.add(stdRequestAttributes);
-					this.processContentSelectors(stdRequestExploded);
+					this.processContentSelectors(stdRequestExploded, individualDecisionRequests);
 					bAtLeastOne	= true;
 				}
 			}
@@ -381,38 +422,88 @@ public class StdIndividualDecisionRequestGenerator {
 				requestAttributesBase.add(iterAttributesResourceId.next());
 			}
 			stdRequest.add(requestAttributesBase);
-			this.processContentSelectors(stdRequest);
+			this.processContentSelectors(stdRequest, individualDecisionRequests);
 		}
 	}
 	
 	/**
-	 * Checks to see if the category with the <code>Identifier</code> at the current <code>Iterator</code> position has
-	 * multiple <code>RequestAttribute</code>s associated with it.  If so, then for each copy, explode on the remaining categories.  Otherwise
-	 * store the single value in the requestInProgress and explode on the remaining values.
-	 * 
-	 * @param identifiers
-	 * @param pos
-	 * @param requestInProgress
-	 * @param mapCategories
+	 * Generates each combination of one <code>RequestAttributes</code> from each category in turn, varying the last category
+	 * fastest.  Each combination is a new <code>Request</code> that shares the <code>RequestAttributes</code> of the original.
 	 */
-	private void explodeOnCategory(Identifier[] identifiers, int pos, StdMutableRequest requestInProgress, Map<Identifier,List<RequestAttributes>> mapCategories) {
-		if (pos >= identifiers.length) {
+	private static class CategoryCombinations implements Iterator<Request> {
+		private final Request request;
+		private final List<List<RequestAttributes>> listCategories;
+		private final int[] positions;
+		private boolean hasNext	= true;
+		
+		CategoryCombinations(Request requestIn, Collection<List<RequestAttributes>> categories) {
+			this.request		= requestIn;
+			this.listCategories	= new ArrayList<>(categories);
+			this.positions		= new int[this.listCategories.size()];
+		}
+		
+		/**
+		 * Gets the number of combinations, or <code>Long.MAX_VALUE</code> if there are more than that.
+		 * 
+		 * @return the number of <code>Request</code>s this <code>CategoryCombinations</code> generates
+		 */
+		long size() {
+			long size	= 1;
+			for (List<RequestAttributes> listCategoryAttributes : this.listCategories) {
+				if (size > Long.MAX_VALUE / listCategoryAttributes.size()) {
+					return Long.MAX_VALUE;
+				}
+				size	*= listCategoryAttributes.size();
+			}
+			return size;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return this.hasNext;
+		}
+		
+		@Override
+		public Request next() {
+			if (!this.hasNext) {
+				throw new NoSuchElementException();
+			}
+			StdMutableRequest requestCombination	= new StdMutableRequest();
+			requestCombination.setRequestDefaults(this.request.getRequestDefaults());
+			requestCombination.setReturnPolicyIdList(this.request.getReturnPolicyIdList());
+			for (int i = 0 ; i < this.positions.length ; i++) {
+				requestCombination.add(this.listCategories.get(i).get(this.positions[i]));
+			}
+			
 			/*
-			 * Tail out of the recursion by performing the next stage of processing on the request in proress
+			 * Move on to the next combination
 			 */
-			this.processScopes(requestInProgress);
-		} else {
-			List<RequestAttributes> listCategoryAttributes	= mapCategories.get(identifiers[pos]);
-			assert(listCategoryAttributes != null && ! listCategoryAttributes.isEmpty());
-			if (listCategoryAttributes.size() == 1) {
-				requestInProgress.add(listCategoryAttributes.get(0));
-				this.explodeOnCategory(identifiers, pos+1, requestInProgress, mapCategories);
+			int i	= this.positions.length - 1;
+			while (i >= 0 && ++this.positions[i] == this.listCategories.get(i).size()) {
+				this.positions[i--]	= 0;
+			}
+			this.hasNext	= (i >= 0);
+			return requestCombination;
+		}
+	}
+	
+	/**
+	 * Checks to see if the given <code>Request</code> contains instances of repeated categories in the request attributes elements,
+	 * and adds the individual decision <code>Request</code>s for each combination to the list returned by
+	 * {@link #getIndividualDecisionRequests()}.
+	 * 
+	 * @param request the <code>Request</code> to check
+	 * @deprecated use {@link #getRepeatedCategoryRequests(Request)}
+	 */
+	@Deprecated
+	protected void processRepeatedCategories(Request request) {
+		Iterator<Request> iterRequests	= this.getRepeatedCategoryRequests(request);
+		while (iterRequests.hasNext()) {
+			Request requestNext	= iterRequests.next();
+			if (requestNext.getStatus() == null || requestNext.getStatus().isOk()) {
+				this.processScopes(requestNext, this.individualDecisionRequests);
 			} else {
-				for (RequestAttributes requestAttributes : listCategoryAttributes) {
-					StdMutableRequest stdRequestCopy	= new StdMutableRequest(requestInProgress);
-					stdRequestCopy.add(requestAttributes);
-					this.explodeOnCategory(identifiers, pos+1, stdRequestCopy, mapCategories);
-				}
+				this.individualDecisionRequests.add(requestNext);
 			}
 		}
 	}
@@ -421,15 +512,15 @@ public class StdIndividualDecisionRequestGenerator {
 	 * Checks to see if the given <code>Request</code> contains instances of repeated categories in the request attributes elements.
 	 * 
 	 * @param request the <code>Request</code> to check
+	 * @return an <code>Iterator</code> over the <code>Request</code>s with at most one <code>RequestAttributes</code> per category
 	 */
-	protected void processRepeatedCategories(Request request) {
+	protected Iterator<Request> getRepeatedCategoryRequests(Request request) {
 		Iterator<RequestAttributes> iterRequestAttributes		= request.getRequestAttributes().iterator();
 		if (iterRequestAttributes == null || !iterRequestAttributes.hasNext()) {
 			/*
 			 * There are no attributes to process anyway.  The PDP will give an indeterminate result from this
 			 */
-			this.individualDecisionRequests.add(request);
-			return;
+			return Collections.singletonList(request).iterator();
 		}
 		
 		/*
@@ -441,8 +532,7 @@ public class StdIndividualDecisionRequestGenerator {
 			RequestAttributes requestAttributes	= iterRequestAttributes.next();
 			Identifier identifierCategory		= requestAttributes.getCategory();
 			if (identifierCategory == null) {
-				this.individualDecisionRequests.add(new StdMutableRequest(STATUS_NO_CATEGORY));
-				return;
+				return Collections.<Request>singletonList(new StdMutableRequest(STATUS_NO_CATEGORY)).iterator();
 			}
 			if (setCategories.contains(identifierCategory)) {
 				bContainsMultiples	= true;
@@ -456,7 +546,7 @@ public class StdIndividualDecisionRequestGenerator {
 		 * just move on to the next check.
 		 */
 		if (!bContainsMultiples) {
-			this.processScopes(request);
+			return Collections.singletonList(request).iterator();
 		} else {
 			iterRequestAttributes	= request.getRequestAttributes().iterator();
 			Map<Identifier,List<RequestAttributes>> mapCategories	= new HashMap<>();
@@ -471,10 +561,11 @@ public class StdIndividualDecisionRequestGenerator {
 				listRequestAttributes.add(requestAttributes);
 			}
 			
-			StdMutableRequest requestRoot	= new StdMutableRequest();
-			requestRoot.setRequestDefaults(request.getRequestDefaults());
-			requestRoot.setReturnPolicyIdList(request.getReturnPolicyIdList());
-			this.explodeOnCategory(mapCategories.keySet().toArray(idArray), 0, requestRoot, mapCategories);
+			CategoryCombinations categoryCombinations	= new CategoryCombinations(request, mapCategories.values());
+			if (this.maxIndividualDecisionRequests > 0 && categoryCombinations.size() > this.maxIndividualDecisionRequests) {
+				return Collections.<Request>singletonList(this.newTooManyRequests()).iterator();
+			}
+			return categoryCombinations;
 		}
 	}
 	
@@ -508,48 +599,137 @@ public class StdIndividualDecisionRequestGenerator {
 		return stdRequest;
 	}
 	
+	private Request newTooManyRequests() {
+		return new StdMutableRequest(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "More than " + this.maxIndividualDecisionRequests + " individual decision requests"));
+	}
+	
 	/**
-	 * Populates the individual decision <code>Request</code>s from the given <code>Request</code>
-	 * using all supported profiles.  The process here is documented as step 1. of Section 4 of the XACML document.
-	 * 
-	 * @param request the <code>Request</code> to explode
+	 * Generates the individual decision <code>Request</code>s from the original <code>Request</code> using all supported
+	 * profiles.  The process here is documented as step 1. of Section 4 of the XACML document.  Each <code>Request</code>
+	 * from a multi-request reference or a combination of repeated categories is only expanded on scope and content selectors
+	 * when the ones before it have been taken.
 	 */
-	protected void createIndividualDecisionRequests(Request request) {
-		/*
-		 * If the request is bad to begin with, just add it to the list and be done.
-		 */
-		if (request.getStatus() != null && !request.getStatus().isOk()) {
-			this.individualDecisionRequests.add(request);
-			return;
+	private class IndividualDecisionRequests implements Iterator<Request> {
+		private final Request request;
+		private Iterator<RequestReference> iterRequestReferences;
+		private Iterator<Request> iterRequests;
+		private final Deque<Request> individualDecisionRequests	= new ArrayDeque<>();
+		private int count;
+		
+		IndividualDecisionRequests(Request requestIn) {
+			this.request	= requestIn;
+			/*
+			 * If the request is bad to begin with, just return it and be done.
+			 */
+			if (requestIn.getStatus() != null && !requestIn.getStatus().isOk()) {
+				this.iterRequests	= Collections.singletonList(requestIn).iterator();
+				return;
+			}
+			
+			/*
+			 * Check to see if this Request is a MultiRequest
+			 */
+			Collection<RequestReference> requestReferences	= requestIn.getMultiRequests();
+			if (requestReferences != null && !requestReferences.isEmpty()) {
+				if (maxIndividualDecisionRequests > 0 && requestReferences.size() > maxIndividualDecisionRequests) {
+					this.iterRequests	= Collections.singletonList(newTooManyRequests()).iterator();
+				} else {
+					this.iterRequestReferences	= requestReferences.iterator();
+				}
+			} else {
+				this.iterRequests	= getRepeatedCategoryRequests(requestIn);
+			}
 		}
 		
 		/*
-		 * Check to see if this Request is a MultiRequest
+		 * Gets the next Request that still has to be expanded on scope and content selectors
 		 */
-		Iterator<RequestReference> iterRequestReferences	= request.getMultiRequests().iterator();
-		if (iterRequestReferences != null && iterRequestReferences.hasNext()) {
-			while (iterRequestReferences.hasNext()) {
-				Request requestFromReferences	= this.processMultiRequest(request, iterRequestReferences.next());
+		private Request nextRequest() {
+			while (this.iterRequests == null || !this.iterRequests.hasNext()) {
+				if (this.iterRequestReferences == null || !this.iterRequestReferences.hasNext()) {
+					return null;
+				}
+				Request requestFromReferences	= processMultiRequest(this.request, this.iterRequestReferences.next());
 				assert(requestFromReferences != null);
 				if (requestFromReferences.getStatus() == null || requestFromReferences.getStatus().isOk()) {
-					this.processRepeatedCategories(requestFromReferences);
+					this.iterRequests	= getRepeatedCategoryRequests(requestFromReferences);
 				} else {
 					/*
-					 * Just add the bad request to the list.  It will be cause a Result with the same bad status
+					 * Just return the bad request.  It will be cause a Result with the same bad status
 					 * when the PDP actually runs the request.
 					 */
-					this.individualDecisionRequests.add(requestFromReferences);
+					this.iterRequests	= Collections.singletonList(requestFromReferences).iterator();
 				}
 			}
-		} else {
-			this.processRepeatedCategories(request);
+			return this.iterRequests.next();
+		}
+		
+		@Override
+		public boolean hasNext() {
+			Request requestNext;
+			while (this.individualDecisionRequests.isEmpty() && (requestNext = this.nextRequest()) != null) {
+				if (requestNext.getStatus() == null || requestNext.getStatus().isOk()) {
+					processScopes(requestNext, this.individualDecisionRequests);
+				} else {
+					this.individualDecisionRequests.add(requestNext);
+				}
+			}
+			return !this.individualDecisionRequests.isEmpty();
+		}
+		
+		@Override
+		public Request next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (maxIndividualDecisionRequests > 0 && ++this.count > maxIndividualDecisionRequests) {
+				/*
+				 * Stop with an error in place of the rest
+				 */
+				this.iterRequestReferences	= null;
+				this.iterRequests			= null;
+				this.individualDecisionRequests.clear();
+				return newTooManyRequests();
+			}
+			return this.individualDecisionRequests.poll();
+		}
+	}
+	
+	/**
+	 * Adds all of the individual decision <code>Request</code>s for the given <code>Request</code> to the list returned by
+	 * {@link #getIndividualDecisionRequests()}.
+	 * 
+	 * The constructors used to call this, so a subclass could override it to change the individual decision
+	 * <code>Request</code>s that were generated.  They no longer do, and nothing else in this class calls it, so overriding
+	 * it has no effect unless the subclass calls it itself, for instance from its constructor.  A subclass that needs to
+	 * change the generated <code>Request</code>s should override {@link #getIndividualDecisionRequests()} instead.
+	 * 
+	 * @param request the <code>Request</code> to explode
+	 * @deprecated use {@link #getIndividualDecisionRequests()}, which generates the <code>Request</code>s as they are needed
+	 */
+	@Deprecated
+	protected void createIndividualDecisionRequests(Request request) {
+		Iterator<Request> iterRequests	= new IndividualDecisionRequests(request);
+		while (iterRequests.hasNext()) {
+			this.individualDecisionRequests.add(iterRequests.next());
 		}
 	}
 	
+	/**
+	 * Creates a new <code>StdIndividualDecisionRequestGenerator</code> for the given <code>Request</code>.
+	 * 
+	 * @param scopeResolverIn the <code>ScopeResolver</code> for expanding resource scopes, or null
+	 * @param request the original <code>Request</code>
+	 * @param maxIndividualDecisionRequestsIn the maximum number of individual decision <code>Request</code>s to generate, or 0 for no limit
+	 */
+	public StdIndividualDecisionRequestGenerator(ScopeResolver scopeResolverIn, Request request, int maxIndividualDecisionRequestsIn) {
+		this.originalRequest				= request;
+		this.scopeResolver					= scopeResolverIn;
+		this.maxIndividualDecisionRequests	= maxIndividualDecisionRequestsIn;
+	}
+	
 	public StdIndividualDecisionRequestGenerator(ScopeResolver scopeResolverIn, Request request) {
-		this.originalRequest	= request;
-		this.scopeResolver		= scopeResolverIn;
-		this.createIndividualDecisionRequests(request);
+		this(scopeResolverIn, request, 0);
 	}
 	
 	public StdIndividualDecisionRequestGenerator(Request request) {
@@ -567,11 +747,15 @@ public class StdIndividualDecisionRequestGenerator {
 	
 	/**
 	 * Gets an <code>Iterator</code> over the individual decision <code>Request</code>s for
-	 * the original <code>Request</code>.
+	 * the original <code>Request</code>.  The <code>Request</code>s are generated as the <code>Iterator</code> is
+	 * advanced, so it should not be shared between threads without synchronizing on it.
 	 * 
 	 * @return an <code>Iterator</code> over the individual decision <code>Request</code>s.
 	 */
 	public Iterator<Request> getIndividualDecisionRequests() {
-		return this.individualDecisionRequests.iterator();
+		if (!this.individualDecisionRequests.isEmpty()) {
+			return this.individualDecisionRequests.iterator();
+		}
+		return new IndividualDecisionRequests(this.originalRequest);
 	}
 }
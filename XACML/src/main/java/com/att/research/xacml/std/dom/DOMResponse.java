@@ -6,6 +6,7 @@
 package com.att.research.xacml.std.dom;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -14,8 +15,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
@@ -315,12 +318,13 @@ public class DOMResponse {
 	/**
 	 * Helper - recursively output StatusCode objects as XML.
 	 * 
-	 * @param sb
+	 * @param writer
 	 * @param statusCode
 	 * @param tabCount
 	 * @param prettyPrint
+	 * @throws IOException
 	 */
-	private static void outputStatusCode(StringBuilder sb, StatusCode statusCode, int tabCount, boolean prettyPrint) {
+	private static void outputStatusCode(Writer writer, StatusCode statusCode, int tabCount, boolean prettyPrint) throws IOException {
 		StringBuilder prettyPrintString = new StringBuilder();
 		if (prettyPrint) {
 			prettyPrintString.append("\n");
@@ -329,22 +333,22 @@ public class DOMResponse {
 			}
 		}
 		
-		sb.append(prettyPrintString);
-		sb.append("<StatusCode");
+		writer.append(prettyPrintString);
+		writer.append("<StatusCode");
 		
 		if (statusCode.getStatusCodeValue() != null) {
-			sb.append(" Value=\"" + statusCode.getStatusCodeValue().stringValue() + "\"");
+			writer.append(" Value=\"" + statusCode.getStatusCodeValue().stringValue() + "\"");
 		} 
 		
 		if (statusCode.getChild() == null) {
 			// no child code, so finish off the StatusCode element now
-			sb.append("/>");
+			writer.append("/>");
 		} else {
 			// there is a child, so need to use the two-part notation for this StatusCode
-			sb.append(">");
-			outputStatusCode(sb, statusCode.getChild(), tabCount + 1, prettyPrint);
-			sb.append(prettyPrintString);
-			sb.append("</StatusCode>");
+			writer.append(">");
+			outputStatusCode(writer, statusCode.getChild(), tabCount + 1, prettyPrint);
+			writer.append(prettyPrintString);
+			writer.append("</StatusCode>");
 		}
 	}
 	
@@ -443,7 +447,9 @@ public class DOMResponse {
 	
 	/**
 	 * Do the work of converting the {@link com.att.research.xacml.api.Response} object to a string, allowing for pretty-printing if desired.
-	 * 
+	 * The UTF-8 XML is written to the <code>OutputStream</code> as it is generated, so part of it may have been written
+	 * when an invalid <code>Response</code> raises a <code>DOMStructureException</code>.
+	 *
 	 * @param response
 	 * @param outputStream
 	 * @param prettyPrint
@@ -452,8 +458,6 @@ public class DOMResponse {
 	 */
 	public static void convert(Response response, OutputStream outputStream, boolean prettyPrint) throws IOException, DOMStructureException {
 		
-		OutputStreamWriter osw = new OutputStreamWriter(outputStream);
-		
 		if (response == null) {
 			throw new DOMStructureException("No Request in convert");
 		}
@@ -464,45 +468,48 @@ public class DOMResponse {
 		}
 		
 		
-		StringBuilder sb = new StringBuilder();
+		//
+		// Write as we go rather than building the whole document first
+		//
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
 		
-		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
 		
-		if (prettyPrint) sb.append("\n");
+		if (prettyPrint) writer.append("\n");
 		
 		// response with attributes
-		sb.append("<Response");
+		writer.append("<Response");
 		
 //TODO include all Namespace info
 // Currently this is hard-coded for just the standard XACML namespaces, but ideally should use Namespaces from incoming Request to get non-standard ones.
-		sb.append(" xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\"");
-		sb.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
-		sb.append(" xsi:schemaLocation=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17");
-        sb.append(" http://docs.oasis-open.org/xacml/3.0/xacml-core-v3-schema-wd-17.xsd\"");
+		writer.append(" xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\"");
+		writer.append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+		writer.append(" xsi:schemaLocation=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17");
+        writer.append(" http://docs.oasis-open.org/xacml/3.0/xacml-core-v3-schema-wd-17.xsd\"");
         
         // end of <Response>
-        sb.append(">");
+        writer.append(">");
 				
 		// for each Result...
 		for (Result result : response.getResults()) {
 			
-			if (prettyPrint) sb.append("\n\t");
+			if (prettyPrint) writer.append("\n\t");
 			
-			sb.append("<Result>");
+			writer.append("<Result>");
 			
 			// Decision
-			if (prettyPrint) sb.append("\n\t\t");
+			if (prettyPrint) writer.append("\n\t\t");
 			
 			if (result.getDecision() == null) {
 				throw new DOMStructureException("Result missing Decision");
 			}
-			sb.append("<Decision>" + result.getDecision().toString() + "</Decision>");
+			writer.append("<Decision>" + result.getDecision().toString() + "</Decision>");
 			
 			// Status
 			Status status = result.getStatus();
 			if (status != null) {
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("<Status>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("<Status>");
 				
 				// status code
 				StatusCode statusCode = status.getStatusCode();
@@ -524,14 +531,14 @@ public class DOMResponse {
 	    			}
 					
 					
-					outputStatusCode(sb, statusCode, 3, prettyPrint);
+					outputStatusCode(writer, statusCode, 3, prettyPrint);
 				}
 				
 				// status message
 				if (status.getStatusMessage() != null) {
 	
-					if (prettyPrint) sb.append("\n\t\t\t");
-					sb.append("<StatusMessage>" + status.getStatusMessage() + "</StatusMessage>");
+					if (prettyPrint) writer.append("\n\t\t\t");
+					writer.append("<StatusMessage>" + status.getStatusMessage() + "</StatusMessage>");
 
 				}
 				
@@ -553,119 +560,119 @@ public class DOMResponse {
 	    			// if included, StatusDetail is handled differently for each type of detail message and the contents are formatted into escaped XML rather than objects
 	    			
 	    			if (result.getStatus().getStatusDetail().getMissingAttributeDetails() != null) {
-						if (prettyPrint) sb.append("\n\t\t\t");
-						sb.append("<StatusDetail>");
+						if (prettyPrint) writer.append("\n\t\t\t");
+						writer.append("<StatusDetail>");
 						
 						for (MissingAttributeDetail mad : statusDetail.getMissingAttributeDetails()) {
 							if (mad.getAttributeId() == null || mad.getCategory() == null || mad.getDataTypeId() == null) {
 								throw new DOMStructureException("MissingAttributeDetail is missing required AttributeId, Category or DataTypeId");
 							}
-							if (prettyPrint) sb.append("\n\t\t\t\t");
-							sb.append("<MissingAttributeDetail");
-							sb.append(" Category=\"" + mad.getCategory().stringValue() + "\"");
-							sb.append(" AttributeId=\"" + mad.getAttributeId().stringValue() + "\"");
-							sb.append(" DataTypeId=\"" + mad.getDataTypeId().stringValue() + "\"");
+							if (prettyPrint) writer.append("\n\t\t\t\t");
+							writer.append("<MissingAttributeDetail");
+							writer.append(" Category=\"" + mad.getCategory().stringValue() + "\"");
+							writer.append(" AttributeId=\"" + mad.getAttributeId().stringValue() + "\"");
+							writer.append(" DataTypeId=\"" + mad.getDataTypeId().stringValue() + "\"");
 							if (mad.getIssuer() != null) {
-								sb.append(" Issuer=\"" + mad.getIssuer() + "\"");
+								writer.append(" Issuer=\"" + mad.getIssuer() + "\"");
 							}
-							sb.append(">");
+							writer.append(">");
 							if (mad.getAttributeValues() != null) {
 								for (AttributeValue<?> value : mad.getAttributeValues()) {
 									if (prettyPrint) {
-										sb.append("\n\t\t\t\t\t");
+										writer.append("\n\t\t\t\t\t");
 									}
-									sb.append("<AttributeValue" + getNamespaces(value.getValue()) + ">" + outputValueValue(value.getValue()) + "</AttributeValue>");
+									writer.append("<AttributeValue" + getNamespaces(value.getValue()) + ">" + outputValueValue(value.getValue()) + "</AttributeValue>");
 								}
 							}
 							if (prettyPrint) {
-								sb.append("\n\t\t\t\t");
+								writer.append("\n\t\t\t\t");
 							}
-							sb.append("</MissingAttributeDetail>");
+							writer.append("</MissingAttributeDetail>");
 						}
 						
 						if (prettyPrint) {
-							sb.append("\n\t\t\t");
+							writer.append("\n\t\t\t");
 						}
-						sb.append("</StatusDetail>");
+						writer.append("</StatusDetail>");
 	    			}
 				}
 				
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("</Status>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("</Status>");
 			}
 			
 			// Obligations
 			if (result.getObligations() != null && ! result.getObligations().isEmpty()) {
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("<Obligations>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("<Obligations>");
 				
 				for (Obligation obligation : result.getObligations()) {
 					if (obligation.getId() == null) {
 						throw new DOMStructureException("Obligation must have ObligationId");
 					}
-					if (prettyPrint) sb.append("\n\t\t\t");
-					sb.append("<Obligation ObligationId=\"" + obligation.getId().stringValue() + "\">");
+					if (prettyPrint) writer.append("\n\t\t\t");
+					writer.append("<Obligation ObligationId=\"" + obligation.getId().stringValue() + "\">");
 					
 					for (AttributeAssignment aa : obligation.getAttributeAssignments()) {
-						if (prettyPrint) sb.append("\n\t\t\t\t");
-						sb.append("<AttributeAssignment");
+						if (prettyPrint) writer.append("\n\t\t\t\t");
+						writer.append("<AttributeAssignment");
 						
 						if (aa.getAttributeId() == null) {
 							throw new DOMStructureException("Obligation AttributeAssignment must have AttributeId");
 						}
-						sb.append(" AttributeId=\"" + aa.getAttributeId().stringValue() + "\"");
+						writer.append(" AttributeId=\"" + aa.getAttributeId().stringValue() + "\"");
 						if (aa.getDataTypeId() == null || aa.getAttributeValue() == null || aa.getAttributeValue().getValue() == null) {
 							throw new DOMStructureException("Obligation AttributeAssignment '" + aa.getAttributeId().stringValue() + "' must have DataType and Value");
 						}
-						sb.append(" DataType=\"" + aa.getDataTypeId().stringValue() + "\"" + getNamespaces(aa.getAttributeValue().getValue()) + ">");
-						sb.append(outputValueValue(aa.getAttributeValue().getValue()));
+						writer.append(" DataType=\"" + aa.getDataTypeId().stringValue() + "\"" + getNamespaces(aa.getAttributeValue().getValue()) + ">");
+						writer.append(outputValueValue(aa.getAttributeValue().getValue()));
 
-						sb.append("</AttributeAssignment>");
+						writer.append("</AttributeAssignment>");
 					}
 					
-					if (prettyPrint) sb.append("\n\t\t\t");
-					sb.append("</Obligation>");
+					if (prettyPrint) writer.append("\n\t\t\t");
+					writer.append("</Obligation>");
 				}
 				
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("</Obligations>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("</Obligations>");
 			}
 			
 			// AssociatedAdvice
 			if (result.getAssociatedAdvice() != null && ! result.getAssociatedAdvice().isEmpty()) {
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("<AssociatedAdvice>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("<AssociatedAdvice>");
 				
 				for (Advice advice : result.getAssociatedAdvice()) {
 					if (advice.getId() == null) {
 						throw new DOMStructureException("Advice must have AdviceId");
 					}
-					if (prettyPrint) sb.append("\n\t\t\t");
-					sb.append("<Advice AdviceId=\"" + advice.getId().stringValue() + "\">");
+					if (prettyPrint) writer.append("\n\t\t\t");
+					writer.append("<Advice AdviceId=\"" + advice.getId().stringValue() + "\">");
 					
 					for (AttributeAssignment aa : advice.getAttributeAssignments()) {
-						if (prettyPrint) sb.append("\n\t\t\t\t");
-						sb.append("<AttributeAssignment");
+						if (prettyPrint) writer.append("\n\t\t\t\t");
+						writer.append("<AttributeAssignment");
 						
 						if (aa.getAttributeId() == null) {
 							throw new DOMStructureException("Advice AttributeAssignment must have AttributeId");
 						}
-						sb.append(" AttributeId=\"" + aa.getAttributeId().stringValue() + "\"");
+						writer.append(" AttributeId=\"" + aa.getAttributeId().stringValue() + "\"");
 						if (aa.getDataTypeId() == null || aa.getAttributeValue() == null || aa.getAttributeValue().getValue() == null) {
 							throw new DOMStructureException("Advice AttributeAssignment '" + aa.getAttributeId().stringValue() + "' must have DataType and Value");
 						}
-						sb.append(" DataType=\"" + aa.getDataTypeId().stringValue() + "\"" + getNamespaces(aa.getAttributeValue().getValue()) + ">");
-						sb.append(outputValueValue(aa.getAttributeValue().getValue()));
+						writer.append(" DataType=\"" + aa.getDataTypeId().stringValue() + "\"" + getNamespaces(aa.getAttributeValue().getValue()) + ">");
+						writer.append(outputValueValue(aa.getAttributeValue().getValue()));
 
-						sb.append("</AttributeAssignment>");
+						writer.append("</AttributeAssignment>");
 					}
 					
-					if (prettyPrint) sb.append("\n\t\t\t");
-					sb.append("</Advice>");
+					if (prettyPrint) writer.append("\n\t\t\t");
+					writer.append("</Advice>");
 				}
 				
-				if (prettyPrint) sb.append("\n\t\t");
-				sb.append("</AssociatedAdvice>");
+				if (prettyPrint) writer.append("\n\t\t");
+				writer.append("</AssociatedAdvice>");
 			}
 			
 			// Attributes
@@ -674,27 +681,27 @@ public class DOMResponse {
 
 				
 				for (AttributeCategory category : result.getAttributes()) {
-					if (prettyPrint) sb.append("\n\t\t");
+					if (prettyPrint) writer.append("\n\t\t");
 					if (category.getCategory() == null) {
 						throw new DOMStructureException("Attributes must have Category");
 					}
-					sb.append("<Attributes Category=\"" + category.getCategory().stringValue() + "\">");
+					writer.append("<Attributes Category=\"" + category.getCategory().stringValue() + "\">");
 					
 					for (Attribute attr : category.getAttributes()) {
 						if (! attr.getIncludeInResults()) {
 							// skip this one - do not include in results
 							continue;
 						}
-						if (prettyPrint) sb.append("\n\t\t\t");
-						sb.append("<Attribute IncludeInResult=\""+ attr.getIncludeInResults()+"\"");
+						if (prettyPrint) writer.append("\n\t\t\t");
+						writer.append("<Attribute IncludeInResult=\""+ attr.getIncludeInResults()+"\"");
 						if (attr.getAttributeId() == null) {
 							throw new DOMStructureException("Attribute inf Category '" + category.getCategory().stringValue() + "' must have AttributeId");
 						}
-						sb.append(" AttributeId=\"" + attr.getAttributeId().stringValue() + "\"");
+						writer.append(" AttributeId=\"" + attr.getAttributeId().stringValue() + "\"");
 						if (attr.getIssuer() == null) {
-							sb.append(">");
+							writer.append(">");
 						} else {
-							sb.append(" Issuer=\"" + attr.getIssuer() + "\">");
+							writer.append(" Issuer=\"" + attr.getIssuer() + "\">");
 						}
 						
 						if (attr.getValues().isEmpty()) {
@@ -704,25 +711,25 @@ public class DOMResponse {
 							if (value.getDataTypeId() == null || value.getValue() == null) {
 								throw new DOMStructureException("Attribute '" + attr.getAttributeId() + "' has AttributeValue missing either DataType or Value");
 							}
-							if (prettyPrint) sb.append("\n\t\t\t\t");
-							sb.append("<AttributeValue DataType=\"" + value.getDataTypeId().stringValue() + "\"");
+							if (prettyPrint) writer.append("\n\t\t\t\t");
+							writer.append("<AttributeValue DataType=\"" + value.getDataTypeId().stringValue() + "\"");
 							if (value.getXPathCategory() != null) {
-								sb.append(" XPathCategory=\"" + value.getXPathCategory().stringValue() + "\"");
+								writer.append(" XPathCategory=\"" + value.getXPathCategory().stringValue() + "\"");
 							}
-							sb.append(">");
+							writer.append(">");
 							
-							sb.append(outputValueValue(value.getValue()));
+							writer.append(outputValueValue(value.getValue()));
 							
 							
-							sb.append("</AttributeValue>");
+							writer.append("</AttributeValue>");
 						}
 						
-						if (prettyPrint) sb.append("\n\t\t\t");
-						sb.append("</Attribute>");
+						if (prettyPrint) writer.append("\n\t\t\t");
+						writer.append("</Attribute>");
 					}
 					
-					if (prettyPrint) sb.append("\n\t\t");
-					sb.append("</Attributes>");
+					if (prettyPrint) writer.append("\n\t\t");
+					writer.append("</Attributes>");
 				}
 				
 			}
@@ -732,61 +739,57 @@ public class DOMResponse {
 			Collection<IdReference> policyIds = result.getPolicyIdentifiers();
 			Collection<IdReference> policySetIds = result.getPolicySetIdentifiers();
 			if (policyIds != null && ! policyIds.isEmpty() || policySetIds != null && ! policySetIds.isEmpty()) {
-				if (prettyPrint) sb.append("\n\t\t\t");
-				sb.append("<PolicyIdentifierList>");
+				if (prettyPrint) writer.append("\n\t\t\t");
+				writer.append("<PolicyIdentifierList>");
 				
 				// individual Ids
 				for (IdReference idReference : policyIds) {
 					if (idReference == null) {
 						throw new DOMStructureException("PolicyIdentifiers has null IdReference");
 					}
-					if (prettyPrint) sb.append("\n\t\t\t\t");
-					sb.append("<PolicyIdReference");
+					if (prettyPrint) writer.append("\n\t\t\t\t");
+					writer.append("<PolicyIdReference");
 					if (idReference.getVersion() != null) {
-						sb.append(" Version=\"" + idReference.getVersion().stringValue() + "\">");
+						writer.append(" Version=\"" + idReference.getVersion().stringValue() + "\">");
 					} else {
-						sb.append(">");
+						writer.append(">");
 					}
-					sb.append(idReference.getId().stringValue());
-					sb.append("</PolicyIdReference>");		
+					writer.append(idReference.getId().stringValue());
+					writer.append("</PolicyIdReference>");		
 				}
 				// Set Ids
 				for (IdReference idReference : policySetIds) {
 					if (idReference == null) {
 						throw new DOMStructureException("PolicySetIdentifiers has null IdReference");
 					}
-					if (prettyPrint) sb.append("\n\t\t\t\t");
-					sb.append("<PolicySetIdReference");
+					if (prettyPrint) writer.append("\n\t\t\t\t");
+					writer.append("<PolicySetIdReference");
 					if (idReference.getVersion() != null) {
-						sb.append(" Version=\"" + idReference.getVersion().stringValue() + "\">");
+						writer.append(" Version=\"" + idReference.getVersion().stringValue() + "\">");
 					} else {
-						sb.append(">");
+						writer.append(">");
 					}
-					sb.append(idReference.getId().stringValue());
-					sb.append("</PolicySetIdReference>");		
+					writer.append(idReference.getId().stringValue());
+					writer.append("</PolicySetIdReference>");		
 				}
 				
-				if (prettyPrint) sb.append("\n\t\t\t");
-				sb.append("</PolicyIdentifierList>");
+				if (prettyPrint) writer.append("\n\t\t\t");
+				writer.append("</PolicyIdentifierList>");
 			}
 			
 			
 			
 			// end of Result
-			if (prettyPrint) sb.append("\n\t");
-			sb.append("</Result>");
+			if (prettyPrint) writer.append("\n\t");
+			writer.append("</Result>");
 		}
 		
-		if (prettyPrint) sb.append("\n");
-		
-		sb.append("</Response>");
-		
-		// all done
+		if (prettyPrint) writer.append("\n");
 		
-		osw.write(sb.toString());
+		writer.append("</Response>");
 		
 		// force output
-		osw.flush();
+		writer.flush();
 
 	}
 	
@@ -0,0 +1,520 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.dom;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.DataType;
+import com.att.research.xacml.api.DataTypeException;
+import com.att.research.xacml.api.DataTypeFactory;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.RequestReference;
+import com.att.research.xacml.api.XACML;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttribute;
+import com.att.research.xacml.std.StdMutableAttribute;
+import com.att.research.xacml.std.StdMutableRequest;
+import com.att.research.xacml.std.StdMutableRequestReference;
+import com.att.research.xacml.std.StdRequest;
+import com.att.research.xacml.std.StdRequestAttributes;
+import com.att.research.xacml.std.StdRequestAttributesReference;
+import com.att.research.xacml.std.StdRequestDefaults;
+import com.att.research.xacml.std.StdRequestReference;
+import com.att.research.xacml.std.datatypes.DataTypes;
+import com.att.research.xacml.std.datatypes.StringNamespaceContext;
+import com.att.research.xacml.std.datatypes.XPathExpressionWrapper;
+import com.att.research.xacml.util.FactoryException;
+
+/**
+ * StAXRequestReader converts XML into {@link com.att.research.xacml.api.Request} objects in a single pass over a StAX
+ * <code>XMLStreamReader</code>, without building a DOM <code>Document</code> for the whole Request first.  It accepts the
+ * same documents as {@link com.att.research.xacml.std.dom.DOMRequest}, honours {@link DOMProperties#isLenient()} the same way,
+ * and returns an equal {@link com.att.research.xacml.std.StdRequest}.
+ *
+ * Only the root element of each Content element is built as a DOM tree, as <code>DOMRequestAttributes</code> does, since
+ * AttributeSelectors evaluate XPath against it.  DTDs and external entities are not supported.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public final class StAXRequestReader {
+	private static final Logger logger	= LoggerFactory.getLogger(StAXRequestReader.class);
+
+	private static final String XML_NAMESPACE	= "http://www.w3.org/XML/1998/namespace";
+
+	private static final XMLInputFactory xmlInputFactory	= newXMLInputFactory();
+
+	private final XMLStreamReader reader;
+	private final boolean bLenient;
+	private final DataTypeFactory dataTypeFactory;
+	private final StringNamespaceContext namespaceContext	= new StringNamespaceContext();
+	private DocumentBuilder documentBuilder;
+
+	private StAXRequestReader(XMLStreamReader readerIn) throws DOMStructureException {
+		this.reader		= readerIn;
+		this.bLenient	= DOMProperties.isLenient();
+		try {
+			this.dataTypeFactory	= DataTypeFactory.newInstance();
+			if (this.dataTypeFactory == null) {
+				throw new DOMStructureException("Failed to get DataTypeFactory");
+			}
+		} catch (FactoryException ex) {
+			throw new DOMStructureException("FactoryException loading DataTypeFactory: " + ex.getMessage(), ex);
+		}
+	}
+
+	private static XMLInputFactory newXMLInputFactory() {
+		XMLInputFactory factory	= XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	/**
+	 * Reads the bytes of an XML XACML Request document from the given <code>InputStream</code> and parses them into a
+	 * {@link com.att.research.xacml.api.Request}.  The encoding is taken from the XML declaration.  The stream is not closed.
+	 *
+	 * @param inputStream the <code>InputStream</code> to read
+	 * @return the parsed <code>Request</code>
+	 * @throws DOMStructureException if the document cannot be read or is not a valid XACML Request
+	 */
+	public static Request load(InputStream inputStream) throws DOMStructureException {
+		try {
+			return load(xmlInputFactory.createXMLStreamReader(inputStream));
+		} catch (XMLStreamException ex) {
+			throw new DOMStructureException("Exception loading Request: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Reads the characters of an XML XACML Request document from the given <code>Reader</code> and parses them into a
+	 * {@link com.att.research.xacml.api.Request}.  The <code>Reader</code> is not closed.
+	 *
+	 * @param characterReader the <code>Reader</code> to read
+	 * @return the parsed <code>Request</code>
+	 * @throws DOMStructureException if the document cannot be read or is not a valid XACML Request
+	 */
+	public static Request load(Reader characterReader) throws DOMStructureException {
+		try {
+			return load(xmlInputFactory.createXMLStreamReader(characterReader));
+		} catch (XMLStreamException ex) {
+			throw new DOMStructureException("Exception loading Request: " + ex.getMessage(), ex);
+		}
+	}
+
+	private static Request load(XMLStreamReader xmlStreamReader) throws DOMStructureException {
+		try {
+			StAXRequestReader requestReader	= new StAXRequestReader(xmlStreamReader);
+			if (!requestReader.nextElement()) {
+				throw new DOMStructureException("No child in document");
+			}
+			if (!requestReader.isElement(XACML3.ELEMENT_REQUEST)) {
+				throw new DOMStructureException("Unexpected element \"" + requestReader.getLabel() + "\"");
+			}
+			return requestReader.readRequest();
+		} catch (DOMStructureException | XMLStreamException | RuntimeException ex) {
+			throw new DOMStructureException("Exception loading Request: " + ex.getMessage(), ex);
+		} finally {
+			try {
+				xmlStreamReader.close();
+			} catch (XMLStreamException ex) {
+				logger.warn("Exception closing XMLStreamReader: {}", ex.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Advances to the next child element of the current element, skipping text, comments and processing instructions.
+	 * Returns false at the end tag of the current element.
+	 */
+	private boolean nextElement() throws XMLStreamException {
+		while (this.reader.hasNext()) {
+			int event	= this.reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Skips the current element and everything in it, leaving the reader on its end tag
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth	= 1;
+		while (depth > 0) {
+			int event	= this.reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/*
+	 * Gets the text content of the current element, as Node.getTextContent() does, leaving the reader on its end tag
+	 */
+	private String readText() throws XMLStreamException {
+		StringBuilder stringBuilder	= new StringBuilder();
+		int depth	= 1;
+		while (depth > 0) {
+			switch (this.reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				stringBuilder.append(this.reader.getText());
+				break;
+			default:
+				break;
+			}
+		}
+		return stringBuilder.toString();
+	}
+
+	private boolean isElement(String localName) {
+		return XACML3.XMLNS.equals(this.reader.getNamespaceURI()) && localName.equals(this.reader.getLocalName());
+	}
+
+	private String getLabel() {
+		String namespaceURI	= this.reader.getNamespaceURI();
+		return (namespaceURI == null || namespaceURI.isEmpty() ? this.reader.getLocalName() : namespaceURI + ":" + this.reader.getLocalName());
+	}
+
+	/*
+	 * Handles an element that is not expected in the given parent: an error unless lenient, otherwise it is skipped
+	 */
+	private void unexpectedElement(String parentLabel) throws DOMStructureException, XMLStreamException {
+		if (!this.bLenient) {
+			throw new DOMStructureException("Unexpected element \"" + this.getLabel() + "\" in \"" + parentLabel + "\"");
+		}
+		this.skipElement();
+	}
+
+	private String getStringAttribute(String namespaceURI, String localName, boolean bRequired) throws DOMStructureException {
+		String value	= this.reader.getAttributeValue(namespaceURI, localName);
+		if (value == null && bRequired) {
+			throw new DOMStructureException("Missing attribute \"" + (namespaceURI == null ? "" : namespaceURI + ":") + localName + "\" in \"" + this.getLabel() + "\"");
+		}
+		return value;
+	}
+
+	private Identifier getIdentifierAttribute(String localName, boolean bRequired) throws DOMStructureException {
+		String value	= this.getStringAttribute(null, localName, bRequired);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return new IdentifierImpl(value);
+		} catch (IllegalArgumentException ex) {
+			throw new DOMStructureException("Invalid Identifier \"" + value + "\" in \"" + this.getLabel() + "\"", ex);
+		}
+	}
+
+	private Boolean getBooleanAttribute(String localName, boolean bRequired) throws DOMStructureException {
+		String value	= this.getStringAttribute(null, localName, bRequired);
+		if (value == null) {
+			return null;
+		} else if (value.equals("0") || value.equalsIgnoreCase("false")) {
+			return Boolean.FALSE;
+		} else if (value.equals("1") || value.equalsIgnoreCase("true")) {
+			return Boolean.TRUE;
+		} else {
+			throw new DOMStructureException("Illegal Boolean value \"" + value + "\" in \"" + this.getLabel() + "\"");
+		}
+	}
+
+	private Request readRequest() throws DOMStructureException, XMLStreamException {
+		String labelRequest	= this.getLabel();
+		StdMutableRequest stdMutableRequest	= new StdMutableRequest();
+
+		Boolean returnPolicyIdList	= this.getBooleanAttribute(XACML3.ATTRIBUTE_RETURNPOLICYIDLIST, !this.bLenient);
+		Boolean combinedDecision	= this.getBooleanAttribute(XACML3.ATTRIBUTE_COMBINEDDECISION, !this.bLenient);
+		stdMutableRequest.setReturnPolicyIdList(returnPolicyIdList != null && returnPolicyIdList);
+		stdMutableRequest.setCombinedDecision(combinedDecision != null && combinedDecision);
+
+		/*
+		 * XPathExpression values resolve their prefixes against the namespaces declared on the Request element
+		 */
+		for (int i = 0 ; i < this.reader.getNamespaceCount() ; i++) {
+			try {
+				this.namespaceContext.add(this.reader.getNamespacePrefix(i), this.reader.getNamespaceURI(i));
+			} catch (Exception ex) {
+				throw new DOMStructureException("Invalid namespace declaration in \"" + labelRequest + "\": " + ex.getMessage(), ex);
+			}
+		}
+
+		boolean sawAttributes	= false;
+		while (this.nextElement()) {
+			if (this.isElement(XACML3.ELEMENT_ATTRIBUTES)) {
+				stdMutableRequest.add(this.readRequestAttributes());
+				sawAttributes	= true;
+			} else if (this.isElement(XACML3.ELEMENT_REQUESTDEFAULTS)) {
+				stdMutableRequest.setRequestDefaults(this.readRequestDefaults());
+			} else if (this.isElement(XACML3.ELEMENT_MULTIREQUESTS)) {
+				while (this.nextElement()) {
+					if (this.isElement(XACML3.ELEMENT_REQUESTREFERENCE)) {
+						stdMutableRequest.add(this.readRequestReference());
+					} else {
+						this.unexpectedElement(labelRequest);
+					}
+				}
+			} else {
+				this.unexpectedElement(labelRequest);
+			}
+		}
+		if (!sawAttributes && !this.bLenient) {
+			throw new DOMStructureException("Missing element \"" + XACML3.XMLNS + ":" + XACML3.ELEMENT_ATTRIBUTES + "\" in \"" + labelRequest);
+		}
+
+		return new StdRequest(stdMutableRequest);
+	}
+
+	private StdRequestDefaults readRequestDefaults() throws DOMStructureException, XMLStreamException {
+		String labelRequestDefaults	= this.getLabel();
+		URI uriXPathVersion			= null;
+		while (this.nextElement()) {
+			if (this.isElement(XACML3.ELEMENT_XPATHVERSION)) {
+				String text	= this.readText();
+				try {
+					uriXPathVersion	= new URI(text);
+				} catch (URISyntaxException ex) {
+					throw new DOMStructureException("Illegal URI value \"" + text + "\" in \"" + XACML3.XMLNS + ":" + XACML3.ELEMENT_XPATHVERSION + "\"", ex);
+				}
+			} else {
+				this.unexpectedElement(labelRequestDefaults);
+			}
+		}
+		return new StdRequestDefaults(uriXPathVersion);
+	}
+
+	private RequestReference readRequestReference() throws DOMStructureException, XMLStreamException {
+		String labelRequestReference	= this.getLabel();
+		StdMutableRequestReference stdRequestReference	= new StdMutableRequestReference();
+		boolean sawAttributesReference	= false;
+		while (this.nextElement()) {
+			if (this.isElement(XACML3.ELEMENT_ATTRIBUTESREFERENCE)) {
+				stdRequestReference.add(new StdRequestAttributesReference(this.getStringAttribute(null, XACML3.ATTRIBUTE_REFERENCEID, !this.bLenient)));
+				this.skipElement();
+				sawAttributesReference	= true;
+			} else {
+				this.unexpectedElement(labelRequestReference);
+			}
+		}
+		if (!sawAttributesReference && !this.bLenient) {
+			throw new DOMStructureException("Missing element \"" + XACML3.XMLNS + ":" + XACML3.ELEMENT_ATTRIBUTESREFERENCE + "\" in \"" + labelRequestReference);
+		}
+		return new StdRequestReference(stdRequestReference);
+	}
+
+	private RequestAttributes readRequestAttributes() throws DOMStructureException, XMLStreamException {
+		String labelRequestAttributes	= this.getLabel();
+		Identifier identifierCategory	= this.getIdentifierAttribute(XACML3.ATTRIBUTE_CATEGORY, !this.bLenient);
+		String xmlId					= this.getStringAttribute(XML_NAMESPACE, "id", false);
+		Node nodeContentRoot			= null;
+		List<Attribute> listAttributes	= new ArrayList<>();
+		boolean sawContent				= false;
+
+		while (this.nextElement()) {
+			if (this.isElement(XACML3.ELEMENT_CONTENT)) {
+				if (sawContent && !this.bLenient) {
+					throw new DOMStructureException("Unexpected element \"" + this.getLabel() + "\" in \"" + labelRequestAttributes + "\"");
+				}
+				sawContent	= true;
+				String labelContent	= this.getLabel();
+				while (this.nextElement()) {
+					if (nodeContentRoot != null) {
+						this.unexpectedElement(labelContent);
+					} else {
+						nodeContentRoot	= this.readContentRoot();
+					}
+				}
+				if (nodeContentRoot == null && !this.bLenient) {
+					throw new DOMStructureException("Missing content for \"" + labelContent + "\"");
+				}
+			} else if (this.isElement(XACML3.ELEMENT_ATTRIBUTE)) {
+				listAttributes.add(this.readAttribute(identifierCategory));
+			} else {
+				this.unexpectedElement(labelRequestAttributes);
+			}
+		}
+
+		return new StdRequestAttributes(identifierCategory, listAttributes, nodeContentRoot, xmlId);
+	}
+
+	private Attribute readAttribute(Identifier category) throws DOMStructureException, XMLStreamException {
+		String labelAttribute	= this.getLabel();
+		StdMutableAttribute mutableAttribute	= new StdMutableAttribute();
+		mutableAttribute.setCategory(category);
+		mutableAttribute.setAttributeId(this.getIdentifierAttribute(XACML3.ATTRIBUTE_ATTRIBUTEID, !this.bLenient));
+		mutableAttribute.setIssuer(this.getStringAttribute(null, XACML3.ATTRIBUTE_ISSUER, false));
+		Boolean includeInResult	= this.getBooleanAttribute(XACML3.ATTRIBUTE_INCLUDEINRESULT, !this.bLenient);
+		mutableAttribute.setIncludeInResults(includeInResult != null && includeInResult);
+
+		boolean sawAttributeValue	= false;
+		while (this.nextElement()) {
+			if (this.isElement(XACML3.ELEMENT_ATTRIBUTEVALUE)) {
+				mutableAttribute.addValue(this.readAttributeValue(category));
+				sawAttributeValue	= true;
+			} else {
+				this.unexpectedElement(labelAttribute);
+			}
+		}
+		if (!sawAttributeValue && !this.bLenient) {
+			throw new DOMStructureException("Missing element \"" + XACML3.XMLNS + ":" + XACML3.ELEMENT_ATTRIBUTEVALUE + "\" in \"" + labelAttribute);
+		}
+
+		return new StdAttribute(mutableAttribute);
+	}
+
+	private AttributeValue<?> readAttributeValue(Identifier category) throws DOMStructureException, XMLStreamException {
+		String labelAttributeValue		= this.getLabel();
+		Identifier identifierDataTypeId	= this.getIdentifierAttribute(XACML3.ATTRIBUTE_DATATYPE, false);
+		Identifier xpathCategory		= null;
+		try {
+			xpathCategory	= this.getIdentifierAttribute(XACML3.ATTRIBUTE_XPATHCATEGORY, false);
+		} catch (DOMStructureException ex) {
+		}
+
+		/*
+		 * Missing and unknown data types are changed the way DOMAttributeValue repairs them
+		 */
+		DataType<?> dataTypeExtended	= (identifierDataTypeId == null ? null : this.dataTypeFactory.getDataType(identifierDataTypeId));
+		if (dataTypeExtended == null) {
+			if (XACML.ID_DATATYPE_WD_DAYTIMEDURATION.equals(identifierDataTypeId)) {
+				dataTypeExtended	= DataTypes.DT_DAYTIMEDURATION;
+			} else if (XACML.ID_DATATYPE_WD_YEARMONTHDURATION.equals(identifierDataTypeId)) {
+				dataTypeExtended	= DataTypes.DT_YEARMONTHDURATION;
+			} else {
+				dataTypeExtended	= DataTypes.DT_STRING;
+			}
+			logger.warn("Changing unknown DataType {} to {}", identifierDataTypeId, dataTypeExtended.getId().stringValue());
+		}
+
+		String text	= this.readText();
+		AttributeValue<?> attributeValue	= null;
+		try {
+			if (dataTypeExtended.getId().equals(XACML3.ID_DATATYPE_XPATHEXPRESSION)) {
+				attributeValue	= dataTypeExtended.createAttributeValue(new XPathExpressionWrapper(this.namespaceContext, text), xpathCategory);
+			} else {
+				attributeValue	= dataTypeExtended.createAttributeValue(text, xpathCategory);
+			}
+		} catch (DataTypeException ex) {
+			throw new DOMStructureException("Unable to convert \"" + labelAttributeValue + "\" to \"" + dataTypeExtended.getId().toString() + "\"");
+		}
+		if (!this.bLenient && attributeValue != null && attributeValue.getXPathCategory() != null && category != null && !category.equals(attributeValue.getXPathCategory())) {
+			throw new DOMStructureException("AttributeValue XPathCategory does not match " + category.stringValue());
+		}
+		return attributeValue;
+	}
+
+	/*
+	 * Builds the current element and everything in it as the document element of a new Document, as
+	 * DOMUtil.getDirectDocumentChild does for the DOM parser
+	 */
+	private Node readContentRoot() throws DOMStructureException, XMLStreamException {
+		if (this.documentBuilder == null) {
+			try {
+				DocumentBuilderFactory documentBuilderFactory	= DocumentBuilderFactory.newInstance();
+				documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+				documentBuilderFactory.setNamespaceAware(true);
+				this.documentBuilder	= documentBuilderFactory.newDocumentBuilder();
+			} catch (Exception ex) {
+				throw new DOMStructureException("Exception creating DocumentBuilder: " + ex.getMessage(), ex);
+			}
+		}
+		Document document	= this.documentBuilder.newDocument();
+		document.appendChild(this.readContentElement(document));
+		return document.getDocumentElement();
+	}
+
+	private Element readContentElement(Document document) throws XMLStreamException {
+		Element element	= document.createElementNS(emptyToNull(this.reader.getNamespaceURI()), getQualifiedName(this.reader.getPrefix(), this.reader.getLocalName()));
+		for (int i = 0 ; i < this.reader.getNamespaceCount() ; i++) {
+			String prefix	= emptyToNull(this.reader.getNamespacePrefix(i));
+			element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, getQualifiedName(prefix == null ? null : XMLConstants.XMLNS_ATTRIBUTE, prefix == null ? XMLConstants.XMLNS_ATTRIBUTE : prefix), this.reader.getNamespaceURI(i));
+		}
+		for (int i = 0 ; i < this.reader.getAttributeCount() ; i++) {
+			element.setAttributeNS(emptyToNull(this.reader.getAttributeNamespace(i)), getQualifiedName(this.reader.getAttributePrefix(i), this.reader.getAttributeLocalName(i)), this.reader.getAttributeValue(i));
+		}
+		while (true) {
+			switch (this.reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				element.appendChild(this.readContentElement(document));
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return element;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				/*
+				 * The parser may split text, the DOM parser keeps it in one node
+				 */
+				Node nodeLast	= element.getLastChild();
+				if (nodeLast != null && nodeLast.getNodeType() == Node.TEXT_NODE) {
+					((Text) nodeLast).appendData(this.reader.getText());
+				} else {
+					element.appendChild(document.createTextNode(this.reader.getText()));
+				}
+				break;
+			case XMLStreamConstants.CDATA:
+				element.appendChild(document.createCDATASection(this.reader.getText()));
+				break;
+			case XMLStreamConstants.COMMENT:
+				element.appendChild(document.createComment(this.reader.getText()));
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+				element.appendChild(document.createProcessingInstruction(this.reader.getPITarget(), this.reader.getPIData()));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private static String emptyToNull(String value) {
+		return (value == null || value.isEmpty() ? null : value);
+	}
+
+	private static String getQualifiedName(String prefix, String localName) {
+		return (prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName);
+	}
+}
@@ -48,58 +48,68 @@ public class JsonIdentifierSerialization implements JsonDeserializer<Identifier>
 	
 	@Override
 	public Identifier deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-		if ("subject-id".equals(json.getAsString())) {
+		return toIdentifier(json.getAsString());
+	}
+	
+	/**
+	 * Converts the value of a JSON identifier, which may be one of the short names defined by the JSON profile, to an <code>Identifier</code>.
+	 * 
+	 * @param value the <code>String</code> value of the identifier
+	 * @return the <code>Identifier</code>
+	 */
+	public static Identifier toIdentifier(String value) {
+		if ("subject-id".equals(value)) {
 			return XACML1.ID_SUBJECT_SUBJECT_ID;
 		}
-		if ("subject-id-qualifier".equals(json.getAsString())) {
+		if ("subject-id-qualifier".equals(value)) {
 			return XACML1.ID_SUBJECT_SUBJECT_ID_QUALIFIER;
 		}
-		if ("key-info".equals(json.getAsString())) {
+		if ("key-info".equals(value)) {
 			return XACML1.ID_SUBJECT_KEY_INFO;
 		}
-		if ("authentication-time".equals(json.getAsString())) {
+		if ("authentication-time".equals(value)) {
 			return XACML1.ID_SUBJECT_AUTHENTICATION_TIME;
 		}
-		if ("authentication-method".equals(json.getAsString())) {
+		if ("authentication-method".equals(value)) {
 			return XACML1.ID_SUBJECT_AUTHENTICATION_METHOD;
 		}
-		if ("request-time".equals(json.getAsString())) {
+		if ("request-time".equals(value)) {
 			return XACML1.ID_SUBJECT_REQUEST_TIME;
 		}
-		if ("session-start-time".equals(json.getAsString())) {
+		if ("session-start-time".equals(value)) {
 			return XACML1.ID_SUBJECT_SESSION_START_TIME;
 		}
-		if ("ip-address".equals(json.getAsString())) {
+		if ("ip-address".equals(value)) {
 			return XACML3.ID_SUBJECT_AUTHN_LOCALITY_IP_ADDRESS;
 		}
-		if ("dns-name".equals(json.getAsString())) {
+		if ("dns-name".equals(value)) {
 			return XACML3.ID_SUBJECT_AUTHN_LOCALITY_DNS_NAME;
 		}
-		if ("resource-id".equals(json.getAsString())) {
+		if ("resource-id".equals(value)) {
 			return XACML1.ID_RESOURCE_RESOURCE_ID;
 		}
-		if ("target-namespace".equals(json.getAsString())) {
+		if ("target-namespace".equals(value)) {
 			return XACML2.ID_RESOURCE_TARGET_NAMESPACE;
 		}
-		if ("action-id".equals(json.getAsString())) {
+		if ("action-id".equals(value)) {
 			return XACML1.ID_ACTION_ACTION_ID;
 		}
-		if ("implied-action".equals(json.getAsString())) {
+		if ("implied-action".equals(value)) {
 			return XACML1.ID_ACTION_IMPLIED_ACTION;
 		}
-		if ("current-time".equals(json.getAsString())) {
+		if ("current-time".equals(value)) {
 			return XACML1.ID_ENVIRONMENT_CURRENT_TIME;
 		}
-		if ("current-date".equals(json.getAsString())) {
+		if ("current-date".equals(value)) {
 			return XACML1.ID_ENVIRONMENT_CURRENT_DATE;
 		}
-		if ("current-dateTime".equals(json.getAsString())) {
+		if ("current-dateTime".equals(value)) {
 			return XACML1.ID_ENVIRONMENT_CURRENT_DATETIME;
 		}
-		if (datatypeMap.containsKey(json.getAsString())) {
-			return datatypeMap.get(json.getAsString());
+		if (datatypeMap.containsKey(value)) {
+			return datatypeMap.get(value);
 		}
-		return new IdentifierImpl(json.getAsString());
+		return new IdentifierImpl(value);
 	}
 	
 	@Override
@@ -0,0 +1,371 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+
+package com.att.research.xacml.std.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributesReference;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.StdMutableAttribute;
+import com.att.research.xacml.std.StdMutableRequest;
+import com.att.research.xacml.std.StdMutableRequestAttributes;
+import com.att.research.xacml.std.StdRequestAttributesReference;
+import com.att.research.xacml.std.StdRequestReference;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * JsonRequestReader parses a JSON XACML Request straight into a {@link com.att.research.xacml.std.StdMutableRequest} in one
+ * pass over a Gson <code>JsonReader</code>, without building the {@link GsonJsonRequest} objects or a JSON tree first.  It accepts
+ * the same documents as the <code>GsonJsonRequest</code> binding and produces the same <code>Request</code>: short names for
+ * categories, identifiers and data types are resolved by {@link JsonIdentifierSerialization#toIdentifier(String)}, attribute values
+ * are typed and converted by {@link GsonJsonAttributeValue}, and the categories are added in the order
+ * <code>GsonJsonRequest.toXacmlRequest</code> uses.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public final class JsonRequestReader {
+	private static final Logger logger	= LoggerFactory.getLogger(JsonRequestReader.class);
+
+	/*
+	 * The category members of the Request object, in the order their categories are added to the Request
+	 */
+	private static final String[] CATEGORY_MEMBERS	= {
+		"AccessSubject", "Resource", "Action", "Environment", "RecipientSubject", "IntermediarySubject", "Codebase", "RequestingMachine", "Category"
+	};
+	private static final Map<String, Integer> categoryMemberIndex	= new HashMap<>();
+	static {
+		for (int i = 0 ; i < CATEGORY_MEMBERS.length ; i++) {
+			categoryMemberIndex.put(CATEGORY_MEMBERS[i], i);
+		}
+	}
+
+	private JsonRequestReader() {
+		super();
+	}
+
+	/**
+	 * Parses the UTF-8 JSON XACML Request in the given <code>InputStream</code>.
+	 *
+	 * @param is the <code>InputStream</code> to read
+	 * @return the <code>Request</code>
+	 * @throws JSONStructureException if the JSON cannot be read or is not a XACML Request
+	 */
+	public static Request load(InputStream is) throws JSONStructureException {
+		return load(new InputStreamReader(is, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parses the JSON XACML Request in the given <code>Reader</code>.
+	 *
+	 * @param reader the <code>Reader</code> to read
+	 * @return the <code>Request</code>
+	 * @throws JSONStructureException if the JSON cannot be read or is not a XACML Request
+	 */
+	public static Request load(Reader reader) throws JSONStructureException {
+		JsonReader jsonReader	= new JsonReader(reader);
+		jsonReader.setLenient(true);
+		try {
+			StdMutableRequest request	= null;
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				if ("Request".equals(jsonReader.nextName()) && jsonReader.peek() != JsonToken.NULL) {
+					request	= readRequest(jsonReader);
+				} else {
+					jsonReader.skipValue();
+				}
+			}
+			jsonReader.endObject();
+			if (request == null) {
+				throw new JSONStructureException("No Request object");
+			}
+			return request;
+		} catch (IOException | IllegalStateException | NumberFormatException ex) {
+			throw new JSONStructureException(ex.getMessage(), ex);
+		}
+	}
+
+	private static StdMutableRequest readRequest(JsonReader jsonReader) throws IOException, JSONStructureException {
+		StdMutableRequest request	= new StdMutableRequest();
+		List<List<StdMutableRequestAttributes>> categories	= new ArrayList<>(Collections.nCopies(CATEGORY_MEMBERS.length, null));
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name		= jsonReader.nextName();
+			Integer index	= categoryMemberIndex.get(name);
+			if (index != null) {
+				if (categories.get(index) == null) {
+					categories.set(index, new ArrayList<>());
+				}
+				readCategories(jsonReader, "Category".equals(name) ? null : GsonJsonCategory.getCategory(name), categories.get(index));
+			} else if ("ReturnPolicyIdList".equals(name)) {
+				Boolean returnPolicyIdList	= readBoolean(jsonReader);
+				if (returnPolicyIdList != null) {
+					request.setReturnPolicyIdList(returnPolicyIdList);
+				}
+			} else if ("CombinedDecision".equals(name)) {
+				Boolean combinedDecision	= readBoolean(jsonReader);
+				if (combinedDecision != null) {
+					request.setCombinedDecision(combinedDecision);
+				}
+			} else if ("MultiRequests".equals(name)) {
+				readMultiRequests(jsonReader, request);
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		//
+		// Add the categories in the order of the members, whatever the order in the document
+		//
+		for (List<StdMutableRequestAttributes> list : categories) {
+			if (list != null) {
+				list.forEach(request::add);
+			}
+		}
+		return request;
+	}
+
+	private static void readCategories(JsonReader jsonReader, Identifier categoryMember, List<StdMutableRequestAttributes> categories) throws IOException, JSONStructureException {
+		if (jsonReader.peek() == JsonToken.NULL) {
+			jsonReader.nextNull();
+			return;
+		}
+		jsonReader.beginArray();
+		while (jsonReader.hasNext()) {
+			if (jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+			} else {
+				categories.add(readCategory(jsonReader, categoryMember));
+			}
+		}
+		jsonReader.endArray();
+	}
+
+	private static StdMutableRequestAttributes readCategory(JsonReader jsonReader, Identifier categoryMember) throws IOException, JSONStructureException {
+		StdMutableRequestAttributes requestAttributes	= new StdMutableRequestAttributes();
+		Identifier categoryId							= null;
+		List<StdMutableAttribute> attributes			= new ArrayList<>();
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name	= jsonReader.nextName();
+			if ("CategoryId".equals(name)) {
+				categoryId	= readIdentifier(jsonReader);
+			} else if ("Id".equals(name)) {
+				requestAttributes.setXmlId(readString(jsonReader));
+			} else if ("Attribute".equals(name) && jsonReader.peek() != JsonToken.NULL) {
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					attributes.add(readAttribute(jsonReader));
+				}
+				jsonReader.endArray();
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		//
+		// The member name decides the category, otherwise it is the CategoryId, which may follow the attributes
+		//
+		if (categoryMember != null) {
+			categoryId	= categoryMember;
+		}
+		requestAttributes.setCategory(categoryId);
+		for (StdMutableAttribute attribute : attributes) {
+			attribute.setCategory(categoryId);
+			requestAttributes.add(attribute);
+		}
+		return requestAttributes;
+	}
+
+	private static StdMutableAttribute readAttribute(JsonReader jsonReader) throws IOException, JSONStructureException {
+		Identifier attributeId					= null;
+		GsonJsonAttributeValue attributeValue	= null;
+		String issuer							= null;
+		Identifier dataType						= null;
+		Boolean includeInResult					= null;
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name	= jsonReader.nextName();
+			if ("AttributeId".equals(name)) {
+				attributeId	= readIdentifier(jsonReader);
+			} else if ("Value".equals(name) && jsonReader.peek() == JsonToken.NULL) {
+				jsonReader.nextNull();
+				attributeValue	= null;
+			} else if ("Value".equals(name)) {
+				attributeValue	= new GsonJsonAttributeValue();
+				readValue(jsonReader, attributeValue);
+			} else if ("Issuer".equals(name)) {
+				issuer	= readString(jsonReader);
+			} else if ("DataType".equals(name)) {
+				dataType	= readIdentifier(jsonReader);
+			} else if ("IncludeInResult".equals(name)) {
+				includeInResult	= readBoolean(jsonReader);
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		if (attributeValue == null) {
+			throw new JSONStructureException("Attribute " + attributeId + " has no Value");
+		}
+		//
+		// Type and convert the value as GsonJsonAttribute does
+		//
+		dataType	= attributeValue.postProcess(dataType);
+		return new StdMutableAttribute(null, attributeId, new StdAttributeValue<>(dataType, attributeValue.getValue()), issuer, (includeInResult == null ? false : includeInResult));
+	}
+
+	/*
+	 * Adds the values of a Value member, which may be a primitive, an object or an array of them
+	 */
+	private static void readValue(JsonReader jsonReader, GsonJsonAttributeValue attributeValue) throws IOException {
+		switch (jsonReader.peek()) {
+		case BEGIN_ARRAY:
+			jsonReader.beginArray();
+			while (jsonReader.hasNext()) {
+				readValue(jsonReader, attributeValue);
+			}
+			jsonReader.endArray();
+			break;
+		case BEGIN_OBJECT:
+			attributeValue.add(readObjectValue(jsonReader));
+			break;
+		case NULL:
+			jsonReader.nextNull();
+			break;
+		default:
+			attributeValue.add(readPrimitiveValue(jsonReader));
+			break;
+		}
+	}
+
+	private static StdAttributeValue<?> readPrimitiveValue(JsonReader jsonReader) throws IOException {
+		switch (jsonReader.peek()) {
+		case BOOLEAN:
+			return new StdAttributeValue<>(XACML3.ID_DATATYPE_BOOLEAN, jsonReader.nextBoolean());
+		case NUMBER:
+			BigDecimal number	= new BigDecimal(jsonReader.nextString());
+			if (Math.ceil(number.doubleValue()) == number.longValue()) {
+				return new StdAttributeValue<>(XACML3.ID_DATATYPE_INTEGER, number.toBigInteger());
+			} else {
+				return new StdAttributeValue<>(XACML3.ID_DATATYPE_DOUBLE, number.doubleValue());
+			}
+		default:
+			return new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, jsonReader.nextString());
+		}
+	}
+
+	/*
+	 * An object becomes a single value holding a map of its primitive members, with the data type of the first of them
+	 */
+	private static StdAttributeValue<?> readObjectValue(JsonReader jsonReader) throws IOException {
+		Identifier dataType			= null;
+		Map<String, Object> values	= new HashMap<>();
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name	= jsonReader.nextName();
+			JsonToken token	= jsonReader.peek();
+			if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+				StdAttributeValue<?> value	= readPrimitiveValue(jsonReader);
+				values.put(name, value.getValue());
+				if (dataType == null) {
+					dataType	= value.getDataTypeId();
+				} else if (! dataType.equals(value.getDataTypeId())) {
+					logger.warn("Mixed datatypes in the JsonObject");
+				}
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return new StdAttributeValue<>(dataType, values);
+	}
+
+	private static void readMultiRequests(JsonReader jsonReader, StdMutableRequest request) throws IOException {
+		if (jsonReader.peek() == JsonToken.NULL) {
+			jsonReader.nextNull();
+			return;
+		}
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			if ("RequestReference".equals(jsonReader.nextName()) && jsonReader.peek() != JsonToken.NULL) {
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					request.add(new StdRequestReference(readReferenceIds(jsonReader)));
+				}
+				jsonReader.endArray();
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+	}
+
+	private static List<RequestAttributesReference> readReferenceIds(JsonReader jsonReader) throws IOException {
+		List<RequestAttributesReference> references	= new ArrayList<>();
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			if ("ReferenceId".equals(jsonReader.nextName()) && jsonReader.peek() != JsonToken.NULL) {
+				jsonReader.beginArray();
+				while (jsonReader.hasNext()) {
+					references.add(new StdRequestAttributesReference(readString(jsonReader)));
+				}
+				jsonReader.endArray();
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return references;
+	}
+
+	private static String readString(JsonReader jsonReader) throws IOException {
+		switch (jsonReader.peek()) {
+		case NULL:
+			jsonReader.nextNull();
+			return null;
+		case BOOLEAN:
+			return Boolean.toString(jsonReader.nextBoolean());
+		default:
+			return jsonReader.nextString();
+		}
+	}
+
+	private static Boolean readBoolean(JsonReader jsonReader) throws IOException {
+		switch (jsonReader.peek()) {
+		case NULL:
+			jsonReader.nextNull();
+			return null;
+		case STRING:
+			return Boolean.parseBoolean(jsonReader.nextString());
+		default:
+			return jsonReader.nextBoolean();
+		}
+	}
+
+	private static Identifier readIdentifier(JsonReader jsonReader) throws IOException {
+		String value	= readString(jsonReader);
+		return (value == null ? null : JsonIdentifierSerialization.toIdentifier(value));
+	}
+}
@@ -7,10 +7,11 @@
 package com.att.research.xacml.std.json;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 
@@ -18,14 +19,14 @@ import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.api.Request;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
 
 /**
  * Translates JSON XACML Request that conforms to the following specification:
  * 
  * http://docs.oasis-open.org/xacml/xacml-json-http/v1.1/csprd01/xacml-json-http-v1.1-csprd01.html
  * 
+ * Requests are parsed in one pass by {@link JsonRequestReader}.
+ * 
  * @author pameladragosh
  *
  */
@@ -48,30 +49,24 @@ public final class JsonRequestTranslator {
 	
 	public static Request load(String jsonString) throws JSONStructureException {
 		try {
-			GsonJsonRequest gsonRequest = gson.fromJson(new StringReader(jsonString), GsonJsonRequest.class);
-            gsonRequest.postFromJsonDeserialization();
-			return gsonRequest.toXacmlRequest();
-		} catch (JsonSyntaxException | JsonIOException e) {
-			throw new JSONStructureException("Failed to load json string " + jsonString.substring(0, 10), e);
+			return JsonRequestReader.load(new StringReader(jsonString));
+		} catch (JSONStructureException e) {
+			throw new JSONStructureException("Failed to load json string " + jsonString.substring(0, Math.min(10, jsonString.length())), e);
 		}
 	}
 	
 	public static Request load(File fileRequest) throws JSONStructureException {
-		try {
-			GsonJsonRequest gsonRequest = gson.fromJson(new FileReader(fileRequest), GsonJsonRequest.class);
-			gsonRequest.postFromJsonDeserialization();
-			return gsonRequest.toXacmlRequest();
-		} catch (JsonSyntaxException | JsonIOException | FileNotFoundException e) {
+		try (Reader reader = new InputStreamReader(new FileInputStream(fileRequest), StandardCharsets.UTF_8)) {
+			return JsonRequestReader.load(reader);
+		} catch (JSONStructureException | IOException e) {
 			throw new JSONStructureException("Failed to load json file " + fileRequest, e);
 		}
 	}
 	
 	public static Request load(InputStream is) throws JSONStructureException {
 		try {
-			GsonJsonRequest gsonRequest = gson.fromJson(new InputStreamReader(is, StandardCharsets.UTF_8), GsonJsonRequest.class);
-			gsonRequest.postFromJsonDeserialization();
-			return gsonRequest.toXacmlRequest();
-		} catch (JsonSyntaxException | JsonIOException e) {
+			return JsonRequestReader.load(is);
+		} catch (JSONStructureException e) {
 			throw new JSONStructureException("Failed to load input stream", e);
 		}
 	}
@@ -6,12 +6,17 @@
 
 package com.att.research.xacml.std.json;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 import com.att.research.xacml.api.Identifier;
@@ -76,4 +81,23 @@ public class JsonResponseTranslator {
 			return gson.toJson(new GsonJsonResponse(response));
 		}
 	}
+
+	/**
+	 * Writes the given {@link com.att.research.xacml.api.Response} as UTF-8 JSON to the given <code>OutputStream</code> as it is
+	 * serialized, without building the whole document as a <code>String</code> first.  The stream is flushed but not closed.
+	 *
+	 * @param response the <code>Response</code> to write
+	 * @param outputStream the <code>OutputStream</code> to write to
+	 * @param prettyPrint true to indent the JSON
+	 * @throws IOException if the <code>Response</code> cannot be written
+	 */
+	public static void convert(Response response, OutputStream outputStream, boolean prettyPrint) throws IOException {
+		Writer writer	= new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		try {
+			(prettyPrint ? gsonPretty : gson).toJson(new GsonJsonResponse(response), writer);
+		} catch (JsonIOException e) {
+			throw new IOException("Failed to write json response", e);
+		}
+		writer.flush();
+	}
 }
@@ -1,11 +1,16 @@
 /*
  *
- *          Copyright (c) 2013,2019  AT&T Knowledge Ventures
+ *          Copyright (c) 2013,2019-2020  AT&T Knowledge Ventures
  *                     SPDX-License-Identifier: MIT
  */
 package com.att.research.xacml.std.pep;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,35 +23,93 @@ import com.att.research.xacml.api.pdp.PDPException;
 import com.att.research.xacml.api.pep.PEPEngine;
 import com.att.research.xacml.api.pep.PEPException;
 import com.att.research.xacml.util.FactoryException;
+import com.att.research.xacml.util.XACMLProperties;
 
 /**
  * StdEngine implements the {@link com.att.research.xacml.api.pep.PEPEngine} interface by creating
  * an instance of the {@link com.att.research.xacml.api.pdp.PDPEngine} interface using the {@link com.att.research.xacml.api.pdp.PDPEngineFactory} and
  * passing requests through to that engine, forwarding the {@link com.att.research.xacml.api.Response} object back to the caller.
  * 
+ * The <code>PDPEngine</code> is created on the first call to <code>decide</code> and used for every call after that.  Each call
+ * checks the policy properties (<code>xacml.rootPolicies</code>, <code>xacml.referencedPolicies</code> and the ".file" and ".url"
+ * properties of each policy) and, if they have changed, creates a new <code>PDPEngine</code>.  Decisions already running finish
+ * on the old <code>PDPEngine</code> before it is shut down.  If the new <code>PDPEngine</code> cannot be created, the old one is kept
+ * until the properties change again.
+ * 
+ * An <code>StdEngine</code> is safe for use by multiple concurrent threads.
+ * 
  * @author car
- * @version $Revision: 1.2 $
+ * @version $Revision: 1.3 $
  */
 public class StdEngine implements PEPEngine {
 	private Logger	logger	= LoggerFactory.getLogger(this.getClass());
 	
 	protected Properties properties = null;
 	
+	/*
+	 * The PDPEngine and the policy properties it was created from
+	 */
+	private static class Current {
+		private final PDPEngine pdpEngine;
+		private final Map<String, String> policyProperties;
+		
+		Current(PDPEngine pdpEngineIn, Map<String, String> policyPropertiesIn) {
+			this.pdpEngine			= pdpEngineIn;
+			this.policyProperties	= policyPropertiesIn;
+		}
+	}
+	
+	private final ReadWriteLock lock	= new ReentrantReadWriteLock();
+	private final Object refreshLock	= new Object();
+	private volatile Current current;
+	private volatile boolean isShutdown	= false;
+	
 	public StdEngine() {
 	}
 
 	public StdEngine(Properties properties) {
 		this.properties = properties;
 	}
-
-	@Override
-	public Response decide(Request pepRequest) throws PEPException {
+	
+	private Properties getProperties() throws PEPException {
+		if (this.properties != null) {
+			return this.properties;
+		}
+		try {
+			return XACMLProperties.getProperties();
+		} catch (IOException ex) {
+			this.logger.error("IOException loading the XACML properties", ex);
+			throw new PEPException("IOException loading the XACML properties", ex);
+		}
+	}
+	
+	/*
+	 * The properties that select the policies, which is what may change while the PEP is running
+	 */
+	private static Map<String, String> getPolicyProperties(Properties properties) {
+		Map<String, String> policyProperties	= new HashMap<>();
+		policyProperties.put(XACMLProperties.PROP_ROOTPOLICIES, properties.getProperty(XACMLProperties.PROP_ROOTPOLICIES));
+		policyProperties.put(XACMLProperties.PROP_REFERENCEDPOLICIES, properties.getProperty(XACMLProperties.PROP_REFERENCEDPOLICIES));
+		for (String id : XACMLProperties.getPolicyIDs(properties)) {
+			policyProperties.put(id + ".file", properties.getProperty(id + ".file"));
+			policyProperties.put(id + ".url", properties.getProperty(id + ".url"));
+		}
+		return policyProperties;
+	}
+	
+	/**
+	 * Creates a new <code>PDPEngine</code> from the properties of this <code>StdEngine</code>, or the XACML properties if it has none.
+	 * 
+	 * @return a new <code>PDPEngine</code>
+	 * @throws PEPException if the <code>PDPEngine</code> cannot be created
+	 */
+	protected PDPEngine newPDPEngine() throws PEPException {
 		/*
 		 * Get the PDP engine factory
 		 */
 		PDPEngineFactory pdpEngineFactory	= null;
 		try {
-			pdpEngineFactory	= PDPEngineFactory.newInstance();
+			pdpEngineFactory	= (this.properties == null ? PDPEngineFactory.newInstance() : PDPEngineFactory.newInstance(this.properties));
 		} catch (FactoryException ex) {
 			this.logger.error("FactoryException creating the PDPEngineFactory", ex);
 			throw new PEPException("FactoryException creating the PDPEngineFactory", ex);
@@ -55,21 +118,107 @@ public class StdEngine implements PEPEngine {
 		
 		PDPEngine pdpEngine	= null;
 		try {
-			pdpEngine	= pdpEngineFactory.newEngine();
+			pdpEngine	= (this.properties == null ? pdpEngineFactory.newEngine() : pdpEngineFactory.newEngine(this.properties));
 		} catch (FactoryException ex) {
 			this.logger.error("PDPException creating the PDPEngine", ex);
 			throw new PEPException("PDPException creating the PDPEngine", ex);
 		}
 		assert(pdpEngine != null);
+		return pdpEngine;
+	}
+	
+	/*
+	 * Creates the first PDPEngine, or a new one if the policy properties have changed since the current one was created
+	 */
+	private void refresh(Map<String, String> policyProperties) throws PEPException {
+		synchronized(this.refreshLock) {
+			Current currentOld	= this.current;
+			if (this.isShutdown || (currentOld != null && currentOld.policyProperties.equals(policyProperties))) {
+				return;
+			}
+			PDPEngine pdpEngine	= null;
+			try {
+				pdpEngine	= this.newPDPEngine();
+			} catch (PEPException ex) {
+				if (currentOld == null) {
+					throw ex;
+				}
+				this.logger.error("Keeping the current PDPEngine", ex);
+				this.current	= new Current(currentOld.pdpEngine, policyProperties);
+				return;
+			}
+			/*
+			 * Wait for the decisions using the old PDPEngine to finish before shutting it down
+			 */
+			PDPEngine pdpEngineRetired	= null;
+			this.lock.writeLock().lock();
+			try {
+				if (this.isShutdown) {
+					pdpEngineRetired	= pdpEngine;
+				} else {
+					this.current	= new Current(pdpEngine, policyProperties);
+					if (currentOld != null) {
+						this.logger.info("Policy properties changed, replaced the PDPEngine");
+						pdpEngineRetired	= currentOld.pdpEngine;
+					}
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			if (pdpEngineRetired != null) {
+				pdpEngineRetired.shutdown();
+			}
+		}
+	}
+
+	@Override
+	public Response decide(Request pepRequest) throws PEPException {
+		if (this.isShutdown) {
+			throw new PEPException("Engine is shutdown.");
+		}
+		Map<String, String> policyProperties	= getPolicyProperties(this.getProperties());
+		Current currentThis	= this.current;
+		if (currentThis == null || ! currentThis.policyProperties.equals(policyProperties)) {
+			this.refresh(policyProperties);
+		}
 		
 		Response response	= null;
+		this.lock.readLock().lock();
 		try {
-			response	= pdpEngine.decide(pepRequest);
+			currentThis	= this.current;
+			if (this.isShutdown || currentThis == null) {
+				throw new PEPException("Engine is shutdown.");
+			}
+			response	= currentThis.pdpEngine.decide(pepRequest);
 		} catch (PDPException ex) {
 			this.logger.error("PDPException deciding on Request", ex);
 			throw new PEPException("PDPException deciding on Request", ex);
+		} finally {
+			this.lock.readLock().unlock();
 		}
 		return response;
 	}
 
+	/**
+	 * Waits for the decisions that are running to finish and shuts down the <code>PDPEngine</code>.  Calls to <code>decide</code>
+	 * after that throw a <code>PEPException</code>.
+	 */
+	@Override
+	public void shutdown() {
+		Current currentOld;
+		this.lock.writeLock().lock();
+		try {
+			if (this.isShutdown) {
+				return;
+			}
+			this.isShutdown	= true;
+			currentOld		= this.current;
+			this.current	= null;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		if (currentOld != null) {
+			currentOld.pdpEngine.shutdown();
+		}
+	}
 }
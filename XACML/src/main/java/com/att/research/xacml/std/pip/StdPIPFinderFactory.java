@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
 import com.att.research.xacml.api.pip.PIPFinderFactory;
+import com.att.research.xacml.std.pip.finders.CachingFinder;
 import com.att.research.xacml.std.pip.finders.ConfigurableEngineFinder;
 import com.att.research.xacml.util.XACMLProperties;
 
@@ -30,7 +31,7 @@ public class StdPIPFinderFactory extends PIPFinderFactory {
 	@Override
 	public synchronized PIPFinder getFinder() throws PIPException {
 		if (pipFinder == null) {
-			pipFinder					= new ConfigurableEngineFinder();
+			ConfigurableEngineFinder engineFinder	= new ConfigurableEngineFinder();
 			Properties xacmlProperties	= null;
 			try {
 				xacmlProperties	= XACMLProperties.getProperties();
@@ -39,7 +40,10 @@ public class StdPIPFinderFactory extends PIPFinderFactory {
 				return null;
 			}
 			if (xacmlProperties != null) {
-				((ConfigurableEngineFinder)pipFinder).configure(xacmlProperties);
+				engineFinder.configure(xacmlProperties);
+				pipFinder	= CachingFinder.newInstance(engineFinder, xacmlProperties);
+			} else {
+				pipFinder	= engineFinder;
 			}
 		}
 		return pipFinder;
@@ -48,8 +52,9 @@ public class StdPIPFinderFactory extends PIPFinderFactory {
 	@Override
 	public synchronized PIPFinder getFinder(Properties properties) throws PIPException {
 		if (pipFinder == null) {
-			pipFinder					= new ConfigurableEngineFinder();
-			((ConfigurableEngineFinder)pipFinder).configure(properties);
+			ConfigurableEngineFinder engineFinder	= new ConfigurableEngineFinder();
+			engineFinder.configure(properties);
+			pipFinder	= CachingFinder.newInstance(engineFinder, properties);
 		}
 		return this.pipFinder;
 	}
@@ -35,9 +35,9 @@ import com.att.research.xacml.std.pip.StdSinglePIPResponse;
 public class EnvironmentEngine implements PIPEngine {
 	private Date contextTime;
     private boolean shutdown = false;
-	private StdSinglePIPResponse responseTime;
-	private StdSinglePIPResponse responseDate;
-	private StdSinglePIPResponse responseDateTime;
+	private volatile StdSinglePIPResponse responseTime;
+	private volatile StdSinglePIPResponse responseDate;
+	private volatile StdSinglePIPResponse responseDateTime;
 	
 	protected StdSinglePIPResponse getResponseTime() throws DataTypeException {
 		if (this.responseTime == null) {
@@ -0,0 +1,305 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * CachingFinder implements the {@link com.att.research.xacml.api.pip.PIPFinder} interface by wrapping the PDP's
+ * <code>PIPFinder</code> with a cache of its responses that is shared by every request and thread.  It sits between the
+ * per-request {@link com.att.research.xacml.std.pip.finders.RequestFinder} and the engines, so attributes found in the
+ * request or the environment are never cached.
+ *
+ * What a <code>PIPEngine</code> returns usually depends on other attributes, such as the subject id it looks up.  Each
+ * cache key is therefore the <code>PIPRequest</code> together with the current values of every attribute that the
+ * engines able to answer it list in <code>attributesRequired()</code>, as worked out by {@link PIPDependencies}.  Attributes
+ * that may be answered by an engine that does not list what it provides are never cached, because their inputs cannot be known.
+ *
+ * Nothing is cached unless it has a time to live.  The "xacml.pip.cache.ttl" property sets a default, and the rules listed
+ * in "xacml.pip.cache.rules" set it for a category, an attribute id, or both:
+ * <pre>
+ * xacml.pip.cache=true
+ * xacml.pip.cache.maximumWeight=100000
+ * xacml.pip.cache.rules=subject
+ * xacml.pip.cache.rule.subject.category=urn:oasis:names:tc:xacml:1.0:subject-category:access-subject
+ * xacml.pip.cache.rule.subject.ttl=60000
+ * </pre>
+ * The cache is bounded by the total number of attribute values it holds.  Concurrent requests for the same key wait for a
+ * single call to the wrapped <code>PIPFinder</code>.  Responses with an error status are never cached.  A batch of
+ * <code>PIPRequest</code>s is answered from the cache where it can be, and the rest are sent to the wrapped
+ * <code>PIPFinder</code> in one batch call.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class CachingFinder extends WrappingFinder {
+	private static final Logger logger	= LoggerFactory.getLogger(CachingFinder.class);
+
+	public static final String PROP_CACHE					= "xacml.pip.cache";
+	public static final String PROP_CACHE_MAXIMUMWEIGHT		= "xacml.pip.cache.maximumWeight";
+	public static final String PROP_CACHE_TTL				= "xacml.pip.cache.ttl";
+	public static final String PROP_CACHE_EMPTY				= "xacml.pip.cache.cacheEmpty";
+	public static final String PROP_CACHE_RULES				= "xacml.pip.cache.rules";
+	public static final String PROP_CACHE_RULE				= "xacml.pip.cache.rule";
+	public static final String PROP_CATEGORY				= "category";
+	public static final String PROP_ATTRIBUTE				= "attribute";
+	public static final String PROP_TTL						= "ttl";
+
+	public static final long DEFAULT_MAXIMUMWEIGHT			= 100000;
+
+	private static class CacheEntry {
+		private final PIPResponse pipResponse;
+		private final long expires;
+		private final boolean cacheable;
+		private final int weight;
+
+		CacheEntry(PIPResponse pipResponseIn, long expiresIn, boolean cacheableIn) {
+			this.pipResponse	= pipResponseIn;
+			this.expires		= expiresIn;
+			this.cacheable		= cacheableIn;
+			int values	= 0;
+			for (Attribute attribute : pipResponseIn.getAttributes()) {
+				values	+= attribute.getValues().size();
+			}
+			this.weight	= 1 + values;
+		}
+	}
+
+	private final Cache<PIPDependencies.Key, CacheEntry> cache;
+	private final Map<List<Identifier>, Long> timeToLives	= new HashMap<>();
+	private final long defaultTimeToLive;
+	private final boolean cacheEmpty;
+	private final PIPDependencies dependencies;
+
+	/**
+	 * Wraps the given <code>PIPFinder</code> in a <code>CachingFinder</code> if the "xacml.pip.cache" property is true.
+	 *
+	 * @param pipFinder the <code>PIPFinder</code> to wrap
+	 * @param properties the <code>Properties</code> with the cache configuration
+	 * @return a new <code>CachingFinder</code> or the given <code>PIPFinder</code> if caching is off
+	 * @throws PIPException if the cache properties are invalid
+	 */
+	public static PIPFinder newInstance(PIPFinder pipFinder, Properties properties) throws PIPException {
+		if (pipFinder == null || ! Boolean.parseBoolean(properties.getProperty(PROP_CACHE, "false"))) {
+			return pipFinder;
+		}
+		return new CachingFinder(pipFinder, properties);
+	}
+
+	/**
+	 * Creates a <code>CachingFinder</code> from the "xacml.pip.cache.*" properties.
+	 *
+	 * @param pipFinder the <code>PIPFinder</code> to wrap
+	 * @param properties the <code>Properties</code> with the cache configuration
+	 * @throws PIPException if the cache properties are invalid
+	 */
+	public CachingFinder(PIPFinder pipFinder, Properties properties) throws PIPException {
+		super(pipFinder);
+		this.dependencies		= new PIPDependencies(pipFinder);
+		long maximumWeight		= getLongProperty(properties, PROP_CACHE_MAXIMUMWEIGHT, DEFAULT_MAXIMUMWEIGHT);
+		this.defaultTimeToLive	= getLongProperty(properties, PROP_CACHE_TTL, 0);
+		this.cacheEmpty			= Boolean.parseBoolean(properties.getProperty(PROP_CACHE_EMPTY, "true"));
+		long maximumTimeToLive	= this.defaultTimeToLive;
+		String rules	= properties.getProperty(PROP_CACHE_RULES);
+		if (rules != null) {
+			for (String ruleId : Splitter.on(',').trimResults().omitEmptyStrings().split(rules)) {
+				String prefix		= PROP_CACHE_RULE + "." + ruleId + ".";
+				String category		= properties.getProperty(prefix + PROP_CATEGORY);
+				String attribute	= properties.getProperty(prefix + PROP_ATTRIBUTE);
+				if (category == null && attribute == null) {
+					throw new PIPException("Cache rule " + ruleId + " needs a " + prefix + PROP_CATEGORY + " or " + prefix + PROP_ATTRIBUTE + " property");
+				}
+				long timeToLive	= getLongProperty(properties, prefix + PROP_TTL, this.defaultTimeToLive);
+				this.timeToLives.put(Arrays.asList(category == null ? null : new IdentifierImpl(category), attribute == null ? null : new IdentifierImpl(attribute)), timeToLive);
+				maximumTimeToLive	= Math.max(maximumTimeToLive, timeToLive);
+			}
+		}
+		CacheBuilder<PIPDependencies.Key, CacheEntry> cacheBuilder	= CacheBuilder.newBuilder()
+				.maximumWeight(maximumWeight)
+				.weigher((PIPDependencies.Key key, CacheEntry entry) -> entry.weight)
+				.recordStats();
+		if (maximumTimeToLive > 0) {
+			cacheBuilder.expireAfterWrite(maximumTimeToLive, TimeUnit.MILLISECONDS);
+		}
+		this.cache	= cacheBuilder.build();
+        logger.info("Caching PIP responses up to weight {} with {} rules, default time to live {} ms", maximumWeight, this.timeToLives.size(), this.defaultTimeToLive);
+	}
+
+	private static long getLongProperty(Properties properties, String property, long defaultValue) throws PIPException {
+		String stringProp	= properties.getProperty(property);
+		if (stringProp == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(stringProp.trim());
+		} catch (NumberFormatException ex) {
+			throw new PIPException("The " + property + " value of '" + stringProp + "' cannot be converted to a number");
+		}
+	}
+
+	/*
+	 * The most specific rule wins: category and attribute, then attribute, then category, then the default
+	 */
+	private long getTimeToLive(PIPRequest pipRequest) {
+		Long timeToLive	= this.timeToLives.get(Arrays.asList(pipRequest.getCategory(), pipRequest.getAttributeId()));
+		if (timeToLive == null) {
+			timeToLive	= this.timeToLives.get(Arrays.asList(null, pipRequest.getAttributeId()));
+		}
+		if (timeToLive == null) {
+			timeToLive	= this.timeToLives.get(Arrays.asList(pipRequest.getCategory(), null));
+		}
+		return (timeToLive == null ? this.defaultTimeToLive : timeToLive);
+	}
+
+	private CacheEntry load(PIPRequest pipRequest, PIPFinder pipFinderRoot, long timeToLive) throws PIPException {
+		return this.newEntry(this.getAttributesWrapped(pipRequest, null, pipFinderRoot), timeToLive);
+	}
+
+	private CacheEntry newEntry(PIPResponse pipResponse, long timeToLive) {
+		boolean cacheable		= pipResponse != null && (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) &&
+								  (this.cacheEmpty || ! pipResponse.getAttributes().isEmpty());
+		return new CacheEntry(pipResponse, System.currentTimeMillis() + timeToLive, cacheable);
+	}
+
+	@Override
+	protected PIPResponse getAttributesInternal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		PIPFinder pipFinderRoot	= (pipFinderParent == null ? this : pipFinderParent);
+		long timeToLive			= this.getTimeToLive(pipRequest);
+		PIPDependencies.Key cacheKey	= (timeToLive > 0 && exclude == null ? this.dependencies.getKey(pipRequest, pipFinderRoot) : null);
+		if (cacheKey == null) {
+			return this.getAttributesWrapped(pipRequest, exclude, pipFinderRoot);
+		}
+		/*
+		 * Only one caller loads a missing key; the others wait for it
+		 */
+		try {
+			CacheEntry cacheEntry	= this.cache.get(cacheKey, () -> this.load(pipRequest, pipFinderRoot, timeToLive));
+			if (cacheEntry.expires <= System.currentTimeMillis()) {
+				this.cache.asMap().remove(cacheKey, cacheEntry);
+				cacheEntry	= this.cache.get(cacheKey, () -> this.load(pipRequest, pipFinderRoot, timeToLive));
+			}
+			if (! cacheEntry.cacheable) {
+				this.cache.asMap().remove(cacheKey, cacheEntry);
+			}
+			return cacheEntry.pipResponse;
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			if (ex.getCause() instanceof PIPException) {
+				throw (PIPException) ex.getCause();
+			}
+			throw new PIPException("Exception loading " + pipRequest, ex.getCause());
+		}
+	}
+
+	/**
+	 * Answers what it can from the cache and asks the wrapped <code>PIPFinder</code> for the rest in one batch call.  Unlike
+	 * single lookups, concurrent batches that miss the same key may each ask the wrapped <code>PIPFinder</code> for it.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		PIPFinder pipFinderRoot	= (pipFinderParent == null ? this : pipFinderParent);
+		Map<PIPRequest, PIPResponse> mapResponses			= new LinkedHashMap<>();
+		Map<PIPRequest, PIPDependencies.Key> mapMisses		= new LinkedHashMap<>();
+		long now	= System.currentTimeMillis();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (mapResponses.containsKey(pipRequest) || mapMisses.containsKey(pipRequest)) {
+				continue;
+			}
+			PIPDependencies.Key cacheKey	= (this.getTimeToLive(pipRequest) > 0 && exclude == null ? this.dependencies.getKey(pipRequest, pipFinderRoot) : null);
+			CacheEntry cacheEntry			= (cacheKey == null ? null : this.cache.getIfPresent(cacheKey));
+			if (cacheEntry != null && cacheEntry.cacheable && cacheEntry.expires > now) {
+				mapResponses.put(pipRequest, cacheEntry.pipResponse);
+			} else {
+				mapMisses.put(pipRequest, cacheKey);
+			}
+		}
+		if (mapMisses.isEmpty()) {
+			return mapResponses;
+		}
+		
+		/*
+		 * Ask for the misses in one call and cache what can be cached
+		 */
+		Map<PIPRequest, PIPResponse> mapResponsesWrapped	= this.getAttributesWrapped(mapMisses.keySet(), exclude, pipFinderRoot);
+		for (Map.Entry<PIPRequest, PIPDependencies.Key> entry : mapMisses.entrySet()) {
+			PIPResponse pipResponse	= mapResponsesWrapped.get(entry.getKey());
+			if (entry.getValue() != null && pipResponse != null) {
+				CacheEntry cacheEntry	= this.newEntry(pipResponse, this.getTimeToLive(entry.getKey()));
+				if (cacheEntry.cacheable) {
+					this.cache.put(entry.getValue(), cacheEntry);
+				}
+			}
+			mapResponses.put(entry.getKey(), pipResponse);
+		}
+		return mapResponses;
+	}
+
+	/**
+	 * Discards every cached response, for instance after the data behind the engines has changed.
+	 */
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	/**
+	 * Gets the hit, miss and load statistics of the cache.
+	 *
+	 * @return the <code>CacheStats</code>
+	 */
+	public CacheStats getStats() {
+		return this.cache.stats();
+	}
+
+	/**
+	 * Gets the number of cached responses.
+	 *
+	 * @return the approximate number of entries in the cache
+	 */
+	public long size() {
+		return this.cache.size();
+	}
+
+	@Override
+	public Collection<PIPEngine> getPIPEngines() {
+		PIPFinder wrappedFinder	= this.getWrappedFinder();
+		return (wrappedFinder == null ? Collections.emptyList() : wrappedFinder.getPIPEngines());
+	}
+
+	@Override
+	public void shutdown() {
+		this.cache.invalidateAll();
+		PIPFinder wrappedFinder	= this.getWrappedFinder();
+		if (wrappedFinder != null) {
+			wrappedFinder.shutdown();
+		}
+	}
+}
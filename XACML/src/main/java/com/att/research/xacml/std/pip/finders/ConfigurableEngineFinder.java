@@ -26,6 +26,8 @@ import com.att.research.xacml.util.AttributeUtils;
 public class ConfigurableEngineFinder extends EngineFinder {
 	private static final String	PROP_PIP_ENGINES	= "xacml.pip.engines";
 	private static final String	CLASSNAME			= ".classname";
+	public static final String	PROP_FINDER_THREADS	= "xacml.pip.finder.threads";
+	public static final String	PROP_FINDER_TIMEOUT	= "xacml.pip.finder.timeout";
 	
 	private static final Logger logger	= LoggerFactory.getLogger(ConfigurableEngineFinder.class);
 	
@@ -94,12 +96,24 @@ public class ConfigurableEngineFinder extends EngineFinder {
 	
 	/**
 	 * Gets the "com.att.research.xacml.pip.engines" property from the given <code>Properties</code> to find
-	 * the list of PIP engines that should be created, configured, and registered.
+	 * the list of PIP engines that should be created, configured, and registered.  The optional "xacml.pip.finder.threads"
+	 * and "xacml.pip.finder.timeout" properties set how many engines are called at once and how many milliseconds to wait
+	 * for each.
 	 * 
 	 * @param properties the <code>Properties</code> containing the engine configurations
 	 * @throws PIPException if there is an error creating and configuring the engines
 	 */
 	public void configure(Properties properties) throws PIPException {
+		/*
+		 * How engines are called
+		 */
+		try {
+			this.setDispatch(Integer.parseInt(properties.getProperty(PROP_FINDER_THREADS, Integer.toString(DEFAULT_MAXIMUM_THREADS)).trim()),
+							 Long.parseLong(properties.getProperty(PROP_FINDER_TIMEOUT, "0").trim()));
+		} catch (NumberFormatException ex) {
+			throw new PIPException("Invalid " + PROP_FINDER_THREADS + " or " + PROP_FINDER_TIMEOUT + " property: " + ex.getLocalizedMessage());
+		}
+		
 		String engineIds	= properties.getProperty(PROP_PIP_ENGINES);
 		if (engineIds == null || engineIds.length() == 0) {
 			return;
@@ -8,10 +8,27 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Identifier;
 import com.att.research.xacml.api.Status;
 import com.att.research.xacml.api.pip.PIPEngine;
 import com.att.research.xacml.api.pip.PIPException;
@@ -27,12 +44,109 @@ import com.att.research.xacml.std.pip.StdPIPResponse;
  * EngineFinder implements the {@link com.att.research.xacml.api.pip.PIPFinder} interface by maintaining a simple list of
  * registered {@link com.att.research.xacml.api.pip.PIPEngine} objects.
  * 
+ * Each <code>PIPRequest</code> is only sent to the engines whose <code>attributesProvided()</code> include its category
+ * and attribute id, plus any engines that do not say what they provide.  The routing table is built when engines are
+ * registered.  When more than one engine can answer a request they are called concurrently on a bounded pool of
+ * threads and their attributes are merged in registration order.  If a timeout is set every engine is called on the
+ * pool and one that does not answer in time counts as a processing error.  If no pool thread is free the engine is
+ * called on the requesting thread instead, so nested requests from engines can never starve.
+ * 
+ * When asked for several <code>PIPRequest</code>s at once each engine gets all of those routed to it in a single call, so
+ * that engines able to answer them with one lookup can do so.
+ * 
  * @author car
  * @version $Revision: 1.1 $
  */
 public class EngineFinder implements PIPFinder {
+	private static final Logger logger	= LoggerFactory.getLogger(EngineFinder.class);
+	
+	public static final int DEFAULT_MAXIMUM_THREADS	= 4;
+	
+	private static final AtomicInteger finderCount	= new AtomicInteger();
+	
     private Map<String, List<PIPEngine>> pipEngines = new HashMap<>();
-    private boolean shutdown = false;
+    private List<PIPEngine> pipEnginesRegistered = new ArrayList<>();
+    private volatile Routing routing = new Routing(Collections.emptyList());
+    private int maximumThreads = DEFAULT_MAXIMUM_THREADS;
+    private long timeout = 0;
+    private ExecutorService executorService;
+    private volatile boolean shutdown = false;
+    
+    /**
+     * The category and attribute id a <code>PIPRequest</code> is routed on.  Data type and issuer are left to the
+     * engines and to {@link com.att.research.xacml.std.pip.StdPIPResponse#getMatchingResponse(PIPRequest, PIPResponse)}.
+     */
+    private static class RouteKey {
+    	private final Identifier category;
+    	private final Identifier attributeId;
+    	
+    	RouteKey(PIPRequest pipRequest) {
+    		this.category		= pipRequest.getCategory();
+    		this.attributeId	= pipRequest.getAttributeId();
+    	}
+    	
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.category, this.attributeId);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RouteKey)) {
+				return false;
+			}
+			RouteKey routeKey	= (RouteKey) obj;
+			return Objects.equals(this.category, routeKey.category) && Objects.equals(this.attributeId, routeKey.attributeId);
+		}
+    }
+    
+    /**
+     * An immutable snapshot of which engines to call for each attribute.  It is replaced as a whole when an engine is
+     * registered so requests never see it half built.
+     */
+    private static class Routing {
+    	private final Map<RouteKey, List<PIPEngine>> routes	= new HashMap<>();
+    	private final List<PIPEngine> unrouted				= new ArrayList<>();
+    	
+    	Routing(List<PIPEngine> pipEnginesIn) {
+    		//
+    		// What does each engine provide? Engines that do not say are asked about everything.
+    		//
+    		Map<PIPEngine, Set<RouteKey>> provided	= new HashMap<>();
+    		Set<RouteKey> routeKeys					= new HashSet<>();
+    		for (PIPEngine pipEngine : pipEnginesIn) {
+    			Collection<PIPRequest> attributesProvided	= pipEngine.attributesProvided();
+    			if (attributesProvided == null || attributesProvided.isEmpty()) {
+    				this.unrouted.add(pipEngine);
+    				continue;
+    			}
+    			Set<RouteKey> engineKeys	= new HashSet<>();
+    			for (PIPRequest pipRequest : attributesProvided) {
+    				engineKeys.add(new RouteKey(pipRequest));
+    			}
+    			provided.put(pipEngine, engineKeys);
+    			routeKeys.addAll(engineKeys);
+    		}
+    		//
+    		// Each route lists its engines in registration order
+    		//
+    		for (RouteKey routeKey : routeKeys) {
+    			List<PIPEngine> engines	= new ArrayList<>();
+    			for (PIPEngine pipEngine : pipEnginesIn) {
+    				Set<RouteKey> engineKeys	= provided.get(pipEngine);
+    				if (engineKeys == null || engineKeys.contains(routeKey)) {
+    					engines.add(pipEngine);
+    				}
+    			}
+    			this.routes.put(routeKey, Collections.unmodifiableList(engines));
+    		}
+    	}
+    	
+    	List<PIPEngine> getEngines(PIPRequest pipRequest) {
+    		List<PIPEngine> engines	= this.routes.get(new RouteKey(pipRequest));
+    		return (engines == null ? this.unrouted : engines);
+    	}
+    }
 
 	/**
 	 * Creates an empty <code>EngineFinder</code>
@@ -41,12 +155,24 @@ public class EngineFinder implements PIPFinder {
         super();
 	}
 	
+	/**
+	 * Sets how many engines may be called at once and how long to wait for each of them.  Must be called before the
+	 * first request.
+	 * 
+	 * @param maximumThreadsIn the maximum number of pool threads calling engines, 0 or 1 to call engines one at a time
+	 * @param timeoutIn the number of milliseconds to wait for an engine called on a pool thread, 0 to wait forever
+	 */
+	protected void setDispatch(int maximumThreadsIn, long timeoutIn) {
+		this.maximumThreads	= maximumThreadsIn;
+		this.timeout		= timeoutIn;
+	}
+	
 	/**
 	 * Registers a new <code>PIPEngine</code> with this <code>EngineFinder</code>.
 	 * 
 	 * @param pipEngine the <code>PIPEngine</code> to register
 	 */
-	public void register(PIPEngine pipEngine) {
+	public synchronized void register(PIPEngine pipEngine) {
         if (this.shutdown) {
             return;
         }
@@ -57,35 +183,119 @@ public class EngineFinder implements PIPFinder {
 				this.pipEngines.put(pipEngine.getName(), pipEnginesForName);
 			}
 			pipEnginesForName.add(pipEngine);
+			this.pipEnginesRegistered.add(pipEngine);
+			this.routing	= new Routing(this.pipEnginesRegistered);
 		}
 	}
 	
-	@Override
-	public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
-        if (this.shutdown) {
-            throw new PIPException("Engine is shutdown");
+	/*
+	 * The pool is only created once two engines are asked the same thing
+	 */
+	private synchronized ExecutorService getExecutorService() {
+		if (this.executorService == null && this.maximumThreads > 1 && !this.shutdown) {
+			int finderNumber			= finderCount.incrementAndGet();
+			AtomicInteger threadCount	= new AtomicInteger();
+			this.executorService	= new ThreadPoolExecutor(0, this.maximumThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), 
+					runnable -> {
+						Thread thread	= new Thread(runnable, "EngineFinder-" + finderNumber + "-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					},
+					(runnable, executor) -> runnable.run());
+		}
+		return this.executorService;
+	}
+	
+	private static PIPResponse callEngine(PIPEngine pipEngine, PIPRequest pipRequest, PIPFinder pipFinderParent) {
+		try {
+			return pipEngine.getAttributes(pipRequest, pipFinderParent);
+		} catch (Exception e) {
+			logger.debug("Engine {} failed: {}", pipEngine.getName(), e.getLocalizedMessage());
+			return new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR));
+		}
+	}
+	
+	private static Map<PIPRequest, PIPResponse> callEngine(PIPEngine pipEngine, List<PIPRequest> pipRequests, PIPFinder pipFinderParent) {
+		if (pipRequests.size() == 1) {
+			return Collections.singletonMap(pipRequests.get(0), callEngine(pipEngine, pipRequests.get(0), pipFinderParent));
+		}
+		try {
+			return pipEngine.getAttributes(pipRequests, pipFinderParent);
+		} catch (Exception e) {
+			logger.debug("Engine {} failed: {}", pipEngine.getName(), e.getLocalizedMessage());
+			return failed(pipRequests, new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR)));
+		}
+	}
+	
+	private static Map<PIPRequest, PIPResponse> failed(List<PIPRequest> pipRequests, PIPResponse pipResponse) {
+		Map<PIPRequest, PIPResponse> mapResponses	= new HashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			mapResponses.put(pipRequest, pipResponse);
+		}
+		return mapResponses;
+	}
+	
+	private <T> T getFutureResponse(PIPEngine pipEngine, Future<T> future, long deadline, Function<PIPResponse, T> failed) {
+		try {
+			if (this.timeout > 0) {
+				return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			return future.get();
+		} catch (TimeoutException e) {
+			future.cancel(true);
+            logger.warn("Engine {} did not respond within {} ms", pipEngine.getName(), this.timeout);
+			return failed.apply(new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "PIP engine " + pipEngine.getName() + " timed out")));
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			return failed.apply(new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR)));
+		} catch (ExecutionException e) {
+			return failed.apply(new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR)));
+		}
+	}
+	
+	/*
+	 * Calls each of the engines on the pool. Without a timeout the first one is called on this thread, which
+	 * saves a hand-off when it is the only one.
+	 */
+	private <T> List<T> callEngines(List<PIPEngine> listPIPEngines, Function<PIPEngine, T> call, BiFunction<PIPEngine, PIPResponse, T> failed) {
+        List<T> listResponses		= new ArrayList<>(listPIPEngines.size());
+        ExecutorService executor	= (listPIPEngines.size() > 1 || (this.timeout > 0 && listPIPEngines.size() > 0) ? this.getExecutorService() : null);
+        if (executor == null) {
+        	for (PIPEngine pipEngine : listPIPEngines) {
+        		listResponses.add(call.apply(pipEngine));
+        	}
+        } else {
+        	long deadline	= System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        	int first		= (this.timeout > 0 ? 0 : 1);
+        	List<Future<T>> futures	= new ArrayList<>();
+        	for (int i = first ; i < listPIPEngines.size() ; i++) {
+        		PIPEngine pipEngine	= listPIPEngines.get(i);
+        		futures.add(executor.submit(() -> call.apply(pipEngine)));
+        	}
+        	if (first > 0) {
+        		listResponses.add(call.apply(listPIPEngines.get(0)));
+        	}
+        	for (int i = first ; i < listPIPEngines.size() ; i++) {
+        		PIPEngine pipEngine	= listPIPEngines.get(i);
+        		listResponses.add(this.getFutureResponse(pipEngine, futures.get(i - first), deadline, pipResponse -> failed.apply(pipEngine, pipResponse)));
+        	}
         }
+        return listResponses;
+	}
+	
+	/*
+	 * Merges the attributes of the engines in order, or gives the first error if none came back
+	 */
+	private static PIPResponse merge(List<PIPResponse> pipResponseEngines) {
 		StdMutablePIPResponse pipResponse	= new StdMutablePIPResponse();
 		Status firstErrorStatus	= null;
-		Iterator<List<PIPEngine>> iterPIPEngineLists	= this.pipEngines.values().iterator();
-		while (iterPIPEngineLists.hasNext()) {
-			List<PIPEngine> listPIPEngines	= iterPIPEngineLists.next();
-			for (PIPEngine pipEngine : listPIPEngines) {
-				if (pipEngine != exclude) {
-					PIPResponse pipResponseEngine = null;
-					try {
-						pipResponseEngine = pipEngine.getAttributes(pipRequest, pipFinderParent);
-					} catch (Exception e) {
-						pipResponseEngine = new StdPIPResponse(new
-								StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR));
-					}
-					if (pipResponseEngine != null) {
-						if (pipResponseEngine.getStatus() == null || pipResponseEngine.getStatus().isOk()) {
-							pipResponse.addAttributes(pipResponseEngine.getAttributes());
-						} else if (firstErrorStatus == null) {
-							firstErrorStatus = pipResponseEngine.getStatus();
-						}
-					}
+		for (PIPResponse pipResponseEngine : pipResponseEngines) {
+			if (pipResponseEngine != null) {
+				if (pipResponseEngine.getStatus() == null || pipResponseEngine.getStatus().isOk()) {
+					pipResponse.addAttributes(pipResponseEngine.getAttributes());
+				} else if (firstErrorStatus == null) {
+					firstErrorStatus = pipResponseEngine.getStatus();
 				}
 			}
 		}
@@ -96,6 +306,81 @@ public class EngineFinder implements PIPFinder {
 		return new StdPIPResponse(pipResponse);
 	}
 	
+	private static List<PIPEngine> getEngines(Routing thisRouting, PIPRequest pipRequest, PIPEngine exclude) {
+        List<PIPEngine> listPIPEngines	= new ArrayList<>();
+        for (PIPEngine pipEngine : thisRouting.getEngines(pipRequest)) {
+        	if (pipEngine != exclude) {
+        		listPIPEngines.add(pipEngine);
+        	}
+        }
+        return listPIPEngines;
+	}
+	
+	@Override
+	public PIPResponse getAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+        if (this.shutdown) {
+            throw new PIPException("Engine is shutdown");
+        }
+        //
+        // Which engines can answer?
+        //
+        List<PIPEngine> listPIPEngines	= getEngines(this.routing, pipRequest, exclude);
+        return merge(this.callEngines(listPIPEngines, 
+        		pipEngine -> callEngine(pipEngine, pipRequest, pipFinderParent), 
+        		(pipEngine, pipResponse) -> pipResponse));
+	}
+	
+	/**
+	 * Sends each engine all of the <code>PIPRequest</code>s routed to it in one call to
+	 * {@link com.att.research.xacml.api.pip.PIPEngine#getAttributes(Collection, PIPFinder)}, calling the engines concurrently as
+	 * for a single <code>PIPRequest</code>, and merges the results of each <code>PIPRequest</code> in registration order.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+        if (this.shutdown) {
+            throw new PIPException("Engine is shutdown");
+        }
+        //
+        // Which requests does each engine get?
+        //
+        Routing thisRouting								= this.routing;
+        Map<PIPRequest, List<PIPEngine>> mapRequestEngines	= new LinkedHashMap<>();
+        Map<PIPEngine, List<PIPRequest>> mapEngineRequests	= new LinkedHashMap<>();
+        for (PIPRequest pipRequest : pipRequests) {
+        	if (!mapRequestEngines.containsKey(pipRequest)) {
+        		List<PIPEngine> listPIPEngines	= getEngines(thisRouting, pipRequest, exclude);
+        		mapRequestEngines.put(pipRequest, listPIPEngines);
+        		for (PIPEngine pipEngine : listPIPEngines) {
+        			mapEngineRequests.computeIfAbsent(pipEngine, key -> new ArrayList<>()).add(pipRequest);
+        		}
+        	}
+        }
+        //
+        // Ask each engine once
+        //
+        List<PIPEngine> listPIPEngines						= new ArrayList<>(mapEngineRequests.keySet());
+        List<Map<PIPRequest, PIPResponse>> listResponses	= this.callEngines(listPIPEngines, 
+        		pipEngine -> callEngine(pipEngine, mapEngineRequests.get(pipEngine), pipFinderParent), 
+        		(pipEngine, pipResponse) -> failed(mapEngineRequests.get(pipEngine), pipResponse));
+        Map<PIPEngine, Map<PIPRequest, PIPResponse>> mapEngineResponses	= new HashMap<>();
+        for (int i = 0 ; i < listPIPEngines.size() ; i++) {
+        	mapEngineResponses.put(listPIPEngines.get(i), listResponses.get(i));
+        }
+        //
+        // Merge the results for each request
+        //
+        Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+        for (Map.Entry<PIPRequest, List<PIPEngine>> entry : mapRequestEngines.entrySet()) {
+        	List<PIPResponse> pipResponseEngines	= new ArrayList<>(entry.getValue().size());
+        	for (PIPEngine pipEngine : entry.getValue()) {
+        		Map<PIPRequest, PIPResponse> mapEngineResponse	= mapEngineResponses.get(pipEngine);
+        		pipResponseEngines.add(mapEngineResponse == null ? null : mapEngineResponse.get(entry.getKey()));
+        	}
+        	mapResponses.put(entry.getKey(), merge(pipResponseEngines));
+        }
+        return mapResponses;
+	}
+	
 	@Override
 	public PIPResponse getMatchingAttributes(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
 		return StdPIPResponse.getMatchingResponse(pipRequest, this.getAttributes(pipRequest, exclude, pipFinderParent));
@@ -123,7 +408,10 @@ public class EngineFinder implements PIPFinder {
 	}
 
     @Override
-    public void shutdown() {
+    public synchronized void shutdown() {
         this.shutdown = true;
+        if (this.executorService != null) {
+        	this.executorService.shutdownNow();
+        }
     }
 }
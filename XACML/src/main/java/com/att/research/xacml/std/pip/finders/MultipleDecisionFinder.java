@@ -0,0 +1,154 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.pip.StdPIPResponse;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * MultipleDecisionFinder implements the {@link com.att.research.xacml.api.pip.PIPFinder} interface by wrapping the PDP's
+ * <code>PIPFinder</code> with a store of its responses that lasts for one multiple decision request.  Each individual decision
+ * has its own {@link com.att.research.xacml.std.pip.finders.RequestFinder} in front of the same <code>MultipleDecisionFinder</code>,
+ * so that an attribute the individual decisions have in common, such as the roles of the one subject asking about many resources,
+ * is only fetched from the engines once.
+ *
+ * Responses are keyed as described in {@link PIPDependencies}, so individual decisions only share a response when the
+ * attributes it depends on have the same values.  There is no time to live and no bound, since the store is discarded
+ * with the request.  Concurrent individual decisions asking for the same key wait for a single call to the wrapped
+ * <code>PIPFinder</code>, and responses with an error status are not kept.  A batch of <code>PIPRequest</code>s is answered
+ * from the stored responses where it can be, and the rest are sent to the wrapped <code>PIPFinder</code> in one batch call.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class MultipleDecisionFinder extends WrappingFinder {
+	private final PIPDependencies dependencies;
+	private final Cache<PIPDependencies.Key, PIPResponse> responses	= CacheBuilder.newBuilder().recordStats().build();
+
+	/**
+	 * Creates a <code>MultipleDecisionFinder</code> for one multiple decision request.
+	 *
+	 * @param pipFinder the <code>PIPFinder</code> shared by all requests
+	 * @param dependenciesIn the <code>PIPDependencies</code> for the engines of the shared <code>PIPFinder</code>
+	 */
+	public MultipleDecisionFinder(PIPFinder pipFinder, PIPDependencies dependenciesIn) {
+		super(pipFinder);
+		this.dependencies	= dependenciesIn;
+	}
+
+	@Override
+	protected PIPResponse getAttributesInternal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		PIPFinder pipFinderRoot	= (pipFinderParent == null ? this : pipFinderParent);
+		PIPDependencies.Key key	= (exclude == null ? this.dependencies.getKey(pipRequest, pipFinderRoot) : null);
+		if (key == null) {
+			return this.getAttributesWrapped(pipRequest, exclude, pipFinderRoot);
+		}
+		try {
+			PIPResponse pipResponse	= this.responses.get(key, () -> {
+				PIPResponse pipResponseWrapped	= this.getAttributesWrapped(pipRequest, null, pipFinderRoot);
+				return (pipResponseWrapped == null ? StdPIPResponse.PIP_RESPONSE_EMPTY : pipResponseWrapped);
+			});
+			if (pipResponse.getStatus() != null && ! pipResponse.getStatus().isOk()) {
+				this.responses.asMap().remove(key, pipResponse);
+			}
+			return pipResponse;
+		} catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+			if (ex.getCause() instanceof PIPException) {
+				throw (PIPException) ex.getCause();
+			}
+			throw new PIPException("Exception getting " + pipRequest, ex.getCause());
+		}
+	}
+
+	/**
+	 * Answers what it can from the stored responses and asks the wrapped <code>PIPFinder</code> for the rest in one batch call.
+	 * Unlike single lookups, concurrent batches that miss the same key may each ask the wrapped <code>PIPFinder</code> for it.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		PIPFinder pipFinderRoot	= (pipFinderParent == null ? this : pipFinderParent);
+		Map<PIPRequest, PIPResponse> mapResponses			= new LinkedHashMap<>();
+		Map<PIPRequest, PIPDependencies.Key> mapMisses		= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (mapResponses.containsKey(pipRequest) || mapMisses.containsKey(pipRequest)) {
+				continue;
+			}
+			PIPDependencies.Key key	= (exclude == null ? this.dependencies.getKey(pipRequest, pipFinderRoot) : null);
+			PIPResponse pipResponse	= (key == null ? null : this.responses.getIfPresent(key));
+			if (pipResponse != null) {
+				mapResponses.put(pipRequest, pipResponse);
+			} else {
+				mapMisses.put(pipRequest, key);
+			}
+		}
+		if (mapMisses.isEmpty()) {
+			return mapResponses;
+		}
+		
+		/*
+		 * Ask for the misses in one call and keep the responses without an error
+		 */
+		Map<PIPRequest, PIPResponse> mapResponsesWrapped	= this.getAttributesWrapped(mapMisses.keySet(), exclude, pipFinderRoot);
+		for (Map.Entry<PIPRequest, PIPDependencies.Key> entry : mapMisses.entrySet()) {
+			PIPResponse pipResponse	= mapResponsesWrapped.get(entry.getKey());
+			if (pipResponse == null) {
+				pipResponse	= StdPIPResponse.PIP_RESPONSE_EMPTY;
+			}
+			if (entry.getValue() != null && (pipResponse.getStatus() == null || pipResponse.getStatus().isOk())) {
+				this.responses.asMap().putIfAbsent(entry.getValue(), pipResponse);
+			}
+			mapResponses.put(entry.getKey(), pipResponse);
+		}
+		return mapResponses;
+	}
+
+	/**
+	 * Gets the hit and miss statistics of the stored responses.
+	 *
+	 * @return the <code>CacheStats</code>
+	 */
+	public CacheStats getStats() {
+		return this.responses.stats();
+	}
+
+	/**
+	 * Gets the number of stored responses.
+	 *
+	 * @return the number of stored responses
+	 */
+	public long size() {
+		return this.responses.size();
+	}
+
+	@Override
+	public Collection<PIPEngine> getPIPEngines() {
+		PIPFinder wrappedFinder	= this.getWrappedFinder();
+		return (wrappedFinder == null ? Collections.emptyList() : wrappedFinder.getPIPEngines());
+	}
+
+	/**
+	 * Discards the stored responses.  The wrapped <code>PIPFinder</code> is shared, so it is left running.
+	 */
+	@Override
+	public void shutdown() {
+		this.responses.invalidateAll();
+	}
+}
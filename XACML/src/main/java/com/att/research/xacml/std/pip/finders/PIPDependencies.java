@@ -0,0 +1,151 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+
+/**
+ * PIPDependencies works out what the response of a <code>PIPFinder</code> to a {@link com.att.research.xacml.api.pip.PIPRequest}
+ * depends on, so that responses can be stored and reused.  What a <code>PIPEngine</code> returns usually depends on other
+ * attributes, such as the subject id it looks up, so a {@link PIPDependencies.Key} is the <code>PIPRequest</code> together with
+ * the current values of every attribute that the engines able to answer it list in <code>attributesRequired()</code>.
+ * Attributes that may be answered by an engine that does not list what it provides have no key, because their inputs cannot
+ * be known.
+ *
+ * @author car
+ * @version $Revision$
+ */
+public class PIPDependencies {
+	private static final Logger logger	= LoggerFactory.getLogger(PIPDependencies.class);
+
+	/**
+	 * A <code>PIPRequest</code> and the values of the attributes its engines depend on.
+	 */
+	public static final class Key {
+		private final PIPRequest pipRequest;
+		private final List<Set<AttributeValue<?>>> parameters;
+		private final int hashCode;
+
+		Key(PIPRequest pipRequestIn, List<Set<AttributeValue<?>>> parametersIn) {
+			this.pipRequest	= pipRequestIn;
+			this.parameters	= parametersIn;
+			this.hashCode	= Objects.hash(pipRequestIn, parametersIn);
+		}
+
+		public PIPRequest getPIPRequest() {
+			return this.pipRequest;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key	= (Key) obj;
+			return this.pipRequest.equals(key.pipRequest) && this.parameters.equals(key.parameters);
+		}
+	}
+
+	private final PIPFinder pipFinder;
+	private final Map<List<Identifier>, Optional<List<PIPRequest>>> mapRequired	= new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a <code>PIPDependencies</code> for the engines of the given <code>PIPFinder</code>.
+	 *
+	 * @param pipFinderIn the <code>PIPFinder</code> whose responses are keyed
+	 */
+	public PIPDependencies(PIPFinder pipFinderIn) {
+		this.pipFinder	= pipFinderIn;
+	}
+
+	/**
+	 * Gets the attributes the engines that may answer the given <code>PIPRequest</code> depend on.
+	 *
+	 * @param pipRequest the <code>PIPRequest</code>
+	 * @return the <code>PIPRequest</code>s for the attributes the response depends on, or empty if they cannot be known
+	 */
+	public Optional<List<PIPRequest>> getRequired(PIPRequest pipRequest) {
+		return this.mapRequired.computeIfAbsent(Arrays.asList(pipRequest.getCategory(), pipRequest.getAttributeId()), key -> {
+			Set<PIPRequest> required	= new HashSet<>();
+			for (PIPEngine pipEngine : this.pipFinder.getPIPEngines()) {
+				Collection<PIPRequest> provided	= pipEngine.attributesProvided();
+				if (provided == null || provided.isEmpty()) {
+                    logger.debug("No key for {}, engine {} does not list what it provides", pipRequest, pipEngine.getName());
+					return Optional.empty();
+				}
+				for (PIPRequest pipRequestProvided : provided) {
+					if (Objects.equals(pipRequest.getCategory(), pipRequestProvided.getCategory()) &&
+						Objects.equals(pipRequest.getAttributeId(), pipRequestProvided.getAttributeId())) {
+						Collection<PIPRequest> engineRequired	= pipEngine.attributesRequired();
+						if (engineRequired != null) {
+							required.addAll(engineRequired);
+						}
+						break;
+					}
+				}
+			}
+			List<PIPRequest> listRequired	= new ArrayList<>(required);
+			listRequired.sort((r1, r2) -> r1.toString().compareTo(r2.toString()));
+			return Optional.of(Collections.unmodifiableList(listRequired));
+		});
+	}
+
+	/**
+	 * Gets the <code>Key</code> for the given <code>PIPRequest</code> from the current values of the attributes it depends on,
+	 * which are looked up from the given root <code>PIPFinder</code>.
+	 *
+	 * @param pipRequest the <code>PIPRequest</code>
+	 * @param pipFinderRoot the <code>PIPFinder</code> for the current decision
+	 * @return the <code>Key</code> or null if the response cannot be keyed
+	 * @throws PIPException if there is an error getting the attributes the response depends on
+	 */
+	public Key getKey(PIPRequest pipRequest, PIPFinder pipFinderRoot) throws PIPException {
+		Optional<List<PIPRequest>> required	= this.getRequired(pipRequest);
+		if (! required.isPresent()) {
+			return null;
+		}
+		List<Set<AttributeValue<?>>> parameters	= new ArrayList<>();
+		for (PIPRequest pipRequestRequired : required.get()) {
+			PIPResponse pipResponseRequired	= pipFinderRoot.getMatchingAttributes(pipRequestRequired, null);
+			if (pipResponseRequired.getStatus() != null && ! pipResponseRequired.getStatus().isOk()) {
+				return null;
+			}
+			Set<AttributeValue<?>> values	= new HashSet<>();
+			for (Attribute attribute : pipResponseRequired.getAttributes()) {
+				values.addAll(attribute.getValues());
+			}
+			parameters.add(values);
+		}
+		return new Key(pipRequest, parameters);
+	}
+}
@@ -8,9 +8,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.att.research.xacml.api.Status;
 import com.att.research.xacml.api.XACML3;
@@ -29,13 +31,22 @@ import com.att.research.xacml.std.pip.engines.RequestEngine;
  * When attributes are requested, the
  * <code>RequestEngine</code> is searched first, followed by the <code>EnvironmentEngine</code> and if no results are found, the wrapped <code>PIPFinder</code> is searched.
  * 
+ * The <code>PIPRequest</code>s that the <code>RequestEngine</code> could not answer are remembered, so a caller can tell whether
+ * what was decided depends on anything but the request itself.  Attributes fetched through <code>prefetchAttributes</code> are
+ * cached the same way but only remembered once they are asked for again.
+ * 
+ * A <code>RequestFinder</code> may be asked for attributes from more than one thread at a time: by the engines an
+ * {@link com.att.research.xacml.std.pip.finders.EngineFinder} calls concurrently, which find their parameters through it, and
+ * when attributes are fetched ahead of the evaluation that needs them.
+ * 
  * @author car
  * @version $Revision: 1.3 $
  */
 public class RequestFinder extends WrappingFinder {
 	private RequestEngine requestEngine;
 	private EnvironmentEngine environmentEngine;
-    private Map<PIPRequest, PIPResponse> mapCache = new HashMap<>();
+    private Map<PIPRequest, PIPResponse> mapCache = new ConcurrentHashMap<>();
+    private final Set<PIPRequest> attributesFetched = ConcurrentHashMap.newKeySet();
     private boolean shutdown = false;
 	
 	protected RequestEngine getRequestEngine() {
@@ -52,8 +63,12 @@ public class RequestFinder extends WrappingFinder {
 		this.environmentEngine	= new EnvironmentEngine(new Date());
 	}
 	
-	@Override
-	protected PIPResponse getAttributesInternal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderRoot) throws PIPException {
+	/*
+	 * Looks in the RequestEngine, the EnvironmentEngine and the cache.  Returns a non-empty response if one of them
+	 * answered, otherwise a response with the first error status or null if there was none.  Unless the request is being
+	 * prefetched, one the RequestEngine did not answer is remembered as fetched.
+	 */
+	private PIPResponse getAttributesLocal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderRoot, boolean prefetch) throws PIPException {
 		/*
 		 * First try the RequestEngine
 		 */
@@ -75,6 +90,10 @@ public class RequestFinder extends WrappingFinder {
 			}
 		}
 		
+		if (!prefetch) {
+			this.attributesFetched.add(pipRequest);
+		}
+		
 		/*
 		 * Next try the EnvironmentEngine if no issuer has been specified
 		 */
@@ -99,33 +118,38 @@ public class RequestFinder extends WrappingFinder {
 		/*
 		 * Try the cache
 		 */
-		if (this.mapCache.containsKey(pipRequest)) {
-			return this.mapCache.get(pipRequest);
+		PIPResponse pipResponseCached	= this.mapCache.get(pipRequest);
+		if (pipResponseCached != null) {
+			return pipResponseCached;
 		}
-		
-		/*
-		 * Delegate to the wrapped Finder
-		 */
-		PIPFinder thisWrappedFinder	= this.getWrappedFinder();
-		if (thisWrappedFinder != null) {
-			pipResponse	= thisWrappedFinder.getAttributes(pipRequest, exclude, (pipFinderRoot == null ? this : pipFinderRoot));
-			if (pipResponse != null) {
-				if (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) {
-                    if (!pipResponse.getAttributes().isEmpty()) {
-						/*
-						 * Cache all of the returned attributes
-						 */
-						Map<PIPRequest,PIPResponse> mapResponses	= StdPIPResponse.splitResponse(pipResponse);
-						if (mapResponses != null && mapResponses.size() > 0) {
-							for (PIPRequest pipRequestSplit : mapResponses.keySet()) {
-								this.mapCache.put(pipRequestSplit, mapResponses.get(pipRequestSplit));
-							}
+		return (status == null ? null : new StdPIPResponse(status));
+	}
+	
+	private static boolean isAnswered(PIPResponse pipResponse) {
+		return pipResponse != null && (pipResponse.getStatus() == null || pipResponse.getStatus().isOk());
+	}
+	
+	/*
+	 * Caches what the wrapped Finder returned, or falls back on the error from getAttributesLocal
+	 */
+	private PIPResponse cacheWrappedResponse(PIPResponse pipResponseLocal, PIPResponse pipResponse) throws PIPException {
+		Status status	= (pipResponseLocal == null ? null : pipResponseLocal.getStatus());
+		if (pipResponse != null) {
+			if (pipResponse.getStatus() == null || pipResponse.getStatus().isOk()) {
+                if (!pipResponse.getAttributes().isEmpty()) {
+					/*
+					 * Cache all of the returned attributes
+					 */
+					Map<PIPRequest,PIPResponse> mapResponses	= StdPIPResponse.splitResponse(pipResponse);
+					if (mapResponses != null && mapResponses.size() > 0) {
+						for (PIPRequest pipRequestSplit : mapResponses.keySet()) {
+							this.mapCache.put(pipRequestSplit, mapResponses.get(pipRequestSplit));
 						}
-						return pipResponse;
 					}
-				} else if (status == null || status.isOk()) {
-					status	= pipResponse.getStatus();
+					return pipResponse;
 				}
+			} else if (status == null || status.isOk()) {
+				status	= pipResponse.getStatus();
 			}
 		}
 		
@@ -140,6 +164,87 @@ public class RequestFinder extends WrappingFinder {
 			return StdPIPResponse.PIP_RESPONSE_EMPTY;
 		}
 	}
+	
+	@Override
+	protected PIPResponse getAttributesInternal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderRoot) throws PIPException {
+		PIPResponse pipResponseLocal	= this.getAttributesLocal(pipRequest, exclude, pipFinderRoot, false);
+		if (isAnswered(pipResponseLocal)) {
+			return pipResponseLocal;
+		}
+		
+		/*
+		 * Delegate to the wrapped Finder
+		 */
+		PIPFinder thisWrappedFinder	= this.getWrappedFinder();
+		PIPResponse pipResponse		= null;
+		if (thisWrappedFinder != null) {
+			pipResponse	= thisWrappedFinder.getAttributes(pipRequest, exclude, (pipFinderRoot == null ? this : pipFinderRoot));
+		}
+		return this.cacheWrappedResponse(pipResponseLocal, pipResponse);
+	}
+	
+	/**
+	 * Answers what it can from the request, the environment and the cache, and asks the wrapped <code>PIPFinder</code> for the rest
+	 * in one call.  Everything the wrapped <code>PIPFinder</code> returns is cached per attribute as for a single <code>PIPRequest</code>.
+	 */
+	@Override
+	public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderRoot) throws PIPException {
+		return this.getAttributes(pipRequests, exclude, pipFinderRoot, false);
+	}
+	
+	/**
+	 * Fetches the given <code>PIPRequest</code>s ahead of an evaluation that may need them, caching them as
+	 * {@link #getAttributes(Collection, PIPEngine, PIPFinder)} does.  They are not added to {@link #getAttributesFetched()}
+	 * unless the evaluation asks for them, so attributes it never gets to do not count against what was decided.
+	 * 
+	 * @param pipRequests the <code>PIPRequest</code>s to fetch
+	 * @throws PIPException if there is an error fetching them
+	 */
+	public void prefetchAttributes(Collection<PIPRequest> pipRequests) throws PIPException {
+		this.getAttributes(pipRequests, null, null, true);
+	}
+	
+	private Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderRoot, boolean prefetch) throws PIPException {
+		Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+		Map<PIPRequest, PIPResponse> mapLocal		= new LinkedHashMap<>();
+		for (PIPRequest pipRequest : pipRequests) {
+			if (mapResponses.containsKey(pipRequest) || mapLocal.containsKey(pipRequest)) {
+				continue;
+			}
+			PIPResponse pipResponseLocal	= this.getAttributesLocal(pipRequest, exclude, pipFinderRoot, prefetch);
+			if (isAnswered(pipResponseLocal)) {
+				mapResponses.put(pipRequest, pipResponseLocal);
+			} else {
+				mapLocal.put(pipRequest, pipResponseLocal);
+			}
+		}
+		if (mapLocal.isEmpty()) {
+			return mapResponses;
+		}
+		
+		/*
+		 * Delegate the rest to the wrapped Finder
+		 */
+		PIPFinder thisWrappedFinder						= this.getWrappedFinder();
+		Map<PIPRequest, PIPResponse> mapResponsesWrapped	= Collections.emptyMap();
+		if (thisWrappedFinder != null) {
+			mapResponsesWrapped	= thisWrappedFinder.getAttributes(mapLocal.keySet(), exclude, (pipFinderRoot == null ? this : pipFinderRoot));
+		}
+		for (Map.Entry<PIPRequest, PIPResponse> entry : mapLocal.entrySet()) {
+			mapResponses.put(entry.getKey(), this.cacheWrappedResponse(entry.getValue(), mapResponsesWrapped.get(entry.getKey())));
+		}
+		return mapResponses;
+	}
+
+	/**
+	 * Gets the <code>PIPRequest</code>s this <code>RequestFinder</code> has looked for beyond the request, in the environment or
+	 * the wrapped <code>PIPFinder</code>.
+	 * 
+	 * @return an unmodifiable view of the <code>PIPRequest</code>s the <code>RequestEngine</code> did not answer
+	 */
+	public Collection<PIPRequest> getAttributesFetched() {
+		return Collections.unmodifiableSet(this.attributesFetched);
+	}
 
 	@Override
 	public Collection<PIPEngine> getPIPEngines() {
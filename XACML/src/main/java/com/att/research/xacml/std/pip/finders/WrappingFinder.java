@@ -5,6 +5,10 @@
  */
 package com.att.research.xacml.std.pip.finders;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import com.att.research.xacml.api.pip.PIPEngine;
 import com.att.research.xacml.api.pip.PIPException;
 import com.att.research.xacml.api.pip.PIPFinder;
@@ -50,6 +54,29 @@ public abstract class WrappingFinder implements PIPFinder {
 		}
 	}
 	
+	/**
+	 * Gets the {@link com.att.research.xacml.api.pip.PIPResponse}s from the batch <code>getAttributes</code> call on the wrapped
+	 * <code>PIPFinder</code>, using the given <code>PIPFinder</code> as the root for recursive calls.
+	 * 
+	 * @param pipRequests the <code>PIPRequest</code>s
+	 * @param exclude the <code>PIPEngine</code> to exclude from recursive calls
+	 * @param pipFinderParent the <code>PIPFinder</code> to start from for recursive calls
+	 * @return the <code>PIPResponse</code> for each distinct <code>PIPRequest</code> from the wrapped <code>PIPFinder</code>, or the empty <code>PIPResponse</code> for each if there is no wrapped <code>PIPFinder</code>
+	 * @throws PIPException if there is an error getting attributes from the wrapped <code>PIPFinder</code>
+	 */
+	protected Map<PIPRequest, PIPResponse> getAttributesWrapped(Collection<PIPRequest> pipRequests, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException {
+		PIPFinder thisWrappedFinder	= this.getWrappedFinder();
+		if (thisWrappedFinder == null) {
+			Map<PIPRequest, PIPResponse> mapResponses	= new LinkedHashMap<>();
+			for (PIPRequest pipRequest : pipRequests) {
+				mapResponses.put(pipRequest, StdPIPResponse.PIP_RESPONSE_EMPTY);
+			}
+			return mapResponses;
+		} else {
+			return thisWrappedFinder.getAttributes(pipRequests, exclude, pipFinderParent);
+		}
+	}
+	
 	protected abstract PIPResponse getAttributesInternal(PIPRequest pipRequest, PIPEngine exclude, PIPFinder pipFinderParent) throws PIPException;
 
 	@Override
@@ -48,6 +48,7 @@ public class XACMLProperties {
 	public static final String	PROP_REFERENCEDPOLICIES	= "xacml.referencedPolicies";
 	
 	public static final String	PROP_PDP_BEHAVIOR		= "xacml.pdp.behavior";
+	public static final String	PROP_PDP_MAXINDIVIDUALREQUESTS	= "xacml.pdp.maxIndividualRequests";
 	public static final String	PROP_PIP_ENGINES		= "xacml.pip.engines";
 
 	// Alternative types of PAP Engine
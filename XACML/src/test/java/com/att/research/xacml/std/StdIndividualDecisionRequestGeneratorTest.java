@@ -0,0 +1,157 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.XACML3;
+
+public class StdIndividualDecisionRequestGeneratorTest {
+	private static RequestAttributes newRequestAttributes(Identifier category, Identifier attributeId, String value, String xmlId) {
+		Attribute attribute	= new StdAttribute(category, attributeId, new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, value));
+		return new StdMutableRequestAttributes(category, Collections.singletonList(attribute), null, xmlId);
+	}
+
+	/*
+	 * A request with the given number of subjects and resources and one action
+	 */
+	private static StdMutableRequest newRequest(int subjects, int resources) {
+		StdMutableRequest request	= new StdMutableRequest();
+		for (int i = 0 ; i < subjects ; i++) {
+			request.add(newRequestAttributes(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, "subject" + i, "s" + i));
+		}
+		for (int i = 0 ; i < resources ; i++) {
+			request.add(newRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, XACML3.ID_RESOURCE_RESOURCE_ID, "resource" + i, "r" + i));
+		}
+		request.add(newRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION, XACML3.ID_ACTION_ACTION_ID, "read", "a"));
+		return request;
+	}
+
+	private static String getValue(Request request, Identifier category) {
+		Iterator<RequestAttributes> iterRequestAttributes	= request.getRequestAttributes(category);
+		RequestAttributes requestAttributes	= iterRequestAttributes.next();
+		assertFalse(iterRequestAttributes.hasNext());
+		return requestAttributes.getAttributes().iterator().next().getValues().iterator().next().getValue().toString();
+	}
+
+	private static List<Request> getRequests(StdIndividualDecisionRequestGenerator generator) {
+		List<Request> requests	= new ArrayList<>();
+		generator.getIndividualDecisionRequests().forEachRemaining(requests::add);
+		return requests;
+	}
+
+	@Test
+	public void testRepeatedCategories() {
+		StdMutableRequest request	= newRequest(3, 4);
+		StdIndividualDecisionRequestGenerator generator	= new StdIndividualDecisionRequestGenerator(request);
+		List<Request> requests	= getRequests(generator);
+		assertEquals(12, requests.size());
+		Set<String> combinations	= new HashSet<>();
+		for (Request requestIndividual : requests) {
+			assertEquals(3, requestIndividual.getRequestAttributes().size());
+			combinations.add(getValue(requestIndividual, XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT) + "/" + getValue(requestIndividual, XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE));
+			//
+			// The categories are shared with the original request, not copied
+			//
+			for (RequestAttributes requestAttributes : requestIndividual.getRequestAttributes()) {
+				assertSame(requestAttributes, request.getRequestAttributesByXmlId(requestAttributes.getXmlId()));
+			}
+		}
+		assertEquals(12, combinations.size());
+		//
+		// Each Iterator generates the requests again
+		//
+		assertEquals(12, getRequests(generator).size());
+	}
+
+	@Test
+	public void testSingle() {
+		StdMutableRequest request	= newRequest(1, 1);
+		List<Request> requests	= getRequests(new StdIndividualDecisionRequestGenerator(null, request, 1));
+		assertEquals(1, requests.size());
+		assertSame(request, requests.get(0));
+	}
+
+	@Test
+	public void testMaxRequests() {
+		StdMutableRequest request	= newRequest(50, 200);
+		List<Request> requests	= getRequests(new StdIndividualDecisionRequestGenerator(null, request, 1000));
+		assertEquals(1, requests.size());
+		assertEquals(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, requests.get(0).getStatus().getStatusCode());
+		assertEquals(10000, getRequests(new StdIndividualDecisionRequestGenerator(null, request, 10000)).size());
+		//
+		// Two multi-request references with three subjects each stop after the limit
+		//
+		request	= newRequest(3, 1);
+		for (int i = 0 ; i < 2 ; i++) {
+			StdMutableRequestReference requestReference	= new StdMutableRequestReference();
+			requestReference.add(new StdRequestAttributesReference("s0"));
+			requestReference.add(new StdRequestAttributesReference("s1"));
+			requestReference.add(new StdRequestAttributesReference("s2"));
+			requestReference.add(new StdRequestAttributesReference("r0"));
+			request.add(requestReference);
+		}
+		assertEquals(6, getRequests(new StdIndividualDecisionRequestGenerator(null, request, 0)).size());
+		requests	= getRequests(new StdIndividualDecisionRequestGenerator(null, request, 4));
+		assertEquals(5, requests.size());
+		for (int i = 0 ; i < 4 ; i++) {
+			assertTrue(requests.get(i).getStatus() == null || requests.get(i).getStatus().isOk());
+		}
+		assertEquals(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, requests.get(4).getStatus().getStatusCode());
+	}
+
+	/*
+	 * A subclass that still fills the list through the deprecated methods
+	 */
+	private static class ListGenerator extends StdIndividualDecisionRequestGenerator {
+		@SuppressWarnings("deprecation")
+		ListGenerator(Request request, boolean byCategories) {
+			super(request);
+			if (byCategories) {
+				this.processRepeatedCategories(request);
+			} else {
+				this.createIndividualDecisionRequests(request);
+			}
+		}
+	}
+
+	private static List<String> getXmlIds(Request request) {
+		List<String> xmlIds	= new ArrayList<>();
+		for (RequestAttributes requestAttributes : request.getRequestAttributes()) {
+			xmlIds.add(requestAttributes.getXmlId());
+		}
+		return xmlIds;
+	}
+
+	@Test
+	public void testDeprecated() {
+		StdMutableRequest request	= newRequest(3, 4);
+		List<Request> requests	= getRequests(new StdIndividualDecisionRequestGenerator(request));
+		for (boolean byCategories : new boolean[] { false, true }) {
+			List<Request> requestsDeprecated	= getRequests(new ListGenerator(request, byCategories));
+			assertEquals(requests.size(), requestsDeprecated.size());
+			for (int i = 0 ; i < requests.size() ; i++) {
+				assertEquals(getXmlIds(requests.get(i)), getXmlIds(requestsDeprecated.get(i)));
+			}
+		}
+	}
+}
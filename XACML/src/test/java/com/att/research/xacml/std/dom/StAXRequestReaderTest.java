@@ -0,0 +1,119 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.dom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.std.datatypes.XPathExpressionWrapper;
+
+public class StAXRequestReaderTest {
+	private static final String REQUEST	=
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" xmlns:md=\"urn:example:med\" ReturnPolicyIdList=\"1\" CombinedDecision=\"false\">\n" +
+		"  <!-- comment -->\n" +
+		"  <RequestDefaults><XPathVersion>http://www.w3.org/TR/1999/REC-xpath-19991116</XPathVersion></RequestDefaults>\n" +
+		"  <Attributes Category=\"urn:oasis:names:tc:xacml:1.0:subject-category:access-subject\" xml:id=\"subject\">\n" +
+		"    <Attribute AttributeId=\"urn:oasis:names:tc:xacml:1.0:subject:subject-id\" Issuer=\"me\" IncludeInResult=\"true\">\n" +
+		"      <AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#string\">Julius &amp; <![CDATA[Hibbert]]></AttributeValue>\n" +
+		"      <AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#integer\">42</AttributeValue>\n" +
+		"    </Attribute>\n" +
+		"    <Attribute AttributeId=\"urn:example:unknown\" IncludeInResult=\"false\">\n" +
+		"      <AttributeValue DataType=\"urn:example:no-such-type\">value</AttributeValue>\n" +
+		"    </Attribute>\n" +
+		"  </Attributes>\n" +
+		"  <Attributes Category=\"urn:oasis:names:tc:xacml:3.0:attribute-category:resource\" xml:id=\"resource\">\n" +
+		"    <Content><md:record xmlns:x=\"urn:example:x\"><md:patient x:a=\"1\"><md:name>Bart</md:name><?pi data?></md:patient></md:record></Content>\n" +
+		"    <Attribute AttributeId=\"urn:oasis:names:tc:xacml:3.0:content-selector\" IncludeInResult=\"false\">\n" +
+		"      <AttributeValue DataType=\"urn:oasis:names:tc:xacml:3.0:data-type:xpathExpression\" XPathCategory=\"urn:oasis:names:tc:xacml:3.0:attribute-category:resource\">md:record/md:patient</AttributeValue>\n" +
+		"    </Attribute>\n" +
+		"  </Attributes>\n" +
+		"  <MultiRequests>\n" +
+		"    <RequestReference><AttributesReference ReferenceId=\"subject\"/><AttributesReference ReferenceId=\"resource\"/></RequestReference>\n" +
+		"  </MultiRequests>\n" +
+		"</Request>";
+
+	private static Request load(String xml) throws DOMStructureException {
+		return StAXRequestReader.load(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testSameAsDOMRequest() throws Exception {
+		Request expected	= DOMRequest.load(REQUEST);
+		Request actual		= load(REQUEST);
+		assertEquals(expected, actual);
+		assertEquals(expected, StAXRequestReader.load(new StringReader(REQUEST)));
+		assertEquals(expected.getRequestAttributesIncludedInResult(), actual.getRequestAttributesIncludedInResult());
+		//
+		// Content is not part of equals
+		//
+		Iterator<RequestAttributes> iterExpected	= expected.getRequestAttributes().iterator();
+		Iterator<RequestAttributes> iterActual		= actual.getRequestAttributes().iterator();
+		while (iterExpected.hasNext()) {
+			Node nodeExpected	= iterExpected.next().getContentRoot();
+			Node nodeActual		= iterActual.next().getContentRoot();
+			if (nodeExpected == null) {
+				assertNull(nodeActual);
+			} else {
+				assertTrue(nodeExpected.isEqualNode(nodeActual));
+				assertTrue(nodeActual.getParentNode().getNodeType() == Node.DOCUMENT_NODE);
+			}
+		}
+	}
+
+	@Test
+	public void testXPathExpression() throws Exception {
+		RequestAttributes resource	= load(REQUEST).getRequestAttributes(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE).next();
+		AttributeValue<?> attributeValue	= resource.getAttributes(XACML3.ID_CONTENT_SELECTOR).next().getValues().iterator().next();
+		assertEquals(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, attributeValue.getXPathCategory());
+		XPathExpressionWrapper xpathExpression	= (XPathExpressionWrapper) attributeValue.getValue();
+		assertEquals("urn:example:med", xpathExpression.getNamespaceContext().getNamespaceURI("md"));
+		assertEquals("Bart", xpathExpression.evaluate(resource.getContentRoot().getOwnerDocument()));
+	}
+
+	@Test
+	public void testErrors() {
+		String[] documents	= {
+			"not xml at all",
+			"",
+			"<Request xmlns=\"urn:example:not-xacml\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"/>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"/>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"maybe\" CombinedDecision=\"false\"><Attributes Category=\"c\"/></Request>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"><Attributes Category=\"c\"><Unexpected/></Attributes></Request>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"><Attributes Category=\"c\"><Attribute AttributeId=\"a\" IncludeInResult=\"false\"/></Attributes></Request>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"><Attributes Category=\"c\"><Attribute AttributeId=\"a\" IncludeInResult=\"false\">" +
+				"<AttributeValue DataType=\"http://www.w3.org/2001/XMLSchema#integer\">forty-two</AttributeValue></Attribute></Attributes></Request>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"><Attributes Category=\"c\"><Content/></Attributes></Request>",
+			"<Request xmlns=\"urn:oasis:names:tc:xacml:3.0:core:schema:wd-17\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\"><Attributes Category=\"c\">"
+		};
+		for (String document : documents) {
+			try {
+				load(document);
+				fail("Loaded " + document);
+			} catch (DOMStructureException ex) {
+			}
+			try {
+				DOMRequest.load(document);
+				fail("DOMRequest loaded " + document);
+			} catch (DOMStructureException ex) {
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+
+package com.att.research.xacml.std.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.RequestAttributes;
+import com.att.research.xacml.api.XACML3;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+public class JsonRequestReaderTest {
+	private static final Gson gson	= new GsonBuilder()
+			.registerTypeAdapter(Identifier.class, new JsonIdentifierSerialization())
+			.registerTypeAdapter(GsonJsonAttributeValue.class, new JsonAttributeValueSerialization())
+			.create();
+
+	/*
+	 * The Request the GsonJsonRequest binding makes from the same document
+	 */
+	private static Request loadGson(Reader reader) {
+		GsonJsonRequest gsonRequest	= gson.fromJson(reader, GsonJsonRequest.class);
+		gsonRequest.postFromJsonDeserialization();
+		return gsonRequest.toXacmlRequest();
+	}
+
+	private static void assertSameRequest(String json) throws Exception {
+		Request expected	= loadGson(new StringReader(json));
+		Request actual		= JsonRequestReader.load(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(expected, actual);
+		assertEquals(expected.getRequestAttributesIncludedInResult(), actual.getRequestAttributesIncludedInResult());
+	}
+
+	@Test
+	public void testFiles() throws Exception {
+		File[] files	= new File("src/test/resources").listFiles((dir, name) -> name.startsWith("Request") && name.endsWith(".json"));
+		assertTrue(files.length > 0);
+		for (File file : files) {
+			Request expected;
+			try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+				expected	= loadGson(reader);
+			} catch (NullPointerException ex) {
+				//
+				// The Gson binding cannot post process a category without attributes
+				//
+				try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+					assertTrue(file.getName(), JsonRequestReader.load(reader).getRequestAttributes().iterator().hasNext());
+				}
+				continue;
+			}
+			try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+				assertEquals(file.getName(), expected, JsonRequestReader.load(reader));
+			}
+		}
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		//
+		// Members in any order, the CategoryId after the attributes
+		//
+		String json	= "{\"Request\":{" +
+				"\"Category\":[{\"Attribute\":[{\"AttributeId\":\"custom\",\"Value\":1}],\"CategoryId\":\"urn:custom:category\"}]," +
+				"\"Action\":[{\"Attribute\":[{\"AttributeId\":\"action-id\",\"Value\":\"read\",\"IncludeInResult\":true}]}]," +
+				"\"AccessSubject\":[{\"Id\":\"s1\",\"Attribute\":[{\"Value\":\"Alice\",\"AttributeId\":\"subject-id\",\"Issuer\":\"me\"}]}]," +
+				"\"CombinedDecision\":\"true\",\"XPathVersion\":\"ignored\",\"Unknown\":{\"a\":[1,2]}," +
+				"\"MultiRequests\":{\"RequestReference\":[{\"ReferenceId\":[\"s1\"]}]}}}";
+		assertSameRequest(json);
+		Request request	= JsonRequestReader.load(new StringReader(json));
+		RequestAttributes first	= request.getRequestAttributes().iterator().next();
+		assertEquals(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, first.getCategory());
+		assertEquals("s1", first.getXmlId());
+		assertTrue(request.getCombinedDecision());
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		assertSameRequest("{\"Request\":{\"Resource\":[{\"Attribute\":[" +
+				"{\"AttributeId\":\"integer\",\"Value\":5}," +
+				"{\"AttributeId\":\"integer-as-double\",\"Value\":5.0}," +
+				"{\"AttributeId\":\"double\",\"Value\":-8.888e2}," +
+				"{\"AttributeId\":\"boolean\",\"Value\":true}," +
+				"{\"AttributeId\":\"converted\",\"DataType\":\"integer\",\"Value\":\"42\"}," +
+				"{\"AttributeId\":\"array\",\"Value\":[\"a\",[\"b\",null],3]}," +
+				"{\"AttributeId\":\"typed-array\",\"DataType\":\"anyURI\",\"Value\":[\"http://a\",\"http://b\"]}," +
+				"{\"AttributeId\":\"object\",\"Value\":{\"rack\":\"topleft\",\"id\":10,\"nested\":{\"x\":1}}}," +
+				"{\"AttributeId\":\"empty\",\"Value\":[]}" +
+				"]}]}}");
+	}
+
+	@Test
+	public void testErrors() {
+		String[] documents	= {
+			"iamnot a json string at all",
+			"{\"Request\":{\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"no-value\"}]}]}}",
+			"{\"Request\":{\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"null-value\",\"Value\":null}]}]}}",
+			"{\"Request\":{\"Resource\":{\"Attribute\":[]}}}",
+			"{\"NotARequest\":{}}",
+			"{\"Request\":{\"Resource\":[{\"Attribute\":[{\"AttributeId\":\"a\",\"Value\":\"b\"}"
+		};
+		for (String document : documents) {
+			try {
+				JsonRequestReader.load(new StringReader(document));
+				fail("Loaded " + document);
+			} catch (JSONStructureException ex) {
+			}
+		}
+	}
+}
@@ -10,10 +10,12 @@ import static org.junit.Assert.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -350,6 +352,16 @@ public class JsonResponseTranslatorTest {
     }
     
 
+    @Test
+    public void testConvert() throws Exception {
+        Response response = JsonResponseTranslator.load(new File("src/test/resources/Response-All.json"));
+        for (boolean prettyPrint : new boolean[] {false, true}) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            JsonResponseTranslator.convert(response, os, prettyPrint);
+            assertThat(new String(os.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(JsonResponseTranslator.toString(response, prettyPrint));
+        }
+    }
+
     @Test
     public void testExceptions() {
         assertThatExceptionOfType(JSONStructureException.class).isThrownBy(() -> {
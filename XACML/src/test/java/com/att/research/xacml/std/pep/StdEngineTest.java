@@ -0,0 +1,177 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.att.research.xacml.api.Decision;
+import com.att.research.xacml.api.Request;
+import com.att.research.xacml.api.Response;
+import com.att.research.xacml.api.pdp.PDPEngine;
+import com.att.research.xacml.api.pdp.PDPEngineFactory;
+import com.att.research.xacml.api.pdp.PDPException;
+import com.att.research.xacml.api.pep.PEPException;
+import com.att.research.xacml.std.StdMutableResponse;
+import com.att.research.xacml.std.StdMutableResult;
+import com.att.research.xacml.util.XACMLProperties;
+
+public class StdEngineTest {
+	private static final List<TestPDPEngine> engines	= Collections.synchronizedList(new ArrayList<>());
+
+	private static class TestPDPEngine implements PDPEngine {
+		private final String file;
+		private volatile boolean isShutdown	= false;
+
+		TestPDPEngine(String fileIn) {
+			this.file	= fileIn;
+		}
+
+		@Override
+		public Response decide(Request pepRequest) throws PDPException {
+			if (this.isShutdown) {
+				throw new PDPException("Engine is shutdown.");
+			}
+			return new StdMutableResponse(new StdMutableResult(Decision.PERMIT));
+		}
+
+		@Override
+		public void shutdown() {
+			this.isShutdown	= true;
+		}
+
+		@Override
+		public Collection<URI> getProfiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean hasProfile(URI uriProfile) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates <code>TestPDPEngine</code>s and keeps track of them.
+	 */
+	public static class TestPDPEngineFactory extends PDPEngineFactory {
+		public TestPDPEngineFactory() {
+		}
+
+		public TestPDPEngineFactory(Properties properties) {
+		}
+
+		@Override
+		public PDPEngine newEngine() {
+			return this.newEngine(null);
+		}
+
+		@Override
+		public PDPEngine newEngine(Properties properties) {
+			TestPDPEngine pdpEngine	= new TestPDPEngine(properties.getProperty("root.file"));
+			engines.add(pdpEngine);
+			return pdpEngine;
+		}
+	}
+
+	private Properties properties;
+
+	@Before
+	public void setUp() {
+		engines.clear();
+		this.properties	= new Properties();
+		this.properties.setProperty(XACMLProperties.PROP_PDPENGINEFACTORY, TestPDPEngineFactory.class.getName());
+		this.properties.setProperty(XACMLProperties.PROP_ROOTPOLICIES, "root");
+		this.properties.setProperty(XACMLProperties.PROP_REFERENCEDPOLICIES, "");
+		this.properties.setProperty("root.file", "policy1.xml");
+	}
+
+	@Test
+	public void testReused() throws Exception {
+		StdEngine stdEngine	= new StdEngine(this.properties);
+		assertEquals(0, engines.size());
+		for (int i = 0 ; i < 3 ; i++) {
+			assertEquals(Decision.PERMIT, stdEngine.decide(null).getResults().iterator().next().getDecision());
+		}
+		assertEquals(1, engines.size());
+		//
+		// A property that does not select policies does not matter
+		//
+		this.properties.setProperty("xacml.other", "value");
+		stdEngine.decide(null);
+		assertEquals(1, engines.size());
+	}
+
+	@Test
+	public void testRefresh() throws Exception {
+		StdEngine stdEngine	= new StdEngine(this.properties);
+		stdEngine.decide(null);
+		this.properties.setProperty("root.file", "policy2.xml");
+		stdEngine.decide(null);
+		stdEngine.decide(null);
+		assertEquals(2, engines.size());
+		assertTrue(engines.get(0).isShutdown);
+		assertFalse(engines.get(1).isShutdown);
+		assertEquals("policy2.xml", engines.get(1).file);
+		//
+		// A new root policy
+		//
+		this.properties.setProperty(XACMLProperties.PROP_ROOTPOLICIES, "root,root2");
+		this.properties.setProperty("root2.file", "policy3.xml");
+		stdEngine.decide(null);
+		assertEquals(3, engines.size());
+		assertTrue(engines.get(1).isShutdown);
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		StdEngine stdEngine	= new StdEngine(this.properties);
+		stdEngine.decide(null);
+		stdEngine.shutdown();
+		assertTrue(engines.get(0).isShutdown);
+		try {
+			stdEngine.decide(null);
+			fail("decide after shutdown");
+		} catch (PEPException ex) {
+		}
+		stdEngine.shutdown();
+		assertEquals(1, engines.size());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		StdEngine stdEngine	= new StdEngine(this.properties);
+		ExecutorService executor	= Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Response>> futures	= new ArrayList<>();
+			for (int i = 0 ; i < 200 ; i++) {
+				futures.add(executor.submit(() -> stdEngine.decide(null)));
+			}
+			for (Future<Response> future : futures) {
+				assertEquals(Decision.PERMIT, future.get(10, TimeUnit.SECONDS).getResults().iterator().next().getDecision());
+			}
+			assertEquals(1, engines.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
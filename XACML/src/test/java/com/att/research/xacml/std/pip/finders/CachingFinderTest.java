@@ -0,0 +1,274 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttribute;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.StdPIPResponse;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+
+public class CachingFinderTest {
+	private static final Identifier ID_ROLE	= new IdentifierImpl("urn:com:att:xacml:test:role");
+	private static final Identifier ID_GROUP	= new IdentifierImpl("urn:com:att:xacml:test:group");
+
+	private static final PIPRequest REQUEST_SUBJECT	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_ROLE	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_ROLE, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_GROUP	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_GROUP, XACML3.ID_DATATYPE_STRING);
+
+	/**
+	 * Looks up the role of the subject in the request, which is "role-" followed by the subject id.
+	 */
+	private static class RoleEngine implements PIPEngine {
+		private final AtomicInteger calls	= new AtomicInteger();
+		private final List<Integer> batches	= Collections.synchronizedList(new ArrayList<>());
+		private final boolean listsAttributes;
+		private volatile CountDownLatch latch;
+
+		RoleEngine(boolean listsAttributesIn) {
+			this.listsAttributes	= listsAttributesIn;
+		}
+
+		@Override
+		public String getName() {
+			return "roles";
+		}
+
+		@Override
+		public String getDescription() {
+			return "roles";
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesRequired() {
+			return (this.listsAttributes ? Collections.singletonList(REQUEST_SUBJECT) : Collections.emptyList());
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesProvided() {
+			return (this.listsAttributes ? Arrays.asList(REQUEST_ROLE, REQUEST_GROUP) : Collections.emptyList());
+		}
+
+		@Override
+		public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+			if (!ID_ROLE.equals(pipRequest.getAttributeId()) && !ID_GROUP.equals(pipRequest.getAttributeId())) {
+				return StdPIPResponse.PIP_RESPONSE_EMPTY;
+			}
+			this.calls.incrementAndGet();
+			CountDownLatch thisLatch	= this.latch;
+			if (thisLatch != null) {
+				try {
+					thisLatch.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			PIPResponse pipResponseSubject	= pipFinder.getMatchingAttributes(REQUEST_SUBJECT, this);
+			List<Attribute> attributes	= new ArrayList<>();
+			for (Attribute attribute : pipResponseSubject.getAttributes()) {
+				attribute.getValues().forEach(value -> attributes.add(new StdAttribute(pipRequest.getCategory(), pipRequest.getAttributeId(),
+						new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, getPrefix(pipRequest) + value.getValue()))));
+			}
+			return new StdPIPResponse(attributes);
+		}
+
+		@Override
+		public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+			this.batches.add(pipRequests.size());
+			return PIPEngine.super.getAttributes(pipRequests, pipFinder);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	private static String getPrefix(PIPRequest pipRequest) {
+		return (ID_ROLE.equals(pipRequest.getAttributeId()) ? "role-" : "group-");
+	}
+
+	private static CachingFinder newFinder(PIPEngine pipEngine, Properties properties) throws Exception {
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(pipEngine);
+		properties.setProperty(CachingFinder.PROP_CACHE, "true");
+		return (CachingFinder) CachingFinder.newInstance(engineFinder, properties);
+	}
+
+	private static Properties newProperties(long ttl) {
+		Properties properties	= new Properties();
+		properties.setProperty(CachingFinder.PROP_CACHE_RULES, "subject");
+		properties.setProperty(CachingFinder.PROP_CACHE_RULE + ".subject." + CachingFinder.PROP_CATEGORY, XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT.stringValue());
+		properties.setProperty(CachingFinder.PROP_CACHE_RULE + ".subject." + CachingFinder.PROP_TTL, Long.toString(ttl));
+		return properties;
+	}
+
+	/*
+	 * What a decision for the given subject sees: a new RequestFinder in front of the shared finder
+	 */
+	private static Object getRole(PIPFinder pipFinder, String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(pipFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+		PIPResponse pipResponse	= requestFinder.getMatchingAttributes(REQUEST_ROLE, null);
+		return pipResponse.getAttributes().iterator().next().getValues().iterator().next().getValue();
+	}
+
+	@Test
+	public void testSharedAcrossRequests() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine(true);
+		CachingFinder cachingFinder	= newFinder(roleEngine, newProperties(60000));
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		assertEquals(1, roleEngine.calls.get());
+		//
+		// A different subject is a different key
+		//
+		assertEquals("role-bob", getRole(cachingFinder, "bob"));
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		assertEquals(2, roleEngine.calls.get());
+		assertEquals(2, cachingFinder.getStats().hitCount());
+		cachingFinder.invalidateAll();
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		assertEquals(3, roleEngine.calls.get());
+	}
+
+	/*
+	 * What a decision for the given subject sees when it asks for the role and the group in one batch
+	 */
+	private static Map<PIPRequest, PIPResponse> getRoleAndGroup(PIPFinder pipFinder, String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(pipFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+		return requestFinder.getAttributes(Arrays.asList(REQUEST_ROLE, REQUEST_GROUP), null, null);
+	}
+
+	private static Object getValue(PIPResponse pipResponse) {
+		return pipResponse.getAttributes().iterator().next().getValues().iterator().next().getValue();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine(true);
+		CachingFinder cachingFinder	= newFinder(roleEngine, newProperties(60000));
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		//
+		// The role comes from the cache and only the group goes to the engine
+		//
+		Map<PIPRequest, PIPResponse> mapResponses	= getRoleAndGroup(cachingFinder, "alice");
+		assertEquals("role-alice", getValue(mapResponses.get(REQUEST_ROLE)));
+		assertEquals("group-alice", getValue(mapResponses.get(REQUEST_GROUP)));
+		assertEquals(Collections.emptyList(), roleEngine.batches);
+		assertEquals(2, roleEngine.calls.get());
+		//
+		// Both are cached now
+		//
+		mapResponses	= getRoleAndGroup(cachingFinder, "alice");
+		assertEquals("group-alice", getValue(mapResponses.get(REQUEST_GROUP)));
+		assertEquals(Collections.emptyList(), roleEngine.batches);
+		//
+		// Both misses go to the engine in one call
+		//
+		mapResponses	= getRoleAndGroup(cachingFinder, "bob");
+		assertEquals("role-bob", getValue(mapResponses.get(REQUEST_ROLE)));
+		assertEquals("group-bob", getValue(mapResponses.get(REQUEST_GROUP)));
+		assertEquals(Arrays.asList(2), roleEngine.batches);
+		assertEquals(4, roleEngine.calls.get());
+		assertEquals(4, cachingFinder.size());
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine(true);
+		Properties properties	= newProperties(60000);
+		properties.setProperty(CachingFinder.PROP_CACHE_RULES, "subject,role");
+		properties.setProperty(CachingFinder.PROP_CACHE_RULE + ".role." + CachingFinder.PROP_ATTRIBUTE, ID_ROLE.stringValue());
+		properties.setProperty(CachingFinder.PROP_CACHE_RULE + ".role." + CachingFinder.PROP_TTL, "50");
+		CachingFinder cachingFinder	= newFinder(roleEngine, properties);
+		getRole(cachingFinder, "alice");
+		getRole(cachingFinder, "alice");
+		assertEquals(1, roleEngine.calls.get());
+		Thread.sleep(100);
+		getRole(cachingFinder, "alice");
+		assertEquals(2, roleEngine.calls.get());
+	}
+
+	@Test
+	public void testNotCached() throws Exception {
+		//
+		// No time to live
+		//
+		RoleEngine roleEngine	= new RoleEngine(true);
+		CachingFinder cachingFinder	= newFinder(roleEngine, new Properties());
+		getRole(cachingFinder, "alice");
+		getRole(cachingFinder, "alice");
+		assertEquals(2, roleEngine.calls.get());
+		//
+		// The engine does not say what it depends on
+		//
+		roleEngine	= new RoleEngine(false);
+		cachingFinder	= newFinder(roleEngine, newProperties(60000));
+		assertEquals("role-alice", getRole(cachingFinder, "alice"));
+		assertEquals("role-bob", getRole(cachingFinder, "bob"));
+		assertEquals(2, roleEngine.calls.get());
+		assertEquals(0, cachingFinder.size());
+		//
+		// Caching is off
+		//
+		EngineFinder engineFinder	= new EngineFinder();
+		assertSame(engineFinder, CachingFinder.newInstance(engineFinder, newProperties(60000)));
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine(true);
+		CountDownLatch latch	= new CountDownLatch(1);
+		roleEngine.latch	= latch;
+		CachingFinder cachingFinder	= newFinder(roleEngine, newProperties(60000));
+		ExecutorService executor	= Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> futures	= new ArrayList<>();
+			for (int i = 0 ; i < 8 ; i++) {
+				futures.add(executor.submit(() -> getRole(cachingFinder, "alice")));
+			}
+			Thread.sleep(100);
+			latch.countDown();
+			for (Future<Object> future : futures) {
+				assertEquals("role-alice", future.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, roleEngine.calls.get());
+			assertEquals(1, cachingFinder.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttribute;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.StdPIPResponse;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+
+public class EngineFinderTest {
+	private static final PIPRequest REQUEST_SUBJECT		= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_RESOURCE	= new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, XACML3.ID_RESOURCE_RESOURCE_ID, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_GROUP		= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_ROLE, XACML3.ID_DATATYPE_STRING);
+
+	/**
+	 * Answers every request it is asked with its own name, after running an optional action.
+	 */
+	private static class TestEngine implements PIPEngine {
+		private final String name;
+		private final Collection<PIPRequest> provided;
+		private final AtomicInteger calls	= new AtomicInteger();
+		private final AtomicInteger batches	= new AtomicInteger();
+		private volatile Runnable action	= () -> {};
+
+		TestEngine(String nameIn, PIPRequest... providedIn) {
+			this.name		= nameIn;
+			this.provided	= Arrays.asList(providedIn);
+		}
+
+		void setAction(Runnable actionIn) {
+			this.action	= actionIn;
+		}
+
+		@Override
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public String getDescription() {
+			return this.name;
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesRequired() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesProvided() {
+			return this.provided;
+		}
+
+		@Override
+		public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+			this.calls.incrementAndGet();
+			this.action.run();
+			return new StdPIPResponse(new StdAttribute(pipRequest.getCategory(), pipRequest.getAttributeId(),
+					new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, this.name)));
+		}
+
+		@Override
+		public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+			this.batches.incrementAndGet();
+			return PIPEngine.super.getAttributes(pipRequests, pipFinder);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	/**
+	 * Looks up the resource id and then its own other parameters through the finder it is given before answering, as
+	 * an engine with parameters does.
+	 */
+	private static class ParameterEngine extends TestEngine {
+		private final List<PIPRequest> otherParameters;
+		private final List<Object> parameters	= Collections.synchronizedList(new ArrayList<>());
+
+		ParameterEngine(String nameIn, Runnable actionIn, List<PIPRequest> otherParametersIn, PIPRequest... providedIn) {
+			super(nameIn, providedIn);
+			this.setAction(actionIn);
+			this.otherParameters	= otherParametersIn;
+		}
+
+		@Override
+		public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+			PIPResponse pipResponse	= super.getAttributes(pipRequest, pipFinder);
+			this.parameters.addAll(getValues(pipFinder.getMatchingAttributes(REQUEST_RESOURCE, this)));
+			for (PIPRequest pipRequestParameter : this.otherParameters) {
+				pipFinder.getMatchingAttributes(pipRequestParameter, this);
+			}
+			return pipResponse;
+		}
+	}
+
+	private static List<PIPRequest> newResourceRequests(int first, int count) {
+		List<PIPRequest> pipRequests	= new ArrayList<>();
+		for (int i = first ; i < first + count ; i++) {
+			pipRequests.add(new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_RESOURCE, new IdentifierImpl("urn:com:att:xacml:test:resource:" + i), XACML3.ID_DATATYPE_STRING));
+		}
+		return pipRequests;
+	}
+
+	private static EngineFinder newFinder(int threads, long timeout, PIPEngine... pipEngines) throws Exception {
+		Properties properties	= new Properties();
+		properties.setProperty(ConfigurableEngineFinder.PROP_FINDER_THREADS, Integer.toString(threads));
+		properties.setProperty(ConfigurableEngineFinder.PROP_FINDER_TIMEOUT, Long.toString(timeout));
+		ConfigurableEngineFinder engineFinder	= new ConfigurableEngineFinder();
+		engineFinder.configure(properties);
+		for (PIPEngine pipEngine : pipEngines) {
+			engineFinder.register(pipEngine);
+		}
+		return engineFinder;
+	}
+
+	private static List<Object> getValues(PIPResponse pipResponse) {
+		List<Object> values	= new ArrayList<>();
+		for (Attribute attribute : pipResponse.getAttributes()) {
+			attribute.getValues().forEach(value -> values.add(value.getValue()));
+		}
+		return values;
+	}
+
+	@Test
+	public void testRouting() throws Exception {
+		TestEngine subject	= new TestEngine("subject", REQUEST_SUBJECT);
+		TestEngine resource	= new TestEngine("resource", REQUEST_RESOURCE);
+		TestEngine any		= new TestEngine("any");
+		EngineFinder engineFinder	= newFinder(1, 0, subject, resource, any);
+
+		assertEquals(Arrays.asList("subject", "any"), getValues(engineFinder.getAttributes(REQUEST_SUBJECT, null)));
+		assertEquals(1, subject.calls.get());
+		assertEquals(0, resource.calls.get());
+		//
+		// Data type is not part of the route
+		//
+		PIPRequest subjectInteger	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, XACML3.ID_DATATYPE_INTEGER);
+		assertEquals(Arrays.asList("subject", "any"), getValues(engineFinder.getAttributes(subjectInteger, null)));
+		//
+		// Nobody lists it so only the engine that lists nothing is asked
+		//
+		PIPRequest action	= new StdPIPRequest(XACML3.ID_ATTRIBUTE_CATEGORY_ACTION, XACML3.ID_ACTION_ACTION_ID, XACML3.ID_DATATYPE_STRING);
+		assertEquals(Arrays.asList("any"), getValues(engineFinder.getAttributes(action, null)));
+		assertEquals(2, subject.calls.get());
+		assertEquals(0, resource.calls.get());
+		assertEquals(3, any.calls.get());
+		//
+		// The excluded engine is skipped
+		//
+		assertEquals(Arrays.asList("any"), getValues(engineFinder.getAttributes(REQUEST_SUBJECT, subject)));
+		engineFinder.shutdown();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		TestEngine subject	= new TestEngine("subject", REQUEST_SUBJECT);
+		TestEngine resource	= new TestEngine("resource", REQUEST_RESOURCE);
+		TestEngine any		= new TestEngine("any");
+		EngineFinder engineFinder	= newFinder(4, 0, subject, resource, any);
+
+		Map<PIPRequest, PIPResponse> mapResponses	= engineFinder.getAttributes(Arrays.asList(REQUEST_SUBJECT, REQUEST_RESOURCE, REQUEST_SUBJECT), null, engineFinder);
+		assertEquals(2, mapResponses.size());
+		assertEquals(Arrays.asList("subject", "any"), getValues(mapResponses.get(REQUEST_SUBJECT)));
+		assertEquals(Arrays.asList("resource", "any"), getValues(mapResponses.get(REQUEST_RESOURCE)));
+		//
+		// The engine asked about both gets them in one call
+		//
+		assertEquals(1, any.batches.get());
+		assertEquals(2, any.calls.get());
+		assertEquals(0, subject.batches.get());
+		assertEquals(1, subject.calls.get());
+
+		mapResponses	= engineFinder.getAttributes(Arrays.asList(REQUEST_SUBJECT, REQUEST_RESOURCE), any, engineFinder);
+		assertEquals(Arrays.asList("subject"), getValues(mapResponses.get(REQUEST_SUBJECT)));
+		assertEquals(Arrays.asList("resource"), getValues(mapResponses.get(REQUEST_RESOURCE)));
+		assertEquals(1, any.batches.get());
+		engineFinder.shutdown();
+	}
+
+	@Test
+	public void testRequestFinderBatch() throws Exception {
+		TestEngine resource	= new TestEngine("resource", REQUEST_RESOURCE);
+		TestEngine group	= new TestEngine("group", REQUEST_GROUP);
+		EngineFinder engineFinder	= newFinder(1, 0, resource, group);
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"alice\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(engineFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+
+		Map<PIPRequest, PIPResponse> mapResponses	= requestFinder.getAttributes(Arrays.asList(REQUEST_SUBJECT, REQUEST_RESOURCE, REQUEST_GROUP), null, null);
+		assertEquals(Arrays.asList("alice"), getValues(mapResponses.get(REQUEST_SUBJECT)));
+		assertEquals(Arrays.asList("resource"), getValues(mapResponses.get(REQUEST_RESOURCE)));
+		assertEquals(Arrays.asList("group"), getValues(mapResponses.get(REQUEST_GROUP)));
+		assertEquals(2, requestFinder.getAttributesFetched().size());
+		//
+		// Each attribute was cached on its own
+		//
+		assertEquals(Arrays.asList("resource"), getValues(requestFinder.getAttributes(REQUEST_RESOURCE, null)));
+		assertEquals(Arrays.asList("group"), getValues(requestFinder.getAttributes(REQUEST_GROUP, null)));
+		assertEquals(1, resource.calls.get());
+		assertEquals(1, group.calls.get());
+		engineFinder.shutdown();
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		//
+		// Each engine waits for the others, which only works if they are called at the same time
+		//
+		CyclicBarrier barrier	= new CyclicBarrier(3);
+		Runnable await			= () -> {
+			try {
+				barrier.await(5, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		TestEngine first	= new TestEngine("first", REQUEST_SUBJECT);
+		TestEngine second	= new TestEngine("second", REQUEST_SUBJECT);
+		TestEngine third	= new TestEngine("third");
+		first.action	= await;
+		second.action	= await;
+		third.action	= await;
+		EngineFinder engineFinder	= newFinder(4, 0, first, second, third);
+		assertEquals(Arrays.asList("first", "second", "third"), getValues(engineFinder.getAttributes(REQUEST_SUBJECT, null)));
+		engineFinder.shutdown();
+	}
+
+	@Test
+	public void testConcurrentParameters() throws Exception {
+		//
+		// Both engines find the same parameter at the same time, through the RequestFinder of the decision
+		//
+		CyclicBarrier barrier	= new CyclicBarrier(2);
+		Runnable await			= () -> {
+			try {
+				barrier.await(5, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		List<PIPRequest> firstParameters	= newResourceRequests(0, 200);
+		List<PIPRequest> secondParameters	= newResourceRequests(200, 200);
+		List<PIPRequest> resourceProvided	= new ArrayList<>(firstParameters);
+		resourceProvided.addAll(secondParameters);
+		resourceProvided.add(REQUEST_RESOURCE);
+		ParameterEngine first	= new ParameterEngine("first", await, firstParameters, REQUEST_GROUP);
+		ParameterEngine second	= new ParameterEngine("second", await, secondParameters, REQUEST_GROUP);
+		TestEngine resource		= new TestEngine("resource", resourceProvided.toArray(new PIPRequest[resourceProvided.size()]));
+		EngineFinder engineFinder	= newFinder(4, 0, first, second, resource);
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"alice\"}]}]}}";
+		for (int i = 0 ; i < 100 ; i++) {
+			RequestFinder requestFinder	= new RequestFinder(engineFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+			assertEquals(Arrays.asList("first", "second"), getValues(requestFinder.getAttributes(REQUEST_GROUP, null)));
+			//
+			// Everything the engines found while filling the cache together is still there
+			//
+			int calls	= resource.calls.get();
+			for (PIPRequest pipRequest : resourceProvided) {
+				assertEquals(Arrays.asList("resource"), getValues(requestFinder.getAttributes(pipRequest, null)));
+			}
+			assertEquals(calls, resource.calls.get());
+		}
+		assertEquals(Collections.nCopies(100, "resource"), first.parameters);
+		assertEquals(Collections.nCopies(100, "resource"), second.parameters);
+		engineFinder.shutdown();
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		TestEngine fast	= new TestEngine("fast", REQUEST_SUBJECT);
+		TestEngine slow	= new TestEngine("slow", REQUEST_SUBJECT);
+		slow.action	= () -> {
+			try {
+				Thread.sleep(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		};
+		EngineFinder engineFinder	= newFinder(4, 100, fast, slow);
+		long start	= System.currentTimeMillis();
+		PIPResponse pipResponse	= engineFinder.getAttributes(REQUEST_SUBJECT, null);
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertTrue(pipResponse.getStatus().isOk());
+		assertEquals(Arrays.asList("fast"), getValues(pipResponse));
+		//
+		// With nothing else to return the timeout is the status
+		//
+		pipResponse	= engineFinder.getAttributes(REQUEST_SUBJECT, fast);
+		assertFalse(pipResponse.getStatus().isOk());
+		engineFinder.shutdown();
+	}
+}
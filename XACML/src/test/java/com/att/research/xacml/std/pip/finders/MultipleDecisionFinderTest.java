@@ -0,0 +1,196 @@
+/*
+ *
+ *          Copyright (c) 2020  AT&T Knowledge Ventures
+ *                     SPDX-License-Identifier: MIT
+ */
+package com.att.research.xacml.std.pip.finders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.att.research.xacml.api.Attribute;
+import com.att.research.xacml.api.AttributeValue;
+import com.att.research.xacml.api.Identifier;
+import com.att.research.xacml.api.XACML3;
+import com.att.research.xacml.api.pip.PIPEngine;
+import com.att.research.xacml.api.pip.PIPException;
+import com.att.research.xacml.api.pip.PIPFinder;
+import com.att.research.xacml.api.pip.PIPRequest;
+import com.att.research.xacml.api.pip.PIPResponse;
+import com.att.research.xacml.std.IdentifierImpl;
+import com.att.research.xacml.std.StdAttribute;
+import com.att.research.xacml.std.StdAttributeValue;
+import com.att.research.xacml.std.StdStatus;
+import com.att.research.xacml.std.StdStatusCode;
+import com.att.research.xacml.std.json.JsonRequestTranslator;
+import com.att.research.xacml.std.pip.StdPIPRequest;
+import com.att.research.xacml.std.pip.StdPIPResponse;
+import com.att.research.xacml.std.pip.engines.RequestEngine;
+
+public class MultipleDecisionFinderTest {
+	private static final Identifier ID_ROLE	= new IdentifierImpl("urn:com:att:xacml:test:role");
+	private static final Identifier ID_GROUP	= new IdentifierImpl("urn:com:att:xacml:test:group");
+
+	private static final PIPRequest REQUEST_SUBJECT	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, XACML3.ID_SUBJECT_SUBJECT_ID, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_ROLE	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_ROLE, XACML3.ID_DATATYPE_STRING);
+	private static final PIPRequest REQUEST_GROUP	= new StdPIPRequest(XACML3.ID_SUBJECT_CATEGORY_ACCESS_SUBJECT, ID_GROUP, XACML3.ID_DATATYPE_STRING);
+
+	/**
+	 * Looks up the role of the subject in the request, which is "role-" followed by the subject id, or fails for "error".
+	 */
+	private static class RoleEngine implements PIPEngine {
+		private final AtomicInteger calls	= new AtomicInteger();
+		private final List<Integer> batches	= Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public String getName() {
+			return "roles";
+		}
+
+		@Override
+		public String getDescription() {
+			return "roles";
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesRequired() {
+			return Collections.singletonList(REQUEST_SUBJECT);
+		}
+
+		@Override
+		public Collection<PIPRequest> attributesProvided() {
+			return Arrays.asList(REQUEST_ROLE, REQUEST_GROUP);
+		}
+
+		@Override
+		public PIPResponse getAttributes(PIPRequest pipRequest, PIPFinder pipFinder) throws PIPException {
+			if (!ID_ROLE.equals(pipRequest.getAttributeId()) && !ID_GROUP.equals(pipRequest.getAttributeId())) {
+				return StdPIPResponse.PIP_RESPONSE_EMPTY;
+			}
+			this.calls.incrementAndGet();
+			PIPResponse pipResponseSubject	= pipFinder.getMatchingAttributes(REQUEST_SUBJECT, this);
+			List<Attribute> attributes	= new ArrayList<>();
+			for (Attribute attribute : pipResponseSubject.getAttributes()) {
+				for (AttributeValue<?> value : attribute.getValues()) {
+					if ("error".equals(value.getValue())) {
+						return new StdPIPResponse(new StdStatus(StdStatusCode.STATUS_CODE_PROCESSING_ERROR, "unavailable"));
+					}
+					attributes.add(new StdAttribute(pipRequest.getCategory(), pipRequest.getAttributeId(), new StdAttributeValue<>(XACML3.ID_DATATYPE_STRING, getPrefix(pipRequest) + value.getValue())));
+				}
+			}
+			return new StdPIPResponse(attributes);
+		}
+
+		@Override
+		public Map<PIPRequest, PIPResponse> getAttributes(Collection<PIPRequest> pipRequests, PIPFinder pipFinder) throws PIPException {
+			this.batches.add(pipRequests.size());
+			return PIPEngine.super.getAttributes(pipRequests, pipFinder);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	private static String getPrefix(PIPRequest pipRequest) {
+		return (ID_ROLE.equals(pipRequest.getAttributeId()) ? "role-" : "group-");
+	}
+
+	private static MultipleDecisionFinder newFinder(PIPFinder pipFinder) {
+		return new MultipleDecisionFinder(pipFinder, new PIPDependencies(pipFinder));
+	}
+
+	/*
+	 * What an individual decision for the given subject sees: a new RequestFinder in front of the finder for the request
+	 */
+	private static PIPResponse getRole(PIPFinder pipFinder, String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(pipFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+		return requestFinder.getMatchingAttributes(REQUEST_ROLE, null);
+	}
+
+	private static Object getRoleValue(PIPFinder pipFinder, String subjectId) throws Exception {
+		return getRole(pipFinder, subjectId).getAttributes().iterator().next().getValues().iterator().next().getValue();
+	}
+
+	@Test
+	public void testShared() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine();
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(roleEngine);
+		MultipleDecisionFinder multipleDecisionFinder	= newFinder(engineFinder);
+		assertEquals("role-alice", getRoleValue(multipleDecisionFinder, "alice"));
+		assertEquals("role-alice", getRoleValue(multipleDecisionFinder, "alice"));
+		assertEquals(1, roleEngine.calls.get());
+		//
+		// A different subject is a different key
+		//
+		assertEquals("role-bob", getRoleValue(multipleDecisionFinder, "bob"));
+		assertEquals(2, roleEngine.calls.get());
+		assertEquals(2, multipleDecisionFinder.size());
+		assertEquals(1, multipleDecisionFinder.getStats().hitCount());
+		//
+		// The next request starts with nothing
+		//
+		multipleDecisionFinder.shutdown();
+		assertEquals("role-alice", getRoleValue(newFinder(engineFinder), "alice"));
+		assertEquals(3, roleEngine.calls.get());
+	}
+
+	private static Map<PIPRequest, PIPResponse> getRoleAndGroup(PIPFinder pipFinder, String subjectId) throws Exception {
+		String json	= "{\"Request\":{\"AccessSubject\":[{\"Attribute\":[{\"AttributeId\":\"" + XACML3.ID_SUBJECT_SUBJECT_ID.stringValue() + "\",\"Value\":\"" + subjectId + "\"}]}]}}";
+		RequestFinder requestFinder	= new RequestFinder(pipFinder, new RequestEngine(JsonRequestTranslator.load(json)));
+		return requestFinder.getAttributes(Arrays.asList(REQUEST_ROLE, REQUEST_GROUP), null, null);
+	}
+
+	private static Object getValue(PIPResponse pipResponse) {
+		return pipResponse.getAttributes().iterator().next().getValues().iterator().next().getValue();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine();
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(roleEngine);
+		MultipleDecisionFinder multipleDecisionFinder	= newFinder(engineFinder);
+		assertEquals("role-alice", getRoleValue(multipleDecisionFinder, "alice"));
+		//
+		// The role is shared and only the group goes to the engine
+		//
+		Map<PIPRequest, PIPResponse> mapResponses	= getRoleAndGroup(multipleDecisionFinder, "alice");
+		assertEquals("role-alice", getValue(mapResponses.get(REQUEST_ROLE)));
+		assertEquals("group-alice", getValue(mapResponses.get(REQUEST_GROUP)));
+		assertEquals(Collections.emptyList(), roleEngine.batches);
+		assertEquals(2, roleEngine.calls.get());
+		//
+		// Both misses go to the engine in one call, and errors are not kept
+		//
+		mapResponses	= getRoleAndGroup(multipleDecisionFinder, "bob");
+		assertEquals("group-bob", getValue(mapResponses.get(REQUEST_GROUP)));
+		getRoleAndGroup(multipleDecisionFinder, "error");
+		getRoleAndGroup(multipleDecisionFinder, "alice");
+		assertEquals(Arrays.asList(2, 2), roleEngine.batches);
+		assertEquals(4, multipleDecisionFinder.size());
+	}
+
+	@Test
+	public void testErrorNotKept() throws Exception {
+		RoleEngine roleEngine	= new RoleEngine();
+		EngineFinder engineFinder	= new EngineFinder();
+		engineFinder.register(roleEngine);
+		MultipleDecisionFinder multipleDecisionFinder	= newFinder(engineFinder);
+		getRole(multipleDecisionFinder, "error");
+		getRole(multipleDecisionFinder, "error");
+		assertEquals(2, roleEngine.calls.get());
+		assertEquals(0, multipleDecisionFinder.size());
+	}
+}